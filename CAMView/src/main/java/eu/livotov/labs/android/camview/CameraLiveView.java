@@ -18,6 +18,7 @@ import eu.livotov.labs.android.camview.camera.CameraController;
 import eu.livotov.labs.android.camview.camera.CameraDelayedOperationResult;
 import eu.livotov.labs.android.camview.camera.CameraInfo;
 import eu.livotov.labs.android.camview.camera.CameraManager;
+import eu.livotov.labs.android.camview.camera.PreviewSizePolicy;
 
 /**
  * (c) Livotov Labs Ltd. 2012
@@ -29,6 +30,7 @@ public class CameraLiveView extends FrameLayout implements SurfaceHolder.Callbac
     private SurfaceView surfaceView;
     private AtomicBoolean holderReady = new AtomicBoolean(false);
     private CameraLiveViewEventsListener cameraLiveViewEventsListener;
+    private PreviewSizePolicy previewSizePolicy;
 
     public CameraLiveView(Context context)
     {
@@ -65,6 +67,21 @@ public class CameraLiveView extends FrameLayout implements SurfaceHolder.Callbac
         this.cameraLiveViewEventsListener = cameraLiveViewEventsListener;
     }
 
+    public PreviewSizePolicy getPreviewSizePolicy()
+    {
+        return previewSizePolicy;
+    }
+
+    /**
+     * Sets how the preview size of cameras started from now on is picked
+     *
+     * @param previewSizePolicy size policy, <code>null</code> to pick the size that best fits the view
+     */
+    public void setPreviewSizePolicy(PreviewSizePolicy previewSizePolicy)
+    {
+        this.previewSizePolicy = previewSizePolicy;
+    }
+
     private void initUI()
     {
         surfaceView = new SurfaceView(getContext());
@@ -124,29 +141,12 @@ public class CameraLiveView extends FrameLayout implements SurfaceHolder.Callbac
 
         if (finalCamera != null)
         {
-            CameraManager.open(finalCamera, new CameraDelayedOperationResult()
+            CameraManager.open(getContext(), finalCamera, new CameraDelayedOperationResult()
             {
                 @Override
                 public void onOperationCompleted(CameraController controller)
                 {
-                    try
-                    {
-                        setCamera(controller);
-
-                        if (cameraLiveViewEventsListener != null)
-                        {
-                            cameraLiveViewEventsListener.onCameraStarted(CameraLiveView.this);
-                        }
-                    }
-                    catch (IOException e)
-                    {
-                        Log.e(ScannerLiveView.class.getSimpleName(), e.getMessage(), e);
-
-                        if (cameraLiveViewEventsListener != null)
-                        {
-                            cameraLiveViewEventsListener.onCameraError(e);
-                        }
-                    }
+                    attachCamera(controller);
                 }
 
                 @Override
@@ -167,6 +167,33 @@ public class CameraLiveView extends FrameLayout implements SurfaceHolder.Callbac
         }
     }
 
+    /**
+     * Starts the preview of a camera opened by the caller, e.g. one opened in parallel with other start up work
+     *
+     * @param controller opened camera, see {@link CameraManager#open(Context, CameraInfo, CameraDelayedOperationResult)}
+     */
+    public void attachCamera(CameraController controller)
+    {
+        try
+        {
+            setCamera(controller);
+
+            if (cameraLiveViewEventsListener != null)
+            {
+                cameraLiveViewEventsListener.onCameraStarted(this);
+            }
+        }
+        catch (IOException e)
+        {
+            Log.e(ScannerLiveView.class.getSimpleName(), e.getMessage(), e);
+
+            if (cameraLiveViewEventsListener != null)
+            {
+                cameraLiveViewEventsListener.onCameraError(e);
+            }
+        }
+    }
+
     public void stopCamera()
     {
         try
@@ -199,6 +226,7 @@ public class CameraLiveView extends FrameLayout implements SurfaceHolder.Callbac
         else
         {
             this.camera = camera;
+            camera.setPreviewSizePolicy(previewSizePolicy);
 
             if (holderReady.get())
             {
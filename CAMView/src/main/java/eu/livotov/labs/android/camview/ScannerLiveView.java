@@ -2,20 +2,42 @@ package eu.livotov.labs.android.camview;
 
 import android.annotation.TargetApi;
 import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Debug;
 import android.text.TextUtils;
 import android.util.AttributeSet;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.widget.FrameLayout;
 import android.widget.ImageView;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
+import eu.livotov.labs.android.camview.camera.AndroidProcessingThreadPolicy;
+import eu.livotov.labs.android.camview.camera.CAMViewAsyncTask;
+import eu.livotov.labs.android.camview.camera.CameraCapabilityCache;
 import eu.livotov.labs.android.camview.camera.CameraController;
+import eu.livotov.labs.android.camview.camera.CameraDelayedOperationResult;
 import eu.livotov.labs.android.camview.camera.CameraInfo;
 import eu.livotov.labs.android.camview.camera.CameraManager;
-import eu.livotov.labs.android.camview.camera.LiveDataProcessingCallback;
+import eu.livotov.labs.android.camview.camera.FocusScheduler;
+import eu.livotov.labs.android.camview.camera.FrameDescriptor;
+import eu.livotov.labs.android.camview.camera.FrameDescriptorProcessingCallback;
+import eu.livotov.labs.android.camview.camera.LiveDataMetrics;
+import eu.livotov.labs.android.camview.camera.PreviewSizePolicy;
+import eu.livotov.labs.android.camview.camera.ProcessingThreadPolicy;
+import eu.livotov.labs.android.camview.scanner.AdaptiveDecodeScheduler;
+import eu.livotov.labs.android.camview.scanner.DecodeCostCalibration;
+import eu.livotov.labs.android.camview.scanner.FrameChangeGate;
+import eu.livotov.labs.android.camview.scanner.ScannerFrameProcessor;
+import eu.livotov.labs.android.camview.scanner.ScannerStartupMetrics;
 import eu.livotov.labs.android.camview.scanner.decoder.BarcodeDecoder;
+import eu.livotov.labs.android.camview.scanner.decoder.DecodeResult;
+import eu.livotov.labs.android.camview.scanner.decoder.DecodeResultPool;
 import eu.livotov.labs.android.camview.scanner.decoder.zxing.ZXDecoder;
 import eu.livotov.labs.android.camview.scanner.util.SoundPlayer;
 
@@ -24,26 +46,45 @@ import eu.livotov.labs.android.camview.scanner.util.SoundPlayer;
  * (c) Livotov Labs Ltd. 2012
  * Date: 03/11/2014
  */
-public class ScannerLiveView extends FrameLayout implements LiveDataProcessingCallback, CameraLiveView.CameraLiveViewEventsListener
+public class ScannerLiveView extends FrameLayout implements FrameDescriptorProcessingCallback, CameraLiveView.CameraLiveViewEventsListener
 {
     public final static long DEFAULT_SAMECODE_RESCAN_PROTECTION_TIME_MS = 5000;
-    public final static long DEFAULT_DECODE_THROTTLE_MS = 300;
+    public final static long DEFAULT_DECODE_THROTTLE_MS = AdaptiveDecodeScheduler.DEFAULT_MAX_INTERVAL_MS;
 
     protected CameraLiveView camera;
     protected ImageView hud;
     protected ScannerViewEventListener scannerViewEventListener;
-    protected BarcodeDecoder decoder = new ZXDecoder();
+    protected final ScannerFrameProcessor frameProcessor = new ScannerFrameProcessor(new ZXDecoder())
+    {
+        @Override
+        protected long threadCpuTimeNanos()
+        {
+            return Debug.threadCpuTimeNanos();
+        }
+    };
+    protected BarcodeDecoder decoder = frameProcessor.getDecoder();
     protected int scannerSoundAudioResource = R.raw.camview_beep;
     protected boolean playSound = true;
 
     protected SoundPlayer soundPlayer;
+    protected final AdaptiveDecodeScheduler decodeScheduler = frameProcessor.getDecodeScheduler();
+    protected final FrameChangeGate frameChangeGate = frameProcessor.getFrameChangeGate();
+    protected final DecodeResultPool decodeResultPool = frameProcessor.getDecodeResultPool();
+    protected final PreviewSizePolicy previewSizePolicy = new PreviewSizePolicy();
+    protected final ProcessingThreadPolicy processingThreadPolicy = new AndroidProcessingThreadPolicy();
+    protected final ScannerStartupMetrics startupMetrics = frameProcessor.getStartupMetrics();
 
     private volatile String lastDataDecoded;
     private volatile long lastDataDecodedTimestamp;
-    private volatile long decodeThrottleMillis = DEFAULT_DECODE_THROTTLE_MS;
     private volatile long sameCodeRescanProtectionTime = DEFAULT_SAMECODE_RESCAN_PROTECTION_TIME_MS;
+    private volatile int decodeThreadsCount = 1;
+    private volatile LiveDataMetrics liveDataMetrics;
+    private final ArrayList<String> lastBatchDecoded = new ArrayList<String>();
+    private long lastBatchDecodedTimestamp;
     private CameraController controller;
-    private long lastTimeFrameProcessed;
+    private int startsCount;
+    private CameraController openedCamera;
+    private boolean decoderWarmedUp;
 
     public ScannerLiveView(final Context context)
     {
@@ -56,10 +97,18 @@ public class ScannerLiveView extends FrameLayout implements LiveDataProcessingCa
         final View root = LayoutInflater.from(getContext()).inflate(getScannerLayoutResource(), this);
         camera = (CameraLiveView) root.findViewById(R.id.camview_camera);
         hud = (ImageView) root.findViewById(R.id.cameraHud);
-        decoder = new ZXDecoder();
         soundPlayer = new SoundPlayer(getContext());
 
         camera.setCameraLiveViewEventsListener(this);
+        camera.setPreviewSizePolicy(previewSizePolicy);
+        processingThreadPolicy.setWarmUp(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                DecodeCostCalibration.warmUp(decoder);
+            }
+        });
     }
 
     protected int getScannerLayoutResource()
@@ -87,6 +136,15 @@ public class ScannerLiveView extends FrameLayout implements LiveDataProcessingCa
     public void setDecoder(BarcodeDecoder decoder)
     {
         this.decoder = decoder;
+        frameProcessor.setDecoder(decoder);
+    }
+
+    /**
+     * @return per frame decoding logic of this scanner, the same one can be driven off device by a {@link eu.livotov.labs.android.camview.camera.FrameSource}
+     */
+    public ScannerFrameProcessor getFrameProcessor()
+    {
+        return frameProcessor;
     }
 
     @TargetApi(21)
@@ -122,6 +180,7 @@ public class ScannerLiveView extends FrameLayout implements LiveDataProcessingCa
     public void startScanner(CameraInfo camInfo)
     {
         lastDataDecoded = null;
+        lastBatchDecoded.clear();
 
         CameraInfo finalCamera = camInfo;
         if (finalCamera == null)
@@ -131,7 +190,13 @@ public class ScannerLiveView extends FrameLayout implements LiveDataProcessingCa
 
         if (finalCamera != null)
         {
-            camera.startCamera(finalCamera);
+            previewSizePolicy.setProcessingThreadsCount(processingThreadPolicy.getThreadsCount(decodeThreadsCount));
+            startsCount++;
+            startupMetrics.onStartRequested();
+
+            // Camera opens on the camera thread while the decoder warms up on the task pool
+            openCamera(finalCamera);
+            warmUpDecoder();
         }
         else
         {
@@ -139,11 +204,163 @@ public class ScannerLiveView extends FrameLayout implements LiveDataProcessingCa
         }
     }
 
+    private void openCamera(final CameraInfo cameraInfo)
+    {
+        final int start = startsCount;
+        openedCamera = null;
+
+        CameraManager.open(getContext(), cameraInfo, new CameraDelayedOperationResult()
+        {
+            @Override
+            public void onOperationCompleted(CameraController controller)
+            {
+                if (start != startsCount)
+                {
+                    // Scanner was stopped or started again while the camera was opening
+                    controller.close();
+                    return;
+                }
+
+                startupMetrics.onCameraOpened();
+                openedCamera = controller;
+                startPreviewWhenReady();
+            }
+
+            @Override
+            public void onOperationFailed(Throwable e, int cameraErrorCode)
+            {
+                Log.e(ScannerLiveView.class.getSimpleName(), e != null ? e.getMessage() : "n/a");
+
+                if (start == startsCount)
+                {
+                    onCameraError(e != null ? e : new RuntimeException("Camera system error " + cameraErrorCode));
+                }
+            }
+        });
+    }
+
+    /**
+     * Loads the decoding cost measured on a previous run and decodes a blank frame, or measures the cost for the first
+     * time, which warms the decoder up as well. Either way classes are loaded and code is compiled before the first
+     * camera frame comes in.
+     */
+    private void warmUpDecoder()
+    {
+        final int start = startsCount;
+        final BarcodeDecoder warmedUpDecoder = decoder;
+        final Context context = getContext().getApplicationContext();
+        decoderWarmedUp = false;
+
+        new CAMViewAsyncTask<Void, Void, Void>()
+        {
+            @Override
+            protected Void doInBackground(Void... args) throws Throwable
+            {
+                if (previewSizePolicy.isCalibrated())
+                {
+                    DecodeCostCalibration.warmUp(warmedUpDecoder);
+                    return null;
+                }
+
+                final CameraCapabilityCache cache = CameraCapabilityCache.get(context);
+                final String decoderName = warmedUpDecoder.getClass().getName();
+                final String settings = getDecodeCostSettings(context, warmedUpDecoder);
+                float nanosPerPixel = cache.getDecodeCost(decoderName, settings);
+
+                if (nanosPerPixel <= 0)
+                {
+                    nanosPerPixel = DecodeCostCalibration.measureNanosPerPixel(warmedUpDecoder);
+                    cache.putDecodeCost(decoderName, settings, nanosPerPixel);
+                }
+                else
+                {
+                    DecodeCostCalibration.warmUp(warmedUpDecoder);
+                }
+
+                previewSizePolicy.setProcessingNanosPerPixel(nanosPerPixel);
+                return null;
+            }
+
+            @Override
+            protected void onPostExecute(Void result)
+            {
+                onDecoderWarmedUp(start);
+            }
+
+            @Override
+            protected void onError(Throwable t)
+            {
+                // Previews are then sized without the decoding cost
+                onDecoderWarmedUp(start);
+            }
+        }.execPool();
+    }
+
+    /**
+     * The cost cache is already dropped on OS updates, app updates may bring another decoder version
+     */
+    private static String getDecodeCostSettings(Context context, BarcodeDecoder decoder)
+    {
+        long appUpdated = 0;
+
+        try
+        {
+            appUpdated = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        }
+        catch (PackageManager.NameNotFoundException ignored)
+        {
+        }
+
+        return "app " + appUpdated + (decoder instanceof ZXDecoder ? ", " + ((ZXDecoder) decoder).getCostSettings() : "");
+    }
+
+    private void onDecoderWarmedUp(int start)
+    {
+        if (start == startsCount)
+        {
+            startupMetrics.onDecoderWarmedUp();
+            decoderWarmedUp = true;
+            startPreviewWhenReady();
+        }
+    }
+
+    /**
+     * Starts the preview once both the camera is open and the decoder warmed up, the preview size depending on the
+     * measured decoding cost
+     */
+    private void startPreviewWhenReady()
+    {
+        if (decoderWarmedUp && openedCamera != null)
+        {
+            final CameraController controller = openedCamera;
+            openedCamera = null;
+
+            // Preview buffers are allocated as the preview starts, sized from the processing threads count
+            configureController(controller);
+            camera.attachCamera(controller);
+        }
+    }
+
+    private void configureController(CameraController controller)
+    {
+        controller.setLiveDataProcessingThreadsCount(decodeThreadsCount);
+        controller.setLiveDataMetrics(liveDataMetrics);
+        controller.setProcessingThreadPolicy(processingThreadPolicy);
+    }
+
     private void resumeGrabbing()
     {
         if (controller != null)
         {
-            controller.requestLiveData(this);
+            try
+            {
+                controller.requestLiveData(this);
+            }
+            catch (IllegalStateException ise)
+            {
+                // Preview stopped while the frame was processed, live data resumes as the preview starts again
+                Log.w(ScannerLiveView.class.getSimpleName(), ise.getMessage());
+            }
         }
     }
 
@@ -152,6 +369,14 @@ public class ScannerLiveView extends FrameLayout implements LiveDataProcessingCa
      */
     public void stopScanner()
     {
+        startsCount++;
+
+        if (openedCamera != null)
+        {
+            openedCamera.close();
+            openedCamera = null;
+        }
+
         camera.stopCamera();
     }
 
@@ -165,14 +390,121 @@ public class ScannerLiveView extends FrameLayout implements LiveDataProcessingCa
         this.sameCodeRescanProtectionTime = sameCodeRescanProtectionTime;
     }
 
+    /**
+     * @return current interval between decoded frames, as chosen by the {@link #getDecodeScheduler() decode scheduler}
+     */
     public long getDecodeThrottleMillis()
     {
-        return decodeThrottleMillis;
+        return decodeScheduler.getIntervalMillis();
     }
 
+    /**
+     * Disables adaptive decode scheduling and decodes at most one frame per the given interval
+     *
+     * @param throttle interval between decoded frames
+     */
     public void setDecodeThrottleMillis(long throttle)
     {
-        this.decodeThrottleMillis = throttle;
+        decodeScheduler.setFixedInterval(throttle);
+    }
+
+    /**
+     * @return scheduler deciding which camera frames are decoded. By default it adapts the decode rate to the
+     * measured decode latency and hit rate, capped at {@link #DEFAULT_DECODE_THROTTLE_MS} between frames.
+     */
+    public AdaptiveDecodeScheduler getDecodeScheduler()
+    {
+        return decodeScheduler;
+    }
+
+    /**
+     * @return pre-decode check skipping frames that show an unchanged scene or are too blurry to read, along with
+     * statistics on how many decodes it avoided. Its area should match the decoder scan area (70% by default).
+     */
+    public FrameChangeGate getFrameChangeGate()
+    {
+        return frameChangeGate;
+    }
+
+    public int getDecodeThreadsCount()
+    {
+        return decodeThreadsCount;
+    }
+
+    /**
+     * Sets how many camera frames may be decoded in parallel. Takes effect on the next scanner start.
+     *
+     * @param count number of decoding threads, at least 1
+     */
+    public void setDecodeThreadsCount(int count)
+    {
+        if (count < 1)
+        {
+            throw new IllegalArgumentException("At least one decoding thread is required. Specified value was " + count);
+        }
+
+        this.decodeThreadsCount = count;
+    }
+
+    /**
+     * @return policy sizing camera previews for decoding throughput: the largest preview decoded at its
+     * {@link PreviewSizePolicy#getTargetFramesPerSecond() target rate} (scans per second) is picked. The decoding time
+     * per pixel is measured on the first scanner start and kept for the following runs of the app. Set a
+     * <code>null</code> policy on the {@link #getCamera() camera view} to size previews by the view only.
+     */
+    public PreviewSizePolicy getPreviewSizePolicy()
+    {
+        return previewSizePolicy;
+    }
+
+    /**
+     * @return set up of the decoding threads. By default they run at display priority, are no more than the big CPU
+     * cores and decode a blank frame as they start, so the first camera frames are decoded as fast as the following ones.
+     */
+    public ProcessingThreadPolicy getProcessingThreadPolicy()
+    {
+        return processingThreadPolicy;
+    }
+
+    /**
+     * @return timeline of the last scanner start, up to the first camera frame reaching the decoder
+     */
+    public ScannerStartupMetrics getStartupMetrics()
+    {
+        return startupMetrics;
+    }
+
+    public LiveDataMetrics getLiveDataMetrics()
+    {
+        return liveDataMetrics;
+    }
+
+    /**
+     * Sets the receiver of frame pipeline and decoding timings, e.g. a {@link eu.livotov.labs.android.camview.camera.LiveDataMetricsRecorder}.
+     * Camera side timings are collected from the next scanner start.
+     *
+     * @param metrics metrics receiver, <code>null</code> to disable reporting
+     */
+    public void setLiveDataMetrics(LiveDataMetrics metrics)
+    {
+        this.liveDataMetrics = metrics;
+        frameProcessor.setMetrics(metrics);
+    }
+
+    public boolean isMultipleCodesMode()
+    {
+        return frameProcessor.isMultipleCodesMode();
+    }
+
+    /**
+     * Switches between reading a single code per frame, reported via {@link ScannerViewEventListener#onCodeScanned(String)},
+     * and reading all codes visible in a frame at once, reported via {@link MultiScannerViewEventListener#onCodesScanned(List)},
+     * or code by code to listeners not implementing it.
+     * The multiple codes mode is noticeably slower per frame, so only enable it when several codes are expected.
+     */
+    public void setMultipleCodesMode(boolean multipleCodesMode)
+    {
+        frameProcessor.setMultipleCodesMode(multipleCodesMode);
     }
 
     public CameraLiveView getCamera()
@@ -235,6 +567,26 @@ public class ScannerLiveView extends FrameLayout implements LiveDataProcessingCa
         }
     }
 
+    protected void notifyBarcodesRead(final List<DecodeResult> codes)
+    {
+        beep();
+
+        if (scannerViewEventListener instanceof MultiScannerViewEventListener)
+        {
+            ((MultiScannerViewEventListener) scannerViewEventListener).onCodesScanned(codes);
+        }
+        else if (scannerViewEventListener != null)
+        {
+            for (DecodeResult code : codes)
+            {
+                if (!TextUtils.isEmpty(code.getText()))
+                {
+                    scannerViewEventListener.onCodeScanned(code.getText());
+                }
+            }
+        }
+    }
+
     private void beep()
     {
         if (playSound && scannerSoundAudioResource != 0)
@@ -246,39 +598,107 @@ public class ScannerLiveView extends FrameLayout implements LiveDataProcessingCa
     @Override
     public Object onProcessCameraFrame(byte[] data, int width, int height)
     {
-        if (System.currentTimeMillis()-lastTimeFrameProcessed > decodeThrottleMillis)
-        {
-            final Object result = decoder.decode(data, width, height);
-            lastTimeFrameProcessed = System.currentTimeMillis();
-            return result;
-        } else
-        {
-            return null;
-        }
+        return onProcessCameraFrame(FrameDescriptor.wrapNV21(ByteBuffer.wrap(data), width, height));
     }
 
     @Override
-    public void onReceiveProcessedCameraFrame(Object object)
+    public Object onProcessCameraFrame(FrameDescriptor frame)
     {
-        String data = object != null ? object.toString() : null;
+        return frameProcessor.process(frame);
+    }
 
-        if (!TextUtils.isEmpty(data))
+    @Override
+    public void onReceiveProcessedCameraFrame(Object object)
+    {
+        if (object instanceof List)
+        {
+            onReceiveDecodedBatch(asResults(object));
+        }
+        else if (object instanceof DecodeResult)
         {
-            if (TextUtils.isEmpty(lastDataDecoded) || !lastDataDecoded.equalsIgnoreCase(data) || (lastDataDecoded.equalsIgnoreCase(data) && (System.currentTimeMillis() - lastDataDecodedTimestamp) > sameCodeRescanProtectionTime))
+            final DecodeResult result = (DecodeResult) object;
+            final String data = result.getText();
+
+            if (!TextUtils.isEmpty(data))
             {
-                lastDataDecoded = data;
-                lastDataDecodedTimestamp = System.currentTimeMillis();
-                notifyBarcodeRead(data);
+                if (TextUtils.isEmpty(lastDataDecoded) || !lastDataDecoded.equalsIgnoreCase(data) || (lastDataDecoded.equalsIgnoreCase(data) && (System.currentTimeMillis() - lastDataDecodedTimestamp) > sameCodeRescanProtectionTime))
+                {
+                    lastDataDecoded = data;
+                    lastDataDecodedTimestamp = System.currentTimeMillis();
+                    notifyBarcodeRead(data);
+                }
             }
+
+            result.release();
         }
 
         resumeGrabbing();
     }
 
+    private void onReceiveDecodedBatch(List<DecodeResult> results)
+    {
+        try
+        {
+            // Same set of codes as the last batch, in whatever order, is protected just like a single code
+            boolean sameBatch = results.size() == lastBatchDecoded.size();
+            for (int i = 0; sameBatch && i < results.size(); i++)
+            {
+                sameBatch = lastBatchDecoded.contains(results.get(i).getText());
+            }
+
+            if (!sameBatch || (System.currentTimeMillis() - lastBatchDecodedTimestamp) > sameCodeRescanProtectionTime)
+            {
+                lastBatchDecoded.clear();
+                for (DecodeResult result : results)
+                {
+                    lastBatchDecoded.add(result.getText());
+                }
+                lastBatchDecodedTimestamp = System.currentTimeMillis();
+                notifyBarcodesRead(results);
+            }
+        }
+        finally
+        {
+            releaseAll(results);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<DecodeResult> asResults(Object object)
+    {
+        return (List<DecodeResult>) object;
+    }
+
+    private static void releaseAll(List<DecodeResult> results)
+    {
+        for (DecodeResult result : results)
+        {
+            result.release();
+        }
+    }
+
     @Override
     public void onCameraStarted(CameraLiveView camera)
     {
+        startupMetrics.onPreviewStarted();
         controller = camera.getController();
+
+        if (controller != null)
+        {
+            configureController(controller);
+        }
+
+        final FocusScheduler focusScheduler = controller != null ? controller.getFocusScheduler() : null;
+
+        if (focusScheduler != null && decoder instanceof ZXDecoder)
+        {
+            // Focus and meter on what is decoded rather than on the whole frame
+            focusScheduler.setAreaPercent(((ZXDecoder) decoder).getScanAreaPercent());
+        }
+
+        frameProcessor.setFocusScheduler(focusScheduler);
+        frameProcessor.reset(processingThreadPolicy.getThreadsCount(decodeThreadsCount));
+
         resumeGrabbing();
 
         if (scannerViewEventListener != null)
@@ -290,6 +710,8 @@ public class ScannerLiveView extends FrameLayout implements LiveDataProcessingCa
     @Override
     public void onCameraStopped(CameraLiveView camera)
     {
+        frameProcessor.setFocusScheduler(null);
+
         if (scannerViewEventListener != null)
         {
             scannerViewEventListener.onScannerStopped(this);
@@ -316,5 +738,20 @@ public class ScannerLiveView extends FrameLayout implements LiveDataProcessingCa
         void onCodeScanned(final String data);
     }
 
+    /**
+     * Listener receiving all codes read from a frame at once in {@link ScannerLiveView#setMultipleCodesMode(boolean) multiple codes mode}.
+     * Other listeners get these codes one by one through {@link #onCodeScanned(String)}.
+     */
+    public interface MultiScannerViewEventListener extends ScannerViewEventListener
+    {
+        /**
+         * Called instead of {@link #onCodeScanned(String)} when the scanner is in {@link ScannerLiveView#setMultipleCodesMode(boolean) multiple codes mode}.
+         * Results are handed back to their pool once this method returns, so copy them if they are needed later.
+         *
+         * @param codes all distinct codes read from a single frame
+         */
+        void onCodesScanned(final List<DecodeResult> codes);
+    }
+
 
 }
@@ -2,6 +2,7 @@ package eu.livotov.labs.android.camview.camera;
 
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 
 import eu.livotov.labs.android.camview.R;
 
@@ -10,36 +11,153 @@ import eu.livotov.labs.android.camview.R;
  */
 public abstract class AbstractController implements CameraController
 {
+    public final static int DEFAULT_LIVE_DATA_BUFFERS_COUNT = 3;
+    public final static int DEFAULT_LIVE_DATA_PROCESSING_THREADS_COUNT = 1;
+
+    // Besides a frame per processing thread, one frame is being filled by the camera and one waits in the queue
+    private final static int LIVE_DATA_EXTRA_BUFFERS_COUNT = 2;
+
     protected LiveDataProcessingCallback liveDataProcessor;
-    protected LiveFrameProcessingThread liveFrameProcessingThread;
+    protected volatile LiveFrameExecutor liveFrameExecutor;
+    protected int liveDataBuffersCount = DEFAULT_LIVE_DATA_BUFFERS_COUNT;
+    protected int liveDataProcessingThreadsCount = DEFAULT_LIVE_DATA_PROCESSING_THREADS_COUNT;
+    protected volatile LiveDataMetrics liveDataMetrics;
+    protected volatile PreviewSizePolicy previewSizePolicy;
+    protected volatile ProcessingThreadPolicy processingThreadPolicy = new AndroidProcessingThreadPolicy();
+
+    @Override
+    public int getLiveDataBuffersCount()
+    {
+        return Math.max(liveDataBuffersCount, liveDataProcessingThreadsCount + LIVE_DATA_EXTRA_BUFFERS_COUNT);
+    }
+
+    @Override
+    public void setLiveDataBuffersCount(int count)
+    {
+        if (count < 1)
+        {
+            throw new IllegalArgumentException("At least one live data buffer is required. Specified value was " + count);
+        }
+
+        this.liveDataBuffersCount = count;
+    }
+
+    @Override
+    public int getLiveDataProcessingThreadsCount()
+    {
+        return liveDataProcessingThreadsCount;
+    }
+
+    @Override
+    public void setLiveDataProcessingThreadsCount(int count)
+    {
+        if (count < 1)
+        {
+            throw new IllegalArgumentException("At least one live data processing thread is required. Specified value was " + count);
+        }
+
+        this.liveDataProcessingThreadsCount = count;
+    }
+
+    @Override
+    public LiveDataMetrics getLiveDataMetrics()
+    {
+        return liveDataMetrics;
+    }
+
+    @Override
+    public void setLiveDataMetrics(LiveDataMetrics metrics)
+    {
+        this.liveDataMetrics = metrics;
+    }
+
+    @Override
+    public ProcessingThreadPolicy getProcessingThreadPolicy()
+    {
+        return processingThreadPolicy;
+    }
+
+    @Override
+    public void setProcessingThreadPolicy(ProcessingThreadPolicy policy)
+    {
+        this.processingThreadPolicy = policy;
+    }
+
+    @Override
+    public PreviewSizePolicy getPreviewSizePolicy()
+    {
+        return previewSizePolicy;
+    }
+
+    @Override
+    public void setPreviewSizePolicy(PreviewSizePolicy policy)
+    {
+        this.previewSizePolicy = policy;
+    }
 
     protected void startLiveDataCapture(LiveDataProcessingCallback processor)
     {
         liveDataProcessor = processor;
 
-        if (liveFrameProcessingThread == null)
+        if (liveFrameExecutor == null)
         {
-            liveFrameProcessingThread = new LiveFrameProcessingThread(new ProcessingResultHandler(), processor);
-            liveFrameProcessingThread.start();
+            liveFrameExecutor = createLiveFrameExecutor(processor);
+            liveFrameExecutor.start();
+        }
+    }
+
+    /**
+     * Creates the executor live frames are processed by. Override to plug in a custom one.
+     *
+     * @param processor callback to run for every frame
+     * @return not yet started executor, delivering its results to the main thread
+     */
+    protected LiveFrameExecutor createLiveFrameExecutor(LiveDataProcessingCallback processor)
+    {
+        final ProcessingThreadPolicy threadPolicy = processingThreadPolicy;
+        final int threadsCount = threadPolicy != null ? threadPolicy.getThreadsCount(liveDataProcessingThreadsCount) : liveDataProcessingThreadsCount;
+
+        if (threadsCount > 1)
+        {
+            return new LiveFrameProcessingPool(threadsCount, threadsCount, processor, new ProcessingResultHandler(), liveDataMetrics, threadPolicy);
+        }
+        else
+        {
+            return new LiveFrameProcessingThread(new ProcessingResultHandler(), processor, liveDataMetrics, threadPolicy);
         }
     }
 
     protected void stopLiveDataCapture()
     {
-        if (liveFrameProcessingThread != null)
+        final LiveFrameExecutor executor = liveFrameExecutor;
+        liveFrameExecutor = null;
+
+        if (executor != null)
         {
-            liveFrameProcessingThread.shutdown();
+            executor.shutdown();
         }
     }
 
-    class ProcessingResultHandler extends Handler
+    class ProcessingResultHandler extends Handler implements LiveFrameExecutor.ResultListener
     {
+        @Override
+        public void onLiveFrameProcessed(Object result)
+        {
+            Message.obtain(this, R.id.camview_core_msg_livedataprocess_ok, result).sendToTarget();
+        }
 
         @Override
         public void handleMessage(Message msg)
         {
             if (msg.what == R.id.camview_core_msg_livedataprocess_ok && liveDataProcessor != null)
             {
+                final LiveDataMetrics metrics = liveDataMetrics;
+                if (metrics != null)
+                {
+                    // Message time is the uptime at which it was posted, i.e. when processing completed
+                    metrics.onResultDelivered((SystemClock.uptimeMillis() - msg.getWhen()) * 1000000L);
+                }
+
                 liveDataProcessor.onReceiveProcessedCameraFrame(msg.obj);
             }
         }
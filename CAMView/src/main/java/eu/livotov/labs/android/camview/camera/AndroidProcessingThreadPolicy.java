@@ -0,0 +1,31 @@
+package eu.livotov.labs.android.camview.camera;
+
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * {@link ProcessingThreadPolicy} applying priorities with {@link Process#setThreadPriority(int)}, so processing threads
+ * compete with the UI and render threads on the same terms as the platform own threads do. Limited threads counts are
+ * logged.
+ */
+public class AndroidProcessingThreadPolicy extends ProcessingThreadPolicy
+{
+    @Override
+    protected void setCurrentThreadPriority(int priority)
+    {
+        try
+        {
+            Process.setThreadPriority(priority);
+        }
+        catch (SecurityException se)
+        {
+            Log.w(AndroidProcessingThreadPolicy.class.getSimpleName(), "Thread priority " + priority + " was denied, keeping the default one", se);
+        }
+    }
+
+    @Override
+    protected void onThreadsCountLimited(int requested, int count)
+    {
+        Log.i(AndroidProcessingThreadPolicy.class.getSimpleName(), "Running " + count + " processing threads instead of " + requested + ", as many as preferred cores");
+    }
+}
@@ -0,0 +1,72 @@
+package eu.livotov.labs.android.camview.camera;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread pool of a fixed maximum number of threads and a fixed capacity queue, with the figures to tell how loaded it
+ * is.
+ * <p/>
+ * Threads are started as tasks come in and stop after a second of idling. The queue is an array allocated upfront, so
+ * queueing a task allocates nothing. A task posted to a full queue is rejected with a
+ * {@link RejectedExecutionException} and counted.
+ */
+public class BoundedTaskPool extends ThreadPoolExecutor
+{
+    private static final long KEEP_ALIVE_SECONDS = 1;
+
+    private final int queueCapacity;
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public BoundedTaskPool(int threadsCount, int queueCapacity, final String threadNamePrefix)
+    {
+        super(threadsCount, threadsCount, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory()
+        {
+            private final AtomicInteger mCount = new AtomicInteger(1);
+
+            public Thread newThread(Runnable r)
+            {
+                return new Thread(r, threadNamePrefix + mCount.getAndIncrement());
+            }
+        });
+
+        this.queueCapacity = queueCapacity;
+        allowCoreThreadTimeOut(true);
+        setRejectedExecutionHandler(new RejectedExecutionHandler()
+        {
+            @Override
+            public void rejectedExecution(Runnable task, ThreadPoolExecutor executor)
+            {
+                rejectedCount.incrementAndGet();
+                throw new RejectedExecutionException(String.format("Task pool is full: %s threads busy, %s tasks queued", executor.getActiveCount(), executor.getQueue().size()));
+            }
+        });
+    }
+
+    public int getQueueCapacity()
+    {
+        return queueCapacity;
+    }
+
+    /**
+     * @return number of tasks waiting for a thread
+     */
+    public int getQueuedCount()
+    {
+        return getQueue().size();
+    }
+
+    /**
+     * @return number of tasks rejected so far because the queue was full
+     */
+    public long getRejectedCount()
+    {
+        return rejectedCount.get();
+    }
+}
@@ -3,41 +3,38 @@ package eu.livotov.labs.android.camview.camera;
 import android.os.Looper;
 import android.os.Message;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Executor;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
-
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Background task with its callbacks delivered on the main thread.
+ * <p/>
+ * Tasks run either on a shared {@link BoundedTaskPool} ({@link #execPool(Object[])}) or one after another on a single
+ * shared {@link SerialExecutor} thread ({@link #execSerial(Object[])}). A task instance runs once at a time: executing
+ * it again while it is still pending or running throws an {@link IllegalStateException}.
+ */
 @SuppressWarnings("unused")
 public abstract class CAMViewAsyncTask<Params, Progress, Result>
 {
 
     private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
-    private static final int CORE_POOL_SIZE = CPU_COUNT + 1;
-    private static final int MAXIMUM_POOL_SIZE = CPU_COUNT * 2 + 1;
-    private static final int KEEP_ALIVE = 1;
+    private static final int POOL_SIZE = CPU_COUNT + 1;
+    private static final int POOL_QUEUE_CAPACITY = 128;
 
-    private static final BlockingQueue<Runnable> sPoolWorkQueue = new LinkedBlockingQueue<Runnable>(128);
-    private final static Runloop sRunLoop = new Runloop();
+    public static final BoundedTaskPool sPool = new BoundedTaskPool(POOL_SIZE, POOL_QUEUE_CAPACITY, "AsyncTask #");
+    private static final SerialExecutor sSerialExecutor = new SerialExecutor("AsyncTask Serial");
+    private static final Handler sHandler = new Handler();
+    private final AtomicBoolean mCancelled = new AtomicBoolean(false);
+    private final AtomicBoolean mExecuting = new AtomicBoolean(false);
 
-    private static final ThreadFactory sThreadFactory = new ThreadFactory()
+    /**
+     * @return executor of {@link #execSerial(Object[])} tasks, for its load to be observed
+     */
+    public static SerialExecutor getSerialExecutor()
     {
-        private final AtomicInteger mCount = new AtomicInteger(1);
-
-        public Thread newThread(Runnable r)
-        {
-            return new Thread(r, "AsyncTask #" + mCount.getAndIncrement());
-        }
-    };
-
-    public static final Executor sPool = new ThreadPoolExecutor(CORE_POOL_SIZE, MAXIMUM_POOL_SIZE, KEEP_ALIVE, TimeUnit.SECONDS, sPoolWorkQueue, sThreadFactory);
-    private static final Handler sHandler = new Handler();
-    private final Object mLock = new Object();
-    private AtomicBoolean mCancelled = new AtomicBoolean(false);
+        return sSerialExecutor;
+    }
 
     protected void onPreExecute()
     {
@@ -70,7 +67,7 @@ public abstract class CAMViewAsyncTask<Params, Progress, Result>
     {
         if (!mCancelled.get())
         {
-            AsyncResult<Progress, Result> result = new AsyncResult<Progress, Result>(this);
+            AsyncResult<Progress, Result> result = AsyncResult.obtain(this);
             result.progress = progress;
             sHandler.dispatchProgressUpdate(result);
         }
@@ -88,37 +85,58 @@ public abstract class CAMViewAsyncTask<Params, Progress, Result>
 
     public void execPool(final Params... params)
     {
-        sPool.execute(new Runnable()
+        claimExecution();
+
+        try
         {
-            @Override
-            public void run()
+            sPool.execute(new Runnable()
             {
-                execInCurrThread(params);
-            }
-        });
+                @Override
+                public void run()
+                {
+                    execute(params);
+                }
+            });
+        }
+        catch (RejectedExecutionException ree)
+        {
+            mExecuting.set(false);
+            throw ree;
+        }
     }
 
     public void execSerial(final Params... params)
     {
-        if (!sRunLoop.isStarted())
-        {
-            sRunLoop.start();
-        }
-        sRunLoop.post(new Runnable()
+        claimExecution();
+        sSerialExecutor.execute(new Runnable()
         {
             @Override
             public void run()
             {
-                execInCurrThread(params);
+                execute(params);
             }
         });
     }
 
     public void execInCurrThread(Params... params)
     {
-        synchronized (mLock)
+        claimExecution();
+        execute(params);
+    }
+
+    private void claimExecution()
+    {
+        if (!mExecuting.compareAndSet(false, true))
         {
-            AsyncResult<Progress, Result> result = new AsyncResult<Progress, Result>(this);
+            throw new IllegalStateException("Task is already pending or running: " + this);
+        }
+    }
+
+    private void execute(Params... params)
+    {
+        try
+        {
+            final AsyncResult<Progress, Result> result = AsyncResult.obtain(this);
             if (!mCancelled.get())
             {
                 sHandler.dispatchPreExecute(result);
@@ -138,6 +156,7 @@ public abstract class CAMViewAsyncTask<Params, Progress, Result>
                     }
                     catch (Throwable throwable)
                     {
+                        result.t = throwable;
                         if (!mCancelled.get())
                         {
                             sHandler.dispatchError(result);
@@ -158,6 +177,10 @@ public abstract class CAMViewAsyncTask<Params, Progress, Result>
                 sHandler.dispatchCancel(result);
             }
         }
+        finally
+        {
+            mExecuting.set(false);
+        }
     }
 
     static class Handler extends android.os.Handler
@@ -174,32 +197,32 @@ public abstract class CAMViewAsyncTask<Params, Progress, Result>
             super(Looper.getMainLooper());
         }
 
-        void dispatchPreExecute(AsyncResult result)
+        void dispatchPreExecute(AsyncResult<?, ?> result)
         {
             sendMessage(result, MESSAGE_PRE_EXECUTE);
         }
 
-        void dispatchProgressUpdate(AsyncResult result)
+        void dispatchProgressUpdate(AsyncResult<?, ?> result)
         {
             sendMessage(result, MESSAGE_PROGRESS);
         }
 
-        void dispatchError(AsyncResult result)
+        void dispatchError(AsyncResult<?, ?> result)
         {
             sendMessage(result, MESSAGE_ERROR);
         }
 
-        void dispatchCancel(AsyncResult result)
+        void dispatchCancel(AsyncResult<?, ?> result)
         {
             sendMessage(result, MESSAGE_CANCEL);
         }
 
-        void dispatchPostExecute(AsyncResult result)
+        void dispatchPostExecute(AsyncResult<?, ?> result)
         {
             sendMessage(result, MESSAGE_POST_EXECUTE);
         }
 
-        void sendMessage(AsyncResult result, int code)
+        void sendMessage(AsyncResult<?, ?> result, int code)
         {
             Message m = obtainMessage(code);
             m.obj = result;
@@ -207,143 +230,94 @@ public abstract class CAMViewAsyncTask<Params, Progress, Result>
         }
 
         @Override
-        @SuppressWarnings("unchecked")
         public void handleMessage(Message msg)
         {
-            AsyncResult obj = (AsyncResult) msg.obj;
+            AsyncResult<?, ?> obj = (AsyncResult<?, ?>) msg.obj;
             if (obj != null)
             {
-                switch (msg.what)
-                {
-                    case MESSAGE_PRE_EXECUTE:
-                        obj.task.onPreExecute();
-                        break;
-                    case MESSAGE_PROGRESS:
-                        obj.task.onProgressUpdate(obj.progress);
-                        break;
-                    case MESSAGE_ERROR:
-                        obj.task.onError(obj.t);
-                        break;
-                    case MESSAGE_CANCEL:
-                        obj.task.onCanceled(obj.result);
-                        break;
-                    case MESSAGE_POST_EXECUTE:
-                        obj.task.onPostExecute(obj.result);
-                        break;
-                }
+                deliver(obj, msg.what);
+            }
+        }
+
+        private static <Progress, Result> void deliver(AsyncResult<Progress, Result> obj, int what)
+        {
+            switch (what)
+            {
+                case MESSAGE_PRE_EXECUTE:
+                    obj.task.onPreExecute();
+                    break;
+                case MESSAGE_PROGRESS:
+                    obj.task.onProgressUpdate(obj.progress);
+                    break;
+                case MESSAGE_ERROR:
+                    obj.task.onError(obj.t);
+                    break;
+                case MESSAGE_CANCEL:
+                    obj.task.onCanceled(obj.result);
+                    break;
+                case MESSAGE_POST_EXECUTE:
+                    obj.task.onPostExecute(obj.result);
+                    break;
+            }
+
+            // Progress and final messages are the last ones to carry their envelope
+            if (what != MESSAGE_PRE_EXECUTE)
+            {
+                obj.recycle();
             }
         }
     }
 
+    /**
+     * Envelope carrying a task and its outcome to the main thread. Envelopes are pooled, an execution takes one for
+     * its pre execute and final messages and every progress update takes another one.
+     */
     static class AsyncResult<Progress, Result>
     {
+        private static final int POOL_SIZE = 16;
+        private static final AtomicReferenceArray<AsyncResult<?, ?>> sPool = new AtomicReferenceArray<AsyncResult<?, ?>>(POOL_SIZE);
 
-        final CAMViewAsyncTask task;
+        CAMViewAsyncTask<?, Progress, Result> task;
 
         Throwable t;
         Progress progress;
         Result result;
 
-        AsyncResult(CAMViewAsyncTask task)
-        {
-            this.task = task;
-        }
-    }
-
-    static class Runloop extends Thread
-    {
-
-        private final Object mLock = new Object();
-        private android.os.Handler mHandler;
-        private boolean mReady = false;
-
-        @Override
-        public void run()
-        {
-            Looper.prepare();
-            mHandler = new android.os.Handler();
-            synchronized (mLock)
-            {
-                this.mLock.notifyAll();
-                mReady = true;
-            }
-            Looper.loop();
-        }
-
-        public void sendMessage(Message message)
-        {
-            sendMessage(message, 0);
-        }
-
-        public void post(Runnable runnable)
-        {
-            post(runnable, 0);
-        }
-
-        public void sendMessage(Message message, long delayMillis)
+        @SuppressWarnings("unchecked")
+        static <Progress, Result> AsyncResult<Progress, Result> obtain(CAMViewAsyncTask<?, Progress, Result> task)
         {
-            synchronized (mLock)
+            for (int i = 0; i < POOL_SIZE; i++)
             {
-                while (!mReady)
+                final AsyncResult<?, ?> pooled = sPool.get(i);
+                if (pooled != null && sPool.compareAndSet(i, pooled, null))
                 {
-                    try
-                    {
-                        mLock.wait();
-                    }
-                    catch (InterruptedException e)
-                    {
-                        e.printStackTrace();
-                    }
-                }
-                if (mHandler != null)
-                {
-                    if (delayMillis <= 0)
-                    {
-                        this.mHandler.sendMessage(message);
-                    }
-                    else
-                    {
-                        mHandler.sendMessageDelayed(message, delayMillis);
-                    }
+                    // Recycled envelopes hold no value of their former types
+                    final AsyncResult<Progress, Result> reused = (AsyncResult<Progress, Result>) pooled;
+                    reused.task = task;
+                    return reused;
                 }
             }
+
+            final AsyncResult<Progress, Result> created = new AsyncResult<Progress, Result>();
+            created.task = task;
+            return created;
         }
 
-        public void post(Runnable runnable, long delayMillis)
+        void recycle()
         {
-            synchronized (mLock)
-            {
-
-                while (!mReady)
-                {
-                    try
-                    {
-                        mLock.wait();
-                    }
-                    catch (InterruptedException e)
-                    {
-                        e.printStackTrace();
-                    }
-                }
+            task = null;
+            t = null;
+            progress = null;
+            result = null;
 
-                if (mHandler != null)
+            for (int i = 0; i < POOL_SIZE; i++)
+            {
+                if (sPool.get(i) == null && sPool.compareAndSet(i, null, this))
                 {
-                    if (delayMillis <= 0)
-                    {
-                        this.mHandler.post(runnable);
-                    }
-                    else
-                    {
-                        mHandler.postDelayed(runnable, delayMillis);
-                    }
+                    return;
                 }
             }
         }
-
-        public boolean isStarted()
-        {
-            return mReady;
-        }
     }
 
-}
\ No newline at end of file
+}
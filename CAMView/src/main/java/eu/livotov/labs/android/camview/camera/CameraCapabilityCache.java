@@ -0,0 +1,285 @@
+package eu.livotov.labs.android.camview.camera;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * What was learnt about the cameras of this device on previous runs, kept in the app private preferences so cold
+ * starts skip the slow parts of camera set up: the enumeration of cameras and their characteristics, the v1 parameter
+ * sets the camera rejects and the preview size selection. It also keeps the per pixel decoding cost measured for the
+ * scanner, which depends on the device and OS build just as much.
+ * <p/>
+ * The cache is bound to the device model and OS build it was written on and is dropped as a whole when either
+ * changes, e.g. after a system update. Cameras attached or detached at runtime are not noticed, call {@link #clear()}
+ * when that matters.
+ * <p/>
+ * Instance is safe to share between threads.
+ */
+public class CameraCapabilityCache
+{
+    public final static int PARAMETERS_UNKNOWN = 0;
+    public final static int PARAMETERS_MAIN = 1;
+    public final static int PARAMETERS_FAILSAFE = 2;
+    public final static int PARAMETERS_DEFAULTS = 3;
+
+    /**
+     * Consecutive starts a parameter set has to be rejected on before it is skipped, a single rejection may be caused
+     * by a transient camera state
+     */
+    final static int PARAMETERS_REJECTIONS_TO_SKIP = 3;
+
+    /**
+     * Starts a skipped main parameter set stays skipped for before it is tried again
+     */
+    final static int PARAMETERS_STARTS_TO_RETRY_MAIN = 20;
+
+    private final static String PREFERENCES_NAME = "camview_camera_capabilities";
+    private final static String KEY_DEVICE = "device";
+    private final static String KEY_CAMERAS = "cameras";
+    private final static String KEY_V2_NATIVE_PREFIX = "v2_native_";
+    private final static String KEY_PARAMETERS_PREFIX = "parameters_";
+    private final static String KEY_PARAMETERS_REJECTIONS_PREFIX = "parameters_rejections_";
+    private final static String KEY_PARAMETERS_STARTS_PREFIX = "parameters_starts_";
+    private final static String KEY_PREVIEW_SIZE_PREFIX = "preview_size_";
+    private final static String KEY_DECODE_COST_PREFIX = "decode_cost_";
+    private final static String KEY_DECODE_COST_SETTINGS_PREFIX = "decode_cost_settings_";
+
+    private final static char CAMERAS_SEPARATOR = ';';
+    private final static char BACK_FACING = 'b';
+    private final static char FRONT_FACING = 'f';
+
+    private static CameraCapabilityCache instance;
+
+    private final SharedPreferences preferences;
+
+    private CameraCapabilityCache(SharedPreferences preferences)
+    {
+        this(preferences, Build.MODEL + "|" + Build.FINGERPRINT);
+    }
+
+    CameraCapabilityCache(SharedPreferences preferences, String device)
+    {
+        this.preferences = preferences;
+
+        if (!device.equals(preferences.getString(KEY_DEVICE, null)))
+        {
+            preferences.edit().clear().putString(KEY_DEVICE, device).apply();
+        }
+    }
+
+    public static synchronized CameraCapabilityCache get(Context context)
+    {
+        if (instance == null)
+        {
+            instance = new CameraCapabilityCache(context.getApplicationContext().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE));
+        }
+
+        return instance;
+    }
+
+    /**
+     * @return cameras found by the last enumeration, <code>null</code> if there was none yet
+     */
+    public Collection<CameraInfo> getCameras()
+    {
+        final String cameras = preferences.getString(KEY_CAMERAS, null);
+
+        if (cameras == null)
+        {
+            return null;
+        }
+
+        final List<CameraInfo> result = new ArrayList<CameraInfo>();
+
+        for (String camera : cameras.split(String.valueOf(CAMERAS_SEPARATOR)))
+        {
+            if (camera.length() > 1)
+            {
+                result.add(new CameraInfo(camera.substring(0, camera.length() - 1), camera.charAt(camera.length() - 1) == FRONT_FACING));
+            }
+        }
+
+        return result;
+    }
+
+    public void putCameras(Collection<CameraInfo> cameras)
+    {
+        final StringBuilder encoded = new StringBuilder();
+
+        for (CameraInfo camera : cameras)
+        {
+            if (encoded.length() > 0)
+            {
+                encoded.append(CAMERAS_SEPARATOR);
+            }
+
+            encoded.append(camera.getCameraId()).append(camera.isFrontFacingCamera() ? FRONT_FACING : BACK_FACING);
+        }
+
+        preferences.edit().putString(KEY_CAMERAS, encoded.toString()).apply();
+    }
+
+    /**
+     * @return <code>true</code> if it is known whether the camera implements camera2 natively
+     */
+    public boolean isCameraV2NativeKnown(String cameraId)
+    {
+        return preferences.contains(KEY_V2_NATIVE_PREFIX + cameraId);
+    }
+
+    public boolean isCameraV2Native(String cameraId)
+    {
+        return preferences.getBoolean(KEY_V2_NATIVE_PREFIX + cameraId, false);
+    }
+
+    public void putCameraV2Native(String cameraId, boolean v2Native)
+    {
+        preferences.edit().putBoolean(KEY_V2_NATIVE_PREFIX + cameraId, v2Native).apply();
+    }
+
+    /**
+     * @return v1 parameter set to try first, one of {@link #PARAMETERS_MAIN}, {@link #PARAMETERS_FAILSAFE} or
+     * {@link #PARAMETERS_DEFAULTS}, {@link #PARAMETERS_UNKNOWN} if not known yet. A skipped main set is tried again
+     * every {@link #PARAMETERS_STARTS_TO_RETRY_MAIN} starts.
+     */
+    public int getWorkingParameters(String cameraId)
+    {
+        final int parameters = preferences.getInt(KEY_PARAMETERS_PREFIX + cameraId, PARAMETERS_UNKNOWN);
+
+        if (parameters > PARAMETERS_MAIN && preferences.getInt(KEY_PARAMETERS_STARTS_PREFIX + cameraId, 0) >= PARAMETERS_STARTS_TO_RETRY_MAIN)
+        {
+            return PARAMETERS_MAIN;
+        }
+
+        return parameters;
+    }
+
+    /**
+     * Records the outcome of a parameter negotiation. A set rejected on {@link #PARAMETERS_REJECTIONS_TO_SKIP}
+     * consecutive starts is skipped from then on, a main set accepted again is no longer skipped.
+     *
+     * @param tried    set tried first, as returned by {@link #getWorkingParameters(String)} or
+     *                 {@link #PARAMETERS_MAIN} if that was not known
+     * @param accepted set the camera accepted
+     */
+    public synchronized void putWorkingParameters(String cameraId, int tried, int accepted)
+    {
+        final String parametersKey = KEY_PARAMETERS_PREFIX + cameraId;
+        final String rejectionsKey = KEY_PARAMETERS_REJECTIONS_PREFIX + cameraId;
+        final String startsKey = KEY_PARAMETERS_STARTS_PREFIX + cameraId;
+        final int known = Math.max(preferences.getInt(parametersKey, PARAMETERS_UNKNOWN), PARAMETERS_MAIN);
+        final SharedPreferences.Editor editor = preferences.edit();
+
+        if (accepted > known)
+        {
+            final int rejections = preferences.getInt(rejectionsKey, 0) + 1;
+
+            if (rejections >= PARAMETERS_REJECTIONS_TO_SKIP)
+            {
+                editor.putInt(parametersKey, accepted).remove(rejectionsKey).remove(startsKey);
+            }
+            else
+            {
+                editor.putInt(rejectionsKey, rejections).remove(startsKey);
+            }
+        }
+        else if (accepted < known)
+        {
+            editor.putInt(parametersKey, accepted).remove(rejectionsKey).remove(startsKey);
+        }
+        else if (tried < known)
+        {
+            // Main set was tried again and rejected again
+            editor.remove(rejectionsKey).remove(startsKey);
+        }
+        else if (known > PARAMETERS_MAIN)
+        {
+            editor.remove(rejectionsKey).putInt(startsKey, preferences.getInt(startsKey, 0) + 1);
+        }
+        else if (preferences.contains(rejectionsKey))
+        {
+            editor.remove(rejectionsKey);
+        }
+        else
+        {
+            return;
+        }
+
+        editor.apply();
+    }
+
+    /**
+     * @param pixelBudget budget the size was selected within, see {@link PreviewSizePolicy#getPixelBudget()}, 0 for
+     *                    sizes selected without a policy
+     * @return width and height of the preview size selected last time for the same view size and budget,
+     * <code>null</code> if none was
+     */
+    public int[] getPreviewSize(String cameraId, int viewWidth, int viewHeight, int pixelBudget)
+    {
+        final String size = preferences.getString(getPreviewSizeKey(cameraId, viewWidth, viewHeight, pixelBudget), null);
+        final int separator = size != null ? size.indexOf('x') : -1;
+
+        if (separator < 0)
+        {
+            return null;
+        }
+
+        try
+        {
+            return new int[]{Integer.parseInt(size.substring(0, separator)), Integer.parseInt(size.substring(separator + 1))};
+        }
+        catch (NumberFormatException nfe)
+        {
+            return null;
+        }
+    }
+
+    public void putPreviewSize(String cameraId, int viewWidth, int viewHeight, int pixelBudget, int width, int height)
+    {
+        preferences.edit().putString(getPreviewSizeKey(cameraId, viewWidth, viewHeight, pixelBudget), width + "x" + height).apply();
+    }
+
+    /**
+     * @param decoder  name of the decoder class
+     * @param settings description of the decoder settings and anything else the cost depends on, e.g. the app version
+     * @return decoding cost in nanoseconds per pixel measured last time with the same settings, 0 if it was not
+     */
+    public float getDecodeCost(String decoder, String settings)
+    {
+        if (!settings.equals(preferences.getString(KEY_DECODE_COST_SETTINGS_PREFIX + decoder, null)))
+        {
+            return 0;
+        }
+
+        return preferences.getFloat(KEY_DECODE_COST_PREFIX + decoder, 0);
+    }
+
+    /**
+     * Keeps the cost of the decoder measured with the given settings, replacing the one measured with other settings
+     *
+     * @see #getDecodeCost(String, String)
+     */
+    public void putDecodeCost(String decoder, String settings, float nanosPerPixel)
+    {
+        preferences.edit().putString(KEY_DECODE_COST_SETTINGS_PREFIX + decoder, settings).putFloat(KEY_DECODE_COST_PREFIX + decoder, nanosPerPixel).apply();
+    }
+
+    /**
+     * Forgets everything learnt so far
+     */
+    public void clear()
+    {
+        final String device = preferences.getString(KEY_DEVICE, null);
+        preferences.edit().clear().putString(KEY_DEVICE, device).apply();
+    }
+
+    private static String getPreviewSizeKey(String cameraId, int viewWidth, int viewHeight, int pixelBudget)
+    {
+        return KEY_PREVIEW_SIZE_PREFIX + cameraId + "_" + viewWidth + "x" + viewHeight + "_" + pixelBudget;
+    }
+}
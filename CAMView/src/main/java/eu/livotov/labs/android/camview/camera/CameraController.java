@@ -21,6 +21,64 @@ public interface CameraController
 
     void requestLiveData(LiveDataProcessingCallback callback);
 
+    /**
+     * @return number of preview buffers the camera cycles through while streaming live data, never fewer than
+     * {@link #getLiveDataProcessingThreadsCount()} + 2 so every processing thread can hold a frame while the camera
+     * fills the next one
+     */
+    int getLiveDataBuffersCount();
+
+    /**
+     * Sets how many preview buffers the camera may cycle through while live data is processed. With more than one
+     * buffer the camera keeps streaming while a frame is being processed. Takes effect on the next preview start.
+     *
+     * @param count number of buffers, at least 1, raised to the processing threads count + 2 when lower
+     */
+    void setLiveDataBuffersCount(int count);
+
+    /**
+     * @return number of threads live data frames are processed on
+     */
+    int getLiveDataProcessingThreadsCount();
+
+    /**
+     * Sets how many frames may be processed in parallel. With more than one thread, {@link LiveDataProcessingCallback#onProcessCameraFrame(byte[], int, int)}
+     * is called concurrently and must be thread safe, results are still delivered in frame order. Takes effect on the next live data request,
+     * and on the next preview start for the number of preview buffers, see {@link #getLiveDataBuffersCount()}.
+     *
+     * @param count number of processing threads, at least 1
+     */
+    void setLiveDataProcessingThreadsCount(int count);
+
+    LiveDataMetrics getLiveDataMetrics();
+
+    /**
+     * Sets the receiver of live data pipeline timings and counters. Takes effect the next time live data capture is started.
+     *
+     * @param metrics metrics receiver, <code>null</code> to disable reporting
+     */
+    void setLiveDataMetrics(LiveDataMetrics metrics);
+
+    ProcessingThreadPolicy getProcessingThreadPolicy();
+
+    /**
+     * Sets the priority, preferred cores and warm up of live data processing threads. Takes effect on the next live
+     * data request.
+     *
+     * @param policy thread policy, <code>null</code> to run processing threads as they are
+     */
+    void setProcessingThreadPolicy(ProcessingThreadPolicy policy);
+
+    PreviewSizePolicy getPreviewSizePolicy();
+
+    /**
+     * Sets how the preview size is picked. Takes effect the next time the camera is opened or, for camera v1, the next
+     * preview start.
+     *
+     * @param policy size policy, <code>null</code> to pick the size that best fits the preview view
+     */
+    void setPreviewSizePolicy(PreviewSizePolicy policy);
+
     void takePicture(PictureProcessingCallback callback);
 
     void switchFlashlight(boolean turnOn);
@@ -29,4 +87,12 @@ public interface CameraController
 
     void requestFocus();
 
+    /**
+     * Gives access to the focus cycles scheduling, for live data processing to trigger focus when frames turn out
+     * blurred and to tune its intervals and areas
+     *
+     * @return focus scheduler, <code>null</code> if the camera cannot be focused on request
+     */
+    FocusScheduler getFocusScheduler();
+
 }
@@ -21,15 +21,31 @@ import eu.livotov.labs.android.camview.camera.v2.DefaultCameraV2Controller;
 public class CameraManager
 {
 
+    /**
+     * Enumerates cameras on first use only, later calls return the cameras kept in the {@link CameraCapabilityCache}
+     */
     public static Collection<CameraInfo> getAvailableCameras(final Context ctx)
     {
-        if (Build.VERSION.SDK_INT>=21)
-        {
-            return enumerateCamerasViaApiV2(ctx);
-        } else
+        final CameraCapabilityCache capabilityCache = CameraCapabilityCache.get(ctx);
+        Collection<CameraInfo> cameras = capabilityCache.getCameras();
+
+        if (cameras == null)
         {
-            return enumerateCamerasViaApiV1();
+            if (Build.VERSION.SDK_INT>=21)
+            {
+                cameras = enumerateCamerasViaApiV2(ctx);
+            } else
+            {
+                cameras = enumerateCamerasViaApiV1();
+            }
+
+            if (!cameras.isEmpty())
+            {
+                capabilityCache.putCameras(cameras);
+            }
         }
+
+        return cameras;
     }
 
     public static CameraInfo findFrontCamera(Context ctx)
@@ -63,15 +79,26 @@ public class CameraManager
         return open(camera, null);
     }
 
+    /**
+     * Opens the camera with the v1 API, see {@link #open(Context, CameraInfo, CameraDelayedOperationResult)} to use camera2 where available
+     */
     public static CameraController open(CameraInfo camera, CameraDelayedOperationResult callback)
     {
-        if (Build.VERSION.SDK_INT>=21)
+        return openCameraWithApiV1(camera, null, callback);
+    }
+
+    /**
+     * Opens the camera with the camera2 API on devices fully implementing it, falling back to the v1 API on older
+     * devices and on those only emulating camera2 on top of v1 (<code>LEGACY</code> hardware level)
+     */
+    public static CameraController open(Context ctx, CameraInfo camera, CameraDelayedOperationResult callback)
+    {
+        if (Build.VERSION.SDK_INT>=21 && isCameraV2Native(ctx, camera))
         {
-//            return openCameraWithApiV2(camera, callback);
-            return openCameraWithApiV1(camera, callback);
+            return openCameraWithApiV2(ctx, camera, callback);
         } else
         {
-            return openCameraWithApiV1(camera, callback);
+            return openCameraWithApiV1(camera, CameraCapabilityCache.get(ctx), callback);
         }
     }
 
@@ -115,14 +142,39 @@ public class CameraManager
     }
 
     @TargetApi(21)
-    private static CameraController openCameraWithApiV2(CameraInfo camera, CameraDelayedOperationResult callback)
+    private static boolean isCameraV2Native(Context ctx, CameraInfo camera)
+    {
+        final CameraCapabilityCache capabilityCache = CameraCapabilityCache.get(ctx);
+
+        if (capabilityCache.isCameraV2NativeKnown(camera.getCameraId()))
+        {
+            return capabilityCache.isCameraV2Native(camera.getCameraId());
+        }
+
+        android.hardware.camera2.CameraManager manager = (android.hardware.camera2.CameraManager) ctx.getSystemService(Context.CAMERA_SERVICE);
+
+        try
+        {
+            Integer level = manager.getCameraCharacteristics(camera.getCameraId()).get(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
+            final boolean v2Native = level != null && level != CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY;
+            capabilityCache.putCameraV2Native(camera.getCameraId(), v2Native);
+            return v2Native;
+        } catch (CameraAccessException cae)
+        {
+            Log.e(CameraManager.class.getSimpleName(), cae.getMessage(), cae);
+            return false;
+        }
+    }
+
+    @TargetApi(21)
+    private static CameraController openCameraWithApiV2(Context ctx, CameraInfo camera, CameraDelayedOperationResult callback)
     {
-        return new DefaultCameraV2Controller(camera, callback);
+        return new DefaultCameraV2Controller(ctx, camera, callback);
     }
 
-    private static CameraController openCameraWithApiV1(CameraInfo camera, CameraDelayedOperationResult callback)
+    private static CameraController openCameraWithApiV1(CameraInfo camera, CameraCapabilityCache capabilityCache, CameraDelayedOperationResult callback)
     {
-        return new DefaultCameraV1Controller(camera, callback);
+        return new DefaultCameraV1Controller(camera, capabilityCache, callback);
     }
 
 
@@ -0,0 +1,169 @@
+package eu.livotov.labs.android.camview.camera;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * Core clusters of the device CPU, as far as the kernel exposes them: on big.LITTLE designs, little cores are the ones
+ * with the lowest maximum frequency and big cores all the others, so the single prime core and the big cluster of a
+ * three cluster design count as big together. Read once from sysfs, on first use.
+ * <p/>
+ * When the frequencies cannot be read, or all cores run at the same maximum frequency, every core counts as both big
+ * and little.
+ */
+public final class CpuTopology
+{
+    private static final String CPU_DIRECTORY = "/sys/devices/system/cpu";
+    private static final int MAX_CORES = 64;
+
+    private static volatile CpuTopology instance;
+
+    private final int coresCount;
+    private final int bigCoresCount;
+    private final int littleCoresCount;
+
+    CpuTopology(long[] maxFrequencies)
+    {
+        long highest = 0;
+        long lowest = Long.MAX_VALUE;
+        int known = 0;
+
+        for (long frequency : maxFrequencies)
+        {
+            if (frequency > 0)
+            {
+                highest = Math.max(highest, frequency);
+                lowest = Math.min(lowest, frequency);
+                known++;
+            }
+        }
+
+        int big = 0;
+        int little = 0;
+
+        for (long frequency : maxFrequencies)
+        {
+            if (frequency > lowest)
+            {
+                big++;
+            }
+
+            if (frequency > 0 && frequency == lowest)
+            {
+                little++;
+            }
+        }
+
+        coresCount = Math.max(maxFrequencies.length, 1);
+
+        if (known < coresCount || highest == lowest)
+        {
+            bigCoresCount = coresCount;
+            littleCoresCount = coresCount;
+        }
+        else
+        {
+            bigCoresCount = big;
+            littleCoresCount = little;
+        }
+    }
+
+    public static CpuTopology get()
+    {
+        CpuTopology topology = instance;
+
+        if (topology == null)
+        {
+            topology = new CpuTopology(readMaxFrequencies());
+            instance = topology;
+        }
+
+        return topology;
+    }
+
+    public int getCoresCount()
+    {
+        return coresCount;
+    }
+
+    public int getBigCoresCount()
+    {
+        return bigCoresCount;
+    }
+
+    public int getLittleCoresCount()
+    {
+        return littleCoresCount;
+    }
+
+    /**
+     * @return <code>true</code> if the device has cores of different maximum frequencies
+     */
+    public boolean isHeterogeneous()
+    {
+        return bigCoresCount < coresCount;
+    }
+
+    private static long[] readMaxFrequencies()
+    {
+        int count = 0;
+        while (count < MAX_CORES && new File(CPU_DIRECTORY, "cpu" + count).isDirectory())
+        {
+            count++;
+        }
+
+        if (count == 0)
+        {
+            count = Runtime.getRuntime().availableProcessors();
+        }
+
+        final long[] frequencies = new long[count];
+
+        for (int i = 0; i < count; i++)
+        {
+            // Offline cores may lack cpufreq entries, they then stay unknown (0)
+            frequencies[i] = readLong(new File(CPU_DIRECTORY, "cpu" + i + "/cpufreq/cpuinfo_max_freq"));
+        }
+
+        return frequencies;
+    }
+
+    private static long readLong(File file)
+    {
+        BufferedReader reader = null;
+
+        try
+        {
+            reader = new BufferedReader(new FileReader(file));
+            final String line = reader.readLine();
+            return line != null ? Long.parseLong(line.trim()) : 0;
+        }
+        catch (IOException ignored)
+        {
+            return 0;
+        }
+        catch (NumberFormatException ignored)
+        {
+            return 0;
+        }
+        catch (SecurityException ignored)
+        {
+            return 0;
+        }
+        finally
+        {
+            if (reader != null)
+            {
+                try
+                {
+                    reader.close();
+                }
+                catch (IOException ignored)
+                {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package eu.livotov.labs.android.camview.camera;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides when the camera runs a focus cycle, for cameras focusing on request rather than continuously.
+ * <p/>
+ * Focus is triggered by what live data processing finds out about frames rather than blindly: a run of blurred frames
+ * or a near miss (a code located but not read) triggers a cycle, no sooner than {@link #getMinIntervalMillis()} after
+ * the previous one. As a fallback, a cycle is also run when no code was decoded for {@link #getIdleIntervalMillis()}.
+ * Explicit {@link #requestFocus() requests} are served even when the camera focuses continuously.
+ * <p/>
+ * Nothing ever waits: implementations run focus cycles asynchronously and schedule delayed checks on the camera
+ * thread, see {@link #post(Runnable, long)}. Feedback methods are cheap and lock-free, they are meant to be called for
+ * every processed frame from any thread.
+ */
+public abstract class FocusScheduler
+{
+    public final static long DEFAULT_MIN_INTERVAL_MS = 2000;
+    public final static long DEFAULT_IDLE_INTERVAL_MS = 5000;
+    public final static int DEFAULT_BLURRED_FRAMES_THRESHOLD = 3;
+    public final static double DEFAULT_AREA_PERCENT = 0.7;
+
+    private final AtomicBoolean focusing = new AtomicBoolean(false);
+    private final AtomicBoolean requestPending = new AtomicBoolean(false);
+    private final AtomicInteger blurredFrames = new AtomicInteger();
+    private final AtomicInteger generation = new AtomicInteger();
+    private final AtomicLong focusCyclesCount = new AtomicLong();
+    private volatile boolean started;
+    private volatile boolean feedbackTriggersEnabled = true;
+    private volatile long lastFocusNanos;
+    private volatile long lastDecodedNanos;
+
+    private volatile long minIntervalMillis = DEFAULT_MIN_INTERVAL_MS;
+    private volatile long idleIntervalMillis = DEFAULT_IDLE_INTERVAL_MS;
+    private volatile int blurredFramesThreshold = DEFAULT_BLURRED_FRAMES_THRESHOLD;
+    private volatile double areaPercent = DEFAULT_AREA_PERCENT;
+
+    /**
+     * Starts scheduling, to be called once the preview runs: focuses right away, then as feedback comes in
+     */
+    public void start()
+    {
+        final int current = generation.incrementAndGet();
+        started = true;
+        blurredFrames.set(0);
+
+        // Started again without being stopped: the trigger still pending from the previous run is stale and never runs
+        if (focusing.getAndSet(false))
+        {
+            cancelFocus();
+        }
+
+        lastDecodedNanos = System.nanoTime();
+        trigger(true);
+        scheduleIdleCheck(current);
+    }
+
+    /**
+     * Stops scheduling and cancels the running focus cycle, to be called before the preview stops
+     */
+    public void stop()
+    {
+        started = false;
+        generation.incrementAndGet();
+        requestPending.set(false);
+
+        if (focusing.getAndSet(false))
+        {
+            cancelFocus();
+        }
+    }
+
+    public boolean isStarted()
+    {
+        return started;
+    }
+
+    /**
+     * Runs a focus cycle as soon as the running one, if any, completes
+     */
+    public void requestFocus()
+    {
+        requestPending.set(true);
+        trigger(true);
+    }
+
+    /**
+     * Processed frame was too blurred to be worth decoding
+     */
+    public void onFrameBlurred()
+    {
+        if (blurredFrames.incrementAndGet() >= blurredFramesThreshold)
+        {
+            trigger(false);
+        }
+    }
+
+    /**
+     * Processed frame was sharp enough to be decoded
+     */
+    public void onFrameSharp()
+    {
+        if (blurredFrames.get() != 0)
+        {
+            blurredFrames.set(0);
+        }
+    }
+
+    /**
+     * Decoder located a code but could not read it, likely because it is out of focus
+     */
+    public void onNearMiss()
+    {
+        trigger(false);
+    }
+
+    public void onCodeDecoded()
+    {
+        lastDecodedNanos = System.nanoTime();
+        onFrameSharp();
+    }
+
+    /**
+     * To be called by implementations when the focus cycle started by {@link #startFocus()} completes
+     *
+     * @param success <code>true</code> if the camera reports the focus was achieved
+     */
+    protected void onFocusCompleted(boolean success)
+    {
+        lastFocusNanos = System.nanoTime();
+        blurredFrames.set(0);
+        focusing.set(false);
+
+        if (requestPending.get())
+        {
+            trigger(true);
+        }
+    }
+
+    /**
+     * @return <code>true</code> while a focus cycle runs
+     */
+    public boolean isFocusing()
+    {
+        return focusing.get();
+    }
+
+    public long getFocusCyclesCount()
+    {
+        return focusCyclesCount.get();
+    }
+
+    public boolean isFeedbackTriggersEnabled()
+    {
+        return feedbackTriggersEnabled;
+    }
+
+    /**
+     * @param enabled <code>false</code> to only focus on explicit requests, e.g. while the camera focuses continuously
+     */
+    public void setFeedbackTriggersEnabled(boolean enabled)
+    {
+        this.feedbackTriggersEnabled = enabled;
+    }
+
+    public long getMinIntervalMillis()
+    {
+        return minIntervalMillis;
+    }
+
+    /**
+     * @param minIntervalMillis shortest time between the end of a focus cycle and the start of one triggered by feedback
+     */
+    public void setMinIntervalMillis(long minIntervalMillis)
+    {
+        this.minIntervalMillis = minIntervalMillis;
+    }
+
+    public long getIdleIntervalMillis()
+    {
+        return idleIntervalMillis;
+    }
+
+    /**
+     * @param idleIntervalMillis time without any decoded code and any focus cycle after which focus is run anyway, 0 to
+     *                           only focus on feedback and requests
+     */
+    public void setIdleIntervalMillis(long idleIntervalMillis)
+    {
+        this.idleIntervalMillis = idleIntervalMillis;
+    }
+
+    public int getBlurredFramesThreshold()
+    {
+        return blurredFramesThreshold;
+    }
+
+    /**
+     * @param blurredFramesThreshold number of blurred frames in a row triggering focus
+     */
+    public void setBlurredFramesThreshold(int blurredFramesThreshold)
+    {
+        if (blurredFramesThreshold < 1)
+        {
+            throw new IllegalArgumentException("Blurred frames threshold must be positive. Specified value was " + blurredFramesThreshold);
+        }
+
+        this.blurredFramesThreshold = blurredFramesThreshold;
+    }
+
+    public double getAreaPercent()
+    {
+        return areaPercent;
+    }
+
+    /**
+     * Centers focus and metering areas on the given share of the frame, e.g. the decoder scan area, where the camera
+     * supports them
+     *
+     * @param areaPercent share of the frame width and height, from 0.1 to 1.0
+     */
+    public void setAreaPercent(double areaPercent)
+    {
+        if (areaPercent < 0.1 || areaPercent > 1.0)
+        {
+            throw new IllegalArgumentException("Area percent must be between 0.1 (10%) to 1.0 (100%). Specified value was " + areaPercent);
+        }
+
+        if (this.areaPercent != areaPercent)
+        {
+            this.areaPercent = areaPercent;
+            onAreaPercentChanged();
+        }
+    }
+
+    /**
+     * Runs the task on the camera thread after the given delay, without blocking the caller
+     */
+    protected abstract void post(Runnable task, long delayMillis);
+
+    /**
+     * Starts a focus cycle, which must end with a call to {@link #onFocusCompleted(boolean)}
+     *
+     * @return <code>false</code> if the cycle could not be started
+     */
+    protected abstract boolean startFocus();
+
+    /**
+     * Cancels the running focus cycle
+     */
+    protected abstract void cancelFocus();
+
+    /**
+     * Called when focus and metering areas should be updated to {@link #getAreaPercent()}
+     */
+    protected void onAreaPercentChanged()
+    {
+    }
+
+    private void trigger(boolean requested)
+    {
+        if (!started || (!requested && !feedbackTriggersEnabled))
+        {
+            return;
+        }
+
+        if (!requested && System.nanoTime() - lastFocusNanos < TimeUnit.MILLISECONDS.toNanos(minIntervalMillis))
+        {
+            return;
+        }
+
+        if (focusing.compareAndSet(false, true))
+        {
+            final int current = generation.get();
+            requestPending.set(false);
+
+            post(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    if (current != generation.get())
+                    {
+                        return;
+                    }
+
+                    focusCyclesCount.incrementAndGet();
+
+                    if (!startFocus())
+                    {
+                        onFocusCompleted(false);
+                    }
+                }
+            }, 0);
+        }
+    }
+
+    private void scheduleIdleCheck(final int current)
+    {
+        final long interval = idleIntervalMillis;
+
+        if (interval <= 0)
+        {
+            return;
+        }
+
+        post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (current != generation.get())
+                {
+                    return;
+                }
+
+                final long idleNanos = TimeUnit.MILLISECONDS.toNanos(interval);
+                final long now = System.nanoTime();
+
+                if (now - lastDecodedNanos >= idleNanos && now - lastFocusNanos >= idleNanos)
+                {
+                    trigger(false);
+                }
+
+                scheduleIdleCheck(current);
+            }
+        }, interval);
+    }
+}
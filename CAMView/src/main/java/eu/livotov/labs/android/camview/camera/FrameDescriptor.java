@@ -0,0 +1,229 @@
+package eu.livotov.labs.android.camview.camera;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Describes a camera frame held in one {@link ByteBuffer} per plane, so frames living in native memory (camera2
+ * <code>ImageReader</code> planes, memory mapped files) can be processed without first being copied into a heap array.
+ * <p/>
+ * YUV frames always have 3 planes: Y, U (Cb) and V (Cr), each with its own row and pixel stride, as in camera2's
+ * <code>YUV_420_888</code>. An NV21 buffer is described the same way, its U and V planes being interleaved views
+ * of the chroma part with a pixel stride of 2.
+ * <p/>
+ * Descriptors are reusable: whoever produces frames fills the same instance for every frame. Plane buffers must not
+ * be modified by the processing side, nor used after the frame was released.
+ */
+public class FrameDescriptor
+{
+    /**
+     * Same value as <code>android.graphics.ImageFormat.NV21</code>
+     */
+    public final static int FORMAT_NV21 = 0x11;
+
+    /**
+     * Same value as <code>android.graphics.ImageFormat.YUV_420_888</code>
+     */
+    public final static int FORMAT_YUV_420_888 = 0x23;
+
+    public final static int PLANE_Y = 0;
+    public final static int PLANE_U = 1;
+    public final static int PLANE_V = 2;
+
+    private final static int PLANES_COUNT = 3;
+
+    private final ByteBuffer[] planes = new ByteBuffer[PLANES_COUNT];
+    private final int[] rowStrides = new int[PLANES_COUNT];
+    private final int[] pixelStrides = new int[PLANES_COUNT];
+    private int format;
+    private int width;
+    private int height;
+    private long timestamp;
+    private int rotation;
+
+    /**
+     * Describes an NV21 frame held in the given buffer, as delivered by the camera v1 API
+     */
+    public static FrameDescriptor wrapNV21(ByteBuffer data, int width, int height)
+    {
+        final FrameDescriptor descriptor = new FrameDescriptor();
+        descriptor.setNV21(data, width, height);
+        return descriptor;
+    }
+
+    /**
+     * Describes an NV21 frame held in the given buffer, reusing this instance
+     *
+     * @param data frame data, starting at its position
+     */
+    public void setNV21(ByteBuffer data, int width, int height)
+    {
+        final int lumaSize = width * height;
+        if (data.remaining() < lumaSize + lumaSize / 2)
+        {
+            throw new IllegalArgumentException(String.format("Buffer of %s bytes is too small for a %sx%s NV21 frame", data.remaining(), width, height));
+        }
+
+        setFormat(FORMAT_NV21, width, height);
+        setPlane(PLANE_Y, data, width, 1);
+        setPlane(PLANE_V, slice(data, lumaSize), width, 2);
+        setPlane(PLANE_U, slice(data, lumaSize + 1), width, 2);
+    }
+
+    public void setFormat(int format, int width, int height)
+    {
+        if (format != FORMAT_NV21 && format != FORMAT_YUV_420_888)
+        {
+            throw new IllegalArgumentException("Unsupported frame format: " + format);
+        }
+
+        this.format = format;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * @param index       {@link #PLANE_Y}, {@link #PLANE_U} or {@link #PLANE_V}
+     * @param buffer      plane data, starting at the buffer position
+     * @param rowStride   distance in bytes between the starts of two consecutive rows
+     * @param pixelStride distance in bytes between two consecutive pixels of a row
+     */
+    public void setPlane(int index, ByteBuffer buffer, int rowStride, int pixelStride)
+    {
+        planes[index] = buffer;
+        rowStrides[index] = rowStride;
+        pixelStrides[index] = pixelStride;
+    }
+
+    public int getFormat()
+    {
+        return format;
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getHeight()
+    {
+        return height;
+    }
+
+    public int getPlanesCount()
+    {
+        return PLANES_COUNT;
+    }
+
+    public ByteBuffer getPlane(int index)
+    {
+        return planes[index];
+    }
+
+    public int getRowStride(int index)
+    {
+        return rowStrides[index];
+    }
+
+    public int getPixelStride(int index)
+    {
+        return pixelStrides[index];
+    }
+
+    /**
+     * @return capture time in nanoseconds, in the time base of the frame producer
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp)
+    {
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * @return clockwise rotation, in degrees, to apply to the frame for it to appear upright on screen
+     */
+    public int getRotation()
+    {
+        return rotation;
+    }
+
+    public void setRotation(int rotation)
+    {
+        this.rotation = rotation;
+    }
+
+    /**
+     * @return heap array holding the frame as a plain NV21 image starting at index 0, or <code>null</code> if the
+     * planes are held otherwise (direct buffers, padded rows, other formats). Lets array based code paths be used
+     * as is when the frame happens to be laid out the way they expect.
+     */
+    public byte[] getNV21Array()
+    {
+        final ByteBuffer luma = planes[PLANE_Y];
+
+        if (format == FORMAT_NV21 && luma.hasArray() && luma.arrayOffset() + luma.position() == 0 && rowStrides[PLANE_Y] == width && pixelStrides[PLANE_Y] == 1)
+        {
+            return luma.array();
+        }
+
+        return null;
+    }
+
+    /**
+     * Copies the frame into an NV21 image, for consumers only able to process heap arrays
+     *
+     * @param nv21 receives the frame, at least <code>width * height * 3 / 2</code> bytes
+     */
+    public void copyToNV21(byte[] nv21)
+    {
+        final ByteBuffer luma = planes[PLANE_Y].duplicate();
+        final int lumaStart = luma.position();
+        final int lumaRowStride = rowStrides[PLANE_Y];
+        final int lumaPixelStride = pixelStrides[PLANE_Y];
+
+        for (int y = 0; y < height; y++)
+        {
+            final int rowStart = lumaStart + y * lumaRowStride;
+
+            if (lumaPixelStride == 1)
+            {
+                luma.position(rowStart);
+                luma.get(nv21, y * width, width);
+            }
+            else
+            {
+                for (int x = 0; x < width; x++)
+                {
+                    nv21[y * width + x] = luma.get(rowStart + x * lumaPixelStride);
+                }
+            }
+        }
+
+        final ByteBuffer u = planes[PLANE_U];
+        final ByteBuffer v = planes[PLANE_V];
+        final int uStart = u.position();
+        final int vStart = v.position();
+        final int chromaWidth = width / 2;
+        final int chromaHeight = height / 2;
+        int offset = width * height;
+
+        for (int y = 0; y < chromaHeight; y++)
+        {
+            for (int x = 0; x < chromaWidth; x++)
+            {
+                nv21[offset++] = v.get(vStart + y * rowStrides[PLANE_V] + x * pixelStrides[PLANE_V]);
+                nv21[offset++] = u.get(uStart + y * rowStrides[PLANE_U] + x * pixelStrides[PLANE_U]);
+            }
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset)
+    {
+        final ByteBuffer view = buffer.duplicate();
+        view.position(buffer.position() + offset);
+        return view.slice();
+    }
+}
@@ -0,0 +1,15 @@
+package eu.livotov.labs.android.camview.camera;
+
+/**
+ * {@link LiveDataProcessingCallback} able to process frames described by a {@link FrameDescriptor}. Live frame
+ * executors hand such a callback every frame through {@link #onProcessCameraFrame(FrameDescriptor)}, whether the
+ * camera filled a heap array or native buffers, so no frame is ever copied on its way to the processor.
+ */
+public interface FrameDescriptorProcessingCallback extends LiveDataProcessingCallback
+{
+    /**
+     * @param frame frame to process, valid only until this method returns
+     * @return processing result, delivered to {@link #onReceiveProcessedCameraFrame(Object)}
+     */
+    Object onProcessCameraFrame(FrameDescriptor frame);
+}
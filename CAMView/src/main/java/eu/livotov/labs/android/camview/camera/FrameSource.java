@@ -0,0 +1,28 @@
+package eu.livotov.labs.android.camview.camera;
+
+import java.io.IOException;
+
+/**
+ * Source of live frames other than a camera preview, e.g. recorded frames replayed by a
+ * {@link eu.livotov.labs.android.camview.camera.replay.FrameReplaySource}.
+ * <p/>
+ * A {@link CameraController} feeds the live frame executor it creates for its preview, a frame source feeds the
+ * executor it is given, so the live data pipeline and its processors can run without camera hardware or any
+ * surface, down to a plain JVM.
+ */
+public interface FrameSource
+{
+    /**
+     * Starts delivering frames. Frames are leased to the executor, which releases them once processed or dropped.
+     *
+     * @param executor started executor to submit frames to
+     */
+    void start(LiveFrameExecutor executor) throws IOException;
+
+    /**
+     * Stops delivering frames. Frames already submitted are still released by the executor.
+     */
+    void stop();
+
+    boolean isRunning();
+}
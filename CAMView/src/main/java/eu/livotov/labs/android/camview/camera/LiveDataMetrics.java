@@ -0,0 +1,58 @@
+package eu.livotov.labs.android.camview.camera;
+
+/**
+ * Optional receiver of per frame timings and counters of the live data pipeline.
+ * <p/>
+ * Callbacks are invoked synchronously from the camera, processing and main threads, so implementations must be
+ * thread safe, cheap and should not allocate. All durations are in nanoseconds. See {@link LiveDataMetricsRecorder}
+ * for a ready to use implementation.
+ */
+public interface LiveDataMetrics
+{
+    /**
+     * Frame was queued for processing
+     *
+     * @param captureToSubmitNanos time since the camera delivered the frame
+     */
+    void onFrameSubmitted(long captureToSubmitNanos);
+
+    /**
+     * Queued frame was superseded by a newer one before it could be processed
+     */
+    void onFrameDropped();
+
+    /**
+     * Processing result was superseded by a newer one before the main thread picked it up
+     */
+    void onResultDropped();
+
+    /**
+     * Frame reached the processor, but was not decoded due to throttling or because it was not worth decoding
+     */
+    void onFrameSkipped();
+
+    /**
+     * @param queueWaitNanos time the frame spent queued before processing started
+     */
+    void onFrameProcessingStarted(long queueWaitNanos);
+
+    /**
+     * @param processingNanos time spent in {@link LiveDataProcessingCallback#onProcessCameraFrame(byte[], int, int)}
+     * @param error           error thrown by the processor, <code>null</code> if it completed normally
+     */
+    void onFrameProcessed(long processingNanos, Throwable error);
+
+    /**
+     * Single decoding pass over a frame completed
+     *
+     * @param pass          decoder specific pass identifier, e.g. {@link eu.livotov.labs.android.camview.scanner.decoder.zxing.ZXDecoder#PASS_UPRIGHT}
+     * @param durationNanos time the pass took
+     * @param decoded       <code>true</code> if the pass found a code
+     */
+    void onDecodePass(int pass, long durationNanos, boolean decoded);
+
+    /**
+     * @param deliveryLatencyNanos time between the end of processing and the result reaching the main thread
+     */
+    void onResultDelivered(long deliveryLatencyNanos);
+}
@@ -0,0 +1,187 @@
+package eu.livotov.labs.android.camview.camera;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link LiveDataMetrics} keeping rolling histograms of the most recent frames and running counters.
+ * <p/>
+ * Recording allocates nothing, so it can stay enabled in the field while tuning decode throttling and scan area.
+ */
+public class LiveDataMetricsRecorder implements LiveDataMetrics
+{
+    public final static int DEFAULT_WINDOW_SIZE = 256;
+    public final static int MAX_DECODE_PASSES = 8;
+
+    private final RollingHistogram captureToSubmit;
+    private final RollingHistogram queueWait;
+    private final RollingHistogram processing;
+    private final RollingHistogram resultDelivery;
+    private final RollingHistogram[] decodePasses;
+
+    private final AtomicLong submittedFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong droppedResults = new AtomicLong();
+    private final AtomicLong skippedFrames = new AtomicLong();
+    private final AtomicLong failedFrames = new AtomicLong();
+    private final AtomicLong decodedFrames = new AtomicLong();
+
+    public LiveDataMetricsRecorder()
+    {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    public LiveDataMetricsRecorder(int windowSize)
+    {
+        captureToSubmit = new RollingHistogram(windowSize);
+        queueWait = new RollingHistogram(windowSize);
+        processing = new RollingHistogram(windowSize);
+        resultDelivery = new RollingHistogram(windowSize);
+        decodePasses = new RollingHistogram[MAX_DECODE_PASSES];
+
+        for (int i = 0; i < decodePasses.length; i++)
+        {
+            decodePasses[i] = new RollingHistogram(windowSize);
+        }
+    }
+
+    @Override
+    public void onFrameSubmitted(long captureToSubmitNanos)
+    {
+        submittedFrames.incrementAndGet();
+        captureToSubmit.record(captureToSubmitNanos);
+    }
+
+    @Override
+    public void onFrameDropped()
+    {
+        droppedFrames.incrementAndGet();
+    }
+
+    @Override
+    public void onResultDropped()
+    {
+        droppedResults.incrementAndGet();
+    }
+
+    @Override
+    public void onFrameSkipped()
+    {
+        skippedFrames.incrementAndGet();
+    }
+
+    @Override
+    public void onFrameProcessingStarted(long queueWaitNanos)
+    {
+        queueWait.record(queueWaitNanos);
+    }
+
+    @Override
+    public void onFrameProcessed(long processingNanos, Throwable error)
+    {
+        processing.record(processingNanos);
+
+        if (error != null)
+        {
+            failedFrames.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void onDecodePass(int pass, long durationNanos, boolean decoded)
+    {
+        if (pass >= 0 && pass < decodePasses.length)
+        {
+            decodePasses[pass].record(durationNanos);
+        }
+
+        if (decoded)
+        {
+            decodedFrames.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void onResultDelivered(long deliveryLatencyNanos)
+    {
+        resultDelivery.record(deliveryLatencyNanos);
+    }
+
+    public RollingHistogram getCaptureToSubmit()
+    {
+        return captureToSubmit;
+    }
+
+    public RollingHistogram getQueueWait()
+    {
+        return queueWait;
+    }
+
+    public RollingHistogram getProcessing()
+    {
+        return processing;
+    }
+
+    public RollingHistogram getResultDelivery()
+    {
+        return resultDelivery;
+    }
+
+    /**
+     * @param pass decoder specific pass identifier
+     * @return timings of the given decoding pass
+     */
+    public RollingHistogram getDecodePass(int pass)
+    {
+        return decodePasses[pass];
+    }
+
+    public long getSubmittedFramesCount()
+    {
+        return submittedFrames.get();
+    }
+
+    public long getDroppedFramesCount()
+    {
+        return droppedFrames.get();
+    }
+
+    public long getDroppedResultsCount()
+    {
+        return droppedResults.get();
+    }
+
+    public long getSkippedFramesCount()
+    {
+        return skippedFrames.get();
+    }
+
+    public long getFailedFramesCount()
+    {
+        return failedFrames.get();
+    }
+
+    public long getDecodedFramesCount()
+    {
+        return decodedFrames.get();
+    }
+
+    public void reset()
+    {
+        captureToSubmit.reset();
+        queueWait.reset();
+        processing.reset();
+        resultDelivery.reset();
+
+        for (RollingHistogram pass : decodePasses)
+        {
+            pass.reset();
+        }
+
+        submittedFrames.set(0);
+        droppedFrames.set(0);
+        droppedResults.set(0);
+        skippedFrames.set(0);
+        failedFrames.set(0);
+        decodedFrames.set(0);
+    }
+}
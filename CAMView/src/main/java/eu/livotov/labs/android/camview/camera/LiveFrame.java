@@ -0,0 +1,178 @@
+package eu.livotov.labs.android.camview.camera;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Single camera preview buffer, leased to the live data processing pipeline.
+ * <p/>
+ * While leased, the buffer is owned by the processing side and the camera will not write into it.
+ * The pipeline must call {@link #release()} exactly once when it is done with the data, which hands the
+ * buffer back to its {@link Recycler} (normally the camera controller) for the next frame.
+ * <p/>
+ * A frame either wraps an NV21 heap array, as filled by the camera v1 API, or a {@link FrameDescriptor} over
+ * native buffers, filled by the producer before every {@link #acquire(int, int, long)}. Both kinds are described by
+ * {@link #getDescriptor()}, array ones through a heap buffer wrapping the array.
+ */
+public class LiveFrame
+{
+    private final byte[] data;
+    private final FrameDescriptor descriptor;
+    private final Recycler recycler;
+    private byte[] nv21Copy;
+    private final AtomicBoolean leased = new AtomicBoolean(false);
+    private volatile int width;
+    private volatile int height;
+    private volatile long captureTimestamp;
+    private volatile long submitTimestamp;
+
+    public LiveFrame(byte[] data, Recycler recycler)
+    {
+        this.data = data;
+        this.descriptor = new FrameDescriptor();
+        this.recycler = recycler;
+    }
+
+    /**
+     * @param descriptor descriptor the producer fills with the planes of every frame
+     */
+    public LiveFrame(FrameDescriptor descriptor, Recycler recycler)
+    {
+        this.data = null;
+        this.descriptor = descriptor;
+        this.recycler = recycler;
+    }
+
+    /**
+     * @return NV21 frame data, <code>null</code> for frames held in native buffers
+     */
+    public byte[] getData()
+    {
+        return data;
+    }
+
+    public FrameDescriptor getDescriptor()
+    {
+        return descriptor;
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} when the camera delivered this frame
+     */
+    public long getCaptureTimestamp()
+    {
+        return captureTimestamp;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} when this frame was queued for processing
+     */
+    public long getSubmitTimestamp()
+    {
+        return submitTimestamp;
+    }
+
+    void markSubmitted()
+    {
+        submitTimestamp = System.nanoTime();
+    }
+
+    public boolean isLeased()
+    {
+        return leased.get();
+    }
+
+    /**
+     * Marks the buffer as owned by the processing pipeline, stamping it as captured now
+     *
+     * @return <code>false</code> if the buffer is already leased
+     */
+    public boolean acquire(int width, int height)
+    {
+        return acquire(width, height, System.nanoTime());
+    }
+
+    /**
+     * Marks the buffer as owned by the processing pipeline
+     *
+     * @param captureTimestamp {@link System#nanoTime()} taken as soon as the camera delivered the frame
+     * @return <code>false</code> if the buffer is already leased
+     */
+    public boolean acquire(int width, int height, long captureTimestamp)
+    {
+        if (leased.compareAndSet(false, true))
+        {
+            this.width = width;
+            this.height = height;
+            this.captureTimestamp = captureTimestamp;
+            this.submitTimestamp = 0;
+
+            if (data != null)
+            {
+                if (descriptor.getPlane(FrameDescriptor.PLANE_Y) == null || descriptor.getWidth() != width || descriptor.getHeight() != height)
+                {
+                    descriptor.setNV21(ByteBuffer.wrap(data), width, height);
+                }
+
+                descriptor.setTimestamp(captureTimestamp);
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Gives the buffer back to its owner. Subsequent calls are ignored, so it is safe to call it from a finally block.
+     */
+    public void release()
+    {
+        if (leased.compareAndSet(true, false))
+        {
+            recycler.recycle(this);
+        }
+    }
+
+    /**
+     * Runs the processor on this frame, through {@link FrameDescriptorProcessingCallback#onProcessCameraFrame(FrameDescriptor)}
+     * when it supports it, otherwise through {@link LiveDataProcessingCallback#onProcessCameraFrame(byte[], int, int)},
+     * converting frames held in native buffers to NV21 first.
+     */
+    Object process(LiveDataProcessingCallback processor)
+    {
+        if (processor instanceof FrameDescriptorProcessingCallback)
+        {
+            return ((FrameDescriptorProcessingCallback) processor).onProcessCameraFrame(descriptor);
+        }
+
+        if (data != null)
+        {
+            return processor.onProcessCameraFrame(data, width, height);
+        }
+
+        final int size = width * height * 3 / 2;
+        if (nv21Copy == null || nv21Copy.length < size)
+        {
+            nv21Copy = new byte[size];
+        }
+
+        descriptor.copyToNV21(nv21Copy);
+        return processor.onProcessCameraFrame(nv21Copy, width, height);
+    }
+
+    public interface Recycler
+    {
+        void recycle(LiveFrame frame);
+    }
+}
@@ -0,0 +1,27 @@
+package eu.livotov.labs.android.camview.camera;
+
+/**
+ * Runs {@link LiveDataProcessingCallback#onProcessCameraFrame(byte[], int, int)} for the frames submitted by a camera
+ * controller, off the camera thread.
+ * <p/>
+ * Implementations own every submitted {@link LiveFrame} and must release it once processed or dropped. Callbacks
+ * implementing {@link FrameDescriptorProcessingCallback} are given the frame descriptor instead of its data.
+ */
+public interface LiveFrameExecutor
+{
+    void start();
+
+    void submitLiveFrame(LiveFrame frame);
+
+    void shutdown();
+
+    interface ResultListener
+    {
+        /**
+         * Called once per processed frame, in the order frames were taken for processing
+         *
+         * @param result value returned by {@link LiveDataProcessingCallback#onProcessCameraFrame(byte[], int, int)}
+         */
+        void onLiveFrameProcessed(Object result);
+    }
+}
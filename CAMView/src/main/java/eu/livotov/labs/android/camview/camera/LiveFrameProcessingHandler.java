@@ -1,8 +1,11 @@
 package eu.livotov.labs.android.camview.camera;
 
 import android.os.Handler;
+import android.os.Looper;
 import android.os.Message;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 import eu.livotov.labs.android.camview.R;
 
 /**
@@ -14,38 +17,73 @@ public class LiveFrameProcessingHandler extends Handler
 
     private Handler uiHandler;
     private LiveDataProcessingCallback callback;
+    private AtomicReference<LiveFrame> pendingFrame;
+    private LiveDataMetrics metrics;
     private boolean running = true;
 
-    LiveFrameProcessingHandler(Handler uiHandler, LiveDataProcessingCallback callback)
+    LiveFrameProcessingHandler(Handler uiHandler, LiveDataProcessingCallback callback, AtomicReference<LiveFrame> pendingFrame, LiveDataMetrics metrics)
     {
         this.uiHandler = uiHandler;
         this.callback = callback;
+        this.pendingFrame = pendingFrame;
+        this.metrics = metrics;
     }
 
     @Override
     public void handleMessage(Message message)
     {
-        if (!running)
+        final LiveFrame frame = pendingFrame.getAndSet(null);
+
+        try
         {
-            return;
+            if (message.what == R.id.camview_core_msg_livedataprocess_quit)
+            {
+                running = false;
+                Looper.myLooper().quit();
+            }
+            else if (running && frame != null && message.what == R.id.camview_core_msg_livedataprocess_request)
+            {
+                decode(frame);
+            }
         }
-
-        if (message.what == R.id.camview_core_msg_livedataprocess_request)
+        finally
         {
-            decode((byte[]) message.obj, message.arg1, message.arg2);
+            if (frame != null)
+            {
+                frame.release();
+            }
         }
     }
 
-    private void decode(byte[] data, int width, int height)
+    private void decode(LiveFrame frame)
     {
+        final long started = System.nanoTime();
+        Throwable error = null;
+
+        if (metrics != null)
+        {
+            metrics.onFrameProcessingStarted(started - frame.getSubmitTimestamp());
+        }
+
         try
         {
+            if (metrics != null && uiHandler.hasMessages(R.id.camview_core_msg_livedataprocess_ok))
+            {
+                metrics.onResultDropped();
+            }
+
             uiHandler.removeMessages(R.id.camview_core_msg_livedataprocess_ok);
-            final Object result = callback.onProcessCameraFrame(data, width, height);
+            final Object result = frame.process(callback);
             Message.obtain(uiHandler, R.id.camview_core_msg_livedataprocess_ok, result).sendToTarget();
         }
         catch (Throwable err)
         {
+            error = err;
+        }
+
+        if (metrics != null)
+        {
+            metrics.onFrameProcessed(System.nanoTime() - started, error);
         }
     }
 }
@@ -0,0 +1,271 @@
+package eu.livotov.labs.android.camview.camera;
+
+/**
+ * {@link LiveFrameExecutor} running the processing callback on several worker threads at once.
+ * <p/>
+ * Frames wait in a bounded queue. When the queue is full, the oldest waiting frame is dropped (and released)
+ * in favour of the new one, so workers always pick the most recent frames. Results are delivered to the
+ * {@link ResultListener} strictly in the order frames were taken by the workers: a worker does not take a new
+ * frame while more than <code>workersCount</code> results are waiting for an earlier frame to complete.
+ * <p/>
+ * The processing callback is invoked concurrently, so it must be thread safe.
+ * <p/>
+ * The number of workers is fixed. With a {@link ProcessingThreadPolicy}, every worker applies its priority and runs
+ * its warm up as it starts, frames submitted meanwhile wait in the queue.
+ */
+public class LiveFrameProcessingPool implements LiveFrameExecutor
+{
+    private final LiveDataProcessingCallback processor;
+    private final ResultListener resultListener;
+    private final LiveDataMetrics metrics;
+    private final ProcessingThreadPolicy threadPolicy;
+    private final int workersCount;
+
+    private final LiveFrame[] queue;
+    private int queueHead;
+    private int queueSize;
+
+    private final Object[] results;
+    private final boolean[] completed;
+    private long nextSequence;
+    private long nextDelivery;
+
+    private final Thread[] workers;
+    private boolean running;
+    private long droppedFramesCount;
+
+    public LiveFrameProcessingPool(int workersCount, int queueCapacity, LiveDataProcessingCallback processor, ResultListener resultListener)
+    {
+        this(workersCount, queueCapacity, processor, resultListener, null);
+    }
+
+    /**
+     * @param metrics receiver of queueing and processing timings, may be <code>null</code>
+     */
+    public LiveFrameProcessingPool(int workersCount, int queueCapacity, LiveDataProcessingCallback processor, ResultListener resultListener, LiveDataMetrics metrics)
+    {
+        this(workersCount, queueCapacity, processor, resultListener, metrics, null);
+    }
+
+    /**
+     * @param threadPolicy set up of the worker threads, <code>null</code> to run them as they are
+     */
+    public LiveFrameProcessingPool(int workersCount, int queueCapacity, LiveDataProcessingCallback processor, ResultListener resultListener, LiveDataMetrics metrics, ProcessingThreadPolicy threadPolicy)
+    {
+        if (workersCount < 1 || queueCapacity < 1)
+        {
+            throw new IllegalArgumentException(String.format("Workers count and queue capacity must be positive, got %s and %s", workersCount, queueCapacity));
+        }
+
+        this.workersCount = workersCount;
+        this.processor = processor;
+        this.resultListener = resultListener;
+        this.metrics = metrics;
+        this.threadPolicy = threadPolicy;
+        this.queue = new LiveFrame[queueCapacity];
+        this.results = new Object[workersCount];
+        this.completed = new boolean[workersCount];
+        this.workers = new Thread[workersCount];
+    }
+
+    public int getWorkersCount()
+    {
+        return workersCount;
+    }
+
+    public synchronized long getDroppedFramesCount()
+    {
+        return droppedFramesCount;
+    }
+
+    @Override
+    public synchronized void start()
+    {
+        if (running)
+        {
+            return;
+        }
+
+        running = true;
+
+        for (int i = 0; i < workersCount; i++)
+        {
+            workers[i] = new Thread(new Worker(), "CAMView live frame worker #" + (i + 1));
+            workers[i].start();
+        }
+    }
+
+    @Override
+    public void submitLiveFrame(LiveFrame frame)
+    {
+        LiveFrame dropped = null;
+        frame.markSubmitted();
+
+        if (metrics != null)
+        {
+            metrics.onFrameSubmitted(frame.getSubmitTimestamp() - frame.getCaptureTimestamp());
+        }
+
+        synchronized (this)
+        {
+            if (!running)
+            {
+                dropped = frame;
+            }
+            else
+            {
+                if (queueSize == queue.length)
+                {
+                    dropped = queue[queueHead];
+                    queue[queueHead] = null;
+                    queueHead = (queueHead + 1) % queue.length;
+                    queueSize--;
+                    droppedFramesCount++;
+
+                    if (metrics != null)
+                    {
+                        metrics.onFrameDropped();
+                    }
+                }
+
+                queue[(queueHead + queueSize) % queue.length] = frame;
+                queueSize++;
+                notifyAll();
+            }
+        }
+
+        if (dropped != null)
+        {
+            dropped.release();
+        }
+    }
+
+    @Override
+    public void shutdown()
+    {
+        synchronized (this)
+        {
+            if (!running)
+            {
+                return;
+            }
+
+            running = false;
+            notifyAll();
+        }
+
+        LiveFrame frame;
+        while ((frame = pollQueuedFrame()) != null)
+        {
+            frame.release();
+        }
+    }
+
+    private synchronized LiveFrame pollQueuedFrame()
+    {
+        if (queueSize == 0)
+        {
+            return null;
+        }
+
+        final LiveFrame frame = queue[queueHead];
+        queue[queueHead] = null;
+        queueHead = (queueHead + 1) % queue.length;
+        queueSize--;
+        return frame;
+    }
+
+    private synchronized void complete(long sequence, Object result)
+    {
+        final int slot = (int) (sequence % workersCount);
+        results[slot] = result;
+        completed[slot] = true;
+
+        int nextSlot = (int) (nextDelivery % workersCount);
+        while (completed[nextSlot])
+        {
+            final Object nextResult = results[nextSlot];
+            results[nextSlot] = null;
+            completed[nextSlot] = false;
+            nextDelivery++;
+
+            if (running && resultListener != null)
+            {
+                resultListener.onLiveFrameProcessed(nextResult);
+            }
+
+            nextSlot = (int) (nextDelivery % workersCount);
+        }
+
+        notifyAll();
+    }
+
+    private class Worker implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            if (threadPolicy != null)
+            {
+                threadPolicy.onThreadStarted();
+            }
+
+            while (true)
+            {
+                final LiveFrame frame;
+                final long sequence;
+
+                synchronized (LiveFrameProcessingPool.this)
+                {
+                    while (running && (queueSize == 0 || nextSequence - nextDelivery >= workersCount))
+                    {
+                        try
+                        {
+                            LiveFrameProcessingPool.this.wait();
+                        }
+                        catch (InterruptedException ignored)
+                        {
+                        }
+                    }
+
+                    if (!running)
+                    {
+                        return;
+                    }
+
+                    frame = pollQueuedFrame();
+                    sequence = nextSequence++;
+                }
+
+                Object result = null;
+                Throwable error = null;
+                final long started = System.nanoTime();
+
+                if (metrics != null)
+                {
+                    metrics.onFrameProcessingStarted(started - frame.getSubmitTimestamp());
+                }
+
+                try
+                {
+                    result = frame.process(processor);
+                }
+                catch (Throwable err)
+                {
+                    error = err;
+                }
+                finally
+                {
+                    frame.release();
+                }
+
+                if (metrics != null)
+                {
+                    metrics.onFrameProcessed(System.nanoTime() - started, error);
+                }
+
+                complete(sequence, result);
+            }
+        }
+    }
+}
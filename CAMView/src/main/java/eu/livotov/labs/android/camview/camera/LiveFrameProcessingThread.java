@@ -5,34 +5,65 @@ import android.os.Looper;
 import android.os.Message;
 
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
 import eu.livotov.labs.android.camview.R;
 
 /**
  * Created by dlivotov on 12/05/2015.
  */
-public class LiveFrameProcessingThread extends Thread
+public class LiveFrameProcessingThread extends Thread implements LiveFrameExecutor
 {
     private final CountDownLatch handlerInitLatch;
+    private final AtomicReference<LiveFrame> pendingFrame = new AtomicReference<LiveFrame>();
     private Handler decoderHandler;
     private Handler uiHandler;
     private LiveDataProcessingCallback processor;
+    private LiveDataMetrics metrics;
+    private ProcessingThreadPolicy threadPolicy;
 
     public LiveFrameProcessingThread(Handler uiHandler, LiveDataProcessingCallback processor)
+    {
+        this(uiHandler, processor, null);
+    }
+
+    /**
+     * @param metrics receiver of queueing and processing timings, may be <code>null</code>
+     */
+    public LiveFrameProcessingThread(Handler uiHandler, LiveDataProcessingCallback processor, LiveDataMetrics metrics)
+    {
+        this(uiHandler, processor, metrics, null);
+    }
+
+    /**
+     * @param threadPolicy set up of the thread, applied as it starts, <code>null</code> to run it as it is
+     */
+    public LiveFrameProcessingThread(Handler uiHandler, LiveDataProcessingCallback processor, LiveDataMetrics metrics, ProcessingThreadPolicy threadPolicy)
     {
         handlerInitLatch = new CountDownLatch(1);
         this.uiHandler = uiHandler;
         this.processor = processor;
+        this.metrics = metrics;
+        this.threadPolicy = threadPolicy;
     }
 
     @Override
     public void run()
     {
         Looper.prepare();
-        decoderHandler = new LiveFrameProcessingHandler(uiHandler, processor);
+        decoderHandler = new LiveFrameProcessingHandler(uiHandler, processor, pendingFrame, metrics);
         handlerInitLatch.countDown();
+
+        // Frames submitted during the warm up wait for it in the message queue, not in the camera thread
+        if (threadPolicy != null)
+        {
+            threadPolicy.onThreadStarted();
+        }
+
         Looper.loop();
     }
 
+    @Override
     public void shutdown()
     {
         final Message message = Message.obtain(getDecoderHandler(), R.id.camview_core_msg_livedataprocess_quit);
@@ -56,13 +87,45 @@ public class LiveFrameProcessingThread extends Thread
         return decoderHandler;
     }
 
-    public void submitLiveFrame(byte[] bytes, int width, int height)
+    /**
+     * Queues the frame for processing. Only the latest frame is kept, a frame still waiting for the
+     * processor is released back to its owner right away. The submitted frame is released by the
+     * processing thread once the processor is done with it.
+     *
+     * @param frame leased camera frame
+     */
+    @Override
+    public void submitLiveFrame(LiveFrame frame)
     {
-        getDecoderHandler().removeMessages(R.id.camview_core_msg_livedataprocess_request);
-        final Message message = Message.obtain(getDecoderHandler(), R.id.camview_core_msg_livedataprocess_request, width, height, bytes);
-        if (message != null)
+        frame.markSubmitted();
+
+        if (metrics != null)
         {
-            message.sendToTarget();
+            metrics.onFrameSubmitted(frame.getSubmitTimestamp() - frame.getCaptureTimestamp());
+        }
+
+        final LiveFrame dropped = pendingFrame.getAndSet(frame);
+
+        if (dropped != null)
+        {
+            if (metrics != null)
+            {
+                metrics.onFrameDropped();
+            }
+
+            // Processing request for the previous frame is still queued and will pick up this one instead
+            dropped.release();
+            return;
+        }
+
+        final Message message = Message.obtain(getDecoderHandler(), R.id.camview_core_msg_livedataprocess_request);
+        if (message == null || !message.getTarget().sendMessage(message))
+        {
+            final LiveFrame orphan = pendingFrame.getAndSet(null);
+            if (orphan != null)
+            {
+                orphan.release();
+            }
         }
     }
-}
\ No newline at end of file
+}
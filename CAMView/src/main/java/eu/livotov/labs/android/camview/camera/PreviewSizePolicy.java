@@ -0,0 +1,181 @@
+package eu.livotov.labs.android.camview.camera;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the size camera previews are streamed at for live data processing, trading display quality against the cost
+ * of processing frames.
+ * <p/>
+ * Sizes are limited to a pixel budget, the largest frame the live data processing threads can get through at the
+ * target number of frames per second, given the measured processing time per pixel (see
+ * {@link eu.livotov.labs.android.camview.scanner.DecodeCostCalibration}). Within the budget, the size closest to the
+ * aspect ratio of the view is picked, the largest one among equally close sizes. Until the processing cost is known,
+ * the budget is only limited by {@link #getMaxPixels()}.
+ * <p/>
+ * Instance is safe to share between threads.
+ */
+public class PreviewSizePolicy
+{
+    public final static float DEFAULT_TARGET_FRAMES_PER_SECOND = 10;
+    public final static int DEFAULT_MIN_PIXELS = 640 * 480;
+    public final static int DEFAULT_MAX_PIXELS = 1920 * 1080;
+
+    private final static double ASPECT_TOLERANCE = 0.05;
+
+    private volatile float targetFramesPerSecond = DEFAULT_TARGET_FRAMES_PER_SECOND;
+    private volatile float processingNanosPerPixel;
+    private volatile int processingThreadsCount = 1;
+    private volatile int minPixels = DEFAULT_MIN_PIXELS;
+    private volatile int maxPixels = DEFAULT_MAX_PIXELS;
+
+    public float getTargetFramesPerSecond()
+    {
+        return targetFramesPerSecond;
+    }
+
+    /**
+     * @param targetFramesPerSecond number of frames per second live data processing should keep up with, e.g. scans
+     *                              per second for a scanner
+     */
+    public void setTargetFramesPerSecond(float targetFramesPerSecond)
+    {
+        if (targetFramesPerSecond <= 0)
+        {
+            throw new IllegalArgumentException("Target frames per second must be positive: " + targetFramesPerSecond);
+        }
+
+        this.targetFramesPerSecond = targetFramesPerSecond;
+    }
+
+    public float getProcessingNanosPerPixel()
+    {
+        return processingNanosPerPixel;
+    }
+
+    /**
+     * @param processingNanosPerPixel measured time it takes a single thread to process a frame, per frame pixel, 0 if
+     *                                not known (yet)
+     */
+    public void setProcessingNanosPerPixel(float processingNanosPerPixel)
+    {
+        if (processingNanosPerPixel < 0)
+        {
+            throw new IllegalArgumentException("Processing time cannot be negative: " + processingNanosPerPixel);
+        }
+
+        this.processingNanosPerPixel = processingNanosPerPixel;
+    }
+
+    /**
+     * @return <code>true</code> once the processing cost is known
+     */
+    public boolean isCalibrated()
+    {
+        return processingNanosPerPixel > 0;
+    }
+
+    public int getProcessingThreadsCount()
+    {
+        return processingThreadsCount;
+    }
+
+    /**
+     * @param processingThreadsCount number of threads frames are processed on in parallel
+     */
+    public void setProcessingThreadsCount(int processingThreadsCount)
+    {
+        if (processingThreadsCount < 1)
+        {
+            throw new IllegalArgumentException("At least one processing thread is required. Specified value was " + processingThreadsCount);
+        }
+
+        this.processingThreadsCount = processingThreadsCount;
+    }
+
+    public int getMinPixels()
+    {
+        return minPixels;
+    }
+
+    /**
+     * @param minPixels budget is never lower than this, so frames stay large enough to be of use on slow devices
+     */
+    public void setMinPixels(int minPixels)
+    {
+        this.minPixels = minPixels;
+    }
+
+    public int getMaxPixels()
+    {
+        return maxPixels;
+    }
+
+    /**
+     * @param maxPixels budget is never higher than this, however fast frames are processed
+     */
+    public void setMaxPixels(int maxPixels)
+    {
+        this.maxPixels = maxPixels;
+    }
+
+    /**
+     * @return largest preview area, in pixels, processed fast enough to reach the target frame rate
+     */
+    public int getPixelBudget()
+    {
+        final float nanosPerPixel = processingNanosPerPixel;
+        long budget = maxPixels;
+
+        if (nanosPerPixel > 0)
+        {
+            budget = Math.min(budget, (long) (TimeUnit.SECONDS.toNanos(1) * processingThreadsCount / (targetFramesPerSecond * nanosPerPixel)));
+        }
+
+        return (int) Math.max(budget, minPixels);
+    }
+
+    /**
+     * Picks a preview size among the supported ones
+     *
+     * @param widths     widths of the supported sizes
+     * @param heights    heights of the supported sizes, in the same order
+     * @param viewWidth  width of the view the preview is displayed in, 0 if not known yet
+     * @param viewHeight height of the view the preview is displayed in, 0 if not known yet
+     * @return index of the size to use, the smallest one if none fits the budget, -1 if there are no sizes at all
+     */
+    public int select(int[] widths, int[] heights, int viewWidth, int viewHeight)
+    {
+        final long budget = getPixelBudget();
+        final double targetRatio = viewWidth > 0 && viewHeight > 0 ? (double) Math.max(viewWidth, viewHeight) / Math.min(viewWidth, viewHeight) : 4.0 / 3.0;
+
+        int optimal = -1;
+        int smallest = -1;
+        double minRatioDiff = Double.MAX_VALUE;
+
+        for (int i = 0; i < widths.length; i++)
+        {
+            final long area = (long) widths[i] * heights[i];
+
+            if (smallest < 0 || area < (long) widths[smallest] * heights[smallest])
+            {
+                smallest = i;
+            }
+
+            if (area > budget)
+            {
+                continue;
+            }
+
+            // Sizes are in sensor orientation, the view may be in either, so compare long to short side ratios
+            final double ratioDiff = Math.abs((double) Math.max(widths[i], heights[i]) / Math.min(widths[i], heights[i]) - targetRatio);
+
+            if (optimal < 0 || ratioDiff < minRatioDiff - ASPECT_TOLERANCE || (Math.abs(ratioDiff - minRatioDiff) <= ASPECT_TOLERANCE && area > (long) widths[optimal] * heights[optimal]))
+            {
+                optimal = i;
+                minRatioDiff = Math.min(ratioDiff, minRatioDiff);
+            }
+        }
+
+        return optimal >= 0 ? optimal : smallest;
+    }
+}
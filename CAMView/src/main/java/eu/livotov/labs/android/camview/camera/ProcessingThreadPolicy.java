@@ -0,0 +1,157 @@
+package eu.livotov.labs.android.camview.camera;
+
+/**
+ * How live data processing threads are set up: their scheduling priority, the CPU cores they are meant for and the
+ * warm up work they run before taking their first frame.
+ * <p/>
+ * Priorities are Linux nice values, as taken by <code>android.os.Process.setThreadPriority()</code>: the lower, the
+ * more CPU time the thread gets. This class maps them onto Java thread priorities, which is all a plain JVM offers,
+ * {@link AndroidProcessingThreadPolicy} applies them as such.
+ * <p/>
+ * Apps cannot pin threads to cores on Android, so the preferred cores set the number of processing threads instead:
+ * it is limited to the size of the preferred cluster (see {@link CpuTopology}), for no thread to end up on a core of
+ * the other kind and hold back the in-order delivery of results. Together with a raised priority, which the
+ * scheduler favours big cores for, threads then run on the preferred cores in practice.
+ * <p/>
+ * Instance is safe to share between threads.
+ */
+public class ProcessingThreadPolicy
+{
+    public final static int PRIORITY_DEFAULT = 0;
+    public final static int PRIORITY_BACKGROUND = 10;
+    public final static int PRIORITY_DISPLAY = -4;
+    public final static int PRIORITY_URGENT_DISPLAY = -8;
+
+    public final static int CORES_ANY = 0;
+    public final static int CORES_BIG = 1;
+    public final static int CORES_LITTLE = 2;
+
+    private volatile int priority = PRIORITY_DISPLAY;
+    private volatile int preferredCores = CORES_BIG;
+    private volatile Runnable warmUp;
+
+    public int getPriority()
+    {
+        return priority;
+    }
+
+    /**
+     * @param priority nice value, from -20 (highest) to 19 (lowest), e.g. {@link #PRIORITY_DISPLAY}
+     */
+    public void setPriority(int priority)
+    {
+        if (priority < -20 || priority > 19)
+        {
+            throw new IllegalArgumentException("Thread priority must be between -20 and 19. Specified value was " + priority);
+        }
+
+        this.priority = priority;
+    }
+
+    public int getPreferredCores()
+    {
+        return preferredCores;
+    }
+
+    /**
+     * @param preferredCores {@link #CORES_ANY}, {@link #CORES_BIG} or {@link #CORES_LITTLE}
+     */
+    public void setPreferredCores(int preferredCores)
+    {
+        if (preferredCores != CORES_ANY && preferredCores != CORES_BIG && preferredCores != CORES_LITTLE)
+        {
+            throw new IllegalArgumentException("Unknown preferred cores: " + preferredCores);
+        }
+
+        this.preferredCores = preferredCores;
+    }
+
+    public Runnable getWarmUp()
+    {
+        return warmUp;
+    }
+
+    /**
+     * @param warmUp work every processing thread runs once before taking its first frame, e.g. a decode of a blank
+     *               frame filling the thread local state of the decoder. <code>null</code> for none.
+     */
+    public void setWarmUp(Runnable warmUp)
+    {
+        this.warmUp = warmUp;
+    }
+
+    /**
+     * @param requested number of processing threads asked for
+     * @return number of processing threads to actually run, limited to the number of preferred cores
+     */
+    public int getThreadsCount(int requested)
+    {
+        return getThreadsCount(requested, CpuTopology.get());
+    }
+
+    int getThreadsCount(int requested, CpuTopology topology)
+    {
+        final int available;
+
+        switch (preferredCores)
+        {
+            case CORES_BIG:
+                available = topology.getBigCoresCount();
+                break;
+
+            case CORES_LITTLE:
+                available = topology.getLittleCoresCount();
+                break;
+
+            default:
+                return requested;
+        }
+
+        final int count = Math.max(1, Math.min(requested, available));
+
+        if (count < requested)
+        {
+            onThreadsCountLimited(requested, count);
+        }
+
+        return count;
+    }
+
+    /**
+     * Called by every processing thread as it starts, before it takes any frame: applies the priority and runs the
+     * warm up. Errors of the warm up are ignored, the thread goes on processing frames anyway.
+     */
+    public void onThreadStarted()
+    {
+        setCurrentThreadPriority(priority);
+
+        final Runnable warmUp = this.warmUp;
+        if (warmUp != null)
+        {
+            try
+            {
+                warmUp.run();
+            }
+            catch (RuntimeException ignored)
+            {
+            }
+        }
+    }
+
+    /**
+     * Called whenever fewer processing threads than requested are run, for lack of preferred cores
+     */
+    protected void onThreadsCountLimited(int requested, int count)
+    {
+    }
+
+    /**
+     * Applies a nice value to the calling thread
+     */
+    protected void setCurrentThreadPriority(int priority)
+    {
+        // Nice -20..19 onto Java 10..1, the default 0 staying at the normal priority
+        final int javaPriority = priority <= 0 ? Thread.NORM_PRIORITY - priority * (Thread.MAX_PRIORITY - Thread.NORM_PRIORITY) / 20 : Thread.NORM_PRIORITY - priority * (Thread.NORM_PRIORITY - Thread.MIN_PRIORITY) / 19;
+        Thread.currentThread().setPriority(javaPriority);
+    }
+}
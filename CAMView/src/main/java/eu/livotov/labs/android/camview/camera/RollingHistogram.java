@@ -0,0 +1,105 @@
+package eu.livotov.labs.android.camview.camera;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent samples in a fixed size ring and computes percentiles over them on request.
+ * <p/>
+ * Recording a sample never allocates. Percentile queries sort a preallocated copy of the window, so they are meant
+ * to be called occasionally (e.g. when updating a debug overlay), not per frame.
+ */
+public class RollingHistogram
+{
+    private final long[] samples;
+    private final long[] sorted;
+    private int next;
+    private int size;
+    private long totalCount;
+    private boolean sortedValid;
+
+    public RollingHistogram(int windowSize)
+    {
+        if (windowSize < 1)
+        {
+            throw new IllegalArgumentException("Window size must be positive. Specified value was " + windowSize);
+        }
+
+        samples = new long[windowSize];
+        sorted = new long[windowSize];
+    }
+
+    public synchronized void record(long value)
+    {
+        samples[next] = value;
+        next = (next + 1) % samples.length;
+        size = Math.min(size + 1, samples.length);
+        totalCount++;
+        sortedValid = false;
+    }
+
+    /**
+     * @return number of samples ever recorded
+     */
+    public synchronized long getTotalCount()
+    {
+        return totalCount;
+    }
+
+    /**
+     * @return number of samples currently in the window
+     */
+    public synchronized int getWindowCount()
+    {
+        return size;
+    }
+
+    /**
+     * @param percentile value between 0 and 100
+     * @return percentile of the samples in the window, 0 if there are none
+     */
+    public synchronized long getPercentile(double percentile)
+    {
+        if (percentile < 0 || percentile > 100)
+        {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100. Specified value was " + percentile);
+        }
+
+        if (size == 0)
+        {
+            return 0;
+        }
+
+        if (!sortedValid)
+        {
+            System.arraycopy(samples, 0, sorted, 0, size);
+            Arrays.sort(sorted, 0, size);
+            sortedValid = true;
+        }
+
+        final int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+        return sorted[Math.max(0, Math.min(size - 1, index))];
+    }
+
+    public synchronized long getMean()
+    {
+        if (size == 0)
+        {
+            return 0;
+        }
+
+        long sum = 0;
+        for (int i = 0; i < size; i++)
+        {
+            sum += samples[i];
+        }
+        return sum / size;
+    }
+
+    public synchronized void reset()
+    {
+        next = 0;
+        size = 0;
+        totalCount = 0;
+        sortedValid = false;
+    }
+}
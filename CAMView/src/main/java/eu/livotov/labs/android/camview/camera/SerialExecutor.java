@@ -0,0 +1,175 @@
+package eu.livotov.labs.android.camview.camera;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link Executor} running tasks one after another, in the order they were posted, on a single dedicated thread.
+ * <p/>
+ * Tasks wait in a lock-free multiple producers, single consumer linked queue: posting is an atomic swap of the queue
+ * tail and, only when the thread sleeps for lack of tasks, an unpark. No poster ever takes a lock or waits for
+ * another. The thread is started by the first post, which does not wait for it either: the queue exists from the
+ * start, so tasks posted before the thread runs simply wait in it.
+ * <p/>
+ * A task throwing an exception is reported to the uncaught exception handler of the thread, the following tasks run
+ * as usual.
+ */
+public final class SerialExecutor implements Executor
+{
+    private final Thread thread;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final AtomicBoolean parked = new AtomicBoolean(false);
+    private final AtomicLong postedCount = new AtomicLong();
+    private volatile long executedCount;
+
+    private final AtomicReference<Node> tail;
+    private Node head;
+
+    public SerialExecutor(String threadName)
+    {
+        head = new Node(null);
+        tail = new AtomicReference<Node>(head);
+        thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                loop();
+            }
+        }, threadName);
+        thread.setDaemon(true);
+    }
+
+    @Override
+    public void execute(Runnable task)
+    {
+        if (task == null)
+        {
+            throw new NullPointerException("Task is null");
+        }
+
+        final Node node = new Node(task);
+        postedCount.incrementAndGet();
+        tail.getAndSet(node).next = node;
+
+        if (!started.get() && started.compareAndSet(false, true))
+        {
+            thread.start();
+        }
+        else if (parked.get() && parked.compareAndSet(true, false))
+        {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * @return number of tasks posted so far
+     */
+    public long getPostedCount()
+    {
+        return postedCount.get();
+    }
+
+    /**
+     * @return number of tasks run to completion (or failure) so far
+     */
+    public long getExecutedCount()
+    {
+        return executedCount;
+    }
+
+    /**
+     * @return number of tasks posted and not finished yet, including the one running
+     */
+    public int getPendingCount()
+    {
+        return (int) Math.max(0, postedCount.get() - executedCount);
+    }
+
+    /**
+     * @return <code>true</code> if called on the thread of this executor
+     */
+    public boolean isExecutorThread()
+    {
+        return Thread.currentThread() == thread;
+    }
+
+    private void loop()
+    {
+        while (true)
+        {
+            Runnable task = poll();
+
+            if (task == null)
+            {
+                // Announces the sleep, then looks again, so a task posted in between is not missed
+                parked.set(true);
+                task = poll();
+
+                if (task == null)
+                {
+                    LockSupport.park(this);
+                    parked.set(false);
+                    continue;
+                }
+
+                parked.set(false);
+            }
+
+            try
+            {
+                task.run();
+            }
+            catch (Throwable t)
+            {
+                final Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+                if (handler != null)
+                {
+                    handler.uncaughtException(thread, t);
+                }
+            }
+            finally
+            {
+                executedCount++;
+            }
+        }
+    }
+
+    private Runnable poll()
+    {
+        Node next = head.next;
+
+        if (next == null)
+        {
+            if (head == tail.get())
+            {
+                return null;
+            }
+
+            // A poster swapped the tail but has not linked its node yet, it is a matter of instructions
+            while ((next = head.next) == null)
+            {
+                Thread.yield();
+            }
+        }
+
+        head = next;
+        final Runnable task = next.task;
+        next.task = null;
+        return task;
+    }
+
+    private static final class Node
+    {
+        Runnable task;
+        volatile Node next;
+
+        Node(Runnable task)
+        {
+            this.task = task;
+        }
+    }
+}
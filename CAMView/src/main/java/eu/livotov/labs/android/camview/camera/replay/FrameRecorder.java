@@ -0,0 +1,378 @@
+package eu.livotov.labs.android.camview.camera.replay;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import eu.livotov.labs.android.camview.camera.FrameDescriptor;
+
+/**
+ * Records sampled camera frames into a {@link FrameRecording}, for them to be replayed later by a
+ * {@link FrameReplaySource}.
+ * <p/>
+ * {@link #offer(byte[], int, int, long)} is meant to be called right from the camera callback and never blocks it:
+ * frames beyond the maximum frame rate are skipped, a due frame is copied into one of a bounded set of recording
+ * buffers, or skipped as well when all of them are still waiting to be written. The camera buffer itself is never
+ * held on to. Frames are written to the file on a thread of the recorder.
+ * <p/>
+ * Recording buffers are allocated by {@link #start(int, int)} for the given frame size. Otherwise, or when frames
+ * grow larger, they are allocated on the recorder thread, due frames being dropped until they are.
+ */
+public class FrameRecorder
+{
+    public final static float DEFAULT_MAX_FRAME_RATE = 5;
+    public final static int DEFAULT_QUEUE_CAPACITY = 4;
+
+    private final File file;
+    private final long minIntervalNanos;
+    private final BlockingQueue<RecordedFrame> freeFrames;
+    private final BlockingQueue<RecordedFrame> pendingFrames;
+    private final AtomicLong recordedFramesCount = new AtomicLong();
+    private final AtomicLong skippedFramesCount = new AtomicLong();
+    private final AtomicLong droppedFramesCount = new AtomicLong();
+    private final RecordedFrame endOfRecording = new RecordedFrame();
+    private final Object rateLock = new Object();
+    private volatile Thread writerThread;
+    private volatile boolean recording;
+    private volatile IOException error;
+    private long lastOfferedTimestamp;
+    private boolean offeredAny;
+
+    public FrameRecorder(File file)
+    {
+        this(file, DEFAULT_MAX_FRAME_RATE, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param maxFrameRate  maximum number of frames recorded per second
+     * @param queueCapacity number of frames that may wait to be written, each one costs a frame sized buffer
+     */
+    public FrameRecorder(File file, float maxFrameRate, int queueCapacity)
+    {
+        if (maxFrameRate <= 0)
+        {
+            throw new IllegalArgumentException("Maximum frame rate must be positive: " + maxFrameRate);
+        }
+
+        if (queueCapacity < 1)
+        {
+            throw new IllegalArgumentException("At least one queued frame is required. Specified value was " + queueCapacity);
+        }
+
+        this.file = file;
+        this.minIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / maxFrameRate);
+        this.freeFrames = new ArrayBlockingQueue<RecordedFrame>(queueCapacity);
+        this.pendingFrames = new ArrayBlockingQueue<RecordedFrame>(queueCapacity + 1);
+
+        for (int i = 0; i < queueCapacity; i++)
+        {
+            freeFrames.add(new RecordedFrame());
+        }
+    }
+
+    /**
+     * Creates the recording file, overwriting any previous one, and starts recording offered frames. Recording buffers
+     * are allocated once the first frame comes.
+     */
+    public void start() throws IOException
+    {
+        start(0, 0);
+    }
+
+    /**
+     * Creates the recording file, overwriting any previous one, and starts recording offered frames
+     *
+     * @param width  width of the frames to be recorded, the recording buffers are allocated for it right away
+     * @param height height of the frames to be recorded
+     */
+    public synchronized void start(int width, int height) throws IOException
+    {
+        if (recording)
+        {
+            return;
+        }
+
+        if (writerThread != null && writerThread.isAlive())
+        {
+            throw new IllegalStateException("Previous recording is still being written");
+        }
+
+        final FileOutputStream output = new FileOutputStream(file);
+        final FileChannel channel = output.getChannel();
+
+        try
+        {
+            final ByteBuffer header = ByteBuffer.allocate(FrameRecording.FILE_HEADER_SIZE);
+            FrameRecording.writeFileHeader(header);
+            header.flip();
+            writeFully(channel, header);
+        }
+        catch (IOException ioe)
+        {
+            output.close();
+            throw ioe;
+        }
+
+        // A frame offered while the previous recording was being stopped would otherwise open this one
+        RecordedFrame stale;
+        while ((stale = pendingFrames.poll()) != null)
+        {
+            if (stale != endOfRecording)
+            {
+                freeFrames.offer(stale);
+            }
+        }
+
+        final int length = width * height * 3 / 2;
+        for (RecordedFrame frame : freeFrames)
+        {
+            frame.allocate(length);
+        }
+
+        synchronized (rateLock)
+        {
+            offeredAny = false;
+        }
+
+        error = null;
+        recording = true;
+
+        writerThread = new Thread("CAMView recorder")
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    write(channel);
+                }
+                catch (IOException ioe)
+                {
+                    error = ioe;
+                    recording = false;
+                }
+                catch (InterruptedException ignored)
+                {
+                }
+                finally
+                {
+                    try
+                    {
+                        output.close();
+                    }
+                    catch (IOException ignored)
+                    {
+                    }
+                }
+            }
+        };
+        writerThread.start();
+    }
+
+    /**
+     * Stops recording. Frames already queued are still written, the file is closed once they are.
+     */
+    public synchronized void stop()
+    {
+        if (recording)
+        {
+            recording = false;
+            pendingFrames.offer(endOfRecording);
+        }
+    }
+
+    /**
+     * Waits for the recording file to be closed after {@link #stop()}
+     *
+     * @return <code>false</code> if the timeout elapsed first
+     */
+    public boolean awaitStopped(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        final Thread thread = writerThread;
+
+        if (thread != null)
+        {
+            thread.join(unit.toMillis(timeout));
+            return !thread.isAlive();
+        }
+
+        return true;
+    }
+
+    public boolean isRecording()
+    {
+        return recording;
+    }
+
+    /**
+     * Records the frame if it is due and a recording buffer is free. Never blocks nor allocates, the frame data is
+     * copied before this method returns.
+     *
+     * @param nv21      frame data
+     * @param timestamp capture time in nanoseconds, e.g. {@link System#nanoTime()}
+     * @return <code>true</code> if the frame was queued for writing
+     */
+    public boolean offer(byte[] nv21, int width, int height, long timestamp)
+    {
+        if (!recording)
+        {
+            return false;
+        }
+
+        synchronized (rateLock)
+        {
+            if (offeredAny && timestamp - lastOfferedTimestamp < minIntervalNanos)
+            {
+                skippedFramesCount.incrementAndGet();
+                return false;
+            }
+
+            offeredAny = true;
+            lastOfferedTimestamp = timestamp;
+        }
+
+        final RecordedFrame frame = freeFrames.poll();
+
+        if (frame == null)
+        {
+            droppedFramesCount.incrementAndGet();
+            return false;
+        }
+
+        final int length = width * height * 3 / 2;
+        final boolean fits = frame.data != null && frame.data.length >= length;
+
+        if (fits)
+        {
+            System.arraycopy(nv21, 0, frame.data, 0, length);
+        }
+
+        frame.length = length;
+        frame.width = width;
+        frame.height = height;
+        frame.timestamp = timestamp;
+
+        // An undersized buffer is handed to the recorder thread to be allocated there, the frame is lost
+        if (!pendingFrames.offer(frame))
+        {
+            freeFrames.offer(frame);
+            droppedFramesCount.incrementAndGet();
+            return false;
+        }
+
+        if (!fits)
+        {
+            droppedFramesCount.incrementAndGet();
+        }
+
+        return fits;
+    }
+
+    public long getRecordedFramesCount()
+    {
+        return recordedFramesCount.get();
+    }
+
+    /**
+     * @return frames left out because they came sooner than the maximum frame rate allows
+     */
+    public long getSkippedFramesCount()
+    {
+        return skippedFramesCount.get();
+    }
+
+    /**
+     * @return due frames left out because all recording buffers were still waiting to be written
+     */
+    public long getDroppedFramesCount()
+    {
+        return droppedFramesCount.get();
+    }
+
+    /**
+     * @return error that stopped the recording, <code>null</code> if none
+     */
+    public IOException getError()
+    {
+        return error;
+    }
+
+    private void write(FileChannel channel) throws IOException, InterruptedException
+    {
+        final ByteBuffer header = ByteBuffer.allocate(FrameRecording.FRAME_HEADER_SIZE);
+        final ByteBuffer[] buffers = new ByteBuffer[2];
+        buffers[0] = header;
+
+        while (true)
+        {
+            final RecordedFrame frame = pendingFrames.take();
+
+            if (frame == endOfRecording)
+            {
+                return;
+            }
+
+            try
+            {
+                if (frame.allocate(frame.length))
+                {
+                    // Resize request from offer(), nothing to write
+                    continue;
+                }
+
+                header.clear();
+                FrameRecording.writeFrameHeader(header, FrameDescriptor.FORMAT_NV21, frame.width, frame.height, frame.timestamp, frame.length);
+                header.flip();
+                buffers[1] = ByteBuffer.wrap(frame.data, 0, frame.length);
+
+                while (buffers[1].hasRemaining())
+                {
+                    channel.write(buffers);
+                }
+
+                recordedFramesCount.incrementAndGet();
+            }
+            finally
+            {
+                freeFrames.offer(frame);
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+    }
+
+    private static class RecordedFrame
+    {
+        byte[] data;
+        int length;
+        int width;
+        int height;
+        long timestamp;
+
+        /**
+         * @return <code>true</code> if the buffer was too small for the given length and has been replaced
+         */
+        boolean allocate(int length)
+        {
+            if (length > 0 && (data == null || data.length < length))
+            {
+                data = new byte[length];
+                return true;
+            }
+
+            return false;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package eu.livotov.labs.android.camview.camera.replay;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import eu.livotov.labs.android.camview.camera.FrameDescriptor;
+
+/**
+ * Index of a file of recorded camera frames, along with the container format such files are written in.
+ * <p/>
+ * A recording starts with an 8 bytes file header: the {@link #MAGIC} bytes followed by the {@link #VERSION} byte.
+ * Frames follow one after another, each made of a {@link #FRAME_HEADER_SIZE} bytes header and the frame data. The
+ * header holds, big endian: format (int, a {@link FrameDescriptor} format), width (int), height (int), capture
+ * timestamp in nanoseconds (long) and data length (int). Frame data is a plain NV21 image.
+ * <p/>
+ * Frames are appended as they are recorded, so a file cut short by the recording process dying simply ends with
+ * an incomplete frame, which is left out of the index.
+ */
+public final class FrameRecording
+{
+    public final static byte[] MAGIC = {'C', 'A', 'M', 'V', 'R', 'E', 'C'};
+    public final static byte VERSION = 1;
+    public final static int FILE_HEADER_SIZE = 8;
+    public final static int FRAME_HEADER_SIZE = 24;
+
+    private int framesCount;
+    private long[] dataOffsets = new long[64];
+    private int[] dataLengths = new int[64];
+    private int[] widths = new int[64];
+    private int[] heights = new int[64];
+    private long[] timestamps = new long[64];
+    private int maxDataLength;
+
+    private FrameRecording()
+    {
+    }
+
+    /**
+     * Reads all frame headers of a recording
+     *
+     * @param channel recording, read from its start. Its position is left undefined.
+     */
+    public static FrameRecording index(FileChannel channel) throws IOException
+    {
+        final FrameRecording recording = new FrameRecording();
+        final ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+        final long size = channel.size();
+
+        header.limit(FILE_HEADER_SIZE);
+        readFully(channel, header, 0);
+
+        for (int i = 0; i < MAGIC.length; i++)
+        {
+            if (header.get(i) != MAGIC[i])
+            {
+                throw new IOException("Not a frame recording");
+            }
+        }
+
+        if (header.get(MAGIC.length) != VERSION)
+        {
+            throw new IOException("Unsupported frame recording version " + header.get(MAGIC.length));
+        }
+
+        long offset = FILE_HEADER_SIZE;
+
+        while (offset + FRAME_HEADER_SIZE <= size)
+        {
+            header.clear();
+            readFully(channel, header, offset);
+
+            final int format = header.getInt(0);
+            final int width = header.getInt(4);
+            final int height = header.getInt(8);
+            final long timestamp = header.getLong(12);
+            final int dataLength = header.getInt(20);
+            final long dataOffset = offset + FRAME_HEADER_SIZE;
+
+            if (format != FrameDescriptor.FORMAT_NV21 || width <= 0 || height <= 0 || dataLength < width * height * 3 / 2)
+            {
+                throw new IOException(String.format("Bad frame header at offset %s: format %s, %sx%s, %s bytes", offset, format, width, height, dataLength));
+            }
+
+            if (dataOffset + dataLength > size)
+            {
+                // Recording was cut short while this frame was being written
+                break;
+            }
+
+            recording.add(dataOffset, dataLength, width, height, timestamp);
+            offset = dataOffset + dataLength;
+        }
+
+        return recording;
+    }
+
+    /**
+     * Puts the file header of a recording into the buffer
+     */
+    public static void writeFileHeader(ByteBuffer buffer)
+    {
+        buffer.put(MAGIC);
+        buffer.put(VERSION);
+    }
+
+    /**
+     * Puts the header of a frame into the buffer, its data is expected to follow
+     */
+    public static void writeFrameHeader(ByteBuffer buffer, int format, int width, int height, long timestamp, int dataLength)
+    {
+        buffer.putInt(format);
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.putLong(timestamp);
+        buffer.putInt(dataLength);
+    }
+
+    public int getFramesCount()
+    {
+        return framesCount;
+    }
+
+    /**
+     * @return file offset of the data of the given frame
+     */
+    public long getDataOffset(int frame)
+    {
+        return dataOffsets[frame];
+    }
+
+    public int getDataLength(int frame)
+    {
+        return dataLengths[frame];
+    }
+
+    public int getWidth(int frame)
+    {
+        return widths[frame];
+    }
+
+    public int getHeight(int frame)
+    {
+        return heights[frame];
+    }
+
+    public long getTimestamp(int frame)
+    {
+        return timestamps[frame];
+    }
+
+    /**
+     * @return size of the largest frame data, enough for a buffer to hold any frame of the recording
+     */
+    public int getMaxDataLength()
+    {
+        return maxDataLength;
+    }
+
+    private void add(long dataOffset, int dataLength, int width, int height, long timestamp)
+    {
+        if (framesCount == dataOffsets.length)
+        {
+            final int capacity = framesCount * 2;
+            dataOffsets = Arrays.copyOf(dataOffsets, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            dataLengths = Arrays.copyOf(dataLengths, capacity);
+            widths = Arrays.copyOf(widths, capacity);
+            heights = Arrays.copyOf(heights, capacity);
+        }
+
+        dataOffsets[framesCount] = dataOffset;
+        dataLengths[framesCount] = dataLength;
+        widths[framesCount] = width;
+        heights[framesCount] = height;
+        timestamps[framesCount] = timestamp;
+        maxDataLength = Math.max(maxDataLength, dataLength);
+        framesCount++;
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            final int read = channel.read(buffer, offset);
+
+            if (read < 0)
+            {
+                throw new EOFException("Unexpected end of frame recording at offset " + offset);
+            }
+
+            offset += read;
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package eu.livotov.labs.android.camview.camera.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import eu.livotov.labs.android.camview.camera.FrameDescriptor;
+import eu.livotov.labs.android.camview.camera.FrameSource;
+import eu.livotov.labs.android.camview.camera.LiveFrame;
+import eu.livotov.labs.android.camview.camera.LiveFrameExecutor;
+
+/**
+ * Replays a {@link FrameRecording} into a live frame executor, from a thread of its own.
+ * <p/>
+ * Frames cycle through a fixed number of buffers, as camera preview buffers do. At a fixed frame rate the source
+ * behaves like a camera: a frame due while all buffers are leased is dropped. At the maximum rate (frame rate 0) it
+ * waits for a buffer instead, so every frame is offered and the replay runs as fast as the pipeline takes frames.
+ * <p/>
+ * The recording is either memory mapped, frames then being described right over the mapped file without any copy,
+ * or streamed, every frame being read into a heap buffer. Streaming suits recordings too large to be mapped.
+ */
+public class FrameReplaySource implements FrameSource
+{
+    public final static int MODE_MEMORY_MAPPED = 0;
+    public final static int MODE_STREAMED = 1;
+
+    public final static int DEFAULT_BUFFERS_COUNT = 3;
+
+    private final File file;
+    private final int mode;
+    private volatile float frameRate;
+    private volatile int loopsCount = 1;
+    private int buffersCount = DEFAULT_BUFFERS_COUNT;
+
+    private final AtomicLong deliveredFramesCount = new AtomicLong();
+    private final AtomicLong droppedFramesCount = new AtomicLong();
+    private volatile Thread replayThread;
+    private volatile boolean running;
+    private volatile CountDownLatch completion;
+    private volatile IOException error;
+    private volatile FrameRecording recording;
+
+    /**
+     * @param mode {@link #MODE_MEMORY_MAPPED} or {@link #MODE_STREAMED}
+     */
+    public FrameReplaySource(File file, int mode)
+    {
+        if (mode != MODE_MEMORY_MAPPED && mode != MODE_STREAMED)
+        {
+            throw new IllegalArgumentException("Unknown replay mode: " + mode);
+        }
+
+        this.file = file;
+        this.mode = mode;
+    }
+
+    public float getFrameRate()
+    {
+        return frameRate;
+    }
+
+    /**
+     * @param frameRate frames per second to replay at, 0 to replay as fast as the pipeline takes frames
+     */
+    public void setFrameRate(float frameRate)
+    {
+        if (frameRate < 0)
+        {
+            throw new IllegalArgumentException("Frame rate cannot be negative: " + frameRate);
+        }
+
+        this.frameRate = frameRate;
+    }
+
+    public int getLoopsCount()
+    {
+        return loopsCount;
+    }
+
+    /**
+     * @param loopsCount how many times the recording is replayed, 0 to replay it until stopped
+     */
+    public void setLoopsCount(int loopsCount)
+    {
+        if (loopsCount < 0)
+        {
+            throw new IllegalArgumentException("Loops count cannot be negative: " + loopsCount);
+        }
+
+        this.loopsCount = loopsCount;
+    }
+
+    public int getBuffersCount()
+    {
+        return buffersCount;
+    }
+
+    /**
+     * Sets how many frames may be leased to the pipeline at once. Takes effect on the next start.
+     */
+    public void setBuffersCount(int count)
+    {
+        if (count < 1)
+        {
+            throw new IllegalArgumentException("At least one buffer is required. Specified value was " + count);
+        }
+
+        this.buffersCount = count;
+    }
+
+    @Override
+    public synchronized void start(final LiveFrameExecutor executor) throws IOException
+    {
+        if (running)
+        {
+            return;
+        }
+
+        // Thread of a stopped replay still clears the running flag and closes its file as it ends, which must not
+        // overlap with the new replay. Once interrupted it ends right away.
+        awaitReplayThread();
+
+        final RandomAccessFile input = new RandomAccessFile(file, "r");
+        final FileChannel channel = input.getChannel();
+        final MappedByteBuffer mapped;
+
+        try
+        {
+            recording = FrameRecording.index(channel);
+
+            if (mode == MODE_MEMORY_MAPPED)
+            {
+                if (channel.size() > Integer.MAX_VALUE)
+                {
+                    throw new IOException("Recording is too large to be memory mapped, replay it streamed instead: " + file);
+                }
+
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            else
+            {
+                mapped = null;
+            }
+        }
+        catch (IOException ioe)
+        {
+            input.close();
+            throw ioe;
+        }
+
+        // Frames of a stopped replay may still be released long after, into the queue of their own replay
+        final BlockingQueue<LiveFrame> freeFrames = new ArrayBlockingQueue<LiveFrame>(buffersCount);
+        final LiveFrame.Recycler recycler = new LiveFrame.Recycler()
+        {
+            @Override
+            public void recycle(LiveFrame frame)
+            {
+                freeFrames.offer(frame);
+            }
+        };
+
+        for (int i = 0; i < buffersCount; i++)
+        {
+            freeFrames.add(mapped != null ? new LiveFrame(new FrameDescriptor(), recycler) : new LiveFrame(new byte[recording.getMaxDataLength()], recycler));
+        }
+
+        deliveredFramesCount.set(0);
+        droppedFramesCount.set(0);
+        error = null;
+        final CountDownLatch latch = new CountDownLatch(1);
+        completion = latch;
+        running = true;
+
+        replayThread = new Thread("CAMView replay")
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    replay(executor, freeFrames, channel, mapped);
+                }
+                catch (IOException ioe)
+                {
+                    error = ioe;
+                }
+                catch (InterruptedException ignored)
+                {
+                }
+                finally
+                {
+                    running = false;
+
+                    try
+                    {
+                        input.close();
+                    }
+                    catch (IOException ignored)
+                    {
+                    }
+
+                    latch.countDown();
+                }
+            }
+        };
+        replayThread.start();
+    }
+
+    @Override
+    public void stop()
+    {
+        running = false;
+
+        final Thread thread = replayThread;
+        if (thread != null)
+        {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    /**
+     * Waits for the replay to complete, that is for all frames to be delivered and released by the pipeline
+     *
+     * @return <code>false</code> if the timeout elapsed first
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        final CountDownLatch latch = completion;
+        return latch == null || latch.await(timeout, unit);
+    }
+
+    /**
+     * @return index of the recording being replayed, <code>null</code> before the first start
+     */
+    public FrameRecording getRecording()
+    {
+        return recording;
+    }
+
+    public long getDeliveredFramesCount()
+    {
+        return deliveredFramesCount.get();
+    }
+
+    /**
+     * @return frames skipped because they were due while all buffers were leased, only happens at a fixed frame rate
+     */
+    public long getDroppedFramesCount()
+    {
+        return droppedFramesCount.get();
+    }
+
+    /**
+     * @return error that ended the last replay early, <code>null</code> if none
+     */
+    public IOException getError()
+    {
+        return error;
+    }
+
+    private void replay(LiveFrameExecutor executor, BlockingQueue<LiveFrame> freeFrames, FileChannel channel, MappedByteBuffer mapped) throws IOException, InterruptedException
+    {
+        final FrameRecording recording = this.recording;
+        final long period = frameRate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / frameRate) : 0;
+        long due = System.nanoTime();
+
+        for (int loop = 0; running && (loopsCount == 0 || loop < loopsCount); loop++)
+        {
+            for (int i = 0; running && i < recording.getFramesCount(); i++)
+            {
+                final LiveFrame frame;
+
+                if (period > 0)
+                {
+                    waitUntil(due);
+                    due += period;
+                    frame = freeFrames.poll();
+
+                    if (frame == null)
+                    {
+                        droppedFramesCount.incrementAndGet();
+                        continue;
+                    }
+                }
+                else
+                {
+                    frame = freeFrames.take();
+                }
+
+                final int width = recording.getWidth(i);
+                final int height = recording.getHeight(i);
+                final long dataOffset = recording.getDataOffset(i);
+                final int dataLength = recording.getDataLength(i);
+
+                if (mapped != null)
+                {
+                    final ByteBuffer data = mapped.duplicate();
+                    data.limit((int) dataOffset + dataLength);
+                    data.position((int) dataOffset);
+                    frame.getDescriptor().setNV21(data, width, height);
+                }
+                else
+                {
+                    FrameRecording.readFully(channel, ByteBuffer.wrap(frame.getData(), 0, dataLength), dataOffset);
+                }
+
+                frame.acquire(width, height);
+                frame.getDescriptor().setTimestamp(recording.getTimestamp(i));
+                deliveredFramesCount.incrementAndGet();
+                executor.submitLiveFrame(frame);
+            }
+        }
+
+        // Replay is only complete once the pipeline is done with every frame
+        final int buffersCount = freeFrames.size() + freeFrames.remainingCapacity();
+
+        for (int i = 0; i < buffersCount; i++)
+        {
+            freeFrames.take();
+        }
+    }
+
+    private void awaitReplayThread()
+    {
+        final Thread thread = replayThread;
+
+        if (thread == null)
+        {
+            return;
+        }
+
+        boolean interrupted = false;
+
+        while (thread.isAlive())
+        {
+            try
+            {
+                thread.join();
+            }
+            catch (InterruptedException ie)
+            {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void waitUntil(long due)
+    {
+        long delay;
+
+        while (running && (delay = due - System.nanoTime()) > 0)
+        {
+            LockSupport.parkNanos(delay);
+        }
+    }
+}
@@ -16,22 +16,26 @@
 
 package eu.livotov.labs.android.camview.camera.v1;
 
-import android.content.Context;
+import android.annotation.TargetApi;
 import android.hardware.Camera;
+import android.os.Build;
+import android.os.Handler;
 import android.util.Log;
 
 import java.util.ArrayList;
 import java.util.Collection;
 
-import eu.livotov.labs.android.camview.camera.CAMViewAsyncTask;
+import eu.livotov.labs.android.camview.camera.FocusScheduler;
 
-
-final class AutoFocusManager implements Camera.AutoFocusCallback
+/**
+ * Runs v1 camera focus cycles as decided by the {@link FocusScheduler}. Focus callbacks and delayed checks are
+ * delivered on the camera events thread, nothing waits for the focus to complete.
+ */
+final class AutoFocusManager extends FocusScheduler implements Camera.AutoFocusCallback
 {
 
     private static final String TAG = AutoFocusManager.class.getSimpleName();
 
-    private static final long AUTO_FOCUS_INTERVAL_MS = 2000L;
     private static final Collection<String> FOCUS_MODES_CALLING_AF;
 
     static
@@ -41,91 +45,143 @@ final class AutoFocusManager implements Camera.AutoFocusCallback
         FOCUS_MODES_CALLING_AF.add(Camera.Parameters.FOCUS_MODE_MACRO);
     }
 
-    private boolean active;
-    private final boolean useAutoFocus;
     private final Camera camera;
-    private CAMViewAsyncTask<Object, Object, Object> outstandingTask;
-
-    AutoFocusManager(Context context, Camera camera)
+    private final CameraParametersCache parametersCache;
+    private final Handler handler;
+    private volatile boolean continuous = true;
+
+    /**
+     * @param handler handler of the thread the camera was opened on, its callbacks are delivered there
+     */
+    AutoFocusManager(Camera camera, CameraParametersCache parametersCache, Handler handler)
     {
         this.camera = camera;
-        String currentFocusMode = camera.getParameters().getFocusMode();
-        useAutoFocus = true && FOCUS_MODES_CALLING_AF.contains(currentFocusMode);
-        start();
+        this.parametersCache = parametersCache;
+        this.handler = handler;
+    }
+
+    boolean isContinuous()
+    {
+        return continuous;
+    }
+
+    /**
+     * @param continuous <code>true</code> to let the camera focus continuously where it can, focus cycles then only run
+     *                   on request. Takes effect on the next {@link #applyTo(Camera.Parameters)}.
+     */
+    void setContinuous(boolean continuous)
+    {
+        this.continuous = continuous;
+    }
+
+    /**
+     * Sets the focus mode and the focus and metering areas to the given parameters, and enables feedback triggered
+     * focus cycles if the camera does not focus by itself in the mode set
+     */
+    void applyTo(Camera.Parameters parameters)
+    {
+        final Collection<String> supported = parameters.getSupportedFocusModes();
+        String focusMode = null;
+
+        if (continuous && Build.VERSION.SDK_INT >= 14)
+        {
+            focusMode = getContinuousFocusMode14(supported);
+        }
+
+        if (focusMode == null)
+        {
+            focusMode = CameraUtilsV1.findSettableValue(supported, Camera.Parameters.FOCUS_MODE_AUTO, Camera.Parameters.FOCUS_MODE_MACRO);
+        }
+
+        if (focusMode != null && !focusMode.equals(parameters.getFocusMode()))
+        {
+            parameters.setFocusMode(focusMode);
+        }
+
+        if (Build.VERSION.SDK_INT >= 14)
+        {
+            CameraUtilsV1.setFocusAreas(parameters, getAreaPercent());
+        }
+
+        setFeedbackTriggersEnabled(FOCUS_MODES_CALLING_AF.contains(parameters.getFocusMode()));
     }
 
-    @SuppressWarnings("unchecked")
     @Override
-    public synchronized void onAutoFocus(boolean success, Camera theCamera)
+    public void onAutoFocus(boolean success, Camera theCamera)
     {
-        if (active)
+        if (!FOCUS_MODES_CALLING_AF.contains(parametersCache.getFocusMode()))
         {
-            outstandingTask = new AutoFocusTask();
-            outstandingTask.execSerial();
+            // Focus requested in a continuous mode stays locked until cancelled, cancelling resumes continuous focus
+            cancelFocus();
         }
+
+        onFocusCompleted(success);
     }
 
-    synchronized void start()
+    @Override
+    protected void post(Runnable task, long delayMillis)
     {
-        if (useAutoFocus)
+        handler.postDelayed(task, delayMillis);
+    }
+
+    @Override
+    protected boolean startFocus()
+    {
+        try
         {
-            active = true;
-            try
-            {
-                camera.autoFocus(this);
-            }
-            catch (RuntimeException re)
-            {
-                // Have heard RuntimeException reported in Android 4.0.x+; continue?
-                Log.w(TAG, "Unexpected exception while focusing", re);
-            }
+            camera.autoFocus(this);
+            return true;
+        }
+        catch (RuntimeException re)
+        {
+            // Have heard RuntimeException reported in Android 4.0.x+; continue?
+            Log.w(TAG, "Unexpected exception while focusing", re);
+            return false;
         }
     }
 
-    synchronized void stop()
+    @Override
+    protected void cancelFocus()
     {
-        if (useAutoFocus)
+        try
         {
-            try
-            {
-                camera.cancelAutoFocus();
-            }
-            catch (RuntimeException re)
-            {
-                // Have heard RuntimeException reported in Android 4.0.x+; continue?
-                Log.w(TAG, "Unexpected exception while cancelling focusing", re);
-            }
+            camera.cancelAutoFocus();
         }
-        if (outstandingTask != null)
+        catch (RuntimeException re)
         {
-            outstandingTask.cancel();
-            outstandingTask = null;
+            // Have heard RuntimeException reported in Android 4.0.x+; continue?
+            Log.w(TAG, "Unexpected exception while cancelling focusing", re);
         }
-        active = false;
     }
 
-    private final class AutoFocusTask extends CAMViewAsyncTask<Object, Object, Object>
+    @Override
+    protected void onAreaPercentChanged()
     {
-        @Override
-        protected Object doInBackground(Object... voids)
+        post(new Runnable()
         {
-            try
-            {
-                Thread.sleep(AUTO_FOCUS_INTERVAL_MS);
-            }
-            catch (InterruptedException e)
+            @Override
+            public void run()
             {
-                // continue
-            }
-            synchronized (AutoFocusManager.this)
-            {
-                if (active)
+                if (Build.VERSION.SDK_INT >= 14)
                 {
-                    start();
+                    try
+                    {
+                        CameraUtilsV1.setFocusAreas(parametersCache.edit(), getAreaPercent());
+                        parametersCache.commit();
+                    }
+                    catch (RuntimeException re)
+                    {
+                        Log.w(TAG, "Unexpected exception while setting focus areas", re);
+                    }
                 }
             }
-            return null;
-        }
+        }, 0);
+    }
+
+    @TargetApi(14)
+    private static String getContinuousFocusMode14(Collection<String> focusModes)
+    {
+        return CameraUtilsV1.findSettableValue(focusModes, Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE, Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO);
     }
 
 }
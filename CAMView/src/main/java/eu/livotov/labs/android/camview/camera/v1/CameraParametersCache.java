@@ -0,0 +1,155 @@
+package eu.livotov.labs.android.camview.camera.v1;
+
+import android.hardware.Camera;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * In memory snapshot of the {@link Camera.Parameters} in effect.
+ * <p/>
+ * Every {@link Camera#getParameters()} call is a binder round trip followed by the parsing of the whole flattened
+ * parameters string, so settings read often (preview size and format, flash and focus modes) are served from the
+ * snapshot instead. It is refreshed once after each {@link Camera#setParameters(Camera.Parameters)}, so it holds the
+ * values the driver actually settled on rather than the requested ones.
+ * <p/>
+ * Writes are batched: changes go to the object returned by {@link #edit()} and several of them reach the camera with a
+ * single {@link #commit()}.
+ */
+final class CameraParametersCache
+{
+    private final Camera camera;
+    private Camera.Parameters parameters;
+    private boolean modified;
+
+    private int previewWidth;
+    private int previewHeight;
+    private int previewFormat;
+    private String flashMode;
+    private String focusMode;
+    private List<String> supportedFlashModes;
+    private List<String> supportedFocusModes;
+
+    CameraParametersCache(Camera camera)
+    {
+        this.camera = camera;
+    }
+
+    /**
+     * @return parameters to apply changes to, sent to the camera by the next {@link #commit()}
+     */
+    synchronized Camera.Parameters edit()
+    {
+        load();
+        modified = true;
+        return parameters;
+    }
+
+    /**
+     * Sends pending changes to the camera, if any, and refreshes the snapshot from the camera. If the camera rejects
+     * them, the pending changes are dropped and the snapshot is re-read on next use.
+     *
+     * @throws RuntimeException as thrown by {@link Camera#setParameters(Camera.Parameters)}
+     */
+    synchronized void commit()
+    {
+        if (!modified)
+        {
+            return;
+        }
+
+        modified = false;
+
+        try
+        {
+            camera.setParameters(parameters);
+        }
+        finally
+        {
+            parameters = null;
+        }
+
+        load();
+    }
+
+    /**
+     * Drops the snapshot and pending changes, for parameters changed behind the cache back to be re-read
+     */
+    synchronized void invalidate()
+    {
+        parameters = null;
+        modified = false;
+    }
+
+    synchronized int getPreviewWidth()
+    {
+        load();
+        return previewWidth;
+    }
+
+    synchronized int getPreviewHeight()
+    {
+        load();
+        return previewHeight;
+    }
+
+    synchronized int getPreviewFormat()
+    {
+        load();
+        return previewFormat;
+    }
+
+    /**
+     * @return current flash mode, <code>null</code> if the camera has no flash
+     */
+    synchronized String getFlashMode()
+    {
+        load();
+        return flashMode;
+    }
+
+    synchronized String getFocusMode()
+    {
+        load();
+        return focusMode;
+    }
+
+    /**
+     * @return supported flash modes, empty if the camera has no flash
+     */
+    synchronized List<String> getSupportedFlashModes()
+    {
+        load();
+        return supportedFlashModes;
+    }
+
+    synchronized List<String> getSupportedFocusModes()
+    {
+        load();
+        return supportedFocusModes;
+    }
+
+    private void load()
+    {
+        if (parameters != null)
+        {
+            return;
+        }
+
+        parameters = camera.getParameters();
+
+        final Camera.Size previewSize = parameters.getPreviewSize();
+        previewWidth = previewSize != null ? previewSize.width : 0;
+        previewHeight = previewSize != null ? previewSize.height : 0;
+        previewFormat = parameters.getPreviewFormat();
+        flashMode = parameters.getFlashMode();
+        focusMode = parameters.getFocusMode();
+        supportedFlashModes = unmodifiable(parameters.getSupportedFlashModes());
+        supportedFocusModes = unmodifiable(parameters.getSupportedFocusModes());
+    }
+
+    private static List<String> unmodifiable(List<String> values)
+    {
+        return values != null ? Collections.unmodifiableList(values) : Collections.<String>emptyList();
+    }
+}
@@ -3,6 +3,7 @@ package eu.livotov.labs.android.camview.camera.v1;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.Configuration;
+import android.graphics.Rect;
 import android.hardware.Camera;
 import android.os.Build;
 import android.view.Gravity;
@@ -12,8 +13,12 @@ import android.view.WindowManager;
 import android.widget.FrameLayout;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
+import eu.livotov.labs.android.camview.camera.CameraCapabilityCache;
+import eu.livotov.labs.android.camview.camera.PreviewSizePolicy;
+
 /**
  * Created by dlivotov on 02/09/2015.
  */
@@ -37,10 +42,8 @@ public class CameraUtilsV1
     }
 
 
-    static android.hardware.Camera.Parameters getMainCameraParameters(Camera camera)
+    static void setMainCameraParameters(android.hardware.Camera.Parameters parameters)
     {
-        android.hardware.Camera.Parameters parameters = camera.getParameters();
-
         if (Build.VERSION.SDK_INT >= 9)
         {
             setFocusMode(parameters);
@@ -64,8 +67,6 @@ public class CameraUtilsV1
             {
             }
         }
-
-        return parameters;
     }
 
     @TargetApi(14)
@@ -132,22 +133,26 @@ public class CameraUtilsV1
         }
     }
 
-    static android.hardware.Camera.Parameters getFailsafeCameraParameters(Camera camera)
+    static void setFailsafeCameraParameters(android.hardware.Camera.Parameters parameters)
     {
-        android.hardware.Camera.Parameters parameters = camera.getParameters();
-
         if (Build.VERSION.SDK_INT >= 9)
         {
             setFocusMode(parameters);
         }
-        return parameters;
     }
 
-    static void setupSurfaceAndCameraForPreview(int cameraId, Camera camera, SurfaceView surfaceView)
+    /**
+     * Sets the display orientation and lays the surface out, and sets the preview size to the given
+     * parameters. Parameters are not sent to the camera, it is up to the caller to do so along with its other changes.
+     *
+     * @param sizePolicy      policy picking the preview size, <code>null</code> to pick the size that best fits the view
+     * @param capabilityCache cache of the sizes picked on previous runs, may be <code>null</code>
+     */
+    static void setupSurfaceAndCameraForPreview(String cameraId, Camera camera, Camera.Parameters parameters, SurfaceView surfaceView, PreviewSizePolicy sizePolicy, CameraCapabilityCache capabilityCache)
     {
         ImageParameters mImageParameters = new ImageParameters();
         Camera.CameraInfo cameraInfo = new Camera.CameraInfo();
-        Camera.getCameraInfo(cameraId, cameraInfo);
+        Camera.getCameraInfo(Integer.parseInt(cameraId), cameraInfo);
 
         // Clockwise rotation needed to align the window display to the natural position
         int rotation = ((WindowManager) surfaceView.getContext().getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay().getRotation();
@@ -198,10 +203,18 @@ public class CameraUtilsV1
 
         camera.setDisplayOrientation(mImageParameters.mDisplayOrientation);
 
+        Camera.Size sz = getCachedPreviewSize(capabilityCache, cameraId, parameters.getSupportedPreviewSizes(), surfaceView, sizePolicy);
+
+        if (sz == null)
+        {
+            sz = sizePolicy != null ? selectPreviewSize(sizePolicy, parameters.getSupportedPreviewSizes(), surfaceView.getWidth(), surfaceView.getHeight()) : getOptimalPreviewSize(parameters.getSupportedPreviewSizes(), surfaceView.getWidth(), surfaceView.getHeight());
 
-        Camera.Parameters parameters = camera.getParameters();
+            if (capabilityCache != null && sz != null)
+            {
+                capabilityCache.putPreviewSize(cameraId, surfaceView.getWidth(), surfaceView.getHeight(), sizePolicy != null ? sizePolicy.getPixelBudget() : 0, sz.width, sz.height);
+            }
+        }
 
-        Camera.Size sz = getOptimalPreviewSize(parameters.getSupportedPreviewSizes(), surfaceView.getWidth(), surfaceView.getHeight());
         parameters.setPreviewSize(sz.width, sz.height);
 
 
@@ -232,16 +245,70 @@ public class CameraUtilsV1
         FrameLayout.LayoutParams prms = new FrameLayout.LayoutParams(new_width, new_height);
         prms.gravity = Gravity.CENTER;
         surfaceView.setLayoutParams(prms);
+    }
+
+    /**
+     * Centers focus and metering areas on the given share of the frame, where the camera supports them
+     *
+     * @param areaPercent share of the frame width and height, from 0.1 to 1.0
+     */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    static void setFocusAreas(android.hardware.Camera.Parameters parameters, double areaPercent)
+    {
+        // Area coordinates run from -1000 to 1000 across the frame, whatever the preview size is
+        final int halfSize = (int) Math.round(1000 * areaPercent);
+        final List<Camera.Area> areas = Collections.singletonList(new Camera.Area(new Rect(-halfSize, -halfSize, halfSize, halfSize), 1000));
+
+        if (parameters.getMaxNumFocusAreas() > 0)
+        {
+            parameters.setFocusAreas(areas);
+        }
+
+        if (parameters.getMaxNumMeteringAreas() > 0)
+        {
+            parameters.setMeteringAreas(areas);
+        }
+    }
+
+    /**
+     * @return size picked for the same view and pixel budget on a previous run, if the camera still supports it
+     */
+    private static Camera.Size getCachedPreviewSize(CameraCapabilityCache capabilityCache, String cameraId, List<Camera.Size> sizes, SurfaceView surfaceView, PreviewSizePolicy sizePolicy)
+    {
+        final int[] cached = capabilityCache != null && sizes != null ? capabilityCache.getPreviewSize(cameraId, surfaceView.getWidth(), surfaceView.getHeight(), sizePolicy != null ? sizePolicy.getPixelBudget() : 0) : null;
+
+        if (cached != null)
+        {
+            for (Camera.Size size : sizes)
+            {
+                if (size.width == cached[0] && size.height == cached[1])
+                {
+                    return size;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private static Camera.Size selectPreviewSize(PreviewSizePolicy sizePolicy, List<Camera.Size> sizes, int w, int h)
+    {
+        if (sizes == null)
+        {
+            return null;
+        }
 
+        final int[] widths = new int[sizes.size()];
+        final int[] heights = new int[sizes.size()];
 
-        // Set continuous picture focus, if it's supported
-        if (parameters.getSupportedFocusModes().contains(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE))
+        for (int i = 0; i < widths.length; i++)
         {
-            parameters.setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE);
+            widths[i] = sizes.get(i).width;
+            heights[i] = sizes.get(i).height;
         }
 
-        // Lock in the changes
-        camera.setParameters(parameters);
+        final int selected = sizePolicy.select(widths, heights, w, h);
+        return selected >= 0 ? sizes.get(selected) : null;
     }
 
     private static Camera.Size getOptimalPreviewSize(List<Camera.Size> sizes, int w, int h)
@@ -2,36 +2,67 @@ package eu.livotov.labs.android.camview.camera.v1;
 
 import android.graphics.ImageFormat;
 import android.hardware.Camera;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 
 import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import eu.livotov.labs.android.camview.camera.AbstractController;
 import eu.livotov.labs.android.camview.camera.CAMViewAsyncTask;
+import eu.livotov.labs.android.camview.camera.CameraCapabilityCache;
 import eu.livotov.labs.android.camview.camera.CameraDelayedOperationResult;
 import eu.livotov.labs.android.camview.camera.CameraInfo;
+import eu.livotov.labs.android.camview.camera.FocusScheduler;
 import eu.livotov.labs.android.camview.camera.LiveDataProcessingCallback;
+import eu.livotov.labs.android.camview.camera.LiveFrame;
+import eu.livotov.labs.android.camview.camera.LiveFrameExecutor;
 import eu.livotov.labs.android.camview.camera.PictureProcessingCallback;
+import eu.livotov.labs.android.camview.camera.replay.FrameRecorder;
 
 /**
  * Created by dlivotov on 02/09/2015.
  */
 public class DefaultCameraV1Controller extends AbstractController implements Camera.PreviewCallback
 {
+    /**
+     * Total delay waited between attempts to open a busy camera before giving up, the time the attempts take is not
+     * counted
+     */
+    private static final long OPEN_RETRY_WINDOW_MS = 5000;
+    private static final long OPEN_RETRY_INITIAL_DELAY_MS = 50;
+    private static final long OPEN_RETRY_MAX_DELAY_MS = 1000;
+
     private CameraInfo camera;
+    private final CameraCapabilityCache capabilityCache;
     private Camera rawCameraObject;
+    private volatile CameraParametersCache parametersCache;
     private AtomicBoolean isOpen = new AtomicBoolean(false);
     private AtomicBoolean isInInitState = new AtomicBoolean(false);
-    private byte[] previewBuffer;
+    private volatile PreviewBufferRing previewBuffers;
     private SurfaceHolder surfaceHolder;
     private int previewFormat = ImageFormat.NV21;
+    private volatile FrameRecorder frameRecorder;
+    private volatile AutoFocusManager focusManager;
+    private HandlerThread eventsThread;
 
     public DefaultCameraV1Controller(CameraInfo camera, CameraDelayedOperationResult callback)
+    {
+        this(camera, null, callback);
+    }
+
+    /**
+     * @param capabilityCache cache to skip parameter sets the camera rejected on previous runs and to keep preview
+     *                        sizes in, <code>null</code> to negotiate everything from scratch
+     */
+    public DefaultCameraV1Controller(CameraInfo camera, CameraCapabilityCache capabilityCache, CameraDelayedOperationResult callback)
     {
         this.camera = camera;
+        this.capabilityCache = capabilityCache;
         open(callback);
     }
 
@@ -52,6 +83,13 @@ public class DefaultCameraV1Controller extends AbstractController implements Cam
     {
         if (isOpen.get() && isInInitState.compareAndSet(false, true))
         {
+            stopLiveDataCapture();
+
+            if (focusManager != null)
+            {
+                focusManager.stop();
+            }
+
             new CAMViewAsyncTask()
             {
                 int cameraErrorCode = 0;
@@ -62,6 +100,8 @@ public class DefaultCameraV1Controller extends AbstractController implements Cam
                     isOpen.set(false);
                     isInInitState.set(false);
                     rawCameraObject = null;
+                    parametersCache = null;
+                    focusManager = null;
 
                     if (callback != null)
                     {
@@ -83,6 +123,12 @@ public class DefaultCameraV1Controller extends AbstractController implements Cam
                 @Override
                 protected Object doInBackground(Object[] args) throws Throwable
                 {
+                    if (previewBuffers != null)
+                    {
+                        previewBuffers.dispose();
+                        previewBuffers = null;
+                    }
+
                     if (rawCameraObject != null)
                     {
                         rawCameraObject.setPreviewCallbackWithBuffer(null);
@@ -90,6 +136,8 @@ public class DefaultCameraV1Controller extends AbstractController implements Cam
                         rawCameraObject.stopPreview();
                         rawCameraObject.release();
                     }
+
+                    quitEventsThread();
                     return null;
                 }
             }.execSerial();
@@ -101,38 +149,77 @@ public class DefaultCameraV1Controller extends AbstractController implements Cam
     {
         if (isCameraReadyForUserOperations())
         {
-            try
+            if (surfaceHolder == null || surfaceHolder != surfaceView.getHolder())
+            {
+                surfaceHolder = surfaceView.getHolder();
+                rawCameraObject.setPreviewDisplay(surfaceHolder);
+            }
+
+            // Base parameters were negotiated as the camera was opened, only the view dependent ones are left
+            final android.hardware.Camera.Parameters parameters = parametersCache.edit();
+            parameters.setPreviewFormat(previewFormat);
+            CameraUtilsV1.setupSurfaceAndCameraForPreview(camera.getCameraId(), rawCameraObject, parameters, surfaceView, previewSizePolicy, capabilityCache);
+            focusManager.applyTo(parameters);
+            parametersCache.commit();
+
+            rawCameraObject.startPreview();
+            rechargePreviewBuffer();
+            focusManager.start();
+
+            if (liveDataProcessor != null)
             {
-                android.hardware.Camera.Parameters parameters = CameraUtilsV1.getMainCameraParameters(rawCameraObject);
-                parameters.setPreviewFormat(previewFormat);
-                rawCameraObject.setParameters(parameters);
+                // Resume live data processing stopped by a previous stopPreview()
+                startLiveDataCapture(liveDataProcessor);
             }
-            catch (Throwable err)
+        }
+    }
+
+    /**
+     * Sets the base parameters, which do not depend on the view, falling back to a failsafe set and then to the
+     * camera defaults. Runs on the camera thread right after the camera is opened, while the view is being laid out.
+     * Sets the camera kept rejecting on previous runs are skipped, see {@link CameraCapabilityCache}.
+     */
+    private void negotiateParameters(CameraParametersCache parameters)
+    {
+        final int known = capabilityCache != null ? capabilityCache.getWorkingParameters(camera.getCameraId()) : CameraCapabilityCache.PARAMETERS_UNKNOWN;
+        final int tried = known != CameraCapabilityCache.PARAMETERS_UNKNOWN ? known : CameraCapabilityCache.PARAMETERS_MAIN;
+        int set = tried;
+
+        for (; set < CameraCapabilityCache.PARAMETERS_DEFAULTS; set++)
+        {
+            try
             {
-                Log.e(getClass().getSimpleName(), "Master parameters set was rejected by a camera, trying failsafe one.", err);
+                final android.hardware.Camera.Parameters edited = parameters.edit();
 
-                try
+                if (set == CameraCapabilityCache.PARAMETERS_MAIN)
                 {
-                    android.hardware.Camera.Parameters parameters = CameraUtilsV1.getFailsafeCameraParameters(rawCameraObject);
-                    parameters.setPreviewFormat(previewFormat);
-                    rawCameraObject.setParameters(parameters);
+                    CameraUtilsV1.setMainCameraParameters(edited);
                 }
-                catch (Throwable err2)
+                else
                 {
-                    Log.e(getClass().getSimpleName(), "Failsafe parameters set was rejected by a camera, trying to use it as is.", err2);
+                    CameraUtilsV1.setFailsafeCameraParameters(edited);
                 }
-            }
 
-            if (surfaceHolder == null || surfaceHolder != surfaceView.getHolder())
+                edited.setPreviewFormat(previewFormat);
+                parameters.commit();
+                break;
+            }
+            catch (RuntimeException err)
             {
-                surfaceHolder = surfaceView.getHolder();
-                rawCameraObject.setPreviewDisplay(surfaceHolder);
+                if (set == CameraCapabilityCache.PARAMETERS_MAIN)
+                {
+                    Log.e(getClass().getSimpleName(), "Master parameters set was rejected by a camera, trying failsafe one.", err);
+                }
+                else
+                {
+                    Log.e(getClass().getSimpleName(), "Failsafe parameters set was rejected by a camera, trying to use it as is.", err);
+                }
             }
+        }
 
-            //CameraUtilsV1.computeAspectRatiosForSurface(Integer.parseInt(camera.getCameraId()), rawCameraObject, surfaceView);
-            CameraUtilsV1.setupSurfaceAndCameraForPreview(Integer.parseInt(camera.getCameraId()), rawCameraObject, surfaceView);
-            rawCameraObject.startPreview();
-            rechargePreviewBuffer();
+        if (capabilityCache != null)
+        {
+            capabilityCache.putWorkingParameters(camera.getCameraId(), tried, set);
         }
     }
 
@@ -142,8 +229,15 @@ public class DefaultCameraV1Controller extends AbstractController implements Cam
         if (isCameraReadyForUserOperations() && surfaceHolder != null)
         {
             stopLiveDataCapture();
+            focusManager.stop();
+            rawCameraObject.setPreviewCallbackWithBuffer(null);
             rawCameraObject.stopPreview();
             surfaceHolder = null;
+
+            if (previewBuffers != null)
+            {
+                previewBuffers.onCameraQueueCleared();
+            }
         }
     }
 
@@ -166,22 +260,33 @@ public class DefaultCameraV1Controller extends AbstractController implements Cam
 
     private void rechargePreviewBuffer()
     {
-        final int imageFormat = rawCameraObject.getParameters().getPreviewFormat();
-        final android.hardware.Camera.Size size = rawCameraObject.getParameters().getPreviewSize();
+        final CameraParametersCache parameters = parametersCache;
+        final int imageFormat = parameters.getPreviewFormat();
+        final int width = parameters.getPreviewWidth();
+        final int height = parameters.getPreviewHeight();
 
         if (imageFormat != ImageFormat.NV21)
         {
             throw new UnsupportedOperationException(String.format("Bad reported image format, wanted NV21 (%s) but got %s", ImageFormat.NV21, imageFormat));
         }
 
-        int bufferSize = size.width * size.height * ImageFormat.getBitsPerPixel(imageFormat) / 8;
+        int bufferSize = width * height * ImageFormat.getBitsPerPixel(imageFormat) / 8;
+
+        final int buffersCount = getLiveDataBuffersCount();
 
-        if (previewBuffer == null || previewBuffer.length != bufferSize)
+        if (previewBuffers == null || !previewBuffers.isCompatible(rawCameraObject, bufferSize, buffersCount))
         {
-            previewBuffer = new byte[bufferSize];
+            if (previewBuffers != null)
+            {
+                // Drops buffers of the previous ring from the camera queue
+                previewBuffers.dispose();
+                rawCameraObject.setPreviewCallbackWithBuffer(null);
+            }
+
+            previewBuffers = new PreviewBufferRing(rawCameraObject, width, height, bufferSize, buffersCount);
         }
 
-        rawCameraObject.addCallbackBuffer(previewBuffer);
+        previewBuffers.recharge();
         rawCameraObject.setPreviewCallbackWithBuffer(this);
     }
 
@@ -226,26 +331,14 @@ public class DefaultCameraV1Controller extends AbstractController implements Cam
     {
         if (isCameraReadyForUserOperations())
         {
-            final android.hardware.Camera.Parameters parameters = rawCameraObject.getParameters();
+            final CameraParametersCache parameters = parametersCache;
+            final String flashMode = turnOn ? android.hardware.Camera.Parameters.FLASH_MODE_TORCH : android.hardware.Camera.Parameters.FLASH_MODE_OFF;
 
-            if (parameters != null && parameters.getSupportedFlashModes() != null && parameters.getFlashMode() != null && parameters.getSupportedFlashModes().size() > 0)
+            // Only a mode change costs a setParameters(), the current mode is known from the snapshot
+            if (parameters.getFlashMode() != null && parameters.getSupportedFlashModes().size() > 0 && !flashMode.equals(parameters.getFlashMode()))
             {
-                if (turnOn)
-                {
-                    if (!parameters.getFlashMode().equals(android.hardware.Camera.Parameters.FLASH_MODE_TORCH))
-                    {
-                        parameters.setFlashMode(android.hardware.Camera.Parameters.FLASH_MODE_TORCH);
-                    }
-                }
-                else
-                {
-                    if (!parameters.getFlashMode().equals(android.hardware.Camera.Parameters.FLASH_MODE_OFF))
-                    {
-                        parameters.setFlashMode(android.hardware.Camera.Parameters.FLASH_MODE_OFF);
-                    }
-                }
-
-                rawCameraObject.setParameters(parameters);
+                parameters.edit().setFlashMode(flashMode);
+                parameters.commit();
             }
         }
         else
@@ -259,7 +352,14 @@ public class DefaultCameraV1Controller extends AbstractController implements Cam
     {
         if (isCameraReadyForUserOperations())
         {
+            final AutoFocusManager focus = focusManager;
 
+            if (focus.isContinuous() != useAutofocus)
+            {
+                focus.setContinuous(useAutofocus);
+                focus.applyTo(parametersCache.edit());
+                parametersCache.commit();
+            }
         }
     }
 
@@ -268,10 +368,19 @@ public class DefaultCameraV1Controller extends AbstractController implements Cam
     {
         if (isCameraReadyForUserOperations())
         {
-
+            focusManager.requestFocus();
         }
     }
 
+    /**
+     * @return scheduler of the focus cycles, <code>null</code> while the camera is not open
+     */
+    @Override
+    public FocusScheduler getFocusScheduler()
+    {
+        return focusManager;
+    }
+
     private void open(final CameraDelayedOperationResult callback)
     {
         if (isOpen.get())
@@ -281,78 +390,163 @@ public class DefaultCameraV1Controller extends AbstractController implements Cam
 
         if (isInInitState.compareAndSet(false, true))
         {
-            new CAMViewAsyncTask()
+            // Camera delivers preview frames and focus callbacks on the looper of the thread it was opened on, a
+            // thread of its own keeps them off the main thread
+            eventsThread = new HandlerThread("CAMView Camera Events");
+            eventsThread.start();
+            openAttempt(callback, new Handler(eventsThread.getLooper()), OPEN_RETRY_INITIAL_DELAY_MS, 0);
+        }
+    }
+
+    /**
+     * Tries to open the camera once on the serial executor. A busy camera is tried again after a delay waited on the
+     * events thread, so other camera tasks keep running in between.
+     *
+     * @param retryDelay delay before the next attempt should this one fail
+     * @param waited     total delay waited by the previous attempts
+     */
+    private void openAttempt(final CameraDelayedOperationResult callback, final Handler eventsHandler, final long retryDelay, final long waited)
+    {
+        new CAMViewAsyncTask<Void, Void, Boolean>()
+        {
+            private int cameraErrorCode = 0;
+
+            @Override
+            protected void onError(Throwable t)
             {
-                private int cameraErrorCode = 0;
+                isOpen.set(false);
+                isInInitState.set(false);
+                quitEventsThread();
 
-                @Override
-                protected void onError(Throwable t)
+                if (callback != null)
                 {
-                    isOpen.set(false);
-                    isInInitState.set(false);
+                    callback.onOperationFailed(t, cameraErrorCode);
+                }
+            }
 
-                    if (callback != null)
+            @Override
+            protected void onPostExecute(Boolean opened)
+            {
+                if (!opened)
+                {
+                    // Camera is usually busy only for a moment, e.g. while another app releases it, so retries start
+                    // soon and back off exponentially
+                    eventsHandler.postDelayed(new Runnable()
                     {
-                        callback.onOperationFailed(t, cameraErrorCode);
-                    }
+                        @Override
+                        public void run()
+                        {
+                            openAttempt(callback, eventsHandler, Math.min(retryDelay * 2, OPEN_RETRY_MAX_DELAY_MS), waited + retryDelay);
+                        }
+                    }, retryDelay);
+                    return;
                 }
 
-                @Override
-                protected void onPostExecute(Object o)
-                {
-                    isOpen.set(true);
-                    isInInitState.set(false);
+                isOpen.set(true);
+                isInInitState.set(false);
 
-                    if (callback != null)
-                    {
-                        callback.onOperationCompleted(DefaultCameraV1Controller.this);
-                    }
+                if (callback != null)
+                {
+                    callback.onOperationCompleted(DefaultCameraV1Controller.this);
                 }
+            }
 
-                @Override
-                protected Object doInBackground(Object[] args) throws Throwable
+            @Override
+            protected Boolean doInBackground(Void... args) throws Throwable
+            {
+                rawCameraObject = null;
+                Throwable openError = null;
+
+                try
                 {
-                    rawCameraObject = null;
-                    int retriesCount = 5;
-                    Throwable lastError = null;
+                    rawCameraObject = openOnEventsThread(eventsHandler, Integer.parseInt(camera.getCameraId()));
+                }
+                catch (Throwable t)
+                {
+                    openError = t;
+                }
 
-                    while (rawCameraObject == null && retriesCount > 0)
+                if (rawCameraObject == null)
+                {
+                    if (waited < OPEN_RETRY_WINDOW_MS)
                     {
-                        try
-                        {
-                            rawCameraObject = android.hardware.Camera.open(Integer.parseInt(camera.getCameraId()));
-                        }
-                        catch (Throwable openError)
-                        {
-                            lastError = openError;
-                            retriesCount--;
-
-                            try
-                            {
-                                Thread.sleep(1000);
-                            }
-                            catch (InterruptedException itre)
-                            {
-                            }
-                        }
+                        return false;
                     }
 
-                    if (rawCameraObject == null)
-                    {
-                        cameraErrorCode = -1;
-                        throw lastError;
-                    }
-                    else
-                    {
-                        cameraErrorCode = 0;
-                    }
+                    cameraErrorCode = -1;
+                    throw openError != null ? openError : new RuntimeException("Camera " + camera.getCameraId() + " could not be opened");
+                }
 
-                    return null;
+                cameraErrorCode = 0;
+                final CameraParametersCache parameters = new CameraParametersCache(rawCameraObject);
+                negotiateParameters(parameters);
+                parametersCache = parameters;
+                focusManager = new AutoFocusManager(rawCameraObject, parameters, eventsHandler);
+                return true;
+            }
+        }.execSerial();
+    }
+
+    private static Camera openOnEventsThread(Handler eventsHandler, final int cameraId) throws Throwable
+    {
+        final Camera[] opened = new Camera[1];
+        final Throwable[] error = new Throwable[1];
+        final CountDownLatch done = new CountDownLatch(1);
+
+        eventsHandler.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    opened[0] = android.hardware.Camera.open(cameraId);
                 }
-            }.execSerial();
+                catch (Throwable openError)
+                {
+                    error[0] = openError;
+                }
+                finally
+                {
+                    done.countDown();
+                }
+            }
+        });
+
+        done.await();
+
+        if (error[0] != null)
+        {
+            throw error[0];
+        }
+
+        return opened[0];
+    }
+
+    private void quitEventsThread()
+    {
+        if (eventsThread != null)
+        {
+            eventsThread.quit();
+            eventsThread = null;
         }
     }
 
+    public FrameRecorder getFrameRecorder()
+    {
+        return frameRecorder;
+    }
+
+    /**
+     * Sets a recorder every preview frame is offered to, for the recorder to sample frames from the live stream
+     *
+     * @param recorder recorder started for the preview size, see {@link FrameRecorder#start(int, int)}, <code>null</code>
+     *                 to stop offering frames
+     */
+    public void setFrameRecorder(FrameRecorder recorder)
+    {
+        this.frameRecorder = recorder;
+    }
 
     private boolean isCameraReadyForUserOperations()
     {
@@ -362,10 +556,37 @@ public class DefaultCameraV1Controller extends AbstractController implements Cam
     @Override
     public void onPreviewFrame(byte[] data, Camera camera)
     {
-        if (liveFrameProcessingThread != null && data != null && isCameraReadyForUserOperations())
+        final long captureTimestamp = System.nanoTime();
+        final PreviewBufferRing buffers = previewBuffers;
+
+        if (buffers == null || data == null)
+        {
+            return;
+        }
+
+        final FrameRecorder recorder = frameRecorder;
+        if (recorder != null)
+        {
+            // Copies the frame if it is due, so the buffer goes back to the camera as usual
+            recorder.offer(data, buffers.getWidth(), buffers.getHeight(), captureTimestamp);
+        }
+
+        final LiveFrame frame = buffers.acquire(data, captureTimestamp);
+
+        if (frame == null)
+        {
+            return;
+        }
+
+        final LiveFrameExecutor executor = liveFrameExecutor;
+
+        if (executor != null && isCameraReadyForUserOperations())
+        {
+            executor.submitLiveFrame(frame);
+        }
+        else
         {
-            final android.hardware.Camera.Size size = rawCameraObject.getParameters().getPreviewSize();
-            liveFrameProcessingThread.submitLiveFrame(data, size.width, size.height);
+            frame.release();
         }
     }
 }
@@ -0,0 +1,136 @@
+package eu.livotov.labs.android.camview.camera.v1;
+
+import android.hardware.Camera;
+import android.util.Log;
+
+import eu.livotov.labs.android.camview.camera.LiveFrame;
+
+/**
+ * Ring of preview buffers registered with {@link Camera#addCallbackBuffer(byte[])}.
+ * <p/>
+ * Every buffer is either queued at the camera, leased to the live data pipeline or idle. A buffer is
+ * re-queued only when its lease is released, so the camera never writes into a frame being processed and
+ * keeps streaming into the remaining buffers while a decode is in progress.
+ */
+final class PreviewBufferRing implements LiveFrame.Recycler
+{
+    private static final String TAG = PreviewBufferRing.class.getSimpleName();
+
+    private final Camera camera;
+    private final int width;
+    private final int height;
+    private final int bufferSize;
+    private final LiveFrame[] frames;
+    private final boolean[] queued;
+    private boolean active = true;
+
+    PreviewBufferRing(Camera camera, int width, int height, int bufferSize, int count)
+    {
+        this.camera = camera;
+        this.width = width;
+        this.height = height;
+        this.bufferSize = bufferSize;
+        this.frames = new LiveFrame[count];
+        this.queued = new boolean[count];
+
+        for (int i = 0; i < count; i++)
+        {
+            frames[i] = new LiveFrame(new byte[bufferSize], this);
+        }
+    }
+
+    boolean isCompatible(Camera camera, int bufferSize, int count)
+    {
+        return this.camera == camera && this.bufferSize == bufferSize && frames.length == count;
+    }
+
+    int getWidth()
+    {
+        return width;
+    }
+
+    int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * Queues all idle buffers at the camera
+     */
+    synchronized void recharge()
+    {
+        for (int i = 0; i < frames.length; i++)
+        {
+            if (active && !queued[i] && !frames[i].isLeased())
+            {
+                camera.addCallbackBuffer(frames[i].getData());
+                queued[i] = true;
+            }
+        }
+    }
+
+    /**
+     * Should be called once the camera dropped its buffer queue, i.e. after installing a <code>null</code> preview callback
+     */
+    synchronized void onCameraQueueCleared()
+    {
+        for (int i = 0; i < queued.length; i++)
+        {
+            queued[i] = false;
+        }
+    }
+
+    /**
+     * Takes a buffer, just filled by the camera, out of the ring and leases it to the caller
+     *
+     * @param captureTimestamp {@link System#nanoTime()} taken when the camera delivered the buffer
+     * @return leased frame or <code>null</code> if this data does not belong to the ring
+     */
+    synchronized LiveFrame acquire(byte[] data, long captureTimestamp)
+    {
+        for (int i = 0; i < frames.length; i++)
+        {
+            if (frames[i].getData() == data)
+            {
+                queued[i] = false;
+                return frames[i].acquire(width, height, captureTimestamp) ? frames[i] : null;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public synchronized void recycle(LiveFrame frame)
+    {
+        if (!active)
+        {
+            return;
+        }
+
+        for (int i = 0; i < frames.length; i++)
+        {
+            if (frames[i] == frame)
+            {
+                try
+                {
+                    camera.addCallbackBuffer(frame.getData());
+                    queued[i] = true;
+                }
+                catch (RuntimeException err)
+                {
+                    Log.w(TAG, "Camera refused preview buffer", err);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Detaches the ring from the camera, outstanding leases are simply dropped when released
+     */
+    synchronized void dispose()
+    {
+        active = false;
+    }
+}
@@ -0,0 +1,71 @@
+package eu.livotov.labs.android.camview.camera.v2;
+
+import android.view.SurfaceView;
+
+import java.io.IOException;
+
+import eu.livotov.labs.android.camview.camera.LiveFrame;
+import eu.livotov.labs.android.camview.camera.PictureProcessingCallback;
+import eu.livotov.labs.android.camview.camera.PreviewSizePolicy;
+
+/**
+ * Camera operations {@link DefaultCameraV2Controller} is built on. {@link SystemCamera2Device} implements them with the
+ * camera2 API, a fake device can stand in for it to run the controller logic on the JVM.
+ * <p/>
+ * Operation callbacks are delivered on the main thread, frames and posted tasks on the device background thread.
+ */
+public interface Camera2Device
+{
+    void open(String cameraId, OperationCallback callback);
+
+    void close(OperationCallback callback);
+
+    /**
+     * Starts streaming preview to the surface and <code>YUV_420_888</code> frames to the listener. Called again
+     * whenever the surface changes.
+     *
+     * @param maxImages  maximum number of frames held at once, including those leased to the listener
+     * @param sizePolicy policy picking the stream size when streaming first starts after the device is opened,
+     *                   <code>null</code> to pick the size that best fits the view
+     */
+    void startStreaming(SurfaceView surfaceView, int maxImages, PreviewSizePolicy sizePolicy, FrameListener listener) throws IOException;
+
+    void stopStreaming();
+
+    void setTorch(boolean turnOn);
+
+    /**
+     * @param enabled <code>true</code> to let the camera focus continuously, <code>false</code> to focus on request only
+     */
+    void setContinuousAutofocus(boolean enabled);
+
+    /**
+     * Runs a single focus cycle, for cameras not focusing continuously
+     *
+     * @param callback notified once the camera ran the cycle, or failed to
+     */
+    void triggerAutofocus(OperationCallback callback);
+
+    void takePicture(PictureProcessingCallback callback);
+
+    /**
+     * Runs the task on the device background thread after the given delay. Tasks posted while the device is closed
+     * are dropped.
+     */
+    void post(Runnable task, long delayMillis);
+
+    interface OperationCallback
+    {
+        void onCompleted();
+
+        void onFailed(Throwable error, int cameraErrorCode);
+    }
+
+    interface FrameListener
+    {
+        /**
+         * @param frame leased frame, to be released by the listener
+         */
+        void onFrameAvailable(LiveFrame frame);
+    }
+}
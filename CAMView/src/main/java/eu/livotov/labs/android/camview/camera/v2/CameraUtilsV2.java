@@ -0,0 +1,202 @@
+package eu.livotov.labs.android.camview.camera.v2;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.util.Size;
+import android.view.Gravity;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+import android.view.WindowManager;
+import android.widget.FrameLayout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import eu.livotov.labs.android.camview.camera.PreviewSizePolicy;
+
+/**
+ * Created by dlivotov on 02/09/2015.
+ */
+@TargetApi(21)
+class CameraUtilsV2
+{
+    /**
+     * Largest stream decoded live, bigger frames only slow decoding down without helping it
+     */
+    private final static int MAX_STREAM_PIXELS = 1280 * 720;
+    private final static double ASPECT_TOLERANCE = 0.05;
+
+    /**
+     * Picks a size both the preview surface and an <code>ImageReader</code> of the given format can be streamed at,
+     * with an aspect ratio close to the one of the view
+     *
+     * @param sizePolicy policy picking among these sizes, <code>null</code> for the largest one up to 1280x720
+     */
+    static Size getOptimalStreamSize(CameraCharacteristics characteristics, int format, int viewWidth, int viewHeight, PreviewSizePolicy sizePolicy)
+    {
+        final StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        final List<Size> previewSizes = Arrays.asList(map.getOutputSizes(SurfaceHolder.class));
+
+        if (sizePolicy != null)
+        {
+            final List<Size> sizes = new ArrayList<Size>();
+
+            for (Size size : map.getOutputSizes(format))
+            {
+                if (previewSizes.contains(size))
+                {
+                    sizes.add(size);
+                }
+            }
+
+            final int[] widths = new int[sizes.size()];
+            final int[] heights = new int[sizes.size()];
+
+            for (int i = 0; i < widths.length; i++)
+            {
+                widths[i] = sizes.get(i).getWidth();
+                heights[i] = sizes.get(i).getHeight();
+            }
+
+            final int selected = sizePolicy.select(widths, heights, viewWidth, viewHeight);
+            return selected >= 0 ? sizes.get(selected) : null;
+        }
+        final double targetRatio = viewWidth > 0 && viewHeight > 0 ? (double) Math.max(viewWidth, viewHeight) / Math.min(viewWidth, viewHeight) : 4.0 / 3.0;
+
+        Size optimalSize = null;
+        Size smallestSize = null;
+        double minRatioDiff = Double.MAX_VALUE;
+
+        for (Size size : map.getOutputSizes(format))
+        {
+            if (!previewSizes.contains(size))
+            {
+                continue;
+            }
+
+            if (smallestSize == null || area(size) < area(smallestSize))
+            {
+                smallestSize = size;
+            }
+
+            if (area(size) > MAX_STREAM_PIXELS)
+            {
+                continue;
+            }
+
+            final double ratioDiff = Math.abs((double) Math.max(size.getWidth(), size.getHeight()) / Math.min(size.getWidth(), size.getHeight()) - targetRatio);
+
+            if (optimalSize == null || ratioDiff < minRatioDiff - ASPECT_TOLERANCE || (Math.abs(ratioDiff - minRatioDiff) <= ASPECT_TOLERANCE && area(size) > area(optimalSize)))
+            {
+                optimalSize = size;
+                minRatioDiff = Math.min(ratioDiff, minRatioDiff);
+            }
+        }
+
+        return optimalSize != null ? optimalSize : smallestSize;
+    }
+
+    /**
+     * @return largest size pictures of the given format can be taken at
+     */
+    static Size getLargestPictureSize(CameraCharacteristics characteristics, int format)
+    {
+        final StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        Size largest = null;
+
+        for (Size size : map.getOutputSizes(format))
+        {
+            if (largest == null || area(size) > area(largest))
+            {
+                largest = size;
+            }
+        }
+
+        return largest;
+    }
+
+    /**
+     * Resizes the view so the stream fills it without being distorted, same as the v1 preview setup does. The stream
+     * size is in sensor orientation, the view one in display orientation.
+     */
+    static void fitSurfaceView(SurfaceView surfaceView, Size streamSize)
+    {
+        final int viewWidth = surfaceView.getWidth();
+        final int viewHeight = surfaceView.getHeight();
+
+        if (viewWidth == 0 || viewHeight == 0)
+        {
+            return;
+        }
+
+        final int longSide = Math.max(streamSize.getWidth(), streamSize.getHeight());
+        final int shortSide = Math.min(streamSize.getWidth(), streamSize.getHeight());
+        final float ratio = viewWidth > viewHeight ? (float) longSide / shortSide : (float) shortSide / longSide;
+
+        int newWidth;
+        int newHeight;
+
+        if ((float) viewWidth / viewHeight < ratio)
+        {
+            newWidth = Math.round(viewHeight * ratio);
+            newHeight = viewHeight;
+        }
+        else
+        {
+            newWidth = viewWidth;
+            newHeight = Math.round(viewWidth / ratio);
+        }
+
+        FrameLayout.LayoutParams prms = new FrameLayout.LayoutParams(newWidth, newHeight);
+        prms.gravity = Gravity.CENTER;
+        surfaceView.setLayoutParams(prms);
+    }
+
+    /**
+     * @return clockwise rotation, in degrees, to apply to streamed frames for them to appear upright on screen
+     */
+    static int getFrameRotation(SurfaceView surfaceView, CameraCharacteristics characteristics)
+    {
+        final int sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+        final Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
+        int degrees = 0;
+
+        switch (((WindowManager) surfaceView.getContext().getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay().getRotation())
+        {
+            case Surface.ROTATION_90:
+            {
+                degrees = 90;
+                break;
+            }
+            case Surface.ROTATION_180:
+            {
+                degrees = 180;
+                break;
+            }
+            case Surface.ROTATION_270:
+            {
+                degrees = 270;
+                break;
+            }
+        }
+
+        if (facing != null && facing == CameraCharacteristics.LENS_FACING_FRONT)
+        {
+            // Front sensors turn the other way round relative to the display, frames are not mirrored
+            return (sensorOrientation + degrees) % 360;
+        }
+        else
+        {
+            return (sensorOrientation - degrees + 360) % 360;
+        }
+    }
+
+    private static long area(Size size)
+    {
+        return (long) size.getWidth() * size.getHeight();
+    }
+}
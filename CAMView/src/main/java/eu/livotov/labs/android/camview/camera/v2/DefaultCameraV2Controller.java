@@ -1,80 +1,283 @@
 package eu.livotov.labs.android.camview.camera.v2;
 
+import android.content.Context;
 import android.view.SurfaceView;
 
-import eu.livotov.labs.android.camview.camera.CameraController;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import eu.livotov.labs.android.camview.camera.AbstractController;
 import eu.livotov.labs.android.camview.camera.CameraDelayedOperationResult;
 import eu.livotov.labs.android.camview.camera.CameraInfo;
+import eu.livotov.labs.android.camview.camera.FocusScheduler;
 import eu.livotov.labs.android.camview.camera.LiveDataProcessingCallback;
+import eu.livotov.labs.android.camview.camera.LiveFrame;
+import eu.livotov.labs.android.camview.camera.LiveFrameExecutor;
 import eu.livotov.labs.android.camview.camera.PictureProcessingCallback;
 
 /**
  * Created by dlivotov on 02/09/2015.
  */
-public class DefaultCameraV2Controller implements CameraController
+public class DefaultCameraV2Controller extends AbstractController implements Camera2Device.FrameListener
 {
-    public DefaultCameraV2Controller(CameraInfo camera, CameraDelayedOperationResult callback)
+    private final CameraInfo camera;
+    private final Camera2Device device;
+    private AtomicBoolean isOpen = new AtomicBoolean(false);
+    private AtomicBoolean isInInitState = new AtomicBoolean(false);
+    private volatile boolean previewStarted;
+    private final FocusScheduler focusScheduler = new FocusScheduler()
     {
+        @Override
+        protected void post(Runnable task, long delayMillis)
+        {
+            device.post(task, delayMillis);
+        }
+
+        @Override
+        protected boolean startFocus()
+        {
+            // The cycle counts as done once the camera ran the trigger request, the minimal interval between cycles
+            // leaves it time to settle
+            device.triggerAutofocus(new Camera2Device.OperationCallback()
+            {
+                @Override
+                public void onCompleted()
+                {
+                    onFocusCompleted(true);
+                }
+
+                @Override
+                public void onFailed(Throwable error, int cameraErrorCode)
+                {
+                    onFocusCompleted(false);
+                }
+            });
+            return true;
+        }
 
+        @Override
+        protected void cancelFocus()
+        {
+        }
+    };
+
+    public DefaultCameraV2Controller(Context context, CameraInfo camera, CameraDelayedOperationResult callback)
+    {
+        this(camera, new SystemCamera2Device(context.getApplicationContext()), callback);
+    }
+
+    /**
+     * @param device camera device to drive, e.g. a fake one to run the controller off device
+     */
+    public DefaultCameraV2Controller(CameraInfo camera, Camera2Device device, CameraDelayedOperationResult callback)
+    {
+        this.camera = camera;
+        this.device = device;
+        // Devices focus continuously until told otherwise
+        focusScheduler.setFeedbackTriggersEnabled(false);
+        open(callback);
     }
 
     @Override
     public boolean isReady()
     {
-        return false;
+        return isOpen.get();
     }
 
     @Override
     public void close()
     {
-
+        close(null);
     }
 
     @Override
-    public void close(CameraDelayedOperationResult callback)
+    public void close(final CameraDelayedOperationResult callback)
     {
+        if (isOpen.get() && isInInitState.compareAndSet(false, true))
+        {
+            stopLiveDataCapture();
+            focusScheduler.stop();
+            previewStarted = false;
 
+            device.close(new Camera2Device.OperationCallback()
+            {
+                @Override
+                public void onCompleted()
+                {
+                    isOpen.set(false);
+                    isInInitState.set(false);
+
+                    if (callback != null)
+                    {
+                        callback.onOperationCompleted(DefaultCameraV2Controller.this);
+                    }
+                }
+
+                @Override
+                public void onFailed(Throwable error, int cameraErrorCode)
+                {
+                    isInInitState.set(false);
+
+                    if (callback != null)
+                    {
+                        callback.onOperationFailed(error, cameraErrorCode);
+                    }
+                }
+            });
+        }
     }
 
     @Override
-    public void startPreview(SurfaceView holder)
+    public void startPreview(SurfaceView surfaceView) throws IOException
     {
+        if (isCameraReadyForUserOperations())
+        {
+            // One image more than frames in flight, so the reader can always acquire the latest one
+            device.startStreaming(surfaceView, getLiveDataBuffersCount() + 1, previewSizePolicy, this);
+            previewStarted = true;
+            focusScheduler.start();
 
+            if (liveDataProcessor != null)
+            {
+                // Resume live data processing stopped by a previous stopPreview()
+                startLiveDataCapture(liveDataProcessor);
+            }
+        }
     }
 
     @Override
     public void stopPreview()
     {
-
+        if (isCameraReadyForUserOperations() && previewStarted)
+        {
+            stopLiveDataCapture();
+            focusScheduler.stop();
+            device.stopStreaming();
+            previewStarted = false;
+        }
     }
 
     @Override
     public void requestLiveData(LiveDataProcessingCallback callback)
     {
-
+        if (isCameraReadyForUserOperations())
+        {
+            if (previewStarted && callback != null)
+            {
+                startLiveDataCapture(callback);
+            }
+            else
+            {
+                throw new IllegalStateException("Live data can only be requested after calling startPreview() !");
+            }
+        }
     }
 
     @Override
     public void takePicture(PictureProcessingCallback callback)
     {
-
+        if (isCameraReadyForUserOperations())
+        {
+            device.takePicture(callback);
+        }
     }
 
     @Override
     public void switchFlashlight(boolean turnOn)
     {
-
+        if (isCameraReadyForUserOperations())
+        {
+            device.setTorch(turnOn);
+        }
+        else
+        {
+            throw new IllegalAccessError("Camera is closed. Cannot toggle flash on non open camera.");
+        }
     }
 
     @Override
     public void switchAutofocus(boolean useAutofocus)
     {
-
+        if (isCameraReadyForUserOperations())
+        {
+            device.setContinuousAutofocus(useAutofocus);
+            focusScheduler.setFeedbackTriggersEnabled(!useAutofocus);
+        }
     }
 
     @Override
     public void requestFocus()
     {
+        if (isCameraReadyForUserOperations())
+        {
+            focusScheduler.requestFocus();
+        }
+    }
 
+    /**
+     * Focus and metering areas are left to the camera, {@link FocusScheduler#setAreaPercent(double)} has no effect
+     */
+    @Override
+    public FocusScheduler getFocusScheduler()
+    {
+        return focusScheduler;
+    }
+
+    @Override
+    public void onFrameAvailable(LiveFrame frame)
+    {
+        final LiveFrameExecutor executor = liveFrameExecutor;
+
+        if (executor != null && isCameraReadyForUserOperations())
+        {
+            executor.submitLiveFrame(frame);
+        }
+        else
+        {
+            frame.release();
+        }
+    }
+
+    private void open(final CameraDelayedOperationResult callback)
+    {
+        if (isOpen.get())
+        {
+            return;
+        }
+
+        if (isInInitState.compareAndSet(false, true))
+        {
+            device.open(camera.getCameraId(), new Camera2Device.OperationCallback()
+            {
+                @Override
+                public void onCompleted()
+                {
+                    isOpen.set(true);
+                    isInInitState.set(false);
+
+                    if (callback != null)
+                    {
+                        callback.onOperationCompleted(DefaultCameraV2Controller.this);
+                    }
+                }
+
+                @Override
+                public void onFailed(Throwable error, int cameraErrorCode)
+                {
+                    isOpen.set(false);
+                    isInInitState.set(false);
+
+                    if (callback != null)
+                    {
+                        callback.onOperationFailed(error, cameraErrorCode);
+                    }
+                }
+            });
+        }
+    }
+
+    private boolean isCameraReadyForUserOperations()
+    {
+        return isOpen.get() && !isInInitState.get();
     }
 }
@@ -0,0 +1,189 @@
+package eu.livotov.labs.android.camview.camera.v2;
+
+import eu.livotov.labs.android.camview.camera.FrameDescriptor;
+import eu.livotov.labs.android.camview.camera.LiveFrame;
+
+/**
+ * Fixed set of live frames lent to images streamed by the camera, e.g. camera2 <code>ImageReader</code> images.
+ * <p/>
+ * An image is described in place by the {@link FrameDescriptor} of a free frame, so its planes reach the live data
+ * pipeline without being copied, and is closed as soon as the pipeline releases the frame. When all frames are leased
+ * a new image is closed right away, which bounds the number of images held to the ring capacity: an image reader with
+ * <code>maxImages = capacity + 1</code> thus always has a free slot to acquire the latest image into.
+ * <p/>
+ * Thread safe.
+ *
+ * @param <I> image type
+ */
+public final class ImageFrameRing<I> implements LiveFrame.Recycler
+{
+    private final ImageAccess<I> access;
+    private final LiveFrame[] frames;
+    private final Object[] images;
+    private boolean active = true;
+    private Runnable onDrained;
+    private long droppedImagesCount;
+
+    /**
+     * @param capacity maximum number of images leased at once
+     * @param access   describes and closes images
+     */
+    public ImageFrameRing(int capacity, ImageAccess<I> access)
+    {
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("At least one frame is required. Specified value was " + capacity);
+        }
+
+        this.access = access;
+        this.frames = new LiveFrame[capacity];
+        this.images = new Object[capacity];
+
+        for (int i = 0; i < capacity; i++)
+        {
+            frames[i] = new LiveFrame(new FrameDescriptor(), this);
+        }
+    }
+
+    /**
+     * Leases a free frame describing the image. The image is closed once the frame is released.
+     *
+     * @param captureTimestamp {@link System#nanoTime()} taken when the image became available
+     * @return leased frame, <code>null</code> if all frames are leased or the ring was disposed, in which case the
+     * image has been closed already
+     */
+    public LiveFrame acquire(I image, long captureTimestamp)
+    {
+        int slot = -1;
+
+        synchronized (this)
+        {
+            for (int i = 0; active && i < frames.length; i++)
+            {
+                if (images[i] == null)
+                {
+                    images[i] = image;
+                    slot = i;
+                    break;
+                }
+            }
+
+            if (slot < 0)
+            {
+                droppedImagesCount++;
+            }
+        }
+
+        if (slot < 0)
+        {
+            access.close(image);
+            return null;
+        }
+
+        final LiveFrame frame = frames[slot];
+        final FrameDescriptor descriptor = frame.getDescriptor();
+        access.describe(image, descriptor);
+        frame.acquire(descriptor.getWidth(), descriptor.getHeight(), captureTimestamp);
+        return frame;
+    }
+
+    @Override
+    public void recycle(LiveFrame frame)
+    {
+        I image = null;
+        Runnable drained = null;
+
+        synchronized (this)
+        {
+            for (int i = 0; i < frames.length; i++)
+            {
+                if (frames[i] == frame)
+                {
+                    image = cast(images[i]);
+                    images[i] = null;
+                    break;
+                }
+            }
+
+            if (!active && onDrained != null && getLeasedCount() == 0)
+            {
+                drained = onDrained;
+                onDrained = null;
+            }
+        }
+
+        if (image != null)
+        {
+            access.close(image);
+        }
+
+        if (drained != null)
+        {
+            drained.run();
+        }
+    }
+
+    /**
+     * Stops leasing frames. Images still leased are closed as their frames are released.
+     *
+     * @param onDrained run once no image is leased anymore, right away if none is. Typically closes the image
+     *                  reader, which must not happen while the pipeline still reads image planes.
+     */
+    public void dispose(Runnable onDrained)
+    {
+        synchronized (this)
+        {
+            active = false;
+
+            if (getLeasedCount() > 0)
+            {
+                this.onDrained = onDrained;
+                return;
+            }
+        }
+
+        if (onDrained != null)
+        {
+            onDrained.run();
+        }
+    }
+
+    public synchronized int getLeasedCount()
+    {
+        int count = 0;
+
+        for (Object image : images)
+        {
+            if (image != null)
+            {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @return number of images closed unprocessed because all frames were leased
+     */
+    public synchronized long getDroppedImagesCount()
+    {
+        return droppedImagesCount;
+    }
+
+    @SuppressWarnings("unchecked")
+    private I cast(Object image)
+    {
+        return (I) image;
+    }
+
+    public interface ImageAccess<I>
+    {
+        /**
+         * Fills the descriptor with the image planes, without copying them
+         */
+        void describe(I image, FrameDescriptor descriptor);
+
+        void close(I image);
+    }
+}
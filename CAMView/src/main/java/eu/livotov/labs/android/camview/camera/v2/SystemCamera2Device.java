@@ -0,0 +1,637 @@
+package eu.livotov.labs.android.camview.camera.v2;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureFailure;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.TotalCaptureResult;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+import android.util.Size;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import eu.livotov.labs.android.camview.camera.FrameDescriptor;
+import eu.livotov.labs.android.camview.camera.LiveFrame;
+import eu.livotov.labs.android.camview.camera.PictureProcessingCallback;
+import eu.livotov.labs.android.camview.camera.PreviewSizePolicy;
+
+/**
+ * {@link Camera2Device} backed by the camera2 API.
+ * <p/>
+ * Preview goes straight to the surface while frames are streamed as <code>YUV_420_888</code> images through an
+ * <code>ImageReader</code>, whose planes are handed to the live data pipeline as they are via an
+ * {@link ImageFrameRing}. All camera work happens on a dedicated background thread.
+ */
+@TargetApi(21)
+public class SystemCamera2Device implements Camera2Device
+{
+    private final android.hardware.camera2.CameraManager manager;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private HandlerThread backgroundThread;
+    private volatile Handler backgroundHandler;
+    private volatile CameraCharacteristics characteristics;
+    private volatile CameraDevice device;
+    private boolean opening;
+
+    private CameraCaptureSession session;
+    private Surface previewSurface;
+    private ImageReader frameReader;
+    private ImageReader pictureReader;
+    private ImageFrameRing<Image> frames;
+    private volatile Size streamSize;
+    private volatile int frameRotation;
+
+    private volatile boolean torch;
+    private volatile boolean continuousAutofocus = true;
+
+    private final ImageFrameRing.ImageAccess<Image> imageAccess = new ImageFrameRing.ImageAccess<Image>()
+    {
+        @Override
+        public void describe(Image image, FrameDescriptor descriptor)
+        {
+            final Image.Plane[] planes = image.getPlanes();
+            descriptor.setFormat(FrameDescriptor.FORMAT_YUV_420_888, image.getWidth(), image.getHeight());
+
+            for (int i = 0; i < planes.length; i++)
+            {
+                descriptor.setPlane(i, planes[i].getBuffer(), planes[i].getRowStride(), planes[i].getPixelStride());
+            }
+
+            descriptor.setTimestamp(image.getTimestamp());
+            descriptor.setRotation(frameRotation);
+        }
+
+        @Override
+        public void close(Image image)
+        {
+            image.close();
+        }
+    };
+
+    public SystemCamera2Device(Context context)
+    {
+        this.manager = (android.hardware.camera2.CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+    }
+
+    @Override
+    public void open(String cameraId, final OperationCallback callback)
+    {
+        backgroundThread = new HandlerThread("CAMView camera2");
+        backgroundThread.start();
+        backgroundHandler = new Handler(backgroundThread.getLooper());
+
+        try
+        {
+            characteristics = manager.getCameraCharacteristics(cameraId);
+            opening = true;
+            manager.openCamera(cameraId, new CameraDevice.StateCallback()
+            {
+                @Override
+                public void onOpened(CameraDevice camera)
+                {
+                    device = camera;
+                    opening = false;
+                    notifyCompleted(callback);
+                }
+
+                @Override
+                public void onDisconnected(CameraDevice camera)
+                {
+                    onError(camera, -1);
+                }
+
+                @Override
+                public void onError(CameraDevice camera, int error)
+                {
+                    camera.close();
+                    device = null;
+
+                    if (opening)
+                    {
+                        opening = false;
+                        stopBackgroundThread();
+                        notifyFailed(callback, new IOException("Camera could not be opened, error " + error), error);
+                    }
+                    else
+                    {
+                        Log.e(SystemCamera2Device.class.getSimpleName(), "Camera device error " + error);
+                    }
+                }
+            }, backgroundHandler);
+        }
+        catch (CameraAccessException cae)
+        {
+            stopBackgroundThread();
+            notifyFailed(callback, cae, cae.getReason());
+        }
+        catch (SecurityException se)
+        {
+            stopBackgroundThread();
+            notifyFailed(callback, se, -1);
+        }
+    }
+
+    @Override
+    public void close(final OperationCallback callback)
+    {
+        final Handler handler = backgroundHandler;
+
+        if (handler == null)
+        {
+            notifyCompleted(callback);
+            return;
+        }
+
+        handler.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                closeSession();
+
+                if (device != null)
+                {
+                    device.close();
+                    device = null;
+                }
+
+                streamSize = null;
+                stopBackgroundThread();
+                notifyCompleted(callback);
+            }
+        });
+    }
+
+    @Override
+    public void startStreaming(SurfaceView surfaceView, final int maxImages, PreviewSizePolicy sizePolicy, final FrameListener listener) throws IOException
+    {
+        final Handler handler = backgroundHandler;
+
+        if (device == null || handler == null)
+        {
+            throw new IOException("Camera is not open");
+        }
+
+        if (streamSize == null)
+        {
+            streamSize = CameraUtilsV2.getOptimalStreamSize(characteristics, ImageFormat.YUV_420_888, surfaceView.getWidth(), surfaceView.getHeight(), sizePolicy);
+        }
+
+        final Size size = streamSize;
+        CameraUtilsV2.fitSurfaceView(surfaceView, size);
+        frameRotation = CameraUtilsV2.getFrameRotation(surfaceView, characteristics);
+
+        final SurfaceHolder holder = surfaceView.getHolder();
+        final Rect surfaceFrame = holder.getSurfaceFrame();
+
+        if (surfaceFrame.width() != size.getWidth() || surfaceFrame.height() != size.getHeight())
+        {
+            // Camera2 only streams at the sizes it supports, streaming starts again once the surface is resized
+            holder.setFixedSize(size.getWidth(), size.getHeight());
+            return;
+        }
+
+        final Surface surface = holder.getSurface();
+
+        handler.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                createSession(surface, size, maxImages, listener);
+            }
+        });
+    }
+
+    @Override
+    public void stopStreaming()
+    {
+        post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                closeSession();
+            }
+        });
+    }
+
+    @Override
+    public void setTorch(boolean turnOn)
+    {
+        torch = turnOn;
+        post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                updateRepeatingRequest();
+            }
+        });
+    }
+
+    @Override
+    public void setContinuousAutofocus(boolean enabled)
+    {
+        continuousAutofocus = enabled;
+        post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                updateRepeatingRequest();
+            }
+        });
+    }
+
+    @Override
+    public void triggerAutofocus(final OperationCallback callback)
+    {
+        post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (session == null || getAutofocusMode() != CameraMetadata.CONTROL_AF_MODE_AUTO)
+                {
+                    notifyFailed(callback, new IllegalStateException("Camera does not focus on request"), -1);
+                    return;
+                }
+
+                try
+                {
+                    final CaptureRequest.Builder request = createPreviewRequest();
+                    request.set(CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_START);
+                    session.capture(request.build(), new CameraCaptureSession.CaptureCallback()
+                    {
+                        @Override
+                        public void onCaptureCompleted(CameraCaptureSession session, CaptureRequest request, TotalCaptureResult result)
+                        {
+                            notifyCompleted(callback);
+                        }
+
+                        @Override
+                        public void onCaptureFailed(CameraCaptureSession session, CaptureRequest request, CaptureFailure failure)
+                        {
+                            notifyFailed(callback, new IOException("Autofocus trigger failed, reason " + failure.getReason()), -1);
+                        }
+                    }, backgroundHandler);
+                }
+                catch (CameraAccessException cae)
+                {
+                    Log.e(SystemCamera2Device.class.getSimpleName(), "Could not trigger autofocus", cae);
+                    notifyFailed(callback, cae, cae.getReason());
+                }
+                catch (IllegalStateException ise)
+                {
+                    Log.e(SystemCamera2Device.class.getSimpleName(), "Could not trigger autofocus", ise);
+                    notifyFailed(callback, ise, -1);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void takePicture(final PictureProcessingCallback callback)
+    {
+        post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (session == null)
+                {
+                    return;
+                }
+
+                pictureReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener()
+                {
+                    @Override
+                    public void onImageAvailable(ImageReader reader)
+                    {
+                        final Image image = reader.acquireNextImage();
+
+                        if (image == null)
+                        {
+                            return;
+                        }
+
+                        final ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+                        final byte[] jpeg = new byte[buffer.remaining()];
+                        buffer.get(jpeg);
+                        image.close();
+
+                        mainHandler.post(new Runnable()
+                        {
+                            @Override
+                            public void run()
+                            {
+                                if (callback != null)
+                                {
+                                    // Raw pictures are not captured, same as with most v1 cameras
+                                    callback.onRawPictureTaken(null);
+                                    callback.onPictureTaken(jpeg);
+                                }
+                            }
+                        });
+                    }
+                }, backgroundHandler);
+
+                try
+                {
+                    final CaptureRequest.Builder request = device.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+                    request.addTarget(pictureReader.getSurface());
+                    applySettings(request);
+                    request.set(CaptureRequest.JPEG_ORIENTATION, characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION));
+
+                    session.capture(request.build(), new CameraCaptureSession.CaptureCallback()
+                    {
+                        @Override
+                        public void onCaptureStarted(CameraCaptureSession session, CaptureRequest request, long timestamp, long frameNumber)
+                        {
+                            mainHandler.post(new Runnable()
+                            {
+                                @Override
+                                public void run()
+                                {
+                                    if (callback != null)
+                                    {
+                                        callback.onShutterTriggered();
+                                    }
+                                }
+                            });
+                        }
+                    }, backgroundHandler);
+                }
+                catch (CameraAccessException cae)
+                {
+                    Log.e(SystemCamera2Device.class.getSimpleName(), "Could not take picture", cae);
+                }
+                catch (IllegalStateException ise)
+                {
+                    Log.e(SystemCamera2Device.class.getSimpleName(), "Could not take picture", ise);
+                }
+            }
+        });
+    }
+
+    private void createSession(Surface surface, Size size, int maxImages, final FrameListener listener)
+    {
+        closeSession();
+
+        if (device == null)
+        {
+            return;
+        }
+
+        final ImageReader reader = ImageReader.newInstance(size.getWidth(), size.getHeight(), ImageFormat.YUV_420_888, maxImages);
+        final ImageFrameRing<Image> ring = new ImageFrameRing<Image>(maxImages - 1, imageAccess);
+        final Size pictureSize = CameraUtilsV2.getLargestPictureSize(characteristics, ImageFormat.JPEG);
+
+        reader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener()
+        {
+            @Override
+            public void onImageAvailable(ImageReader imageReader)
+            {
+                final long captureTimestamp = System.nanoTime();
+                final Image image;
+
+                try
+                {
+                    image = imageReader.acquireLatestImage();
+                }
+                catch (IllegalStateException ise)
+                {
+                    // Reader closed meanwhile
+                    return;
+                }
+
+                if (image == null)
+                {
+                    return;
+                }
+
+                final LiveFrame frame = ring.acquire(image, captureTimestamp);
+
+                if (frame != null)
+                {
+                    listener.onFrameAvailable(frame);
+                }
+            }
+        }, backgroundHandler);
+
+        previewSurface = surface;
+        frameReader = reader;
+        frames = ring;
+        pictureReader = ImageReader.newInstance(pictureSize.getWidth(), pictureSize.getHeight(), ImageFormat.JPEG, 1);
+
+        try
+        {
+            device.createCaptureSession(Arrays.asList(surface, reader.getSurface(), pictureReader.getSurface()), new CameraCaptureSession.StateCallback()
+            {
+                @Override
+                public void onConfigured(CameraCaptureSession configuredSession)
+                {
+                    if (frameReader != reader)
+                    {
+                        // Streaming was stopped or restarted while the session was being configured
+                        configuredSession.close();
+                        return;
+                    }
+
+                    session = configuredSession;
+                    updateRepeatingRequest();
+                }
+
+                @Override
+                public void onConfigureFailed(CameraCaptureSession failedSession)
+                {
+                    Log.e(SystemCamera2Device.class.getSimpleName(), "Capture session configuration failed for stream size " + streamSize);
+                }
+            }, backgroundHandler);
+        }
+        catch (CameraAccessException cae)
+        {
+            Log.e(SystemCamera2Device.class.getSimpleName(), "Could not create capture session", cae);
+        }
+    }
+
+    private void closeSession()
+    {
+        if (session != null)
+        {
+            session.close();
+            session = null;
+        }
+
+        if (frames != null)
+        {
+            // Decoders may still read planes of leased images, the reader owning them must outlive those reads
+            final ImageReader reader = frameReader;
+            frames.dispose(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    reader.close();
+                }
+            });
+            frames = null;
+            frameReader = null;
+        }
+
+        if (pictureReader != null)
+        {
+            pictureReader.close();
+            pictureReader = null;
+        }
+
+        previewSurface = null;
+    }
+
+    private void updateRepeatingRequest()
+    {
+        if (session == null)
+        {
+            return;
+        }
+
+        try
+        {
+            session.setRepeatingRequest(createPreviewRequest().build(), null, backgroundHandler);
+        }
+        catch (CameraAccessException cae)
+        {
+            Log.e(SystemCamera2Device.class.getSimpleName(), "Could not update preview request", cae);
+        }
+        catch (IllegalStateException ise)
+        {
+            Log.e(SystemCamera2Device.class.getSimpleName(), "Could not update preview request", ise);
+        }
+    }
+
+    private CaptureRequest.Builder createPreviewRequest() throws CameraAccessException
+    {
+        final CaptureRequest.Builder request = device.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+        request.addTarget(previewSurface);
+        request.addTarget(frameReader.getSurface());
+        applySettings(request);
+        return request;
+    }
+
+    private void applySettings(CaptureRequest.Builder request)
+    {
+        final Boolean flashAvailable = characteristics.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
+
+        request.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
+        request.set(CaptureRequest.CONTROL_AE_MODE, CameraMetadata.CONTROL_AE_MODE_ON);
+        request.set(CaptureRequest.CONTROL_AF_MODE, getAutofocusMode());
+        request.set(CaptureRequest.FLASH_MODE, torch && flashAvailable != null && flashAvailable ? CameraMetadata.FLASH_MODE_TORCH : CameraMetadata.FLASH_MODE_OFF);
+    }
+
+    private int getAutofocusMode()
+    {
+        final int[] modes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+
+        if (continuousAutofocus && contains(modes, CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE))
+        {
+            return CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE;
+        }
+
+        if (contains(modes, CameraMetadata.CONTROL_AF_MODE_AUTO))
+        {
+            return CameraMetadata.CONTROL_AF_MODE_AUTO;
+        }
+
+        return CameraMetadata.CONTROL_AF_MODE_OFF;
+    }
+
+    private static boolean contains(int[] values, int value)
+    {
+        if (values != null)
+        {
+            for (int v : values)
+            {
+                if (v == value)
+                {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public void post(Runnable task, long delayMillis)
+    {
+        final Handler handler = backgroundHandler;
+
+        if (handler != null)
+        {
+            handler.postDelayed(task, delayMillis);
+        }
+    }
+
+    private void post(Runnable task)
+    {
+        post(task, 0);
+    }
+
+    private void stopBackgroundThread()
+    {
+        if (backgroundThread != null)
+        {
+            backgroundThread.quitSafely();
+            backgroundThread = null;
+            backgroundHandler = null;
+        }
+    }
+
+    private void notifyCompleted(final OperationCallback callback)
+    {
+        if (callback != null)
+        {
+            mainHandler.post(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    callback.onCompleted();
+                }
+            });
+        }
+    }
+
+    private void notifyFailed(final OperationCallback callback, final Throwable error, final int cameraErrorCode)
+    {
+        if (callback != null)
+        {
+            mainHandler.post(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    callback.onFailed(error, cameraErrorCode);
+                }
+            });
+        }
+    }
+}
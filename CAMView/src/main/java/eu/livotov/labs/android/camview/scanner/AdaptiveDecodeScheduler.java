@@ -0,0 +1,185 @@
+package eu.livotov.labs.android.camview.scanner;
+
+/**
+ * Decides which camera frames are worth decoding, sizing the interval between decodes from what it observes.
+ * <p/>
+ * The interval between decode starts is derived from the smoothed decode latency, so the decoding threads are kept
+ * busy for a given share of the time (duty cycle). The duty cycle moves between the idle and the active value with
+ * the recent hit rate: while codes are being found, frames are decoded as fast as the hardware allows, when the
+ * scene is empty the scheduler backs off to save battery. When the decoding thread gets noticeably less CPU time
+ * than wall time (the device is busy with something else), the interval is stretched accordingly.
+ * <p/>
+ * All methods are thread safe, so a single scheduler can gate several decoding threads.
+ */
+public class AdaptiveDecodeScheduler
+{
+    public final static long DEFAULT_MAX_INTERVAL_MS = 300;
+    public final static float DEFAULT_ACTIVE_DUTY_CYCLE = 0.9f;
+    public final static float DEFAULT_IDLE_DUTY_CYCLE = 0.25f;
+
+    private final static double LATENCY_SMOOTHING = 0.2;
+    private final static double CPU_SHARE_SMOOTHING = 0.2;
+    private final static double HIT_RATE_SMOOTHING = 0.3;
+    private final static double MIN_CPU_SHARE = 0.25;
+    private final static long NANOS_IN_MILLI = 1000000L;
+
+    private long minIntervalNanos;
+    private long maxIntervalNanos = DEFAULT_MAX_INTERVAL_MS * NANOS_IN_MILLI;
+    private float activeDutyCycle = DEFAULT_ACTIVE_DUTY_CYCLE;
+    private float idleDutyCycle = DEFAULT_IDLE_DUTY_CYCLE;
+    private int parallelism = 1;
+
+    private double averageLatencyNanos;
+    private double cpuShare = 1.0;
+    private double hitRate = 1.0;
+    private long intervalNanos;
+    private long lastDecodeStartedNanos;
+    private boolean decodeStarted;
+
+    /**
+     * Claims the right to decode a frame arriving at the given time
+     *
+     * @param nowNanos {@link System#nanoTime()} at frame arrival
+     * @return <code>true</code> if the frame should be decoded, in which case {@link #onDecodeCompleted(long, long, boolean)}
+     * must be called once decoding is over
+     */
+    public synchronized boolean tryBeginDecode(long nowNanos)
+    {
+        if (decodeStarted && nowNanos - lastDecodeStartedNanos < intervalNanos)
+        {
+            return false;
+        }
+
+        decodeStarted = true;
+        lastDecodeStartedNanos = nowNanos;
+        return true;
+    }
+
+    /**
+     * Feeds the scheduler with the outcome of a decode started by {@link #tryBeginDecode(long)}
+     *
+     * @param latencyNanos wall time the decode took
+     * @param cpuNanos     CPU time the decoding thread consumed meanwhile, negative if unknown
+     * @param found        <code>true</code> if a code was decoded
+     */
+    public synchronized void onDecodeCompleted(long latencyNanos, long cpuNanos, boolean found)
+    {
+        averageLatencyNanos = averageLatencyNanos == 0 ? latencyNanos : averageLatencyNanos + LATENCY_SMOOTHING * (latencyNanos - averageLatencyNanos);
+        hitRate += HIT_RATE_SMOOTHING * ((found ? 1.0 : 0.0) - hitRate);
+
+        if (cpuNanos >= 0 && latencyNanos > 0)
+        {
+            final double share = Math.max(MIN_CPU_SHARE, Math.min(1.0, (double) cpuNanos / latencyNanos));
+            cpuShare += CPU_SHARE_SMOOTHING * (share - cpuShare);
+        }
+
+        updateInterval();
+    }
+
+    /**
+     * Forgets the recent hit rate, so scanning restarts at full speed. Latency estimates are kept.
+     */
+    public synchronized void reset()
+    {
+        hitRate = 1.0;
+        decodeStarted = false;
+        updateInterval();
+    }
+
+    /**
+     * Switches to a constant interval between decodes, as the old fixed throttle did
+     *
+     * @param intervalMillis interval between decode starts
+     */
+    public synchronized void setFixedInterval(long intervalMillis)
+    {
+        setIntervalBounds(intervalMillis, intervalMillis);
+    }
+
+    /**
+     * @param minIntervalMillis lower bound of the interval, used while codes are being found on fast hardware
+     * @param maxIntervalMillis upper bound of the interval, reached when the scene stays empty
+     */
+    public synchronized void setIntervalBounds(long minIntervalMillis, long maxIntervalMillis)
+    {
+        if (minIntervalMillis < 0 || maxIntervalMillis < minIntervalMillis)
+        {
+            throw new IllegalArgumentException(String.format("Invalid decode interval bounds: %s..%s ms", minIntervalMillis, maxIntervalMillis));
+        }
+
+        minIntervalNanos = minIntervalMillis * NANOS_IN_MILLI;
+        maxIntervalNanos = maxIntervalMillis * NANOS_IN_MILLI;
+        updateInterval();
+    }
+
+    /**
+     * @param activeDutyCycle share of time decoding threads may be busy while codes are found
+     * @param idleDutyCycle   share of time decoding threads may be busy while the scene is empty
+     */
+    public synchronized void setDutyCycles(float activeDutyCycle, float idleDutyCycle)
+    {
+        if (idleDutyCycle <= 0 || activeDutyCycle < idleDutyCycle || activeDutyCycle > 1)
+        {
+            throw new IllegalArgumentException(String.format("Duty cycles must satisfy 0 < idle <= active <= 1, got %s and %s", idleDutyCycle, activeDutyCycle));
+        }
+
+        this.activeDutyCycle = activeDutyCycle;
+        this.idleDutyCycle = idleDutyCycle;
+        updateInterval();
+    }
+
+    /**
+     * @param parallelism number of threads frames are decoded on
+     */
+    public synchronized void setParallelism(int parallelism)
+    {
+        if (parallelism < 1)
+        {
+            throw new IllegalArgumentException("Parallelism must be positive. Specified value was " + parallelism);
+        }
+
+        this.parallelism = parallelism;
+        updateInterval();
+    }
+
+    /**
+     * @return current interval between decode starts
+     */
+    public synchronized long getIntervalMillis()
+    {
+        return intervalNanos / NANOS_IN_MILLI;
+    }
+
+    /**
+     * @return smoothed latency of a single decode, 0 until the first decode completes
+     */
+    public synchronized long getAverageLatencyMillis()
+    {
+        return (long) (averageLatencyNanos / NANOS_IN_MILLI);
+    }
+
+    /**
+     * @return smoothed share of decodes that found a code
+     */
+    public synchronized float getHitRate()
+    {
+        return (float) hitRate;
+    }
+
+    /**
+     * @return number of frames per second the scheduler currently lets through to the decoder, 0 while no decode
+     * latency has been measured yet
+     */
+    public synchronized float getTargetDecodesPerSecond()
+    {
+        final double period = Math.max(intervalNanos, averageLatencyNanos / parallelism);
+        return period > 0 ? (float) (1e9 / period) : 0;
+    }
+
+    private void updateInterval()
+    {
+        final double dutyCycle = idleDutyCycle + (activeDutyCycle - idleDutyCycle) * hitRate;
+        final double interval = averageLatencyNanos / (parallelism * dutyCycle * cpuShare);
+        intervalNanos = Math.max(minIntervalNanos, Math.min(maxIntervalNanos, (long) interval));
+    }
+}
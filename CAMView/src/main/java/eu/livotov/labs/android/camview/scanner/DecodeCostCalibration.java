@@ -0,0 +1,93 @@
+package eu.livotov.labs.android.camview.scanner;
+
+import java.util.Arrays;
+
+import eu.livotov.labs.android.camview.scanner.decoder.BarcodeDecoder;
+
+/**
+ * Measures how long a decoder takes to process a camera frame on this device, per frame pixel, for a
+ * {@link eu.livotov.labs.android.camview.camera.PreviewSizePolicy} to size previews by.
+ * <p/>
+ * The decoder is run over a synthetic frame holding no code, the kind of frame a scanner spends most of its time on:
+ * all passes run and none finds anything. It takes some tens of milliseconds, so it is meant to run once, off the
+ * main thread, and the result to be kept.
+ */
+public final class DecodeCostCalibration
+{
+    public final static int DEFAULT_FRAME_WIDTH = 640;
+    public final static int DEFAULT_FRAME_HEIGHT = 480;
+    public final static int DEFAULT_ROUNDS = 5;
+
+    private final static int WARM_UP_FRAME_WIDTH = 320;
+    private final static int WARM_UP_FRAME_HEIGHT = 240;
+
+    private DecodeCostCalibration()
+    {
+    }
+
+    /**
+     * @see #measureNanosPerPixel(BarcodeDecoder, int, int, int)
+     */
+    public static float measureNanosPerPixel(BarcodeDecoder decoder)
+    {
+        return measureNanosPerPixel(decoder, DEFAULT_FRAME_WIDTH, DEFAULT_FRAME_HEIGHT, DEFAULT_ROUNDS);
+    }
+
+    /**
+     * Decodes a synthetic frame once to warm the decoder up, then the given number of times
+     *
+     * @return median decoding time per frame pixel, in nanoseconds
+     */
+    public static float measureNanosPerPixel(BarcodeDecoder decoder, int width, int height, int rounds)
+    {
+        if (rounds < 1)
+        {
+            throw new IllegalArgumentException("At least one round is required. Specified value was " + rounds);
+        }
+
+        final byte[] frame = createFrame(width, height);
+        final long[] durations = new long[rounds];
+
+        decoder.decode(frame, width, height);
+
+        for (int i = 0; i < rounds; i++)
+        {
+            final long started = System.nanoTime();
+            decoder.decode(frame, width, height);
+            durations[i] = System.nanoTime() - started;
+        }
+
+        Arrays.sort(durations);
+        return Math.max(1, durations[rounds / 2]) / (float) (width * height);
+    }
+
+    /**
+     * Decodes a small synthetic frame once, for the calling thread to set up its thread local decoder state (reader
+     * chains, buffers) and the code to be compiled before the first camera frame comes in
+     */
+    public static void warmUp(BarcodeDecoder decoder)
+    {
+        decoder.decode(createFrame(WARM_UP_FRAME_WIDTH, WARM_UP_FRAME_HEIGHT), WARM_UP_FRAME_WIDTH, WARM_UP_FRAME_HEIGHT);
+    }
+
+    /**
+     * @return NV21 frame of a smooth gradient with some sensor-like noise, chroma planes neutral
+     */
+    private static byte[] createFrame(int width, int height)
+    {
+        final byte[] frame = new byte[width * height * 3 / 2];
+        int noise = 42;
+
+        for (int y = 0; y < height; y++)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                noise = noise * 1103515245 + 12345;
+                frame[y * width + x] = (byte) (96 + (x + y) * 64 / (width + height) + ((noise >>> 16) & 15));
+            }
+        }
+
+        Arrays.fill(frame, width * height, frame.length, (byte) 128);
+        return frame;
+    }
+}
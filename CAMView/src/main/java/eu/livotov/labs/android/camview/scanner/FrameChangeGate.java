@@ -0,0 +1,387 @@
+package eu.livotov.labs.android.camview.scanner;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import eu.livotov.labs.android.camview.camera.FrameDescriptor;
+
+/**
+ * Cheap pre-decode check telling whether a camera frame is worth a full decoding attempt.
+ * <p/>
+ * The Y plane of the central scan area is sampled on a coarse grid. Per grid cell the gate keeps the mean luma
+ * (together they form the frame signature), the luma range and the steepest luma step found. A frame is skipped when
+ * <ul>
+ * <li>its signature matches the one of the last frame the decoder failed on, i.e. the camera still looks at the same
+ * scene that had no readable code a moment ago, or</li>
+ * <li>no cell has both enough contrast and a sharp enough edge, i.e. the frame is featureless or too blurry
+ * (out of focus, moving) for any code in it to be read.</li>
+ * </ul>
+ * An unchanged scene is re-decoded anyway once per {@link #setMaxUnchangedSkipMillis(long) refresh interval}, so a
+ * code that failed to decode once is not ignored forever.
+ * <p/>
+ * Thread safe: each decoding thread evaluates frames into its own scratch signature.
+ */
+public class FrameChangeGate
+{
+    public final static int DECODE = 0;
+    public final static int SKIP_UNCHANGED = 1;
+    public final static int SKIP_BLURRED = 2;
+
+    public final static double DEFAULT_AREA_PERCENT = 0.7;
+    public final static int DEFAULT_CHANGE_THRESHOLD = 3;
+    public final static int DEFAULT_MIN_CONTRAST = 48;
+    public final static int DEFAULT_MAX_EDGE_WIDTH = 8;
+    public final static long DEFAULT_MAX_UNCHANGED_SKIP_MS = 1000;
+
+    private final static int GRID_COLUMNS = 16;
+    private final static int GRID_ROWS = 12;
+    private final static int CELLS = GRID_COLUMNS * GRID_ROWS;
+    private final static int SAMPLES_PER_CELL_SIDE = 8;
+    private final static int SCAN_LINE_SPACING = 2;
+
+    private volatile boolean enabled = true;
+    private volatile double areaPercent = DEFAULT_AREA_PERCENT;
+    private volatile int changeThreshold = DEFAULT_CHANGE_THRESHOLD;
+    private volatile int minContrast = DEFAULT_MIN_CONTRAST;
+    private volatile int maxEdgeWidth = DEFAULT_MAX_EDGE_WIDTH;
+    private volatile long maxUnchangedSkipNanos = DEFAULT_MAX_UNCHANGED_SKIP_MS * 1000000L;
+
+    private final ThreadLocal<int[]> currentSignatures = new ThreadLocal<int[]>();
+    private final int[] failedSignature = new int[CELLS];
+    private boolean failedSignatureValid;
+    private long failedSignatureTimestamp;
+
+    private final AtomicLong evaluatedFrames = new AtomicLong();
+    private final AtomicLong unchangedFrames = new AtomicLong();
+    private final AtomicLong blurredFrames = new AtomicLong();
+
+    /**
+     * Evaluates a frame. When {@link #DECODE} is returned, the caller must report the decoding outcome with
+     * {@link #onDecodeResult(boolean)} from the same thread.
+     *
+     * @param data   NV21 frame, only the Y plane is read
+     * @param width  frame width
+     * @param height frame height
+     * @return {@link #DECODE}, {@link #SKIP_UNCHANGED} or {@link #SKIP_BLURRED}
+     */
+    public int evaluate(byte[] data, int width, int height)
+    {
+        return evaluate(data, null, 0, width, 1, width, height);
+    }
+
+    /**
+     * Evaluates a frame held in plane buffers, reading its Y plane in place
+     *
+     * @see #evaluate(byte[], int, int)
+     */
+    public int evaluate(FrameDescriptor frame)
+    {
+        final byte[] data = frame.getNV21Array();
+
+        if (data != null)
+        {
+            return evaluate(data, frame.getWidth(), frame.getHeight());
+        }
+
+        final ByteBuffer luma = frame.getPlane(FrameDescriptor.PLANE_Y);
+        return evaluate(null, luma, luma.position(), frame.getRowStride(FrameDescriptor.PLANE_Y), frame.getPixelStride(FrameDescriptor.PLANE_Y), frame.getWidth(), frame.getHeight());
+    }
+
+    /**
+     * @param data        Y plane as a heap array, or <code>null</code> to read <code>luma</code>
+     * @param luma        Y plane buffer, used when there is no array
+     * @param start       index of the first pixel
+     * @param rowStride   distance between the starts of two consecutive rows
+     * @param pixelStride distance between two consecutive pixels of a row
+     */
+    private int evaluate(byte[] data, ByteBuffer luma, int start, int rowStride, int pixelStride, int width, int height)
+    {
+        if (!enabled || width <= GRID_COLUMNS * SAMPLES_PER_CELL_SIDE || height <= GRID_ROWS * SAMPLES_PER_CELL_SIDE)
+        {
+            return DECODE;
+        }
+
+        evaluatedFrames.incrementAndGet();
+
+        int[] signature = currentSignatures.get();
+        if (signature == null)
+        {
+            signature = new int[CELLS];
+            currentSignatures.set(signature);
+        }
+
+        if (!sample(data, luma, start, rowStride, pixelStride, width, height, signature))
+        {
+            blurredFrames.incrementAndGet();
+            return SKIP_BLURRED;
+        }
+
+        synchronized (failedSignature)
+        {
+            if (failedSignatureValid && System.nanoTime() - failedSignatureTimestamp < maxUnchangedSkipNanos && matchesFailedSignature(signature))
+            {
+                unchangedFrames.incrementAndGet();
+                return SKIP_UNCHANGED;
+            }
+        }
+
+        return DECODE;
+    }
+
+    /**
+     * @param found <code>true</code> if the frame last evaluated on this thread was decoded successfully
+     */
+    public void onDecodeResult(boolean found)
+    {
+        final int[] signature = currentSignatures.get();
+
+        if (!enabled || signature == null)
+        {
+            return;
+        }
+
+        synchronized (failedSignature)
+        {
+            if (found)
+            {
+                failedSignatureValid = false;
+            }
+            else
+            {
+                System.arraycopy(signature, 0, failedSignature, 0, CELLS);
+                failedSignatureValid = true;
+                failedSignatureTimestamp = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Forgets the last failed scene, so the next sharp frame is decoded regardless of its content
+     */
+    public void reset()
+    {
+        synchronized (failedSignature)
+        {
+            failedSignatureValid = false;
+        }
+    }
+
+    /**
+     * Fills the signature with per cell mean luma
+     *
+     * @return <code>true</code> if at least one cell has enough contrast and a sharp enough edge
+     */
+    private boolean sample(byte[] data, ByteBuffer luma, int start, int rowStride, int pixelStride, int width, int height, int[] signature)
+    {
+        final int areaWidth = Math.max(GRID_COLUMNS * SAMPLES_PER_CELL_SIDE, (int) (width * areaPercent));
+        final int areaHeight = Math.max(GRID_ROWS * SAMPLES_PER_CELL_SIDE, (int) (height * areaPercent));
+        final int areaLeft = Math.max(0, (width - areaWidth) / 2);
+        final int areaTop = Math.max(0, (height - areaHeight) / 2);
+
+        // Last column and row are kept free for the gradient neighbours
+        final int stepX = Math.max(1, (Math.min(areaWidth, width - areaLeft) - 1) / (GRID_COLUMNS * SAMPLES_PER_CELL_SIDE));
+        final int stepY = Math.max(1, (Math.min(areaHeight, height - areaTop) - 1) / (GRID_ROWS * SAMPLES_PER_CELL_SIDE));
+        final int cellWidth = SAMPLES_PER_CELL_SIDE * stepX;
+        final int cellHeight = SAMPLES_PER_CELL_SIDE * stepY;
+        final int contrast = minContrast;
+        final int edgeWidth = maxEdgeWidth;
+        boolean sharp = false;
+
+        for (int cellY = 0; cellY < GRID_ROWS; cellY++)
+        {
+            for (int cellX = 0; cellX < GRID_COLUMNS; cellX++)
+            {
+                final int cellOffset = start + (areaTop + cellY * cellHeight) * rowStride + (areaLeft + cellX * cellWidth) * pixelStride;
+                int sum = 0;
+                int min = 255;
+                int max = 0;
+                int maxStep = 0;
+
+                for (int sy = 0; sy < SAMPLES_PER_CELL_SIDE; sy++)
+                {
+                    int offset = cellOffset + sy * stepY * rowStride;
+
+                    for (int sx = 0; sx < SAMPLES_PER_CELL_SIDE; sx++)
+                    {
+                        sum += luma(data, luma, offset);
+                        offset += stepX * pixelStride;
+                    }
+                }
+
+                // Edges are looked for along contiguous scan lines, point samples would alias with fine patterns
+                for (int line = 0; line < SAMPLES_PER_CELL_SIDE; line += SCAN_LINE_SPACING)
+                {
+                    int offset = cellOffset + line * stepY * rowStride;
+                    int previous = luma(data, luma, offset);
+
+                    for (int x = 1; x <= cellWidth; x++)
+                    {
+                        offset += pixelStride;
+                        final int value = luma(data, luma, offset);
+                        min = Math.min(min, value);
+                        max = Math.max(max, value);
+                        maxStep = Math.max(maxStep, Math.abs(value - previous));
+                        previous = value;
+                    }
+
+                    offset = cellOffset + line * stepX * pixelStride;
+                    previous = luma(data, luma, offset);
+
+                    for (int y = 1; y <= cellHeight; y++)
+                    {
+                        offset += rowStride;
+                        final int value = luma(data, luma, offset);
+                        maxStep = Math.max(maxStep, Math.abs(value - previous));
+                        previous = value;
+                    }
+                }
+
+                signature[cellY * GRID_COLUMNS + cellX] = sum / (SAMPLES_PER_CELL_SIDE * SAMPLES_PER_CELL_SIDE);
+
+                // A sharp edge changes most of the cell range within a pixel or two, a blurred one spreads it over many
+                final int range = max - min;
+                if (range >= contrast && maxStep * edgeWidth >= range)
+                {
+                    sharp = true;
+                }
+            }
+        }
+
+        return sharp;
+    }
+
+    private static int luma(byte[] data, ByteBuffer luma, int index)
+    {
+        return (data != null ? data[index] : luma.get(index)) & 0xff;
+    }
+
+    private boolean matchesFailedSignature(int[] signature)
+    {
+        int difference = 0;
+
+        for (int i = 0; i < CELLS; i++)
+        {
+            difference += Math.abs(signature[i] - failedSignature[i]);
+        }
+
+        return difference <= changeThreshold * CELLS;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public double getAreaPercent()
+    {
+        return areaPercent;
+    }
+
+    /**
+     * @param areaPercent share of the frame, centered, the gate looks at. Should match the decoder scan area.
+     */
+    public void setAreaPercent(double areaPercent)
+    {
+        if (areaPercent < 0.1 || areaPercent > 1.0)
+        {
+            throw new IllegalArgumentException("Area percent must be between 0.1 (10%) to 1.0 (100%). Specified value was " + areaPercent);
+        }
+
+        this.areaPercent = areaPercent;
+    }
+
+    public int getChangeThreshold()
+    {
+        return changeThreshold;
+    }
+
+    /**
+     * @param changeThreshold mean per cell luma difference up to which a frame counts as unchanged
+     */
+    public void setChangeThreshold(int changeThreshold)
+    {
+        this.changeThreshold = changeThreshold;
+    }
+
+    public int getMinContrast()
+    {
+        return minContrast;
+    }
+
+    /**
+     * @param minContrast luma range a cell must have to possibly contain a code, 0 to never skip blurred frames
+     */
+    public void setMinContrast(int minContrast)
+    {
+        this.minContrast = minContrast;
+    }
+
+    public int getMaxEdgeWidth()
+    {
+        return maxEdgeWidth;
+    }
+
+    /**
+     * @param maxEdgeWidth number of pixels an edge may be blurred over and still be considered sharp
+     */
+    public void setMaxEdgeWidth(int maxEdgeWidth)
+    {
+        if (maxEdgeWidth < 1)
+        {
+            throw new IllegalArgumentException("Max edge width must be positive. Specified value was " + maxEdgeWidth);
+        }
+
+        this.maxEdgeWidth = maxEdgeWidth;
+    }
+
+    public long getMaxUnchangedSkipMillis()
+    {
+        return maxUnchangedSkipNanos / 1000000L;
+    }
+
+    /**
+     * @param millis how long an unchanged scene may be skipped before it is decoded again
+     */
+    public void setMaxUnchangedSkipMillis(long millis)
+    {
+        this.maxUnchangedSkipNanos = millis * 1000000L;
+    }
+
+    /**
+     * @return number of frames evaluated since creation
+     */
+    public long getEvaluatedFramesCount()
+    {
+        return evaluatedFrames.get();
+    }
+
+    /**
+     * @return number of frames not decoded because the scene did not change since the last failed decode
+     */
+    public long getUnchangedFramesCount()
+    {
+        return unchangedFrames.get();
+    }
+
+    /**
+     * @return number of frames not decoded because they were featureless or blurred
+     */
+    public long getBlurredFramesCount()
+    {
+        return blurredFrames.get();
+    }
+
+    /**
+     * @return share of evaluated frames whose decoding was avoided
+     */
+    public float getSkippedFramesRatio()
+    {
+        final long evaluated = evaluatedFrames.get();
+        return evaluated > 0 ? (float) (unchangedFrames.get() + blurredFrames.get()) / evaluated : 0;
+    }
+}
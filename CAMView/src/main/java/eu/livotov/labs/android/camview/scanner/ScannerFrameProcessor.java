@@ -0,0 +1,318 @@
+package eu.livotov.labs.android.camview.scanner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import eu.livotov.labs.android.camview.camera.FocusScheduler;
+import eu.livotov.labs.android.camview.camera.FrameDescriptor;
+import eu.livotov.labs.android.camview.camera.LiveDataMetrics;
+import eu.livotov.labs.android.camview.scanner.decoder.BarcodeDecoder;
+import eu.livotov.labs.android.camview.scanner.decoder.DecodeResult;
+import eu.livotov.labs.android.camview.scanner.decoder.DecodeResultPool;
+import eu.livotov.labs.android.camview.scanner.decoder.FrameBarcodeDecoder;
+import eu.livotov.labs.android.camview.scanner.decoder.zxing.ZXDecoder;
+
+/**
+ * Per frame decoding logic of the scanner view: the {@link FrameChangeGate} and {@link AdaptiveDecodeScheduler}
+ * decide whether a frame is decoded at all, found codes are decoded into pooled {@link DecodeResult}s. Decoders
+ * implementing {@link FrameBarcodeDecoder} decode into them directly, plain {@link BarcodeDecoder}s are given NV21
+ * frames and only fill the result text in.
+ * <p/>
+ * It holds no Android dependency, so the very decode path of a scanner can be driven off device, e.g. by a
+ * {@link eu.livotov.labs.android.camview.camera.FrameSource} replaying recorded frames.
+ * <p/>
+ * Thread safe, as long as the decoder is.
+ */
+public class ScannerFrameProcessor
+{
+    private final AdaptiveDecodeScheduler decodeScheduler = new AdaptiveDecodeScheduler();
+    private final FrameChangeGate frameChangeGate = new FrameChangeGate();
+    private final DecodeResultPool decodeResultPool = new DecodeResultPool();
+    private final ScannerStartupMetrics startupMetrics = new ScannerStartupMetrics();
+    private volatile BarcodeDecoder decoder;
+    private volatile LiveDataMetrics metrics;
+    private volatile boolean multipleCodesMode;
+    private volatile FocusScheduler focusScheduler;
+
+    private final ThreadLocal<ArrayList<DecodeResult>> multipleResultsScratch = new ThreadLocal<ArrayList<DecodeResult>>()
+    {
+        @Override
+        protected ArrayList<DecodeResult> initialValue()
+        {
+            return new ArrayList<DecodeResult>();
+        }
+    };
+
+    // NV21 copies of frames held in plane buffers, for decoders only able to read arrays
+    private final ThreadLocal<byte[]> nv21Scratch = new ThreadLocal<byte[]>();
+
+    public ScannerFrameProcessor(BarcodeDecoder decoder)
+    {
+        this.decoder = decoder;
+    }
+
+    public BarcodeDecoder getDecoder()
+    {
+        return decoder;
+    }
+
+    public void setDecoder(BarcodeDecoder decoder)
+    {
+        this.decoder = decoder;
+    }
+
+    public AdaptiveDecodeScheduler getDecodeScheduler()
+    {
+        return decodeScheduler;
+    }
+
+    public FrameChangeGate getFrameChangeGate()
+    {
+        return frameChangeGate;
+    }
+
+    public DecodeResultPool getDecodeResultPool()
+    {
+        return decodeResultPool;
+    }
+
+    /**
+     * @return timeline of the last start, its first decodable frame is recorded here
+     */
+    public ScannerStartupMetrics getStartupMetrics()
+    {
+        return startupMetrics;
+    }
+
+    public LiveDataMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * @param metrics receiver of skipped frames and decoding timings, <code>null</code> to disable reporting
+     */
+    public void setMetrics(LiveDataMetrics metrics)
+    {
+        this.metrics = metrics;
+
+        if (decoder instanceof ZXDecoder)
+        {
+            ((ZXDecoder) decoder).setMetrics(metrics);
+        }
+    }
+
+    public boolean isMultipleCodesMode()
+    {
+        return multipleCodesMode;
+    }
+
+    public void setMultipleCodesMode(boolean multipleCodesMode)
+    {
+        this.multipleCodesMode = multipleCodesMode;
+    }
+
+    public FocusScheduler getFocusScheduler()
+    {
+        return focusScheduler;
+    }
+
+    /**
+     * @param focusScheduler receiver of blurred frames and near misses, to focus the camera when frames call for it,
+     *                       <code>null</code> to leave focus to the camera
+     */
+    public void setFocusScheduler(FocusScheduler focusScheduler)
+    {
+        this.focusScheduler = focusScheduler;
+    }
+
+    /**
+     * Forgets everything learnt from previous frames, to be called whenever scanning starts over
+     *
+     * @param parallelism number of threads frames are processed on
+     */
+    public void reset(int parallelism)
+    {
+        decodeScheduler.setParallelism(parallelism);
+        decodeScheduler.reset();
+        frameChangeGate.reset();
+
+        if (decoder instanceof ZXDecoder)
+        {
+            ((ZXDecoder) decoder).getRegionTracker().reset();
+        }
+    }
+
+    /**
+     * @return <code>null</code> if the frame was skipped or holds no code, the decoded {@link DecodeResult} otherwise,
+     * or in multiple codes mode a list of them. Results are leased from the pool and must be released by the receiver.
+     */
+    public Object process(FrameDescriptor frame)
+    {
+        final long started = System.nanoTime();
+
+        final int verdict = frameChangeGate.evaluate(frame);
+        onFrameEvaluated(verdict);
+
+        if (verdict == FrameChangeGate.DECODE && decodeScheduler.tryBeginDecode(started))
+        {
+            startupMetrics.onFrameDecoding(started);
+            final long cpuStarted = threadCpuTimeNanos();
+
+            if (multipleCodesMode)
+            {
+                return decodeMultiple(frame, started, cpuStarted);
+            }
+
+            final DecodeResult result = decodeResultPool.acquire();
+            boolean found = false;
+
+            try
+            {
+                found = decode(decoder, frame, result);
+                return found ? result : null;
+            }
+            finally
+            {
+                if (!found)
+                {
+                    result.release();
+                }
+
+                final long cpuNanos = cpuStarted >= 0 ? threadCpuTimeNanos() - cpuStarted : -1;
+                decodeScheduler.onDecodeCompleted(System.nanoTime() - started, cpuNanos, found);
+                frameChangeGate.onDecodeResult(found);
+                onFrameDecoded(found);
+            }
+        } else
+        {
+            final LiveDataMetrics metrics = this.metrics;
+            if (metrics != null)
+            {
+                metrics.onFrameSkipped();
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * @return CPU time consumed so far by the calling thread, in nanoseconds, or -1 when it cannot be measured, in
+     * which case decode scheduling only looks at wall time
+     */
+    protected long threadCpuTimeNanos()
+    {
+        return -1;
+    }
+
+    private List<DecodeResult> decodeMultiple(FrameDescriptor frame, long started, long cpuStarted)
+    {
+        final BarcodeDecoder decoder = this.decoder;
+        final ArrayList<DecodeResult> scratch = multipleResultsScratch.get();
+        int count = 0;
+
+        try
+        {
+            if (decoder instanceof FrameBarcodeDecoder)
+            {
+                count = ((FrameBarcodeDecoder) decoder).decodeMultiple(frame, decodeResultPool, scratch);
+            }
+            else
+            {
+                // Plain decoders read a single code per frame
+                final DecodeResult result = decodeResultPool.acquire();
+                scratch.add(result);
+                count = decode(decoder, frame, result) ? 1 : 0;
+            }
+
+            return count > 0 ? new ArrayList<DecodeResult>(scratch) : null;
+        }
+        finally
+        {
+            if (count == 0)
+            {
+                for (DecodeResult result : scratch)
+                {
+                    result.release();
+                }
+            }
+            scratch.clear();
+
+            final long cpuNanos = cpuStarted >= 0 ? threadCpuTimeNanos() - cpuStarted : -1;
+            decodeScheduler.onDecodeCompleted(System.nanoTime() - started, cpuNanos, count > 0);
+            frameChangeGate.onDecodeResult(count > 0);
+            onFrameDecoded(count > 0);
+        }
+    }
+
+    private boolean decode(BarcodeDecoder decoder, FrameDescriptor frame, DecodeResult result)
+    {
+        if (decoder instanceof FrameBarcodeDecoder)
+        {
+            return ((FrameBarcodeDecoder) decoder).decode(frame, result);
+        }
+
+        byte[] image = frame.getNV21Array();
+
+        if (image == null)
+        {
+            final int size = frame.getWidth() * frame.getHeight() * 3 / 2;
+            image = nv21Scratch.get();
+
+            if (image == null || image.length < size)
+            {
+                image = new byte[size];
+                nv21Scratch.set(image);
+            }
+
+            frame.copyToNV21(image);
+        }
+
+        final String text = decoder.decode(image, frame.getWidth(), frame.getHeight());
+
+        if (text == null)
+        {
+            return false;
+        }
+
+        result.clear();
+        result.setText(text);
+        result.setTimestamp(System.currentTimeMillis());
+        return true;
+    }
+
+    private void onFrameEvaluated(int verdict)
+    {
+        final FocusScheduler focusScheduler = this.focusScheduler;
+
+        if (focusScheduler != null)
+        {
+            if (verdict == FrameChangeGate.SKIP_BLURRED)
+            {
+                focusScheduler.onFrameBlurred();
+            }
+            else if (verdict == FrameChangeGate.DECODE)
+            {
+                focusScheduler.onFrameSharp();
+            }
+        }
+    }
+
+    private void onFrameDecoded(boolean found)
+    {
+        final FocusScheduler focusScheduler = this.focusScheduler;
+
+        if (focusScheduler != null)
+        {
+            if (found)
+            {
+                focusScheduler.onCodeDecoded();
+            }
+            else if (decoder instanceof ZXDecoder && ((ZXDecoder) decoder).hadNearMiss())
+            {
+                // Code was located but not read, more often than not because it is out of focus
+                focusScheduler.onNearMiss();
+            }
+        }
+    }
+}
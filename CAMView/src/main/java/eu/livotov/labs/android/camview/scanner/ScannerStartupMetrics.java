@@ -0,0 +1,90 @@
+package eu.livotov.labs.android.camview.scanner;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timeline of the last scanner start: when the camera was opened, the decoder warmed up, the preview started and,
+ * the figure that matters to users, the first camera frame reached the decoder. Camera open and decoder warm up run
+ * in parallel, so either may complete first.
+ * <p/>
+ * All durations are in nanoseconds since the start was requested, -1 while the phase has not been reached yet.
+ * Phases are recorded from the main and processing threads, reading them from any thread is safe.
+ */
+public class ScannerStartupMetrics
+{
+    private volatile long startedAt = -1;
+    private volatile long cameraOpenedAt = -1;
+    private volatile long decoderWarmedUpAt = -1;
+    private volatile long previewStartedAt = -1;
+    private final AtomicLong firstDecodableFrameAt = new AtomicLong(-1);
+
+    /**
+     * Scanner start was requested, forgets the timeline of the previous start
+     */
+    public void onStartRequested()
+    {
+        cameraOpenedAt = -1;
+        decoderWarmedUpAt = -1;
+        previewStartedAt = -1;
+        firstDecodableFrameAt.set(-1);
+        startedAt = System.nanoTime();
+    }
+
+    public void onCameraOpened()
+    {
+        cameraOpenedAt = System.nanoTime();
+    }
+
+    public void onDecoderWarmedUp()
+    {
+        decoderWarmedUpAt = System.nanoTime();
+    }
+
+    public void onPreviewStarted()
+    {
+        previewStartedAt = System.nanoTime();
+    }
+
+    /**
+     * A camera frame passed the frame change gate and the decode scheduler and is about to be decoded. Only the first
+     * one after a start is recorded.
+     *
+     * @param now {@link System#nanoTime()} of the frame processing start
+     */
+    public void onFrameDecoding(long now)
+    {
+        if (startedAt >= 0 && firstDecodableFrameAt.get() < 0)
+        {
+            firstDecodableFrameAt.compareAndSet(-1, now);
+        }
+    }
+
+    public long getCameraOpenNanos()
+    {
+        return since(cameraOpenedAt);
+    }
+
+    public long getDecoderWarmUpNanos()
+    {
+        return since(decoderWarmedUpAt);
+    }
+
+    public long getPreviewStartNanos()
+    {
+        return since(previewStartedAt);
+    }
+
+    /**
+     * @return time from the start request to the first camera frame the decoder got to work on
+     */
+    public long getTimeToFirstDecodableFrameNanos()
+    {
+        return since(firstDecodableFrameAt.get());
+    }
+
+    private long since(long timestamp)
+    {
+        final long started = startedAt;
+        return started >= 0 && timestamp >= 0 ? Math.max(0, timestamp - started) : -1;
+    }
+}
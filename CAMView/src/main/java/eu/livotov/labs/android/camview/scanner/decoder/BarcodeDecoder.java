@@ -3,6 +3,10 @@ package eu.livotov.labs.android.camview.scanner.decoder;
 /**
  * (c) Livotov Labs Ltd. 2012
  * Date: 03/11/2014
+ * <p/>
+ * Implementations must be thread safe when frames are decoded on several threads at once.
+ *
+ * @see FrameBarcodeDecoder
  */
 public interface BarcodeDecoder
 {
@@ -0,0 +1,279 @@
+package eu.livotov.labs.android.camview.scanner.decoder;
+
+/**
+ * Reusable result of a successful frame decode.
+ * <p/>
+ * Instances are filled in by {@link FrameBarcodeDecoder#decode(byte[], int, int, DecodeResult)} and are normally taken
+ * from a {@link DecodeResultPool}. A pooled result must be handed back with {@link #release()} once consumed, after
+ * which its content may be overwritten at any time, so consumers willing to keep it have to {@link #copyFrom(DecodeResult) copy}
+ * it first. Result points, bounds and raw bytes are kept in arrays that grow as needed and are reused afterwards.
+ * <p/>
+ * All coordinates are in camera frame pixels.
+ */
+public class DecodeResult
+{
+    private final DecodeResultPool pool;
+    boolean pooled;
+
+    private String text;
+    private String format;
+    private byte[] rawBytes = new byte[0];
+    private int rawBytesLength;
+    private float[] points = new float[8];
+    private int pointsCount;
+    private int left;
+    private int top;
+    private int right;
+    private int bottom;
+    private long timestamp;
+    private long frameId;
+    private int pass;
+
+    public DecodeResult()
+    {
+        this(null);
+    }
+
+    DecodeResult(DecodeResultPool pool)
+    {
+        this.pool = pool;
+    }
+
+    /**
+     * @return decoded content
+     */
+    public String getText()
+    {
+        return text;
+    }
+
+    public void setText(String text)
+    {
+        this.text = text;
+    }
+
+    /**
+     * @return symbology name, as defined by the decoder, e.g. <code>QR_CODE</code> or <code>EAN_13</code>
+     */
+    public String getFormat()
+    {
+        return format;
+    }
+
+    public void setFormat(String format)
+    {
+        this.format = format;
+    }
+
+    /**
+     * @return raw bytes buffer, only the first {@link #getRawBytesLength()} bytes are valid
+     */
+    public byte[] getRawBytes()
+    {
+        return rawBytes;
+    }
+
+    public int getRawBytesLength()
+    {
+        return rawBytesLength;
+    }
+
+    /**
+     * @param bytes raw bytes of the code, copied into the reusable buffer. May be <code>null</code>.
+     */
+    public void setRawBytes(byte[] bytes)
+    {
+        rawBytesLength = bytes != null ? bytes.length : 0;
+
+        if (rawBytes.length < rawBytesLength)
+        {
+            rawBytes = new byte[rawBytesLength];
+        }
+
+        if (bytes != null)
+        {
+            System.arraycopy(bytes, 0, rawBytes, 0, rawBytesLength);
+        }
+    }
+
+    public int getPointsCount()
+    {
+        return pointsCount;
+    }
+
+    public float getPointX(int index)
+    {
+        return points[index * 2];
+    }
+
+    public float getPointY(int index)
+    {
+        return points[index * 2 + 1];
+    }
+
+    public void clearPoints()
+    {
+        pointsCount = 0;
+    }
+
+    /**
+     * Appends a result point and extends the bounds to include it
+     */
+    public void addPoint(float x, float y)
+    {
+        if (points.length < (pointsCount + 1) * 2)
+        {
+            final float[] grown = new float[points.length * 2];
+            System.arraycopy(points, 0, grown, 0, pointsCount * 2);
+            points = grown;
+        }
+
+        points[pointsCount * 2] = x;
+        points[pointsCount * 2 + 1] = y;
+
+        if (pointsCount == 0)
+        {
+            left = right = (int) x;
+            top = bottom = (int) y;
+        }
+        else
+        {
+            left = Math.min(left, (int) x);
+            top = Math.min(top, (int) y);
+            right = Math.max(right, (int) x);
+            bottom = Math.max(bottom, (int) y);
+        }
+
+        pointsCount++;
+    }
+
+    /**
+     * @return <code>true</code> if the decoder reported where the code is, i.e. bounds are valid
+     */
+    public boolean hasBounds()
+    {
+        return pointsCount > 0;
+    }
+
+    public int getLeft()
+    {
+        return left;
+    }
+
+    public int getTop()
+    {
+        return top;
+    }
+
+    public int getRight()
+    {
+        return right;
+    }
+
+    public int getBottom()
+    {
+        return bottom;
+    }
+
+    /**
+     * @return wall clock time, in milliseconds, the code was decoded at
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp)
+    {
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * @return sequence number of the decoded frame among all frames given to the decoder
+     */
+    public long getFrameId()
+    {
+        return frameId;
+    }
+
+    public void setFrameId(long frameId)
+    {
+        this.frameId = frameId;
+    }
+
+    /**
+     * @return decoder specific identifier of the pass that found the code, e.g. {@link eu.livotov.labs.android.camview.scanner.decoder.zxing.ZXDecoder#PASS_UPRIGHT}
+     */
+    public int getPass()
+    {
+        return pass;
+    }
+
+    public void setPass(int pass)
+    {
+        this.pass = pass;
+    }
+
+    /**
+     * Clears all fields, keeping the allocated buffers
+     */
+    public void clear()
+    {
+        text = null;
+        format = null;
+        rawBytesLength = 0;
+        pointsCount = 0;
+        left = top = right = bottom = 0;
+        timestamp = 0;
+        frameId = 0;
+        pass = 0;
+    }
+
+    /**
+     * Copies the content of another result into this one, reusing this one's buffers
+     */
+    public void copyFrom(DecodeResult other)
+    {
+        text = other.text;
+        format = other.format;
+        frameId = other.frameId;
+        timestamp = other.timestamp;
+        pass = other.pass;
+
+        rawBytesLength = other.rawBytesLength;
+        if (rawBytes.length < rawBytesLength)
+        {
+            rawBytes = new byte[rawBytesLength];
+        }
+        System.arraycopy(other.rawBytes, 0, rawBytes, 0, rawBytesLength);
+
+        pointsCount = other.pointsCount;
+        if (points.length < pointsCount * 2)
+        {
+            points = new float[other.points.length];
+        }
+        System.arraycopy(other.points, 0, points, 0, pointsCount * 2);
+
+        left = other.left;
+        top = other.top;
+        right = other.right;
+        bottom = other.bottom;
+    }
+
+    /**
+     * Hands the result back to its pool. Does nothing for results not taken from a pool.
+     */
+    public void release()
+    {
+        if (pool != null)
+        {
+            pool.recycle(this);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return text;
+    }
+}
@@ -0,0 +1,60 @@
+package eu.livotov.labs.android.camview.scanner.decoder;
+
+/**
+ * Thread safe pool of {@link DecodeResult} instances, so decoding frames in a loop does not allocate result objects.
+ * <p/>
+ * When the pool runs dry a new result is created, results released while the pool is full are left to the garbage
+ * collector. Results which are never released (e.g. dropped on the way to the consumer) are thus merely not reused.
+ */
+public class DecodeResultPool
+{
+    public final static int DEFAULT_CAPACITY = 4;
+
+    private final DecodeResult[] free;
+    private int freeCount;
+
+    public DecodeResultPool()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public DecodeResultPool(int capacity)
+    {
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("Pool capacity must be positive. Specified value was " + capacity);
+        }
+
+        free = new DecodeResult[capacity];
+    }
+
+    /**
+     * @return cleared result, to be handed back with {@link DecodeResult#release()}
+     */
+    public DecodeResult acquire()
+    {
+        synchronized (this)
+        {
+            if (freeCount > 0)
+            {
+                final DecodeResult result = free[--freeCount];
+                free[freeCount] = null;
+                result.pooled = false;
+                return result;
+            }
+        }
+
+        return new DecodeResult(this);
+    }
+
+    synchronized void recycle(DecodeResult result)
+    {
+        // Guard against double release, which would hand the same result out twice
+        if (!result.pooled && freeCount < free.length)
+        {
+            result.clear();
+            result.pooled = true;
+            free[freeCount++] = result;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package eu.livotov.labs.android.camview.scanner.decoder;
+
+import java.util.List;
+
+import eu.livotov.labs.android.camview.camera.FrameDescriptor;
+
+/**
+ * {@link BarcodeDecoder} able to decode into pooled {@link DecodeResult}s, frames held in plane buffers and several
+ * codes per frame. The scanner uses these entry points whenever its decoder implements them and falls back to
+ * {@link #decode(byte[], int, int)} otherwise, so plain decoders keep working unchanged.
+ */
+public interface FrameBarcodeDecoder extends BarcodeDecoder
+{
+    /**
+     * Decodes a camera frame into a reusable result object
+     *
+     * @param image  NV21 frame data, must not be modified
+     * @param width  frame width
+     * @param height frame height
+     * @param result receives the decoded code, left in an unspecified state when nothing was found
+     * @return <code>true</code> if a code was found
+     */
+    boolean decode(byte[] image, int width, int height, DecodeResult result);
+
+    /**
+     * Decodes a camera frame held in plane buffers, e.g. direct ones filled by the camera, without copying it
+     *
+     * @param frame  frame to decode, its buffers must not be modified
+     * @param result receives the decoded code, left in an unspecified state when nothing was found
+     * @return <code>true</code> if a code was found
+     * @see #decode(byte[], int, int, DecodeResult)
+     */
+    boolean decode(FrameDescriptor frame, DecodeResult result);
+
+    /**
+     * Decodes every code found in the scan area of a camera frame
+     *
+     * @param image   NV21 frame data, must not be modified
+     * @param width   frame width
+     * @param height  frame height
+     * @param pool    pool results are taken from
+     * @param results receives one result per distinct code found
+     * @return number of results added
+     */
+    int decodeMultiple(byte[] image, int width, int height, DecodeResultPool pool, List<DecodeResult> results);
+
+    /**
+     * Decodes every code found in the scan area of a camera frame held in plane buffers
+     *
+     * @see #decodeMultiple(byte[], int, int, DecodeResultPool, List)
+     */
+    int decodeMultiple(FrameDescriptor frame, DecodeResultPool pool, List<DecodeResult> results);
+}
@@ -0,0 +1,188 @@
+package eu.livotov.labs.android.camview.scanner.decoder;
+
+/**
+ * Remembers where in the frame the last code was found, so following frames can be decoded in a small window
+ * around that location first instead of the whole scan area.
+ * <p/>
+ * The window is a square centered on the last code, its side being the larger code dimension times
+ * <code>(1 + 2 * margin)</code>, so both 1D codes (whose result points lie on a single scan line) and codes turned
+ * by the user keep fitting. The track is dropped after a number of consecutive frames in which no code was found.
+ * <p/>
+ * All coordinates are in camera frame pixels. Thread safe.
+ */
+public class RegionTracker
+{
+    public final static float DEFAULT_MARGIN = 0.5f;
+    public final static int DEFAULT_MAX_MISSES = 5;
+    public final static int MIN_WINDOW_SIZE = 64;
+
+    private volatile boolean enabled = true;
+    private volatile float margin = DEFAULT_MARGIN;
+    private volatile int maxMisses = DEFAULT_MAX_MISSES;
+
+    private boolean tracking;
+    private int centerX;
+    private int centerY;
+    private int size;
+    private int misses;
+
+    private long windowHits;
+    private long windowMisses;
+    private long windowPixels;
+    private long fullAreaPixels;
+
+    /**
+     * @param frameWidth  frame width
+     * @param frameHeight frame height
+     * @param window      receives left, top, width and height of the window to try first
+     * @return <code>true</code> if a region is tracked and the window was filled
+     */
+    public synchronized boolean getWindow(int frameWidth, int frameHeight, int[] window)
+    {
+        if (!enabled || !tracking)
+        {
+            return false;
+        }
+
+        final int side = Math.max(MIN_WINDOW_SIZE, (int) (size * (1 + 2 * margin)));
+        final int width = Math.min(frameWidth, side);
+        final int height = Math.min(frameHeight, side);
+
+        window[0] = Math.max(0, Math.min(frameWidth - width, centerX - width / 2));
+        window[1] = Math.max(0, Math.min(frameHeight - height, centerY - height / 2));
+        window[2] = width;
+        window[3] = height;
+        return true;
+    }
+
+    /**
+     * Starts or updates the track with the bounding box of a freshly decoded code
+     */
+    public synchronized void onFound(int minX, int minY, int maxX, int maxY)
+    {
+        tracking = true;
+        centerX = (minX + maxX) / 2;
+        centerY = (minY + maxY) / 2;
+        size = Math.max(maxX - minX, maxY - minY);
+        misses = 0;
+    }
+
+    /**
+     * Counts a frame in which no code was found, neither in the window nor in the full scan area
+     */
+    public synchronized void onMissed()
+    {
+        if (tracking && ++misses >= maxMisses)
+        {
+            tracking = false;
+        }
+    }
+
+    /**
+     * Records the outcome of a decoding attempt limited to the tracked window
+     *
+     * @param pixels       number of pixels in the window
+     * @param areaPixels   number of pixels in the full scan area the window saved scanning
+     * @param found        <code>true</code> if a code was found in the window
+     */
+    public synchronized void onWindowDecoded(int pixels, int areaPixels, boolean found)
+    {
+        windowPixels += pixels;
+        fullAreaPixels += areaPixels;
+
+        if (found)
+        {
+            windowHits++;
+        }
+        else
+        {
+            windowMisses++;
+        }
+    }
+
+    public synchronized boolean isTracking()
+    {
+        return tracking;
+    }
+
+    public synchronized void reset()
+    {
+        tracking = false;
+        misses = 0;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+
+        if (!enabled)
+        {
+            reset();
+        }
+    }
+
+    public float getMargin()
+    {
+        return margin;
+    }
+
+    /**
+     * @param margin extra space around the last code, relative to its larger dimension, on each side of the window
+     */
+    public void setMargin(float margin)
+    {
+        if (margin < 0)
+        {
+            throw new IllegalArgumentException("Margin cannot be negative. Specified value was " + margin);
+        }
+
+        this.margin = margin;
+    }
+
+    public int getMaxMisses()
+    {
+        return maxMisses;
+    }
+
+    /**
+     * @param maxMisses number of consecutive frames without a code after which the track is dropped
+     */
+    public void setMaxMisses(int maxMisses)
+    {
+        if (maxMisses < 1)
+        {
+            throw new IllegalArgumentException("Max misses must be positive. Specified value was " + maxMisses);
+        }
+
+        this.maxMisses = maxMisses;
+    }
+
+    /**
+     * @return number of frames decoded within the tracked window alone
+     */
+    public synchronized long getWindowHitsCount()
+    {
+        return windowHits;
+    }
+
+    /**
+     * @return number of frames for which the tracked window was tried in vain before falling back to the full area
+     */
+    public synchronized long getWindowMissesCount()
+    {
+        return windowMisses;
+    }
+
+    /**
+     * @return pixels scanned in windows relative to the pixels the full scan area would have taken for those frames
+     */
+    public synchronized float getWindowPixelsRatio()
+    {
+        return fullAreaPixels > 0 ? (float) windowPixels / fullAreaPixels : 0;
+    }
+}
@@ -0,0 +1,61 @@
+package eu.livotov.labs.android.camview.scanner.decoder.zxing;
+
+import com.google.zxing.common.BitMatrix;
+
+import java.util.ArrayList;
+
+/**
+ * Black matrices handed out while decoding a frame and taken back all at once when the frame is done, so the
+ * matrices derived from the shared binarization of every frame (mirrored, rotated, region copies) are reused.
+ * <p/>
+ * Matrices are matched by exact size, which stays the same from frame to frame for a given camera preview and scan
+ * area. Not thread safe, every decoding thread owns its own pool.
+ */
+final class BitMatrixPool
+{
+    private static final int MAX_FREE_MATRICES = 8;
+
+    private final ArrayList<BitMatrix> free = new ArrayList<BitMatrix>();
+    private final ArrayList<BitMatrix> used = new ArrayList<BitMatrix>();
+
+    /**
+     * @return cleared matrix of the given size, valid until {@link #releaseAll()}
+     */
+    BitMatrix acquire(int width, int height)
+    {
+        BitMatrix matrix = null;
+
+        for (int i = free.size() - 1; i >= 0; i--)
+        {
+            final BitMatrix candidate = free.get(i);
+            if (candidate.getWidth() == width && candidate.getHeight() == height)
+            {
+                matrix = free.remove(i);
+                matrix.clear();
+                break;
+            }
+        }
+
+        if (matrix == null)
+        {
+            matrix = new BitMatrix(width, height);
+        }
+
+        used.add(matrix);
+        return matrix;
+    }
+
+    /**
+     * Takes back every matrix acquired since the previous call, keeping the most recent ones for reuse
+     */
+    void releaseAll()
+    {
+        free.addAll(used);
+        used.clear();
+
+        while (free.size() > MAX_FREE_MATRICES)
+        {
+            free.remove(0);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package eu.livotov.labs.android.camview.scanner.decoder.zxing;
+
+import com.google.zxing.LuminanceSource;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Read-only view over the Y plane of a frame held in a {@link ByteBuffer}, typically a direct one filled by the
+ * camera. Rows are read straight from the buffer with the plane row and pixel strides, so the frame is never copied
+ * into a heap array first.
+ * <p/>
+ * Like the array based sources, the crop can be served horizontally mirrored and rotated 90 degrees counter clockwise
+ * purely in the index math. The crop rectangle is always given in frame coordinates.
+ */
+public class ByteBufferYUVLuminanceSource extends LuminanceSource
+{
+    private final ByteBuffer plane;
+    private final ByteBuffer reader;
+    private final int start;
+    private final int rowStride;
+    private final int pixelStride;
+    private final int dataWidth;
+    private final int dataHeight;
+    private final int left;
+    private final int top;
+    private final int cropWidth;
+    private final int cropHeight;
+    private final boolean reverseHorizontal;
+    private final boolean rotated;
+    private byte[] sourceRow;
+
+    /**
+     * @param plane             Y plane, starting at the buffer position. It is never modified, nor is its position.
+     * @param rowStride         distance in bytes between the starts of two consecutive rows
+     * @param pixelStride       distance in bytes between two consecutive pixels of a row
+     * @param dataWidth         frame width
+     * @param dataHeight        frame height
+     * @param reverseHorizontal if <code>true</code>, the crop is served horizontally mirrored
+     */
+    public ByteBufferYUVLuminanceSource(ByteBuffer plane, int rowStride, int pixelStride, int dataWidth, int dataHeight, int left, int top, int width, int height, boolean reverseHorizontal)
+    {
+        this(plane, rowStride, pixelStride, dataWidth, dataHeight, left, top, width, height, reverseHorizontal, false);
+    }
+
+    private ByteBufferYUVLuminanceSource(ByteBuffer plane, int rowStride, int pixelStride, int dataWidth, int dataHeight, int left, int top, int width, int height, boolean reverseHorizontal, boolean rotated)
+    {
+        super(rotated ? height : width, rotated ? width : height);
+
+        if (left < 0 || top < 0 || left + width > dataWidth || top + height > dataHeight)
+        {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+        }
+
+        this.plane = plane;
+        this.reader = plane.duplicate();
+        this.start = plane.position();
+        this.rowStride = rowStride;
+        this.pixelStride = pixelStride;
+        this.dataWidth = dataWidth;
+        this.dataHeight = dataHeight;
+        this.left = left;
+        this.top = top;
+        this.cropWidth = width;
+        this.cropHeight = height;
+        this.reverseHorizontal = reverseHorizontal;
+        this.rotated = rotated;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row)
+    {
+        if (y < 0 || y >= getHeight())
+        {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+
+        final int width = getWidth();
+        if (row == null || row.length < width)
+        {
+            row = new byte[width];
+        }
+
+        if (rotated)
+        {
+            // Row y of the rotated view is column (cropWidth - 1 - y) of the crop (or column y when mirrored), read top to bottom
+            int index = start + top * rowStride + (left + (reverseHorizontal ? y : cropWidth - 1 - y)) * pixelStride;
+
+            for (int x = 0; x < width; x++)
+            {
+                row[x] = plane.get(index);
+                index += rowStride;
+            }
+        }
+        else
+        {
+            readSourceRow(top + y, row, 0);
+        }
+
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix()
+    {
+        final int width = getWidth();
+        final int height = getHeight();
+        final byte[] matrix = new byte[width * height];
+
+        if (!rotated)
+        {
+            for (int y = 0; y < height; y++)
+            {
+                readSourceRow(top + y, matrix, y * width);
+            }
+
+            return matrix;
+        }
+
+        // Walk the source row by row and scatter into the rotated columns
+        if (sourceRow == null)
+        {
+            sourceRow = new byte[cropWidth];
+        }
+
+        final int firstOutputRow = reverseHorizontal ? 0 : cropWidth - 1;
+        final int outputStep = reverseHorizontal ? width : -width;
+
+        for (int sy = 0; sy < cropHeight; sy++)
+        {
+            readSourceRow(top + sy, sourceRow, 0, false);
+
+            int outputOffset = firstOutputRow * width + sy;
+            for (int sx = 0; sx < cropWidth; sx++)
+            {
+                matrix[outputOffset] = sourceRow[sx];
+                outputOffset += outputStep;
+            }
+        }
+
+        return matrix;
+    }
+
+    private void readSourceRow(int sourceY, byte[] destination, int offset)
+    {
+        readSourceRow(sourceY, destination, offset, reverseHorizontal);
+    }
+
+    /**
+     * Copies the crop part of a frame row
+     */
+    private void readSourceRow(int sourceY, byte[] destination, int offset, boolean reversed)
+    {
+        final int rowStart = start + sourceY * rowStride + left * pixelStride;
+
+        if (pixelStride == 1)
+        {
+            reader.position(rowStart);
+            reader.get(destination, offset, cropWidth);
+
+            if (reversed)
+            {
+                for (int i = offset, j = offset + cropWidth - 1; i < j; i++, j--)
+                {
+                    final byte swap = destination[i];
+                    destination[i] = destination[j];
+                    destination[j] = swap;
+                }
+            }
+        }
+        else
+        {
+            for (int x = 0; x < cropWidth; x++)
+            {
+                destination[offset + (reversed ? cropWidth - 1 - x : x)] = plane.get(rowStart + x * pixelStride);
+            }
+        }
+    }
+
+    @Override
+    public boolean isCropSupported()
+    {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource crop(int left, int top, int width, int height)
+    {
+        if (rotated)
+        {
+            // Map the rectangle given in rotated coordinates back onto the frame
+            final int sourceLeft = reverseHorizontal ? this.left + top : this.left + cropWidth - top - height;
+            return new ByteBufferYUVLuminanceSource(plane, rowStride, pixelStride, dataWidth, dataHeight, sourceLeft, this.top + left, height, width, reverseHorizontal, true);
+        }
+
+        final int sourceLeft = reverseHorizontal ? this.left + cropWidth - left - width : this.left + left;
+        return new ByteBufferYUVLuminanceSource(plane, rowStride, pixelStride, dataWidth, dataHeight, sourceLeft, this.top + top, width, height, reverseHorizontal, false);
+    }
+
+    @Override
+    public boolean isRotateSupported()
+    {
+        return !rotated;
+    }
+
+    @Override
+    public LuminanceSource rotateCounterClockwise()
+    {
+        if (rotated)
+        {
+            return super.rotateCounterClockwise();
+        }
+
+        return new ByteBufferYUVLuminanceSource(plane, rowStride, pixelStride, dataWidth, dataHeight, left, top, cropWidth, cropHeight, reverseHorizontal, true);
+    }
+}
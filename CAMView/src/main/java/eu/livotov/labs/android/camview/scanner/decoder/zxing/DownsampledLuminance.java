@@ -0,0 +1,127 @@
+package eu.livotov.labs.android.camview.scanner.decoder.zxing;
+
+import com.google.zxing.LuminanceSource;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import eu.livotov.labs.android.camview.camera.FrameDescriptor;
+
+/**
+ * Reduced copy of the Y plane of a frame area, for a quick first decoding pass: every pixel is the average of a
+ * square block of frame pixels. Buffers are kept from frame to frame, so as long as the preview size and the scan
+ * area stay the same, downsampling allocates nothing but the luminance source wrapping the result.
+ * <p/>
+ * Not thread safe, every decoding thread owns its own.
+ */
+final class DownsampledLuminance
+{
+    private byte[] pixels = new byte[0];
+    private byte[] sourceRow = new byte[0];
+    private int[] sums = new int[0];
+
+    /**
+     * @param image  NV21 frame data, <code>null</code> to read the Y plane of <code>frame</code> instead
+     * @param frame  frame descriptor, used only when there is no <code>image</code> array
+     * @param width  frame width
+     * @param factor size of the averaged blocks, a power of two
+     * @return view of the downsampled area, <code>areaWidth / factor</code> by <code>areaHeight / factor</code>
+     * pixels. It is only valid until the next call.
+     */
+    LuminanceSource downsample(byte[] image, FrameDescriptor frame, int width, int left, int top, int areaWidth, int areaHeight, int factor)
+    {
+        final int scaledWidth = areaWidth / factor;
+        final int scaledHeight = areaHeight / factor;
+        final int shift = 2 * Integer.numberOfTrailingZeros(factor);
+
+        if (pixels.length != scaledWidth * scaledHeight)
+        {
+            pixels = new byte[scaledWidth * scaledHeight];
+        }
+
+        if (sums.length < scaledWidth)
+        {
+            sums = new int[scaledWidth];
+        }
+
+        ByteBuffer plane = null;
+        ByteBuffer reader = null;
+        int start = 0;
+        int rowStride = width;
+        int pixelStride = 1;
+
+        if (image == null)
+        {
+            plane = frame.getPlane(FrameDescriptor.PLANE_Y);
+            start = plane.position();
+            rowStride = frame.getRowStride(FrameDescriptor.PLANE_Y);
+            pixelStride = frame.getPixelStride(FrameDescriptor.PLANE_Y);
+            reader = pixelStride == 1 ? plane.duplicate() : null;
+
+            if (sourceRow.length < scaledWidth * factor)
+            {
+                sourceRow = new byte[scaledWidth * factor];
+            }
+        }
+
+        for (int y = 0; y < scaledHeight; y++)
+        {
+            Arrays.fill(sums, 0, scaledWidth, 0);
+
+            for (int k = 0; k < factor; k++)
+            {
+                final int sourceY = top + y * factor + k;
+                final byte[] row;
+                int offset;
+
+                if (image != null)
+                {
+                    row = image;
+                    offset = sourceY * width + left;
+                }
+                else
+                {
+                    row = sourceRow;
+                    offset = 0;
+                    readRow(plane, reader, start + sourceY * rowStride + left * pixelStride, pixelStride, scaledWidth * factor);
+                }
+
+                for (int x = 0; x < scaledWidth; x++)
+                {
+                    int sum = 0;
+
+                    for (int i = 0; i < factor; i++)
+                    {
+                        sum += row[offset++] & 0xff;
+                    }
+
+                    sums[x] += sum;
+                }
+            }
+
+            final int outputOffset = y * scaledWidth;
+            for (int x = 0; x < scaledWidth; x++)
+            {
+                pixels[outputOffset + x] = (byte) (sums[x] >> shift);
+            }
+        }
+
+        return new PlanarRotatedYUVLuminanceSource(pixels, scaledWidth, scaledHeight, 0, 0, scaledWidth, scaledHeight, false);
+    }
+
+    private void readRow(ByteBuffer plane, ByteBuffer reader, int rowStart, int pixelStride, int length)
+    {
+        if (reader != null)
+        {
+            reader.position(rowStart);
+            reader.get(sourceRow, 0, length);
+        }
+        else
+        {
+            for (int x = 0; x < length; x++)
+            {
+                sourceRow[x] = plane.get(rowStart + x * pixelStride);
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package eu.livotov.labs.android.camview.scanner.decoder.zxing;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+
+/**
+ * Black matrix of a frame area, computed once with {@link HybridBinarizer} and shared by all decoding passes over
+ * that area. Mirrored and rotated passes get a flipped or transposed copy of the same matrix instead of thresholding
+ * the pixels again. Every matrix is built on first use only, so passes whose readers never ask for one (e.g. the
+ * 1D only rotated pass) cost nothing.
+ * <p/>
+ * The mirrored matrix is therefore the upright {@link HybridBinarizer} output mirrored, not a binarization of the
+ * mirrored image, and the rotated one likewise. The two differ along block edges when the width is not a multiple of 8:
+ * the 8x8 threshold block grid starts at the left edge, so the mirrored image would be split into other blocks. Low
+ * contrast blocks also borrow their threshold from the blocks left of and above them, which mirroring turns around.
+ */
+final class FrameBinarization
+{
+    static final int UPRIGHT = 0;
+    static final int MIRRORED = 1;
+    static final int ROTATED = 2;
+
+    private final LuminanceSource upright;
+    private final BitMatrixPool pool;
+    private BitMatrix uprightMatrix;
+    private BitMatrix mirroredMatrix;
+    private BitMatrix rotatedMatrix;
+
+    /**
+     * @param upright luminance source of the area, as the upright pass sees it
+     * @param pool    pool derived matrices are taken from, <code>null</code> to allocate them
+     */
+    FrameBinarization(LuminanceSource upright, BitMatrixPool pool)
+    {
+        this.upright = upright;
+        this.pool = pool;
+    }
+
+    /**
+     * @param orientation {@link #UPRIGHT}, {@link #MIRRORED} or {@link #ROTATED} (90 degrees counter clockwise)
+     * @return black matrix of the area in the given orientation
+     * @throws NotFoundException if the area could not be binarized
+     */
+    BitMatrix getMatrix(int orientation) throws NotFoundException
+    {
+        if (uprightMatrix == null)
+        {
+            uprightMatrix = new HybridBinarizer(upright).getBlackMatrix();
+        }
+
+        switch (orientation)
+        {
+            case MIRRORED:
+                if (mirroredMatrix == null)
+                {
+                    mirroredMatrix = mirror(uprightMatrix);
+                }
+                return mirroredMatrix;
+
+            case ROTATED:
+                if (rotatedMatrix == null)
+                {
+                    rotatedMatrix = rotateCounterClockwise(uprightMatrix);
+                }
+                return rotatedMatrix;
+
+            default:
+                return uprightMatrix;
+        }
+    }
+
+    /**
+     * @return cleared matrix, from the pool if there is one
+     */
+    BitMatrix acquire(int width, int height)
+    {
+        return pool != null ? pool.acquire(width, height) : new BitMatrix(width, height);
+    }
+
+    /**
+     * @return copy of the matrix flipped horizontally, matching {@link MirroredPlanarYUVLuminanceSource}
+     */
+    private BitMatrix mirror(BitMatrix matrix)
+    {
+        final int width = matrix.getWidth();
+        final int height = matrix.getHeight();
+        final BitMatrix mirrored = acquire(width, height);
+
+        final BitArray sourceRow = new BitArray(width);
+        final BitArray mirroredRow = new BitArray(width);
+        final int[] mirroredBits = mirroredRow.getBitArray();
+        final int words = mirroredBits.length;
+        final int padding = words * 32 - width;
+
+        for (int y = 0; y < height; y++)
+        {
+            final int[] sourceBits = matrix.getRow(y, sourceRow).getBitArray();
+
+            // Reversing whole words puts source bit (width - 1 - x) at bit (x + padding), shift the padding out
+            for (int i = 0; i < words; i++)
+            {
+                final int low = Integer.reverse(sourceBits[words - 1 - i]) >>> padding;
+                mirroredBits[i] = padding != 0 && i + 1 < words ? low | (Integer.reverse(sourceBits[words - 2 - i]) << (32 - padding)) : low;
+            }
+
+            mirrored.setRow(y, mirroredRow);
+        }
+
+        return mirrored;
+    }
+
+    /**
+     * @return copy of the matrix rotated 90 degrees counter clockwise, matching {@link LuminanceSource#rotateCounterClockwise()}
+     */
+    private BitMatrix rotateCounterClockwise(BitMatrix matrix)
+    {
+        final int width = matrix.getWidth();
+        final int height = matrix.getHeight();
+        final BitMatrix rotated = acquire(height, width);
+        final BitArray row = new BitArray(width);
+
+        for (int y = 0; y < height; y++)
+        {
+            final int[] bits = matrix.getRow(y, row).getBitArray();
+
+            // Visit set bits only, most of a frame is white
+            for (int i = 0; i < bits.length; i++)
+            {
+                int word = bits[i];
+
+                while (word != 0)
+                {
+                    final int x = (i << 5) + Integer.numberOfTrailingZeros(word);
+                    word &= word - 1;
+
+                    // Source pixel (x, y) is rotated view pixel (y, width - 1 - x)
+                    rotated.set(y, width - 1 - x);
+                }
+            }
+        }
+
+        return rotated;
+    }
+}
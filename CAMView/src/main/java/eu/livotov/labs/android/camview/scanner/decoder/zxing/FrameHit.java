@@ -0,0 +1,149 @@
+package eu.livotov.labs.android.camview.scanner.decoder.zxing;
+
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import eu.livotov.labs.android.camview.scanner.decoder.DecodeResult;
+
+/**
+ * Code found by a decoding pass, kept as the reader returned it together with what it takes to map its points from
+ * the luminance source the pass decoded to camera frame coordinates. Points are only mapped when the code is
+ * delivered, so a decoding thread reuses a single instance for all its frames.
+ */
+final class FrameHit
+{
+    private Result result;
+    private int orientation;
+    private int offsetX;
+    private int offsetY;
+    private int left;
+    private int top;
+    private int areaWidth;
+    private int scale;
+
+    /**
+     * @param orientation pass the decoded image was oriented for, {@link ZXDecoder#PASS_MIRRORED},
+     *                    {@link ZXDecoder#PASS_ROTATED}, {@link ZXDecoder#PASS_COARSE_ROTATED} or any other for
+     *                    upright images
+     * @param offsetX     position of the decoded region within the image of the pass
+     * @param offsetY     position of the decoded region within the image of the pass
+     * @param left        position of the area within the frame
+     * @param top         position of the area within the frame
+     * @param areaWidth   width of the area as the pass saw it upright, i.e. downsampled for coarse passes
+     * @param scale       downsampling factor of the pass, 1 for full resolution ones
+     */
+    void set(Result result, int orientation, int offsetX, int offsetY, int left, int top, int areaWidth, int scale)
+    {
+        this.result = result;
+        this.orientation = orientation;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        this.left = left;
+        this.top = top;
+        this.areaWidth = areaWidth;
+        this.scale = scale;
+    }
+
+    Result getResult()
+    {
+        return result;
+    }
+
+    /**
+     * @return frame x coordinate of a point of the result
+     */
+    float getX(ResultPoint point)
+    {
+        final float x;
+
+        switch (orientation)
+        {
+            case ZXDecoder.PASS_MIRRORED:
+                x = areaWidth - 1 - (point.getX() + offsetX);
+                break;
+
+            case ZXDecoder.PASS_ROTATED:
+            case ZXDecoder.PASS_COARSE_ROTATED:
+                // Rotated view pixel (x, y) is area pixel (areaWidth - 1 - y, x)
+                x = areaWidth - 1 - (point.getY() + offsetY);
+                break;
+
+            default:
+                x = point.getX() + offsetX;
+                break;
+        }
+
+        // A downsampled pixel stands for the center of its block of frame pixels
+        return left + x * scale + (scale - 1) / 2f;
+    }
+
+    /**
+     * @return frame y coordinate of a point of the result
+     */
+    float getY(ResultPoint point)
+    {
+        final float y;
+
+        switch (orientation)
+        {
+            case ZXDecoder.PASS_ROTATED:
+            case ZXDecoder.PASS_COARSE_ROTATED:
+                y = point.getX() + offsetX;
+                break;
+
+            default:
+                y = point.getY() + offsetY;
+                break;
+        }
+
+        return top + y * scale + (scale - 1) / 2f;
+    }
+
+    void fill(DecodeResult decoded)
+    {
+        decoded.setText(result.getText());
+        decoded.setFormat(result.getBarcodeFormat().name());
+        decoded.setRawBytes(result.getRawBytes());
+        decoded.setTimestamp(result.getTimestamp());
+        decoded.clearPoints();
+
+        final ResultPoint[] points = result.getResultPoints();
+        if (points != null)
+        {
+            for (ResultPoint point : points)
+            {
+                if (point != null)
+                {
+                    decoded.addPoint(getX(point), getY(point));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return new result with its points in frame coordinates
+     */
+    Result toFrameResult()
+    {
+        final ResultPoint[] points = result.getResultPoints();
+
+        if (points == null)
+        {
+            return result;
+        }
+
+        final ResultPoint[] framePoints = new ResultPoint[points.length];
+
+        for (int i = 0; i < points.length; i++)
+        {
+            if (points[i] != null)
+            {
+                framePoints[i] = new ResultPoint(getX(points[i]), getY(points[i]));
+            }
+        }
+
+        final Result frameResult = new Result(result.getText(), result.getRawBytes(), framePoints, result.getBarcodeFormat(), result.getTimestamp());
+        frameResult.putAllMetadata(result.getResultMetadata());
+        return frameResult;
+    }
+}
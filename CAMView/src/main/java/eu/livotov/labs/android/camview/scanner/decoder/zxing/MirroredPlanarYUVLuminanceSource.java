@@ -0,0 +1,95 @@
+package eu.livotov.labs.android.camview.scanner.decoder.zxing;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * Read-only, horizontally mirrored view over the Y plane of an NV21 frame.
+ * <p/>
+ * This is a drop-in replacement for <code>PlanarYUVLuminanceSource(..., reverseHorizontal=true)</code>, which
+ * mirrors the rows in place and thus writes over the preview buffer the camera is going to reuse. Here the
+ * flip is applied in the index math only, so the frame data is never modified.
+ */
+public class MirroredPlanarYUVLuminanceSource extends LuminanceSource
+{
+    private final byte[] yuvData;
+    private final int dataWidth;
+    private final int dataHeight;
+    private final int left;
+    private final int top;
+
+    public MirroredPlanarYUVLuminanceSource(byte[] yuvData, int dataWidth, int dataHeight, int left, int top, int width, int height)
+    {
+        super(width, height);
+
+        if (left < 0 || top < 0 || left + width > dataWidth || top + height > dataHeight)
+        {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+        }
+
+        this.yuvData = yuvData;
+        this.dataWidth = dataWidth;
+        this.dataHeight = dataHeight;
+        this.left = left;
+        this.top = top;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row)
+    {
+        if (y < 0 || y >= getHeight())
+        {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+
+        final int width = getWidth();
+        if (row == null || row.length < width)
+        {
+            row = new byte[width];
+        }
+
+        final byte[] yuv = yuvData;
+        final int rowEnd = (y + top) * dataWidth + left + width - 1;
+
+        for (int x = 0; x < width; x++)
+        {
+            row[x] = yuv[rowEnd - x];
+        }
+
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix()
+    {
+        final int width = getWidth();
+        final int height = getHeight();
+        final byte[] matrix = new byte[width * height];
+        final byte[] yuv = yuvData;
+
+        int rowEnd = top * dataWidth + left + width - 1;
+        for (int y = 0; y < height; y++)
+        {
+            final int outputOffset = y * width;
+            for (int x = 0; x < width; x++)
+            {
+                matrix[outputOffset + x] = yuv[rowEnd - x];
+            }
+            rowEnd += dataWidth;
+        }
+
+        return matrix;
+    }
+
+    @Override
+    public boolean isCropSupported()
+    {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource crop(int left, int top, int width, int height)
+    {
+        // Columns are counted from the right edge of the source crop in the mirrored view
+        return new MirroredPlanarYUVLuminanceSource(yuvData, dataWidth, dataHeight, this.left + getWidth() - left - width, this.top + top, width, height);
+    }
+}
@@ -16,6 +16,12 @@ public class PlanarRotatedYUVLuminanceSource extends LuminanceSource
     private final int left;
     private final int top;
 
+    private final boolean reverseHorizontal;
+
+    /**
+     * @param reverseHorizontal if <code>true</code>, the crop is served horizontally mirrored. The flip is applied
+     *                          while reading, the frame data itself is never modified.
+     */
     public PlanarRotatedYUVLuminanceSource(byte[] yuvData, int dataWidth, int dataHeight, int left, int top, int width, int height, boolean reverseHorizontal)
     {
         super(width, height);
@@ -26,10 +32,7 @@ public class PlanarRotatedYUVLuminanceSource extends LuminanceSource
             this.dataHeight = dataHeight;
             this.left = left;
             this.top = top;
-            if (reverseHorizontal)
-            {
-                this.reverseHorizontal(width, height);
-            }
+            this.reverseHorizontal = reverseHorizontal;
         }
         else
         {
@@ -37,29 +40,6 @@ public class PlanarRotatedYUVLuminanceSource extends LuminanceSource
         }
     }
 
-    private void reverseHorizontal(int width, int height)
-    {
-        byte[] yuvData = this.yuvData;
-        int y = 0;
-
-        for (int rowStart = this.top * this.dataWidth + this.left; y < height; rowStart += this.dataWidth)
-        {
-            int middle = rowStart + width / 2;
-            int x1 = rowStart;
-
-            for (int x2 = rowStart + width - 1; x1 < middle; --x2)
-            {
-                byte temp = yuvData[x1];
-                yuvData[x1] = yuvData[x2];
-                yuvData[x2] = temp;
-                ++x1;
-            }
-
-            ++y;
-        }
-
-    }
-
     public byte[] getRow(int y, byte[] row)
     {
         if (y >= 0 && y < this.getHeight())
@@ -71,7 +51,15 @@ public class PlanarRotatedYUVLuminanceSource extends LuminanceSource
             }
 
             int offset = (y + this.top) * this.dataWidth + this.left;
-            System.arraycopy(this.yuvData, offset, row, 0, width);
+
+            if (reverseHorizontal)
+            {
+                copyRowReversed(this.yuvData, offset, row, 0, width);
+            }
+            else
+            {
+                System.arraycopy(this.yuvData, offset, row, 0, width);
+            }
             return row;
         }
         else
@@ -84,7 +72,7 @@ public class PlanarRotatedYUVLuminanceSource extends LuminanceSource
     {
         int width = this.getWidth();
         int height = this.getHeight();
-        if (width == this.dataWidth && height == this.dataHeight)
+        if (width == this.dataWidth && height == this.dataHeight && !reverseHorizontal)
         {
             return this.yuvData;
         }
@@ -93,7 +81,7 @@ public class PlanarRotatedYUVLuminanceSource extends LuminanceSource
             int area = width * height;
             byte[] matrix = new byte[area];
             int inputOffset = this.top * this.dataWidth + this.left;
-            if (width == this.dataWidth)
+            if (width == this.dataWidth && !reverseHorizontal)
             {
                 System.arraycopy(this.yuvData, inputOffset, matrix, 0, area);
                 return matrix;
@@ -105,7 +93,14 @@ public class PlanarRotatedYUVLuminanceSource extends LuminanceSource
                 for (int y = 0; y < height; ++y)
                 {
                     int outputOffset = y * width;
-                    System.arraycopy(yuv, inputOffset, matrix, outputOffset, width);
+                    if (reverseHorizontal)
+                    {
+                        copyRowReversed(yuv, inputOffset, matrix, outputOffset, width);
+                    }
+                    else
+                    {
+                        System.arraycopy(yuv, inputOffset, matrix, outputOffset, width);
+                    }
                     inputOffset += this.dataWidth;
                 }
 
@@ -114,6 +109,15 @@ public class PlanarRotatedYUVLuminanceSource extends LuminanceSource
         }
     }
 
+    private static void copyRowReversed(byte[] src, int srcOffset, byte[] dst, int dstOffset, int length)
+    {
+        int x2 = srcOffset + length - 1;
+        for (int x = 0; x < length; x++)
+        {
+            dst[dstOffset + x] = src[x2 - x];
+        }
+    }
+
     public boolean isCropSupported()
     {
         return true;
@@ -121,6 +125,11 @@ public class PlanarRotatedYUVLuminanceSource extends LuminanceSource
 
     public LuminanceSource crop(int left, int top, int width, int height)
     {
+        if (reverseHorizontal)
+        {
+            return new MirroredPlanarYUVLuminanceSource(this.yuvData, this.dataWidth, this.dataHeight, this.left + getWidth() - left - width, this.top + top, width, height);
+        }
+
         return new PlanarYUVLuminanceSource(this.yuvData, this.dataWidth, this.dataHeight, this.left + left, this.top + top, width, height, false);
     }
 
@@ -131,40 +140,13 @@ public class PlanarRotatedYUVLuminanceSource extends LuminanceSource
 
     public LuminanceSource rotateCounterClockwise()
     {
-        return new PlanarRotatedYUVLuminanceSource(rotateYUV420Degree90(yuvData, dataWidth, dataHeight), dataWidth, dataHeight, left, top, getWidth(), getHeight(), false);
+        return new RotatedPlanarYUVLuminanceSource(this.yuvData, this.dataWidth, this.dataHeight, this.left, this.top, getWidth(), getHeight(), reverseHorizontal);
     }
 
     public LuminanceSource rotateCounterClockwise45()
     {
-        return new PlanarRotatedYUVLuminanceSource(rotateYUV420Degree90(yuvData, dataWidth, dataHeight), dataWidth, dataHeight, left, top, getWidth(), getHeight(), false);
-    }
-
-    private byte[] rotateYUV420Degree90(byte[] data, int imageWidth, int imageHeight)
-    {
-        byte[] yuv = new byte[imageWidth * imageHeight * 3 / 2];
-        // Rotate the Y luma
-        int i = 0;
-        for (int x = 0; x < imageWidth; x++)
-        {
-            for (int y = imageHeight - 1; y >= 0; y--)
-            {
-                yuv[i] = data[y * imageWidth + x];
-                i++;
-            }
-        }
-        // Rotate the U and V color components
-        i = imageWidth * imageHeight * 3 / 2 - 1;
-        for (int x = imageWidth - 1; x > 0; x = x - 2)
-        {
-            for (int y = 0; y < imageHeight / 2; y++)
-            {
-                yuv[i] = data[(imageWidth * imageHeight) + (y * imageWidth) + x];
-                i--;
-                yuv[i] = data[(imageWidth * imageHeight) + (y * imageWidth) + (x - 1)];
-                i--;
-            }
-        }
-        return yuv;
+        // There is no zero-copy 45 degrees view, so keep the historical behaviour of serving the 90 degrees one
+        return rotateCounterClockwise();
     }
 
     public int[] renderThumbnail()
@@ -181,7 +163,7 @@ public class PlanarRotatedYUVLuminanceSource extends LuminanceSource
 
             for (int x = 0; x < width; ++x)
             {
-                int grey = yuv[inputOffset + x * 2] & 255;
+                int grey = yuv[inputOffset + (reverseHorizontal ? this.getWidth() - 1 - x * 2 : x * 2)] & 255;
                 pixels[outputOffset + x] = -16777216 | grey * 65793;
             }
 
@@ -0,0 +1,129 @@
+package eu.livotov.labs.android.camview.scanner.decoder.zxing;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * Zero-copy view over the Y plane of an NV21 frame, rotated 90 degrees counter clockwise.
+ * <p/>
+ * Pixels are read from the original camera buffer with transposed indexing, so neither the luma
+ * nor the chroma planes are ever copied. The crop rectangle is given in source (camera) coordinates,
+ * the resulting view is <code>height x width</code> of that rectangle. Optionally the crop is mirrored horizontally
+ * before rotation, which is also done purely in the index math so the camera buffer is never written to.
+ */
+public class RotatedPlanarYUVLuminanceSource extends LuminanceSource
+{
+    private final byte[] yuvData;
+    private final int dataWidth;
+    private final int dataHeight;
+    private final int left;
+    private final int top;
+    private final int cropWidth;
+    private final int cropHeight;
+    private final boolean reverseHorizontal;
+
+    /**
+     * @param yuvData    NV21 frame data, only the Y plane is accessed
+     * @param dataWidth  frame width
+     * @param dataHeight frame height
+     * @param left       crop rectangle left, in frame coordinates
+     * @param top        crop rectangle top, in frame coordinates
+     * @param width      crop rectangle width, in frame coordinates (becomes the height of this view)
+     * @param height     crop rectangle height, in frame coordinates (becomes the width of this view)
+     */
+    public RotatedPlanarYUVLuminanceSource(byte[] yuvData, int dataWidth, int dataHeight, int left, int top, int width, int height)
+    {
+        this(yuvData, dataWidth, dataHeight, left, top, width, height, false);
+    }
+
+    /**
+     * @param reverseHorizontal if <code>true</code>, crop is mirrored horizontally before being rotated
+     * @see #RotatedPlanarYUVLuminanceSource(byte[], int, int, int, int, int, int)
+     */
+    public RotatedPlanarYUVLuminanceSource(byte[] yuvData, int dataWidth, int dataHeight, int left, int top, int width, int height, boolean reverseHorizontal)
+    {
+        super(height, width);
+
+        if (left < 0 || top < 0 || left + width > dataWidth || top + height > dataHeight)
+        {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+        }
+
+        this.yuvData = yuvData;
+        this.dataWidth = dataWidth;
+        this.dataHeight = dataHeight;
+        this.left = left;
+        this.top = top;
+        this.cropWidth = width;
+        this.cropHeight = height;
+        this.reverseHorizontal = reverseHorizontal;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row)
+    {
+        if (y < 0 || y >= getHeight())
+        {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+
+        final int width = getWidth();
+        if (row == null || row.length < width)
+        {
+            row = new byte[width];
+        }
+
+        // Row y of the rotated view is column (cropWidth - 1 - y) of the crop (or column y when mirrored), read top to bottom
+        final byte[] yuv = yuvData;
+        final int stride = dataWidth;
+        int offset = top * stride + left + (reverseHorizontal ? y : cropWidth - 1 - y);
+
+        for (int x = 0; x < width; x++)
+        {
+            row[x] = yuv[offset];
+            offset += stride;
+        }
+
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix()
+    {
+        final int width = getWidth();
+        final int height = getHeight();
+        final byte[] matrix = new byte[width * height];
+        final byte[] yuv = yuvData;
+        final int stride = dataWidth;
+
+        // Walk the source row by row (cache friendly) and scatter into the rotated columns
+        final int firstOutputRow = reverseHorizontal ? 0 : cropWidth - 1;
+        final int outputStep = reverseHorizontal ? width : -width;
+        int inputOffset = top * stride + left;
+        for (int sy = 0; sy < cropHeight; sy++)
+        {
+            int outputOffset = firstOutputRow * width + sy;
+            for (int sx = 0; sx < cropWidth; sx++)
+            {
+                matrix[outputOffset] = yuv[inputOffset + sx];
+                outputOffset += outputStep;
+            }
+            inputOffset += stride;
+        }
+
+        return matrix;
+    }
+
+    @Override
+    public boolean isCropSupported()
+    {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource crop(int left, int top, int width, int height)
+    {
+        // Map the rectangle given in rotated coordinates back onto the camera frame
+        final int sourceLeft = reverseHorizontal ? this.left + top : this.left + cropWidth - top - height;
+        return new RotatedPlanarYUVLuminanceSource(yuvData, dataWidth, dataHeight, sourceLeft, this.top + left, height, width, reverseHorizontal);
+    }
+}
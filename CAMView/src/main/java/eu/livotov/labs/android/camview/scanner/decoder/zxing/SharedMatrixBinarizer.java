@@ -0,0 +1,93 @@
+package eu.livotov.labs.android.camview.scanner.decoder.zxing;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+
+/**
+ * Binarizer serving a region of an already binarized image, so several readers, passes and sub regions of the same
+ * frame do not each run the expensive local thresholding again.
+ * <p/>
+ * Only the 2D black matrix is shared. Rows for 1D readers keep coming from the per row histogram of
+ * {@link GlobalHistogramBinarizer}, exactly as with {@link HybridBinarizer}, which they are cheap to compute with anyway.
+ */
+final class SharedMatrixBinarizer extends GlobalHistogramBinarizer
+{
+    private final FrameBinarization binarization;
+    private final int orientation;
+    private final int left;
+    private final int top;
+    private BitMatrix region;
+
+    /**
+     * @param source       luminance source of the region, i.e. the source of the shared matrix in the given orientation, cropped
+     * @param binarization shared binarization of the whole image
+     * @param orientation  orientation of <code>source</code>, as defined by {@link FrameBinarization}
+     * @param left         region left in the matrix of that orientation
+     * @param top          region top in the matrix of that orientation
+     */
+    SharedMatrixBinarizer(LuminanceSource source, FrameBinarization binarization, int orientation, int left, int top)
+    {
+        super(source);
+        this.binarization = binarization;
+        this.orientation = orientation;
+        this.left = left;
+        this.top = top;
+    }
+
+    @Override
+    public BitMatrix getBlackMatrix() throws NotFoundException
+    {
+        if (region == null)
+        {
+            final BitMatrix matrix = binarization.getMatrix(orientation);
+            final int width = getWidth();
+            final int height = getHeight();
+
+            if (left == 0 && top == 0 && width == matrix.getWidth() && height == matrix.getHeight())
+            {
+                region = matrix;
+            }
+            else
+            {
+                region = binarization.acquire(width, height);
+
+                // Copy whole 32 bit words, shifting them into place when the region does not start on a word boundary
+                final BitArray sourceRow = new BitArray(matrix.getWidth());
+                final BitArray regionRow = new BitArray(width);
+                final int[] regionBits = regionRow.getBitArray();
+                final int firstWord = left >> 5;
+                final int shift = left & 31;
+                final int lastWordMask = (width & 31) == 0 ? -1 : (1 << (width & 31)) - 1;
+
+                for (int y = 0; y < height; y++)
+                {
+                    final int[] sourceBits = matrix.getRow(top + y, sourceRow).getBitArray();
+
+                    for (int i = 0; i < regionBits.length; i++)
+                    {
+                        final int low = sourceBits[firstWord + i] >>> shift;
+                        final int next = firstWord + i + 1;
+                        regionBits[i] = shift != 0 && next < sourceBits.length ? low | (sourceBits[next] << (32 - shift)) : low;
+                    }
+
+                    regionBits[regionBits.length - 1] &= lastWordMask;
+                    region.setRow(y, regionRow);
+                }
+            }
+        }
+
+        return region;
+    }
+
+    @Override
+    public Binarizer createBinarizer(LuminanceSource source)
+    {
+        // Position of an arbitrary derived source within the shared matrix is unknown, binarize it on its own
+        return new HybridBinarizer(source);
+    }
+}
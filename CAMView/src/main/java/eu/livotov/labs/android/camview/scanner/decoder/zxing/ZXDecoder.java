@@ -1,40 +1,102 @@
 package eu.livotov.labs.android.camview.scanner.decoder.zxing;
 
-import com.google.zxing.BarcodeFormat;
 import com.google.zxing.BinaryBitmap;
 import com.google.zxing.DecodeHintType;
-import com.google.zxing.MultiFormatReader;
-import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.LuminanceSource;
 import com.google.zxing.Result;
-import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.ResultPoint;
 
 import java.util.Arrays;
 import java.util.EnumMap;
-import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
-import eu.livotov.labs.android.camview.scanner.decoder.BarcodeDecoder;
+import eu.livotov.labs.android.camview.camera.FrameDescriptor;
+import eu.livotov.labs.android.camview.camera.LiveDataMetrics;
+import eu.livotov.labs.android.camview.scanner.decoder.DecodeResult;
+import eu.livotov.labs.android.camview.scanner.decoder.DecodeResultPool;
+import eu.livotov.labs.android.camview.scanner.decoder.FrameBarcodeDecoder;
+import eu.livotov.labs.android.camview.scanner.decoder.RegionTracker;
 
 /**
  * (c) Livotov Labs Ltd. 2012
  * Date: 03/11/2014
  */
-public class ZXDecoder implements BarcodeDecoder
+public class ZXDecoder implements FrameBarcodeDecoder
 {
+    /**
+     * Pass identifiers reported to {@link LiveDataMetrics#onDecodePass(int, long, boolean)}
+     */
+    public final static int PASS_MIRRORED = 0;
+    public final static int PASS_UPRIGHT = 1;
+    public final static int PASS_ROTATED = 2;
+    public final static int PASS_TRY_HARDER = 3;
+    public final static int PASS_TRACKED_REGION = 4;
+    public final static int PASS_COARSE = 5;
+    public final static int PASS_COARSE_ROTATED = 6;
+
+    private final static int MULTIPLE_MAX_DEPTH = 4;
+    private final static int MULTIPLE_MIN_REGION = 100;
+
+    // Coarse passes are pointless below this many pixels across the downsampled scan area
+    private final static int MIN_COARSE_SIZE = 120;
+    private final static int QR_FINDER_PATTERNS_COUNT = 3;
+
     protected Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
 
-    private MultiFormatReader reader;
-    private double scanAreaPercent = 0.7;
+    // Readers keep per-decode state, so every decoding thread gets its own chain of them
+    private final ThreadLocal<ZXReaderChain> readerChains = new ThreadLocal<ZXReaderChain>();
 
-    public ZXDecoder()
+    private final ThreadLocal<BitMatrixPool> matrixPools = new ThreadLocal<BitMatrixPool>()
     {
-        reader = new MultiFormatReader();
+        @Override
+        protected BitMatrixPool initialValue()
+        {
+            return new BitMatrixPool();
+        }
+    };
 
-        hints.put(DecodeHintType.POSSIBLE_FORMATS, EnumSet.allOf(BarcodeFormat.class));
-        hints.put(DecodeHintType.CHARACTER_SET, "utf-8");
-        hints.put(DecodeHintType.TRY_HARDER, true);
+    private final ThreadLocal<DownsampledLuminance> downsampledLuminances = new ThreadLocal<DownsampledLuminance>()
+    {
+        @Override
+        protected DownsampledLuminance initialValue()
+        {
+            return new DownsampledLuminance();
+        }
+    };
+
+    private final ThreadLocal<FrameHit> frameHits = new ThreadLocal<FrameHit>()
+    {
+        @Override
+        protected FrameHit initialValue()
+        {
+            return new FrameHit();
+        }
+    };
+
+    // Left, top, width and height of the tracked region window
+    private final ThreadLocal<int[]> trackedWindows = new ThreadLocal<int[]>()
+    {
+        @Override
+        protected int[] initialValue()
+        {
+            return new int[4];
+        }
+    };
+
+    private volatile ZXDecodingStrategy strategy = new ZXDecodingStrategy();
+    private volatile double scanAreaPercent = 0.7;
+    private volatile LiveDataMetrics metrics;
+    private volatile boolean matrixPoolEnabled = true;
+    private volatile int downsampleFactor = 1;
+    private volatile int fullResolutionInterval = 4;
+    private final RegionTracker regionTracker = new RegionTracker();
+    private final AtomicLong frameSequence = new AtomicLong();
 
-        reader.setHints(hints);
+    public ZXDecoder()
+    {
+        hints.put(DecodeHintType.CHARACTER_SET, "utf-8");
     }
 
     public double getScanAreaPercent()
@@ -52,54 +114,694 @@ public class ZXDecoder implements BarcodeDecoder
         this.scanAreaPercent = scanAreaPercent;
     }
 
+    public ZXDecodingStrategy getStrategy()
+    {
+        return strategy;
+    }
+
+    public void setStrategy(ZXDecodingStrategy strategy)
+    {
+        if (strategy == null)
+        {
+            throw new IllegalArgumentException("Decoding strategy cannot be null");
+        }
+
+        this.strategy = strategy;
+    }
+
+    /**
+     * @return tracker of the last found code location, used to decode following frames in a small window first
+     */
+    public RegionTracker getRegionTracker()
+    {
+        return regionTracker;
+    }
+
+    public boolean isMatrixPoolEnabled()
+    {
+        return matrixPoolEnabled;
+    }
+
+    /**
+     * @param matrixPoolEnabled if <code>true</code>, black matrices derived from the shared binarization of a frame
+     *                          (mirrored, rotated, sub regions) are reused by the following frames of the decoding thread
+     */
+    public void setMatrixPoolEnabled(boolean matrixPoolEnabled)
+    {
+        this.matrixPoolEnabled = matrixPoolEnabled;
+    }
+
+    public int getDownsampleFactor()
+    {
+        return downsampleFactor;
+    }
+
+    /**
+     * Enables multi resolution decoding of single codes. The scan area is first decoded downsampled by the given
+     * factor, each pixel averaging a block of frame pixels, which reads QR codes and large 1D codes on high resolution
+     * previews several times faster. Full resolution passes then only run when the coarse ones found a QR finder
+     * pattern or a code they could not read, and otherwise every {@link #getFullResolutionInterval()} frames, for
+     * codes too small to show at the coarse scale. The factor is lowered on scan areas too small to be downsampled
+     * that much.
+     *
+     * @param downsampleFactor 1 (default) to decode at full resolution only, 2 or 4
+     */
+    public void setDownsampleFactor(int downsampleFactor)
+    {
+        if (downsampleFactor != 1 && downsampleFactor != 2 && downsampleFactor != 4)
+        {
+            throw new IllegalArgumentException("Downsample factor must be 1, 2 or 4. Specified value was " + downsampleFactor);
+        }
+
+        this.downsampleFactor = downsampleFactor;
+    }
+
+    public int getFullResolutionInterval()
+    {
+        return fullResolutionInterval;
+    }
+
+    /**
+     * @param fullResolutionInterval with multi resolution decoding, every how many frames the full resolution passes
+     *                               run even though the coarse ones located nothing, 0 to never run them then
+     */
+    public void setFullResolutionInterval(int fullResolutionInterval)
+    {
+        if (fullResolutionInterval < 0)
+        {
+            throw new IllegalArgumentException("Full resolution interval cannot be negative: " + fullResolutionInterval);
+        }
+
+        this.fullResolutionInterval = fullResolutionInterval;
+    }
+
+    public LiveDataMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * @param metrics receiver of per pass decoding timings, <code>null</code> to disable reporting
+     */
+    public void setMetrics(LiveDataMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return description of the current settings the decoding cost depends on, a cost measured with other settings
+     * does not apply
+     */
+    public String getCostSettings()
+    {
+        final ZXDecodingStrategy strategy = this.strategy;
+        return "area " + scanAreaPercent + ", downsample " + downsampleFactor + "/" + fullResolutionInterval + ", pool " + matrixPoolEnabled + ", formats " + Arrays.toString(strategy.getFormats()) + ", try harder " + strategy.isTryHarderOnNearMiss() + "/" + strategy.getOneDimensionalTryHarderInterval();
+    }
+
+    /**
+     * @return <code>true</code> if the last frame decoded on the calling thread held a symbol some reader located but
+     * could not read, typically a code out of focus
+     */
+    public boolean hadNearMiss()
+    {
+        final ZXReaderChain chain = readerChains.get();
+        return chain != null && (chain.hadNearMiss() || chain.getLocatedPointsCount() >= QR_FINDER_PATTERNS_COUNT);
+    }
+
     public String decode(final byte[] image, final int width, final int height)
     {
-        Result result = null;
+        final Result result = decodeFrame(image, null, width, height, null);
+        return result != null ? result.getText() : null;
+    }
+
+    public boolean decode(final byte[] image, final int width, final int height, final DecodeResult decoded)
+    {
+        return decode(image, null, width, height, decoded);
+    }
+
+    public boolean decode(final FrameDescriptor frame, final DecodeResult decoded)
+    {
+        final byte[] image = frame.getNV21Array();
+        return decode(image, image != null ? null : frame, frame.getWidth(), frame.getHeight(), decoded);
+    }
+
+    private boolean decode(final byte[] image, final FrameDescriptor frame, final int width, final int height, final DecodeResult decoded)
+    {
+        if (decodeFrame(image, frame, width, height, decoded) == null)
+        {
+            return false;
+        }
+
+        frameHits.get().fill(decoded);
+        return true;
+    }
+
+    /**
+     * Decodes every code in the scan area of a camera frame.
+     * <p/>
+     * The scan area is binarized once. All QR codes are located by the multi QR detector in one go, other formats are
+     * found by decoding the area and recursively the sub regions around each code found, as ZXing's
+     * <code>GenericMultipleBarcodeReader</code> does, but with every region served from the shared black matrix.
+     * A second round over the rotated matrix picks up vertical 1D codes. The mirrored pass is not run: all 1D readers
+     * read both directions and QR codes are tried mirrored by the QR reader itself. Region tracking and multi resolution
+     * decoding are not used.
+     */
+    public int decodeMultiple(final byte[] image, final int width, final int height, final DecodeResultPool pool, final List<DecodeResult> results)
+    {
+        return decodeMultiple(image, null, width, height, pool, results);
+    }
+
+    public int decodeMultiple(final FrameDescriptor frame, final DecodeResultPool pool, final List<DecodeResult> results)
+    {
+        final byte[] image = frame.getNV21Array();
+        return decodeMultiple(image, image != null ? null : frame, frame.getWidth(), frame.getHeight(), pool, results);
+    }
+
+    private int decodeMultiple(final byte[] image, final FrameDescriptor frame, final int width, final int height, final DecodeResultPool pool, final List<DecodeResult> results)
+    {
+        final ZXReaderChain chain = getReaderChain();
+        final LiveDataMetrics metrics = this.metrics;
+        final long frameId = frameSequence.incrementAndGet();
+        final int initialCount = results.size();
 
         final int scanWidth = (int)(width * scanAreaPercent);
         final int scanHeight = (int)(height * scanAreaPercent);
         final int scanAreaLeft = width/2-scanWidth/2;
-        final int scanAreaRight = width/2+scanWidth/2;
         final int scanAreaTop = height/2-scanHeight/2;
-        final int scanAreaBottom = height/2+scanHeight/2;
 
-        // First try image as is
+        chain.beginFrame();
+
+        final LuminanceSource upright = createSource(image, frame, width, height, scanAreaLeft, scanAreaTop, scanWidth, scanHeight, false);
+        final BitMatrixPool matrixPool = getMatrixPool();
+        final FrameBinarization binarization = new FrameBinarization(upright, matrixPool);
+        long passStarted = System.nanoTime();
+
         try
         {
-            BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(new PlanarYUVLuminanceSource(image, width, height, scanAreaLeft, scanAreaTop, scanAreaRight, scanAreaBottom, true)));
-            result = reader.decodeWithState(bitmap);
+            final MultipleCollector collector = new MultipleCollector(frameHits.get(), pool, results, initialCount, frameId, scanAreaLeft, scanAreaTop, scanWidth);
+            final Result[] qrCodes = chain.decodeMultipleQRCodes(new BinaryBitmap(new SharedMatrixBinarizer(upright, binarization, FrameBinarization.UPRIGHT, 0, 0)));
+
+            if (qrCodes != null)
+            {
+                for (Result qrCode : qrCodes)
+                {
+                    collector.add(qrCode, PASS_UPRIGHT, 0, 0);
+                }
+            }
+
+            decodeRegions(chain, collector, upright, binarization, PASS_UPRIGHT, 0, 0, scanWidth, scanHeight, 0, qrCodes != null ? qrCodes[0] : null);
+            passStarted = reportPass(metrics, PASS_UPRIGHT, passStarted, results.size() > initialCount);
+
+            final int uprightCount = results.size();
+            decodeRegions(chain, collector, upright.rotateCounterClockwise(), binarization, PASS_ROTATED, 0, 0, scanHeight, scanWidth, 0, null);
+            reportPass(metrics, PASS_ROTATED, passStarted, results.size() > uprightCount);
+
+            return results.size() - initialCount;
+        }
+        finally
+        {
+            if (matrixPool != null)
+            {
+                matrixPool.releaseAll();
+            }
+        }
+    }
+
+    /**
+     * Decodes a region of the scan area, then recursively the parts of the region around the code found. When
+     * nothing is found in the whole area, its quadrants are tried, as 1D readers only look at rows near the middle.
+     *
+     * @param source luminance source of the whole scan area, in the orientation of the pass
+     * @param binarization shared binarization of the scan area
+     * @param seed   code already found in the region by other means, to split around if the readers find nothing
+     */
+    private void decodeRegions(ZXReaderChain chain, MultipleCollector collector, LuminanceSource source, FrameBinarization binarization, int pass, int left, int top, int regionWidth, int regionHeight, int depth, Result seed)
+    {
+        final LuminanceSource regionSource = left == 0 && top == 0 && regionWidth == source.getWidth() && regionHeight == source.getHeight() ? source : source.crop(left, top, regionWidth, regionHeight);
+
+        // QR codes were all found by the multi detector already
+        Result result = chain.decode(new BinaryBitmap(new SharedMatrixBinarizer(regionSource, binarization, pass == PASS_ROTATED ? FrameBinarization.ROTATED : FrameBinarization.UPRIGHT, left, top)), false, pass == PASS_ROTATED, true);
+
+        if (result != null)
+        {
+            collector.add(result, pass, left, top);
+        }
+        else if (seed != null)
+        {
+            result = seed;
+        }
+        else
+        {
+            if (depth == 0)
+            {
+                final int halfWidth = regionWidth / 2;
+                final int halfHeight = regionHeight / 2;
+                decodeRegions(chain, collector, source, binarization, pass, left, top, halfWidth, halfHeight, 1, null);
+                decodeRegions(chain, collector, source, binarization, pass, left + halfWidth, top, regionWidth - halfWidth, halfHeight, 1, null);
+                decodeRegions(chain, collector, source, binarization, pass, left, top + halfHeight, halfWidth, regionHeight - halfHeight, 1, null);
+                decodeRegions(chain, collector, source, binarization, pass, left + halfWidth, top + halfHeight, regionWidth - halfWidth, regionHeight - halfHeight, 1, null);
+            }
+
+            return;
+        }
+
+        final ResultPoint[] points = result.getResultPoints();
+        if (points == null || points.length == 0 || depth >= MULTIPLE_MAX_DEPTH)
+        {
+            return;
+        }
+
+        float minX = regionWidth;
+        float minY = regionHeight;
+        float maxX = 0;
+        float maxY = 0;
+
+        for (ResultPoint point : points)
+        {
+            if (point != null)
+            {
+                minX = Math.min(minX, point.getX());
+                minY = Math.min(minY, point.getY());
+                maxX = Math.max(maxX, point.getX());
+                maxY = Math.max(maxY, point.getY());
+            }
+        }
+
+        // Look left, above, right and below the code, as far as the remaining space may hold another one
+        if (minX > MULTIPLE_MIN_REGION)
+        {
+            decodeRegions(chain, collector, source, binarization, pass, left, top, (int) minX, regionHeight, depth + 1, null);
+        }
+
+        if (minY > MULTIPLE_MIN_REGION)
+        {
+            decodeRegions(chain, collector, source, binarization, pass, left, top, regionWidth, (int) minY, depth + 1, null);
+        }
+
+        if (maxX < regionWidth - MULTIPLE_MIN_REGION)
+        {
+            decodeRegions(chain, collector, source, binarization, pass, left + (int) maxX, top, regionWidth - (int) maxX, regionHeight, depth + 1, null);
+        }
+
+        if (maxY < regionHeight - MULTIPLE_MIN_REGION)
+        {
+            decodeRegions(chain, collector, source, binarization, pass, left, top + (int) maxY, regionWidth, regionHeight - (int) maxY, depth + 1, null);
+        }
+    }
+
+    /**
+     * Decodes a camera frame, trying the window around the previously found code first
+     *
+     * @param image  NV21 frame data
+     * @param width  frame width
+     * @param height frame height
+     * @return decoded code with its result points in frame coordinates, <code>null</code> if none was found
+     */
+    public Result decodeResult(final byte[] image, final int width, final int height)
+    {
+        return decodeFrame(image, null, width, height, null) != null ? frameHits.get().toFrameResult() : null;
+    }
+
+    /**
+     * @param image   NV21 frame data, <code>null</code> to read the frame from <code>frame</code>
+     * @param frame   frame descriptor, used only when there is no <code>image</code> array
+     * @param decoded if not <code>null</code>, receives the frame id and the pass that found the code
+     * @return code as the reader returned it, its points still in the coordinates of the pass that found it. The
+     * calling thread's {@link FrameHit} maps them to the frame.
+     */
+    private Result decodeFrame(final byte[] image, final FrameDescriptor frame, final int width, final int height, final DecodeResult decoded)
+    {
+        final long frameId = frameSequence.incrementAndGet();
+        final ZXReaderChain chain = getReaderChain();
+        final LiveDataMetrics metrics = this.metrics;
+        Result result;
+
+        final int scanWidth = (int)(width * scanAreaPercent);
+        final int scanHeight = (int)(height * scanAreaPercent);
+        final int scanAreaLeft = width/2-scanWidth/2;
+        final int scanAreaTop = height/2-scanHeight/2;
+
+        chain.beginFrame();
+
+        final int[] window = trackedWindows.get();
+        if (regionTracker.getWindow(width, height, window))
+        {
+            final long windowStarted = System.nanoTime();
+            result = decodeArea(chain, null, false, frameId, decoded, image, frame, width, height, window[0], window[1], window[2], window[3]);
+            reportPass(metrics, PASS_TRACKED_REGION, windowStarted, result != null);
+            regionTracker.onWindowDecoded(window[2] * window[3], scanWidth * scanHeight, result != null);
 
             if (result != null)
             {
-                return result.getText();
+                track(frameHits.get());
+                setFrameId(decoded, frameId);
+                return result;
             }
-        } catch (Throwable err)
+        }
+
+        result = decodeScanArea(chain, metrics, frameId, decoded, image, frame, width, height, scanAreaLeft, scanAreaTop, scanWidth, scanHeight);
+
+        if (result != null)
         {
-        } finally
+            track(frameHits.get());
+            setFrameId(decoded, frameId);
+        }
+        else
         {
-            reader.reset();
+            regionTracker.onMissed();
         }
 
-        // Then try it 90 degrees rotated (works for 1D codes)
+        return result;
+    }
+
+    /**
+     * Decodes the scan area, downsampled first when multi resolution decoding is enabled
+     */
+    private Result decodeScanArea(ZXReaderChain chain, LiveDataMetrics metrics, long frameId, DecodeResult decoded, byte[] image, FrameDescriptor frame, int width, int height, int left, int top, int areaWidth, int areaHeight)
+    {
+        int factor = downsampleFactor;
+        while (factor > 1 && Math.min(areaWidth, areaHeight) / factor < MIN_COARSE_SIZE)
+        {
+            factor /= 2;
+        }
+
+        if (factor > 1)
+        {
+            final Result result = decodeCoarse(chain, metrics, decoded, image, frame, width, left, top, areaWidth, areaHeight, factor);
+
+            if (result != null)
+            {
+                return result;
+            }
+
+            // Nothing located at the coarse scale, only look closer from time to time
+            final int interval = fullResolutionInterval;
+            if (!chain.hadNearMiss() && chain.getLocatedPointsCount() < QR_FINDER_PATTERNS_COUNT && (interval == 0 || frameId % interval != 0))
+            {
+                return null;
+            }
+        }
+
+        return decodeArea(chain, metrics, true, frameId, decoded, image, frame, width, height, left, top, areaWidth, areaHeight);
+    }
+
+    /**
+     * Runs the upright and rotated passes over the downsampled area. The mirrored pass is left out: 1D readers read
+     * both directions and QR codes are tried mirrored by the QR reader itself.
+     *
+     * @param factor downsampling factor, a power of two
+     */
+    private Result decodeCoarse(ZXReaderChain chain, LiveDataMetrics metrics, DecodeResult decoded, byte[] image, FrameDescriptor frame, int width, int left, int top, int areaWidth, int areaHeight, int factor)
+    {
+        final BitMatrixPool matrixPool = getMatrixPool();
+        long passStarted = System.nanoTime();
+
         try
         {
-            BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(new PlanarRotatedYUVLuminanceSource(image, width, height, scanAreaLeft, scanAreaTop, scanAreaRight, scanAreaBottom, true)));
-            result = reader.decodeWithState(bitmap);
+            final LuminanceSource upright = downsampledLuminances.get().downsample(image, frame, width, left, top, areaWidth, areaHeight, factor);
+            final FrameBinarization binarization = new FrameBinarization(upright, matrixPool);
+
+            Result result = chain.decodeLocating(new BinaryBitmap(new SharedMatrixBinarizer(upright, binarization, FrameBinarization.UPRIGHT, 0, 0)), false);
+            passStarted = reportPass(metrics, PASS_COARSE, passStarted, result != null);
 
             if (result != null)
             {
-                return result.getText();
+                return found(result, PASS_COARSE, left, top, upright.getWidth(), factor, decoded);
             }
+
+            result = chain.decodeLocating(new BinaryBitmap(new SharedMatrixBinarizer(upright.rotateCounterClockwise(), binarization, FrameBinarization.ROTATED, 0, 0)), true);
+            reportPass(metrics, PASS_COARSE_ROTATED, passStarted, result != null);
+
+            if (result != null)
+            {
+                return found(result, PASS_COARSE_ROTATED, left, top, upright.getWidth(), factor, decoded);
+            }
+
+            return null;
         }
-        catch (Throwable re)
+        finally
+        {
+            if (matrixPool != null)
+            {
+                matrixPool.releaseAll();
+            }
+        }
+    }
+
+    /**
+     * Runs all decoding passes over the given area of the frame
+     *
+     * @param metrics  per pass timings receiver, may be <code>null</code>
+     * @param fullArea <code>false</code> for a quick attempt on a small window, which skips the try harder pass
+     * @param frameId  sequence number of the frame, paces the 1D try harder retries
+     * @param decoded  if not <code>null</code>, receives the pass that found the code
+     */
+    private Result decodeArea(ZXReaderChain chain, LiveDataMetrics metrics, boolean fullArea, long frameId, DecodeResult decoded, byte[] image, FrameDescriptor frame, int width, int height, int left, int top, int areaWidth, int areaHeight)
+    {
+        final BitMatrixPool matrixPool = getMatrixPool();
+
+        try
         {
+            return decodeArea(chain, metrics, fullArea, frameId, decoded, image, frame, width, height, left, top, areaWidth, areaHeight, matrixPool);
         }
         finally
         {
-            reader.reset();
+            if (matrixPool != null)
+            {
+                matrixPool.releaseAll();
+            }
+        }
+    }
+
+    private Result decodeArea(ZXReaderChain chain, LiveDataMetrics metrics, boolean fullArea, long frameId, DecodeResult decoded, byte[] image, FrameDescriptor frame, int width, int height, int left, int top, int areaWidth, int areaHeight, BitMatrixPool matrixPool)
+    {
+        Result result;
+
+        // The area is binarized once, on first use, and every pass gets its black matrix from there
+        LuminanceSource upright = createSource(image, frame, width, height, left, top, areaWidth, areaHeight, false);
+        FrameBinarization binarization = new FrameBinarization(upright, matrixPool);
+
+        // First try image mirrored. All passes only read from the frame, which still belongs to the camera.
+        BinaryBitmap mirrored = new BinaryBitmap(new SharedMatrixBinarizer(createSource(image, frame, width, height, left, top, areaWidth, areaHeight, true), binarization, FrameBinarization.MIRRORED, 0, 0));
+        long passStarted = System.nanoTime();
+        result = chain.decode(mirrored, false, false);
+        passStarted = reportPass(metrics, PASS_MIRRORED, passStarted, result != null);
+
+        if (result != null)
+        {
+            return found(result, PASS_MIRRORED, left, top, areaWidth, 1, decoded);
+        }
+
+        // Then try it as is
+        BinaryBitmap uprightBitmap = new BinaryBitmap(new SharedMatrixBinarizer(upright, binarization, FrameBinarization.UPRIGHT, 0, 0));
+        result = chain.decode(uprightBitmap, false, false);
+        passStarted = reportPass(metrics, PASS_UPRIGHT, passStarted, result != null);
+
+        if (result != null)
+        {
+            return found(result, PASS_UPRIGHT, left, top, areaWidth, 1, decoded);
+        }
+
+        // Then 90 degrees rotated, for vertical 1D codes (2D readers do not care about orientation)
+        result = chain.decode(new BinaryBitmap(new SharedMatrixBinarizer(upright.rotateCounterClockwise(), binarization, FrameBinarization.ROTATED, 0, 0)), false, true);
+        passStarted = reportPass(metrics, PASS_ROTATED, passStarted, result != null);
+
+        if (result != null)
+        {
+            return found(result, PASS_ROTATED, left, top, areaWidth, 1, decoded);
+        }
+
+        if (!fullArea)
+        {
+            return null;
+        }
+
+        // Finally retry the slow and thorough way when some reader located a symbol it could not read. 1D readers report
+        // a blurred symbol just like no symbol at all, so they also retry once every few frames. With TRY_HARDER they
+        // read rows backwards and scan the image rotated by themselves, which covers the mirrored and rotated
+        // orientations. 2D readers only take part on a near miss, and then over the mirrored image as well.
+        final ZXDecodingStrategy strategy = this.strategy;
+        final boolean nearMiss = strategy.isTryHarderOnNearMiss() && chain.hadNearMiss();
+        final int interval = strategy.getOneDimensionalTryHarderInterval();
+
+        if (!nearMiss && (interval == 0 || frameId % interval != 0))
+        {
+            return null;
+        }
+
+        int orientation = PASS_UPRIGHT;
+        result = chain.decode(uprightBitmap, true, !nearMiss);
+
+        if (result == null && nearMiss)
+        {
+            orientation = PASS_MIRRORED;
+            result = chain.decode(mirrored, true, false);
+        }
+
+        reportPass(metrics, PASS_TRY_HARDER, passStarted, result != null);
+        return result != null ? found(result, PASS_TRY_HARDER, orientation, left, top, areaWidth, 1, decoded) : null;
+    }
+
+    /**
+     * @return view of the Y plane of an area of the frame, read from the heap array if there is one, from the
+     * descriptor planes otherwise. Neither is ever written to.
+     */
+    private static LuminanceSource createSource(byte[] image, FrameDescriptor frame, int width, int height, int left, int top, int areaWidth, int areaHeight, boolean mirrored)
+    {
+        if (image == null)
+        {
+            return new ByteBufferYUVLuminanceSource(frame.getPlane(FrameDescriptor.PLANE_Y), frame.getRowStride(FrameDescriptor.PLANE_Y), frame.getPixelStride(FrameDescriptor.PLANE_Y), width, height, left, top, areaWidth, areaHeight, mirrored);
+        }
+
+        if (mirrored)
+        {
+            return new MirroredPlanarYUVLuminanceSource(image, width, height, left, top, areaWidth, areaHeight);
+        }
+
+        return new PlanarRotatedYUVLuminanceSource(image, width, height, left, top, areaWidth, areaHeight, false);
+    }
+
+    private Result found(Result result, int pass, int left, int top, int areaWidth, int scale, DecodeResult decoded)
+    {
+        return found(result, pass, pass, left, top, areaWidth, scale, decoded);
+    }
+
+    /**
+     * Keeps the code in the calling thread's {@link FrameHit}, where its points are mapped to the frame on delivery
+     *
+     * @param orientation pass the decoded image was oriented for, {@link #PASS_MIRRORED}, {@link #PASS_ROTATED} or
+     *                    any other for upright images
+     */
+    private Result found(Result result, int pass, int orientation, int left, int top, int areaWidth, int scale, DecodeResult decoded)
+    {
+        if (decoded != null)
+        {
+            decoded.setPass(pass);
+        }
+
+        frameHits.get().set(result, orientation, 0, 0, left, top, areaWidth, scale);
+        return result;
+    }
+
+    private static void setFrameId(DecodeResult decoded, long frameId)
+    {
+        if (decoded != null)
+        {
+            decoded.setFrameId(frameId);
+        }
+    }
+
+    private void track(FrameHit hit)
+    {
+        final ResultPoint[] points = hit.getResult().getResultPoints();
+
+        if (points == null || points.length == 0)
+        {
+            return;
+        }
+
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+
+        for (ResultPoint point : points)
+        {
+            if (point != null)
+            {
+                final float x = hit.getX(point);
+                final float y = hit.getY(point);
+                minX = Math.min(minX, x);
+                minY = Math.min(minY, y);
+                maxX = Math.max(maxX, x);
+                maxY = Math.max(maxY, y);
+            }
+        }
+
+        if (minX <= maxX)
+        {
+            regionTracker.onFound((int) minX, (int) minY, (int) maxX, (int) maxY);
+        }
+    }
+
+    private static long reportPass(LiveDataMetrics metrics, int pass, long passStarted, boolean decoded)
+    {
+        if (metrics == null)
+        {
+            return passStarted;
+        }
+
+        final long now = System.nanoTime();
+        metrics.onDecodePass(pass, now - passStarted, decoded);
+        return now;
+    }
+
+    /**
+     * Turns codes found by {@link #decodeMultiple(byte[], int, int, DecodeResultPool, List)} into pooled results,
+     * skipping codes already found in the same frame
+     */
+    private static final class MultipleCollector
+    {
+        private final FrameHit hit;
+        private final DecodeResultPool pool;
+        private final List<DecodeResult> results;
+        private final int initialCount;
+        private final long frameId;
+        private final int scanAreaLeft;
+        private final int scanAreaTop;
+        private final int scanWidth;
+
+        MultipleCollector(FrameHit hit, DecodeResultPool pool, List<DecodeResult> results, int initialCount, long frameId, int scanAreaLeft, int scanAreaTop, int scanWidth)
+        {
+            this.hit = hit;
+            this.pool = pool;
+            this.results = results;
+            this.initialCount = initialCount;
+            this.frameId = frameId;
+            this.scanAreaLeft = scanAreaLeft;
+            this.scanAreaTop = scanAreaTop;
+            this.scanWidth = scanWidth;
+        }
+
+        void add(Result result, int pass, int regionLeft, int regionTop)
+        {
+            final String format = result.getBarcodeFormat().name();
+
+            for (int i = initialCount; i < results.size(); i++)
+            {
+                final DecodeResult known = results.get(i);
+                if (known.getFormat().equals(format) && known.getText().equals(result.getText()))
+                {
+                    return;
+                }
+            }
+
+            // Region coordinates first go to the scan area, then to the frame
+            hit.set(result, pass, regionLeft, regionTop, scanAreaLeft, scanAreaTop, scanWidth, 1);
+            final DecodeResult decoded = pool.acquire();
+            hit.fill(decoded);
+            decoded.setPass(pass);
+            decoded.setFrameId(frameId);
+            results.add(decoded);
+        }
+    }
+
+    private BitMatrixPool getMatrixPool()
+    {
+        return matrixPoolEnabled ? matrixPools.get() : null;
+    }
+
+    private ZXReaderChain getReaderChain()
+    {
+        ZXReaderChain chain = readerChains.get();
+
+        if (chain == null || !chain.isUpToDate(strategy))
+        {
+            chain = new ZXReaderChain(strategy, hints);
+            readerChains.set(chain);
         }
 
-        return null;
+        return chain;
     }
 
 }
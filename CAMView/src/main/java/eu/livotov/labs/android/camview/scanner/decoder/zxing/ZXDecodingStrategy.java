@@ -0,0 +1,128 @@
+package eu.livotov.labs.android.camview.scanner.decoder.zxing;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Describes how {@link ZXDecoder} looks for codes in a frame.
+ * <p/>
+ * Formats are tried one reader at a time, in the configured order, at normal effort. Only when some reader
+ * reports a near miss (it located a symbol but failed to read it) the frame is retried with <code>TRY_HARDER</code>.
+ * 1D readers never report one, they cannot tell a blurred symbol from no symbol at all, so they get their
+ * <code>TRY_HARDER</code> retry on one frame out of {@link #getOneDimensionalTryHarderInterval()} instead.
+ * With adaptive order enabled, formats decoded most recently are tried first on the following frames, so a
+ * scanner pointed at the same kind of labels finds them with the first reader it runs.
+ * <p/>
+ * Instance is safe to share between decoding threads.
+ */
+public class ZXDecodingStrategy
+{
+    public final static BarcodeFormat[] DEFAULT_FORMATS = new BarcodeFormat[]{BarcodeFormat.QR_CODE, BarcodeFormat.DATA_MATRIX, BarcodeFormat.UPC_A, BarcodeFormat.UPC_E, BarcodeFormat.EAN_13, BarcodeFormat.EAN_8, BarcodeFormat.CODE_128, BarcodeFormat.CODE_39, BarcodeFormat.CODE_93, BarcodeFormat.CODABAR, BarcodeFormat.ITF, BarcodeFormat.RSS_14, BarcodeFormat.RSS_EXPANDED, BarcodeFormat.PDF_417, BarcodeFormat.AZTEC, BarcodeFormat.MAXICODE};
+
+    private volatile BarcodeFormat[] formats = DEFAULT_FORMATS.clone();
+    private volatile boolean adaptiveOrder = true;
+    private volatile boolean tryHarderOnNearMiss = true;
+    private volatile int oneDimensionalTryHarderInterval = 8;
+
+    private final AtomicInteger configurationVersion = new AtomicInteger();
+    private final AtomicLong decodedCodesCount = new AtomicLong();
+    private final AtomicLongArray formatLastDecoded = new AtomicLongArray(BarcodeFormat.values().length);
+
+    public BarcodeFormat[] getFormats()
+    {
+        return formats.clone();
+    }
+
+    /**
+     * Sets formats to look for, in the order readers should be tried
+     *
+     * @param formats formats to decode, at least one
+     */
+    public void setFormats(BarcodeFormat... formats)
+    {
+        if (formats == null || formats.length == 0)
+        {
+            throw new IllegalArgumentException("At least one barcode format must be specified");
+        }
+
+        this.formats = formats.clone();
+        configurationVersion.incrementAndGet();
+    }
+
+    public boolean isAdaptiveOrder()
+    {
+        return adaptiveOrder;
+    }
+
+    /**
+     * @param adaptiveOrder if <code>true</code>, formats decoded recently are tried before the others
+     */
+    public void setAdaptiveOrder(boolean adaptiveOrder)
+    {
+        this.adaptiveOrder = adaptiveOrder;
+        configurationVersion.incrementAndGet();
+    }
+
+    public boolean isTryHarderOnNearMiss()
+    {
+        return tryHarderOnNearMiss;
+    }
+
+    /**
+     * @param tryHarderOnNearMiss if <code>true</code>, frames where a symbol was located but not read are decoded again
+     *                            with <code>TRY_HARDER</code> by every reader
+     */
+    public void setTryHarderOnNearMiss(boolean tryHarderOnNearMiss)
+    {
+        this.tryHarderOnNearMiss = tryHarderOnNearMiss;
+    }
+
+    public int getOneDimensionalTryHarderInterval()
+    {
+        return oneDimensionalTryHarderInterval;
+    }
+
+    /**
+     * @param oneDimensionalTryHarderInterval every how many frames where nothing was read the 1D readers retry the
+     *                                        frame with <code>TRY_HARDER</code>, for blurred 1D codes, 0 to never
+     *                                        retry them without a near miss
+     */
+    public void setOneDimensionalTryHarderInterval(int oneDimensionalTryHarderInterval)
+    {
+        if (oneDimensionalTryHarderInterval < 0)
+        {
+            throw new IllegalArgumentException("1D try harder interval cannot be negative: " + oneDimensionalTryHarderInterval);
+        }
+
+        this.oneDimensionalTryHarderInterval = oneDimensionalTryHarderInterval;
+    }
+
+    int getConfigurationVersion()
+    {
+        return configurationVersion.get();
+    }
+
+    /**
+     * @return number of codes decoded so far, changes whenever adaptive order may have changed
+     */
+    long getDecodedCodesCount()
+    {
+        return decodedCodesCount.get();
+    }
+
+    /**
+     * @return value of {@link #getDecodedCodesCount()} when the format was last decoded, 0 if never
+     */
+    long getLastDecoded(BarcodeFormat format)
+    {
+        return formatLastDecoded.get(format.ordinal());
+    }
+
+    void onFormatDecoded(BarcodeFormat format)
+    {
+        formatLastDecoded.set(format.ordinal(), decodedCodesCount.incrementAndGet());
+    }
+}
@@ -33,12 +33,17 @@ public final class ZXRGBLuminanceSource extends LuminanceSource
 
     public ZXRGBLuminanceSource(Bitmap bitmap)
     {
-        super(bitmap.getWidth(), bitmap.getHeight());
+        this(bitmap.getWidth(), bitmap.getHeight(), getPixels(bitmap));
+    }
 
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-        int[] pixels = new int[width * height];
-        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+    /**
+     * @param width  image width
+     * @param height image height
+     * @param pixels ARGB pixels, row by row, as returned by {@link Bitmap#getPixels(int[], int, int, int, int, int, int)}
+     */
+    public ZXRGBLuminanceSource(int width, int height, int[] pixels)
+    {
+        super(width, height);
 
         // In order to measure pure decoding speed, we convert the entire image to a greyscale array
         // up front, which is the same as the Y channel of the YUVLuminanceSource in the real app.
@@ -66,6 +71,13 @@ public final class ZXRGBLuminanceSource extends LuminanceSource
         }
     }
 
+    private static int[] getPixels(Bitmap bitmap)
+    {
+        int[] pixels = new int[bitmap.getWidth() * bitmap.getHeight()];
+        bitmap.getPixels(pixels, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+        return pixels;
+    }
+
     private static Bitmap loadBitmap(String path) throws FileNotFoundException
     {
         Bitmap bitmap = BitmapFactory.decodeFile(path);
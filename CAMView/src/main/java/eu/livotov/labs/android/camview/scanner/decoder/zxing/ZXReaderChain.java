@@ -0,0 +1,365 @@
+package eu.livotov.labs.android.camview.scanner.decoder.zxing;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Reader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+import com.google.zxing.aztec.AztecReader;
+import com.google.zxing.datamatrix.DataMatrixReader;
+import com.google.zxing.maxicode.MaxiCodeReader;
+import com.google.zxing.multi.MultipleBarcodeReader;
+import com.google.zxing.multi.qrcode.QRCodeMultiReader;
+import com.google.zxing.oned.MultiFormatOneDReader;
+import com.google.zxing.pdf417.PDF417Reader;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ordered set of format specific readers built from a {@link ZXDecodingStrategy}. Readers are stateful,
+ * so every decoding thread owns its own chain.
+ */
+final class ZXReaderChain
+{
+    private static final EnumSet<BarcodeFormat> UPC_EAN_FORMATS = EnumSet.of(BarcodeFormat.UPC_A, BarcodeFormat.UPC_E, BarcodeFormat.EAN_13, BarcodeFormat.EAN_8);
+
+    private final ZXDecodingStrategy strategy;
+    private final int configurationVersion;
+    private final Entry[] entries;
+    private final Map<DecodeHintType, Object> normalHints;
+    private final Map<DecodeHintType, Object> tryHarderHints;
+    private final Map<DecodeHintType, Object> locatingHints;
+    private long orderedAtDecodedCount = -1;
+    private boolean nearMiss;
+    private int locatedPointsCount;
+
+    ZXReaderChain(ZXDecodingStrategy strategy, Map<DecodeHintType, ?> baseHints)
+    {
+        this.strategy = strategy;
+        this.configurationVersion = strategy.getConfigurationVersion();
+
+        normalHints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+        normalHints.putAll(baseHints);
+        normalHints.remove(DecodeHintType.TRY_HARDER);
+        normalHints.remove(DecodeHintType.POSSIBLE_FORMATS);
+
+        tryHarderHints = new EnumMap<DecodeHintType, Object>(normalHints);
+        tryHarderHints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+
+        // QR readers report every finder pattern candidate they come across through the callback
+        locatingHints = new EnumMap<DecodeHintType, Object>(normalHints);
+        locatingHints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, new ResultPointCallback()
+        {
+            @Override
+            public void foundPossibleResultPoint(ResultPoint point)
+            {
+                locatedPointsCount++;
+            }
+        });
+
+        entries = buildEntries(strategy.getFormats());
+    }
+
+    boolean isUpToDate(ZXDecodingStrategy strategy)
+    {
+        return this.strategy == strategy && configurationVersion == strategy.getConfigurationVersion();
+    }
+
+    /**
+     * Prepares the chain for a new frame: clears near miss state and applies the adaptive order
+     */
+    void beginFrame()
+    {
+        nearMiss = false;
+        locatedPointsCount = 0;
+
+        if (strategy.isAdaptiveOrder() && orderedAtDecodedCount != strategy.getDecodedCodesCount())
+        {
+            orderedAtDecodedCount = strategy.getDecodedCodesCount();
+            reorder();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if any reader located a symbol but failed to read it since {@link #beginFrame()}. 1D readers
+     * never report this, they fail with {@link NotFoundException} whatever the reason.
+     */
+    boolean hadNearMiss()
+    {
+        return nearMiss;
+    }
+
+    /**
+     * @return number of candidate points (QR finder and alignment patterns) 2D readers located during
+     * {@link #decodeLocating(BinaryBitmap, boolean)} calls since {@link #beginFrame()}
+     */
+    int getLocatedPointsCount()
+    {
+        return locatedPointsCount;
+    }
+
+    /**
+     * Runs readers in the current order until one of them succeeds
+     *
+     * @param bitmap             image to decode
+     * @param tryHarder          run readers in their slow, more thorough mode
+     * @param oneDimensionalOnly skip readers of 2D formats, used for rotated passes 2D readers do not need
+     * @return decoded result or <code>null</code>
+     */
+    Result decode(BinaryBitmap bitmap, boolean tryHarder, boolean oneDimensionalOnly)
+    {
+        return decode(bitmap, tryHarder, oneDimensionalOnly, false);
+    }
+
+    /**
+     * @param skipQRCodes skip the QR code reader, used when {@link #decodeMultipleQRCodes(BinaryBitmap)} already ran
+     * @see #decode(BinaryBitmap, boolean, boolean)
+     */
+    Result decode(BinaryBitmap bitmap, boolean tryHarder, boolean oneDimensionalOnly, boolean skipQRCodes)
+    {
+        final Map<DecodeHintType, Object> hints = tryHarder ? tryHarderHints : normalHints;
+        return decode(bitmap, hints, hints, oneDimensionalOnly, skipQRCodes);
+    }
+
+    /**
+     * Same as a normal effort {@link #decode(BinaryBitmap, boolean, boolean)}, also counting the candidate points 2D
+     * readers locate, see {@link #getLocatedPointsCount()}. 1D readers report their guard patterns, which turn up in
+     * about any texture, so they are not asked for them.
+     */
+    Result decodeLocating(BinaryBitmap bitmap, boolean oneDimensionalOnly)
+    {
+        return decode(bitmap, locatingHints, normalHints, oneDimensionalOnly, false);
+    }
+
+    private Result decode(BinaryBitmap bitmap, Map<DecodeHintType, Object> hints, Map<DecodeHintType, Object> oneDimensionalHints, boolean oneDimensionalOnly, boolean skipQRCodes)
+    {
+        for (Entry entry : entries)
+        {
+            if ((oneDimensionalOnly && !entry.oneDimensional) || (skipQRCodes && entry.reader instanceof MultipleBarcodeReader))
+            {
+                continue;
+            }
+
+            try
+            {
+                final Result result = entry.reader.decode(bitmap, entry.oneDimensional ? oneDimensionalHints : hints);
+
+                if (result != null)
+                {
+                    strategy.onFormatDecoded(result.getBarcodeFormat());
+                    return result;
+                }
+            }
+            catch (NotFoundException notFound)
+            {
+                // Nothing there for this reader
+            }
+            catch (ReaderException located)
+            {
+                // Format or checksum error: a symbol is there but could not be read
+                nearMiss = true;
+            }
+            catch (RuntimeException ignored)
+            {
+            }
+            finally
+            {
+                entry.reader.reset();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Finds all QR codes in the image at once, if QR codes are enabled
+     *
+     * @return decoded codes, <code>null</code> if none were found
+     */
+    Result[] decodeMultipleQRCodes(BinaryBitmap bitmap)
+    {
+        for (Entry entry : entries)
+        {
+            if (entry.reader instanceof MultipleBarcodeReader)
+            {
+                try
+                {
+                    final Result[] results = ((MultipleBarcodeReader) entry.reader).decodeMultiple(bitmap, normalHints);
+
+                    if (results.length > 0)
+                    {
+                        strategy.onFormatDecoded(BarcodeFormat.QR_CODE);
+                        return results;
+                    }
+                }
+                catch (NotFoundException notFound)
+                {
+                    // No QR codes there
+                }
+                catch (RuntimeException ignored)
+                {
+                }
+                finally
+                {
+                    entry.reader.reset();
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private void reorder()
+    {
+        for (Entry entry : entries)
+        {
+            entry.lastDecoded = 0;
+            for (BarcodeFormat format : entry.formats)
+            {
+                entry.lastDecoded = Math.max(entry.lastDecoded, strategy.getLastDecoded(format));
+            }
+        }
+
+        // Insertion sort, the chain is short and mostly ordered already
+        for (int i = 1; i < entries.length; i++)
+        {
+            final Entry entry = entries[i];
+            int j = i - 1;
+
+            while (j >= 0 && entry.precedes(entries[j]))
+            {
+                entries[j + 1] = entries[j];
+                j--;
+            }
+
+            entries[j + 1] = entry;
+        }
+    }
+
+    private Entry[] buildEntries(BarcodeFormat[] formats)
+    {
+        final List<Entry> result = new ArrayList<Entry>();
+        final EnumSet<BarcodeFormat> upcEan = EnumSet.noneOf(BarcodeFormat.class);
+        Entry upcEanEntry = null;
+
+        for (BarcodeFormat format : formats)
+        {
+            if (UPC_EAN_FORMATS.contains(format))
+            {
+                // UPC/EAN share one reader, which resolves UPC-A vs EAN-13 consistently
+                upcEan.add(format);
+                if (upcEanEntry == null)
+                {
+                    upcEanEntry = new Entry(result.size());
+                    result.add(upcEanEntry);
+                }
+            }
+            else if (!containsFormat(result, format))
+            {
+                final Entry entry = createEntry(format, result.size());
+                if (entry != null)
+                {
+                    result.add(entry);
+                }
+            }
+        }
+
+        if (upcEanEntry != null)
+        {
+            upcEanEntry.setup(createOneDReader(upcEan), upcEan.toArray(new BarcodeFormat[upcEan.size()]), true);
+        }
+
+        return result.toArray(new Entry[result.size()]);
+    }
+
+    private Entry createEntry(BarcodeFormat format, int index)
+    {
+        final Entry entry = new Entry(index);
+        final BarcodeFormat[] entryFormats = new BarcodeFormat[]{format};
+
+        switch (format)
+        {
+            case QR_CODE:
+                // Reads single codes just like QRCodeReader, but can also find all of them at once
+                return entry.setup(new QRCodeMultiReader(), entryFormats, false);
+            case DATA_MATRIX:
+                return entry.setup(new DataMatrixReader(), entryFormats, false);
+            case AZTEC:
+                return entry.setup(new AztecReader(), entryFormats, false);
+            case PDF_417:
+                return entry.setup(new PDF417Reader(), entryFormats, false);
+            case MAXICODE:
+                return entry.setup(new MaxiCodeReader(), entryFormats, false);
+            case CODE_39:
+            case CODE_93:
+            case CODE_128:
+            case ITF:
+            case CODABAR:
+            case RSS_14:
+            case RSS_EXPANDED:
+                return entry.setup(createOneDReader(EnumSet.of(format)), entryFormats, true);
+            default:
+                // Not a standalone symbology (e.g. UPC/EAN extension)
+                return null;
+        }
+    }
+
+    private Reader createOneDReader(EnumSet<BarcodeFormat> formats)
+    {
+        final Map<DecodeHintType, Object> readerHints = new EnumMap<DecodeHintType, Object>(normalHints);
+        readerHints.put(DecodeHintType.POSSIBLE_FORMATS, formats);
+        return new MultiFormatOneDReader(readerHints);
+    }
+
+    private static boolean containsFormat(List<Entry> entries, BarcodeFormat format)
+    {
+        for (Entry entry : entries)
+        {
+            if (entry.formats != null && entry.formats.length == 1 && entry.formats[0] == format)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Entry
+    {
+        final int configuredIndex;
+        Reader reader;
+        BarcodeFormat[] formats;
+        boolean oneDimensional;
+        long lastDecoded;
+
+        Entry(int configuredIndex)
+        {
+            this.configuredIndex = configuredIndex;
+        }
+
+        Entry setup(Reader reader, BarcodeFormat[] formats, boolean oneDimensional)
+        {
+            this.reader = reader;
+            this.formats = formats;
+            this.oneDimensional = oneDimensional;
+            return this;
+        }
+
+        boolean precedes(Entry other)
+        {
+            if (lastDecoded != other.lastDecoded)
+            {
+                return lastDecoded > other.lastDecoded;
+            }
+
+            return configuredIndex < other.configuredIndex;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package eu.livotov.labs.android.camview.camera;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class CameraCapabilityCacheTest
+{
+    private static final String CAMERA = "0";
+
+    private CameraCapabilityCache cache;
+
+    @Before
+    public void setUp()
+    {
+        cache = new CameraCapabilityCache(new MemorySharedPreferences(), "device");
+    }
+
+    @Test
+    public void singleRejectionIsNotPersisted()
+    {
+        cache.putWorkingParameters(CAMERA, CameraCapabilityCache.PARAMETERS_MAIN, CameraCapabilityCache.PARAMETERS_FAILSAFE);
+
+        assertEquals(CameraCapabilityCache.PARAMETERS_UNKNOWN, cache.getWorkingParameters(CAMERA));
+    }
+
+    @Test
+    public void repeatedRejectionsSkipTheSet()
+    {
+        reject(CameraCapabilityCache.PARAMETERS_REJECTIONS_TO_SKIP);
+
+        assertEquals(CameraCapabilityCache.PARAMETERS_FAILSAFE, cache.getWorkingParameters(CAMERA));
+    }
+
+    @Test
+    public void acceptanceResetsRejections()
+    {
+        reject(CameraCapabilityCache.PARAMETERS_REJECTIONS_TO_SKIP - 1);
+        cache.putWorkingParameters(CAMERA, CameraCapabilityCache.PARAMETERS_MAIN, CameraCapabilityCache.PARAMETERS_MAIN);
+        reject(CameraCapabilityCache.PARAMETERS_REJECTIONS_TO_SKIP - 1);
+
+        assertEquals(CameraCapabilityCache.PARAMETERS_UNKNOWN, cache.getWorkingParameters(CAMERA));
+    }
+
+    @Test
+    public void skippedMainSetIsTriedAgainAfterStarts()
+    {
+        reject(CameraCapabilityCache.PARAMETERS_REJECTIONS_TO_SKIP);
+
+        for (int i = 0; i < CameraCapabilityCache.PARAMETERS_STARTS_TO_RETRY_MAIN; i++)
+        {
+            assertEquals(CameraCapabilityCache.PARAMETERS_FAILSAFE, cache.getWorkingParameters(CAMERA));
+            cache.putWorkingParameters(CAMERA, CameraCapabilityCache.PARAMETERS_FAILSAFE, CameraCapabilityCache.PARAMETERS_FAILSAFE);
+        }
+
+        assertEquals(CameraCapabilityCache.PARAMETERS_MAIN, cache.getWorkingParameters(CAMERA));
+
+        // Rejected again, the set stays skipped for as many starts more
+        cache.putWorkingParameters(CAMERA, CameraCapabilityCache.PARAMETERS_MAIN, CameraCapabilityCache.PARAMETERS_FAILSAFE);
+        assertEquals(CameraCapabilityCache.PARAMETERS_FAILSAFE, cache.getWorkingParameters(CAMERA));
+    }
+
+    @Test
+    public void acceptedMainSetIsNoLongerSkipped()
+    {
+        reject(CameraCapabilityCache.PARAMETERS_REJECTIONS_TO_SKIP);
+
+        for (int i = 0; i < CameraCapabilityCache.PARAMETERS_STARTS_TO_RETRY_MAIN; i++)
+        {
+            cache.putWorkingParameters(CAMERA, CameraCapabilityCache.PARAMETERS_FAILSAFE, CameraCapabilityCache.PARAMETERS_FAILSAFE);
+        }
+
+        cache.putWorkingParameters(CAMERA, CameraCapabilityCache.PARAMETERS_MAIN, CameraCapabilityCache.PARAMETERS_MAIN);
+
+        assertEquals(CameraCapabilityCache.PARAMETERS_MAIN, cache.getWorkingParameters(CAMERA));
+        cache.putWorkingParameters(CAMERA, CameraCapabilityCache.PARAMETERS_MAIN, CameraCapabilityCache.PARAMETERS_FAILSAFE);
+        assertEquals(CameraCapabilityCache.PARAMETERS_MAIN, cache.getWorkingParameters(CAMERA));
+    }
+
+    @Test
+    public void decodeCostAppliesToSameSettingsOnly()
+    {
+        cache.putDecodeCost("decoder", "settings", 12.5f);
+
+        assertEquals(12.5f, cache.getDecodeCost("decoder", "settings"), 0);
+        assertEquals(0, cache.getDecodeCost("decoder", "other settings"), 0);
+        assertEquals(0, cache.getDecodeCost("other decoder", "settings"), 0);
+
+        cache.putDecodeCost("decoder", "other settings", 20);
+        assertEquals(0, cache.getDecodeCost("decoder", "settings"), 0);
+        assertEquals(20, cache.getDecodeCost("decoder", "other settings"), 0);
+    }
+
+    @Test
+    public void decodeCostIsDroppedOnOtherBuild()
+    {
+        final MemorySharedPreferences preferences = new MemorySharedPreferences();
+        new CameraCapabilityCache(preferences, "device").putDecodeCost("decoder", "settings", 12.5f);
+
+        assertEquals(12.5f, new CameraCapabilityCache(preferences, "device").getDecodeCost("decoder", "settings"), 0);
+        assertEquals(0, new CameraCapabilityCache(preferences, "updated device").getDecodeCost("decoder", "settings"), 0);
+    }
+
+    private void reject(int times)
+    {
+        for (int i = 0; i < times; i++)
+        {
+            cache.putWorkingParameters(CAMERA, CameraCapabilityCache.PARAMETERS_MAIN, CameraCapabilityCache.PARAMETERS_FAILSAFE);
+        }
+    }
+}
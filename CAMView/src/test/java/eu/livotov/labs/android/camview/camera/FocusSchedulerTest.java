@@ -0,0 +1,111 @@
+package eu.livotov.labs.android.camview.camera;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FocusSchedulerTest
+{
+    /**
+     * Scheduler running posted tasks only when told to, ignoring their delays
+     */
+    private static class ManualFocusScheduler extends FocusScheduler
+    {
+        final List<Runnable> posted = new ArrayList<Runnable>();
+        int startedCycles;
+        int cancelledCycles;
+
+        ManualFocusScheduler()
+        {
+            setIdleIntervalMillis(0);
+        }
+
+        @Override
+        protected void post(Runnable task, long delayMillis)
+        {
+            posted.add(task);
+        }
+
+        @Override
+        protected boolean startFocus()
+        {
+            startedCycles++;
+            return true;
+        }
+
+        @Override
+        protected void cancelFocus()
+        {
+            cancelledCycles++;
+        }
+
+        void runPosted()
+        {
+            final List<Runnable> tasks = new ArrayList<Runnable>(posted);
+            posted.clear();
+
+            for (Runnable task : tasks)
+            {
+                task.run();
+            }
+        }
+    }
+
+    @Test
+    public void startFocusesOnceTheTriggerRuns()
+    {
+        final ManualFocusScheduler scheduler = new ManualFocusScheduler();
+
+        scheduler.start();
+        assertTrue(scheduler.isFocusing());
+        assertEquals(0, scheduler.startedCycles);
+
+        scheduler.runPosted();
+        assertEquals(1, scheduler.startedCycles);
+        assertTrue(scheduler.isFocusing());
+
+        scheduler.onFocusCompleted(true);
+        assertFalse(scheduler.isFocusing());
+    }
+
+    @Test
+    public void startingAgainWithoutStopFocusesAgain()
+    {
+        final ManualFocusScheduler scheduler = new ManualFocusScheduler();
+
+        scheduler.start();
+        scheduler.start();
+        scheduler.runPosted();
+
+        // The first run's trigger is stale, the second one's runs
+        assertEquals(1, scheduler.startedCycles);
+        assertTrue(scheduler.isFocusing());
+
+        scheduler.onFocusCompleted(true);
+        scheduler.requestFocus();
+        scheduler.runPosted();
+        assertEquals(2, scheduler.startedCycles);
+    }
+
+    @Test
+    public void stopCancelsTheRunningCycle()
+    {
+        final ManualFocusScheduler scheduler = new ManualFocusScheduler();
+
+        scheduler.start();
+        scheduler.runPosted();
+        scheduler.stop();
+
+        assertFalse(scheduler.isFocusing());
+        assertEquals(1, scheduler.cancelledCycles);
+
+        scheduler.requestFocus();
+        scheduler.runPosted();
+        assertEquals(1, scheduler.startedCycles);
+    }
+}
@@ -0,0 +1,175 @@
+package eu.livotov.labs.android.camview.camera;
+
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Preferences kept in memory, edits are applied synchronously and listeners are not notified
+ */
+class MemorySharedPreferences implements SharedPreferences
+{
+    private final Map<String, Object> values = new HashMap<String, Object>();
+
+    @Override
+    public synchronized Map<String, ?> getAll()
+    {
+        return new HashMap<String, Object>(values);
+    }
+
+    @Override
+    public synchronized String getString(String key, String defValue)
+    {
+        return values.containsKey(key) ? (String) values.get(key) : defValue;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized Set<String> getStringSet(String key, Set<String> defValues)
+    {
+        return values.containsKey(key) ? (Set<String>) values.get(key) : defValues;
+    }
+
+    @Override
+    public synchronized int getInt(String key, int defValue)
+    {
+        return values.containsKey(key) ? (Integer) values.get(key) : defValue;
+    }
+
+    @Override
+    public synchronized long getLong(String key, long defValue)
+    {
+        return values.containsKey(key) ? (Long) values.get(key) : defValue;
+    }
+
+    @Override
+    public synchronized float getFloat(String key, float defValue)
+    {
+        return values.containsKey(key) ? (Float) values.get(key) : defValue;
+    }
+
+    @Override
+    public synchronized boolean getBoolean(String key, boolean defValue)
+    {
+        return values.containsKey(key) ? (Boolean) values.get(key) : defValue;
+    }
+
+    @Override
+    public synchronized boolean contains(String key)
+    {
+        return values.containsKey(key);
+    }
+
+    @Override
+    public Editor edit()
+    {
+        return new MemoryEditor();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener)
+    {
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener)
+    {
+    }
+
+    private class MemoryEditor implements Editor
+    {
+        private final Map<String, Object> changes = new HashMap<String, Object>();
+        private boolean clear;
+
+        @Override
+        public Editor putString(String key, String value)
+        {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putStringSet(String key, Set<String> values)
+        {
+            changes.put(key, values);
+            return this;
+        }
+
+        @Override
+        public Editor putInt(String key, int value)
+        {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putLong(String key, long value)
+        {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putFloat(String key, float value)
+        {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value)
+        {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor remove(String key)
+        {
+            // A null value stands for a removal, as with the platform editor
+            changes.put(key, null);
+            return this;
+        }
+
+        @Override
+        public Editor clear()
+        {
+            clear = true;
+            return this;
+        }
+
+        @Override
+        public boolean commit()
+        {
+            synchronized (MemorySharedPreferences.this)
+            {
+                if (clear)
+                {
+                    values.clear();
+                }
+
+                for (Map.Entry<String, Object> change : changes.entrySet())
+                {
+                    if (change.getValue() == null)
+                    {
+                        values.remove(change.getKey());
+                    }
+                    else
+                    {
+                        values.put(change.getKey(), change.getValue());
+                    }
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public void apply()
+        {
+            commit();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package eu.livotov.labs.android.camview.camera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessingThreadPolicyTest
+{
+    // One prime core, three big and four little ones
+    private static final CpuTopology THREE_CLUSTERS = new CpuTopology(new long[]{1800000, 1800000, 1800000, 1800000, 2400000, 2400000, 2400000, 3000000});
+
+    private static class RecordingPolicy extends ProcessingThreadPolicy
+    {
+        int limitedRequest;
+        int limitedCount;
+
+        @Override
+        protected void onThreadsCountLimited(int requested, int count)
+        {
+            limitedRequest = requested;
+            limitedCount = count;
+        }
+    }
+
+    @Test
+    public void primeAndBigClustersCountAsBig()
+    {
+        assertEquals(8, THREE_CLUSTERS.getCoresCount());
+        assertEquals(4, THREE_CLUSTERS.getBigCoresCount());
+        assertEquals(4, THREE_CLUSTERS.getLittleCoresCount());
+        assertTrue(THREE_CLUSTERS.isHeterogeneous());
+    }
+
+    @Test
+    public void unknownFrequenciesMakeEveryCoreBig()
+    {
+        final CpuTopology topology = new CpuTopology(new long[]{1800000, 0, 2400000, 2400000});
+
+        assertEquals(4, topology.getBigCoresCount());
+        assertFalse(topology.isHeterogeneous());
+    }
+
+    @Test
+    public void requestWithinPreferredCoresIsKept()
+    {
+        final RecordingPolicy policy = new RecordingPolicy();
+
+        assertEquals(3, policy.getThreadsCount(3, THREE_CLUSTERS));
+        assertEquals(0, policy.limitedRequest);
+    }
+
+    @Test
+    public void requestBeyondPreferredCoresIsLimitedAndReported()
+    {
+        final RecordingPolicy policy = new RecordingPolicy();
+
+        assertEquals(4, policy.getThreadsCount(6, THREE_CLUSTERS));
+        assertEquals(6, policy.limitedRequest);
+        assertEquals(4, policy.limitedCount);
+    }
+
+    @Test
+    public void anyCoresKeepsTheRequest()
+    {
+        final RecordingPolicy policy = new RecordingPolicy();
+        policy.setPreferredCores(ProcessingThreadPolicy.CORES_ANY);
+
+        assertEquals(6, policy.getThreadsCount(6, THREE_CLUSTERS));
+        assertEquals(0, policy.limitedRequest);
+    }
+}
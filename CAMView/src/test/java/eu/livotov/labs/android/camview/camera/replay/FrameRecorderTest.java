@@ -0,0 +1,131 @@
+package eu.livotov.labs.android.camview.camera.replay;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrameRecorderTest
+{
+    private static final int WIDTH = 16;
+    private static final int HEIGHT = 8;
+    private static final long FRAME_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void preallocatedBuffersRecordFirstFrame() throws Exception
+    {
+        final File file = folder.newFile();
+        final FrameRecorder recorder = new FrameRecorder(file, 1, 1);
+
+        recorder.start(WIDTH, HEIGHT);
+        assertTrue(recorder.offer(frame(WIDTH, HEIGHT, 1), WIDTH, HEIGHT, 0));
+        stop(recorder);
+
+        assertEquals(0, recorder.getDroppedFramesCount());
+        assertRecorded(file, frame(WIDTH, HEIGHT, 1));
+    }
+
+    @Test
+    public void buffersAreAllocatedOnRecorderThread() throws Exception
+    {
+        final File file = folder.newFile();
+        final FrameRecorder recorder = new FrameRecorder(file, 1, 1);
+
+        recorder.start();
+        assertFalse(recorder.offer(frame(WIDTH, HEIGHT, 1), WIDTH, HEIGHT, 0));
+        assertEquals(1, recorder.getDroppedFramesCount());
+
+        offerUntilRecorded(recorder, frame(WIDTH, HEIGHT, 2), WIDTH, HEIGHT, FRAME_INTERVAL_NANOS);
+        stop(recorder);
+
+        assertRecorded(file, frame(WIDTH, HEIGHT, 2));
+    }
+
+    @Test
+    public void largerFramesGrowBuffers() throws Exception
+    {
+        final File file = folder.newFile();
+        final FrameRecorder recorder = new FrameRecorder(file, 1, 1);
+
+        recorder.start(WIDTH, HEIGHT);
+        offerUntilRecorded(recorder, frame(WIDTH, HEIGHT, 1), WIDTH, HEIGHT, 0);
+        offerUntilRecorded(recorder, frame(WIDTH * 2, HEIGHT, 2), WIDTH * 2, HEIGHT, FRAME_INTERVAL_NANOS);
+        offerUntilRecorded(recorder, frame(WIDTH, HEIGHT, 3), WIDTH, HEIGHT, FRAME_INTERVAL_NANOS * 100);
+        stop(recorder);
+
+        assertTrue(recorder.getDroppedFramesCount() > 0);
+        assertRecorded(file, frame(WIDTH, HEIGHT, 1), frame(WIDTH * 2, HEIGHT, 2), frame(WIDTH, HEIGHT, 3));
+    }
+
+    /**
+     * Offers the frame at growing timestamps until the recorder takes it, as a camera would offer its next frames
+     */
+    private static void offerUntilRecorded(FrameRecorder recorder, byte[] frame, int width, int height, long timestamp) throws InterruptedException
+    {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+
+        while (!recorder.offer(frame, width, height, timestamp))
+        {
+            assertTrue("Frame was never recorded", System.nanoTime() < deadline);
+            Thread.sleep(1);
+            timestamp += FRAME_INTERVAL_NANOS;
+        }
+    }
+
+    private static void stop(FrameRecorder recorder) throws InterruptedException
+    {
+        recorder.stop();
+        assertTrue(recorder.awaitStopped(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(null, recorder.getError());
+    }
+
+    private static byte[] frame(int width, int height, int seed)
+    {
+        final byte[] nv21 = new byte[width * height * 3 / 2];
+
+        for (int i = 0; i < nv21.length; i++)
+        {
+            nv21[i] = (byte) (seed * 31 + i);
+        }
+
+        return nv21;
+    }
+
+    private static void assertRecorded(File file, byte[]... frames) throws IOException
+    {
+        final RandomAccessFile input = new RandomAccessFile(file, "r");
+
+        try
+        {
+            final FrameRecording recording = FrameRecording.index(input.getChannel());
+            assertEquals(frames.length, recording.getFramesCount());
+
+            for (int i = 0; i < frames.length; i++)
+            {
+                final ByteBuffer data = ByteBuffer.allocate(recording.getDataLength(i));
+                FrameRecording.readFully(input.getChannel(), data, recording.getDataOffset(i));
+                assertArrayEquals("frame " + i, frames[i], Arrays.copyOf(data.array(), frames[i].length));
+                assertEquals(frames[i].length, recording.getDataLength(i));
+            }
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+}
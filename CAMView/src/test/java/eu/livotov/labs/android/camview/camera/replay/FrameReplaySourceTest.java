@@ -0,0 +1,341 @@
+package eu.livotov.labs.android.camview.camera.replay;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import eu.livotov.labs.android.camview.camera.FrameDescriptor;
+import eu.livotov.labs.android.camview.camera.LiveFrame;
+import eu.livotov.labs.android.camview.camera.LiveFrameExecutor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FrameReplaySourceTest
+{
+    private static final int WIDTH = 16;
+    private static final int HEIGHT = 8;
+    private static final int FRAME_LENGTH = WIDTH * HEIGHT * 3 / 2;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Executor recording the first byte and timestamp of every frame, releasing frames right away unless told to
+     * hold on to them
+     */
+    private static class RecordingExecutor implements LiveFrameExecutor
+    {
+        final List<Integer> firstBytes = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Long> timestamps = Collections.synchronizedList(new ArrayList<Long>());
+        final List<Long> submitTimes = Collections.synchronizedList(new ArrayList<Long>());
+        final List<LiveFrame> held = Collections.synchronizedList(new ArrayList<LiveFrame>());
+        volatile boolean holdFrames;
+
+        @Override
+        public void start()
+        {
+        }
+
+        @Override
+        public void submitLiveFrame(LiveFrame frame)
+        {
+            final byte[] nv21 = new byte[FRAME_LENGTH];
+            frame.getDescriptor().copyToNV21(nv21);
+            firstBytes.add((int) nv21[0]);
+            timestamps.add(frame.getDescriptor().getTimestamp());
+            submitTimes.add(System.nanoTime());
+
+            if (holdFrames)
+            {
+                held.add(frame);
+            }
+            else
+            {
+                frame.release();
+            }
+        }
+
+        @Override
+        public void shutdown()
+        {
+        }
+
+        void releaseHeld()
+        {
+            synchronized (held)
+            {
+                for (LiveFrame frame : held)
+                {
+                    frame.release();
+                }
+
+                held.clear();
+            }
+        }
+    }
+
+    @Test
+    public void indexLeavesOutTruncatedFrame() throws IOException
+    {
+        final File file = writeRecording(3);
+        truncate(file, file.length() - FRAME_LENGTH / 2);
+
+        final FrameRecording recording = index(file);
+
+        assertEquals(2, recording.getFramesCount());
+        assertEquals(FRAME_LENGTH, recording.getMaxDataLength());
+
+        for (int i = 0; i < 2; i++)
+        {
+            assertEquals(FrameRecording.FILE_HEADER_SIZE + (i + 1) * FrameRecording.FRAME_HEADER_SIZE + i * FRAME_LENGTH, recording.getDataOffset(i));
+            assertEquals(FRAME_LENGTH, recording.getDataLength(i));
+            assertEquals(WIDTH, recording.getWidth(i));
+            assertEquals(HEIGHT, recording.getHeight(i));
+            assertEquals(timestamp(i), recording.getTimestamp(i));
+        }
+    }
+
+    @Test
+    public void indexLeavesOutTruncatedFrameHeader() throws IOException
+    {
+        final File file = writeRecording(2);
+        truncate(file, FrameRecording.FILE_HEADER_SIZE + FrameRecording.FRAME_HEADER_SIZE + FRAME_LENGTH + FrameRecording.FRAME_HEADER_SIZE / 2);
+
+        assertEquals(1, index(file).getFramesCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void indexRejectsOtherFiles() throws IOException
+    {
+        final File file = folder.newFile();
+        final RandomAccessFile output = new RandomAccessFile(file, "rw");
+
+        try
+        {
+            output.write(new byte[FrameRecording.FILE_HEADER_SIZE]);
+        }
+        finally
+        {
+            output.close();
+        }
+
+        index(file);
+    }
+
+    @Test
+    public void memoryMappedReplayDeliversEveryFrame() throws Exception
+    {
+        assertDeliversEveryFrame(FrameReplaySource.MODE_MEMORY_MAPPED);
+    }
+
+    @Test
+    public void streamedReplayDeliversEveryFrame() throws Exception
+    {
+        assertDeliversEveryFrame(FrameReplaySource.MODE_STREAMED);
+    }
+
+    @Test
+    public void replaySkipsTruncatedLastFrame() throws Exception
+    {
+        final File file = writeRecording(3);
+        truncate(file, file.length() - 1);
+        final FrameReplaySource source = new FrameReplaySource(file, FrameReplaySource.MODE_STREAMED);
+        final RecordingExecutor executor = new RecordingExecutor();
+
+        source.start(executor);
+
+        assertTrue(source.awaitCompletion(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(2, source.getDeliveredFramesCount());
+        assertEquals(2, executor.firstBytes.size());
+        assertNull(source.getError());
+    }
+
+    @Test
+    public void fixedFrameRateIsPaced() throws Exception
+    {
+        final FrameReplaySource source = new FrameReplaySource(writeRecording(5), FrameReplaySource.MODE_MEMORY_MAPPED);
+        final RecordingExecutor executor = new RecordingExecutor();
+        source.setFrameRate(50);
+
+        final long started = System.nanoTime();
+        source.start(executor);
+
+        assertTrue(source.awaitCompletion(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(5, executor.submitTimes.size());
+        assertEquals(0, source.getDroppedFramesCount());
+
+        // Frames are due every 20 ms from the start on, they may only come late
+        final long elapsed = executor.submitTimes.get(4) - started;
+        assertTrue("Replay took " + elapsed + " ns", elapsed >= TimeUnit.MILLISECONDS.toNanos(4 * 20) - TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Test
+    public void framesDueWhileBuffersAreLeasedAreDropped() throws Exception
+    {
+        final FrameReplaySource source = new FrameReplaySource(writeRecording(5), FrameReplaySource.MODE_MEMORY_MAPPED);
+        final RecordingExecutor executor = new RecordingExecutor();
+        executor.holdFrames = true;
+        source.setFrameRate(100);
+        source.setBuffersCount(1);
+
+        source.start(executor);
+        waitFor(source, 5);
+
+        assertEquals(1, source.getDeliveredFramesCount());
+        assertEquals(4, source.getDroppedFramesCount());
+
+        // Replay is only complete once the pipeline gave the leased frame back
+        assertFalse(source.awaitCompletion(50, TimeUnit.MILLISECONDS));
+        executor.releaseHeld();
+        assertTrue(source.awaitCompletion(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertFalse(source.isRunning());
+    }
+
+    @Test
+    public void maximumFrameRateWaitsForBuffers() throws Exception
+    {
+        final FrameReplaySource source = new FrameReplaySource(writeRecording(5), FrameReplaySource.MODE_MEMORY_MAPPED);
+        final RecordingExecutor executor = new RecordingExecutor();
+        source.setBuffersCount(1);
+
+        source.start(executor);
+
+        assertTrue(source.awaitCompletion(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(5, source.getDeliveredFramesCount());
+        assertEquals(0, source.getDroppedFramesCount());
+    }
+
+    @Test
+    public void restartRightAfterStopReplaysWholeRecording() throws Exception
+    {
+        final FrameReplaySource source = new FrameReplaySource(writeRecording(20), FrameReplaySource.MODE_MEMORY_MAPPED);
+
+        for (int i = 0; i < 20; i++)
+        {
+            source.setLoopsCount(0);
+            source.start(new RecordingExecutor());
+            source.stop();
+
+            final RecordingExecutor executor = new RecordingExecutor();
+            source.setLoopsCount(1);
+            source.start(executor);
+
+            assertTrue(source.awaitCompletion(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertNull(source.getError());
+            assertEquals(20, source.getDeliveredFramesCount());
+            assertEquals(20, executor.firstBytes.size());
+        }
+    }
+
+    private void assertDeliversEveryFrame(int mode) throws Exception
+    {
+        final FrameReplaySource source = new FrameReplaySource(writeRecording(4), mode);
+        final RecordingExecutor executor = new RecordingExecutor();
+        source.setLoopsCount(2);
+
+        source.start(executor);
+
+        assertTrue(source.awaitCompletion(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertFalse(source.isRunning());
+        assertNull(source.getError());
+        assertEquals(8, source.getDeliveredFramesCount());
+
+        for (int i = 0; i < 8; i++)
+        {
+            assertEquals(i % 4, executor.firstBytes.get(i).intValue());
+            assertEquals(timestamp(i % 4), executor.timestamps.get(i).longValue());
+        }
+    }
+
+    /**
+     * Writes a recording of frames filled with their index
+     */
+    private File writeRecording(int framesCount) throws IOException
+    {
+        final File file = folder.newFile();
+        final RandomAccessFile output = new RandomAccessFile(file, "rw");
+
+        try
+        {
+            final ByteBuffer buffer = ByteBuffer.allocate(FrameRecording.FILE_HEADER_SIZE + framesCount * (FrameRecording.FRAME_HEADER_SIZE + FRAME_LENGTH));
+            FrameRecording.writeFileHeader(buffer);
+            buffer.position(FrameRecording.FILE_HEADER_SIZE);
+
+            for (int i = 0; i < framesCount; i++)
+            {
+                FrameRecording.writeFrameHeader(buffer, FrameDescriptor.FORMAT_NV21, WIDTH, HEIGHT, timestamp(i), FRAME_LENGTH);
+
+                for (int j = 0; j < FRAME_LENGTH; j++)
+                {
+                    buffer.put((byte) i);
+                }
+            }
+
+            output.write(buffer.array());
+        }
+        finally
+        {
+            output.close();
+        }
+
+        return file;
+    }
+
+    private static long timestamp(int frame)
+    {
+        return 1000000000L + frame * 33000000L;
+    }
+
+    private static void truncate(File file, long length) throws IOException
+    {
+        final RandomAccessFile output = new RandomAccessFile(file, "rw");
+
+        try
+        {
+            output.setLength(length);
+        }
+        finally
+        {
+            output.close();
+        }
+    }
+
+    private static FrameRecording index(File file) throws IOException
+    {
+        final RandomAccessFile input = new RandomAccessFile(file, "r");
+
+        try
+        {
+            final FileChannel channel = input.getChannel();
+            return FrameRecording.index(channel);
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+
+    private static void waitFor(FrameReplaySource source, int framesCount) throws InterruptedException
+    {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+
+        while (source.getDeliveredFramesCount() + source.getDroppedFramesCount() < framesCount && System.nanoTime() < deadline)
+        {
+            Thread.sleep(5);
+        }
+    }
+}
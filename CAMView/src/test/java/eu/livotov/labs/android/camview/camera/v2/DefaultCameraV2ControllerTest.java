@@ -0,0 +1,278 @@
+package eu.livotov.labs.android.camview.camera.v2;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import eu.livotov.labs.android.camview.camera.CameraController;
+import eu.livotov.labs.android.camview.camera.CameraDelayedOperationResult;
+import eu.livotov.labs.android.camview.camera.CameraInfo;
+import eu.livotov.labs.android.camview.camera.FrameDescriptor;
+import eu.livotov.labs.android.camview.camera.FrameDescriptorProcessingCallback;
+import eu.livotov.labs.android.camview.camera.LiveDataProcessingCallback;
+import eu.livotov.labs.android.camview.camera.LiveFrame;
+import eu.livotov.labs.android.camview.camera.LiveFrameExecutor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DefaultCameraV2ControllerTest
+{
+    private FakeCamera2Device device;
+    private RecordingCallback openCallback;
+    private RecordingProcessor processor;
+
+    /**
+     * Controller processing frames synchronously on the delivering thread instead of on processing threads reporting
+     * to the main looper
+     */
+    private static class SynchronousController extends DefaultCameraV2Controller
+    {
+        SynchronousController(Camera2Device device, CameraDelayedOperationResult callback)
+        {
+            super(new CameraInfo("0", false), device, callback);
+        }
+
+        @Override
+        protected LiveFrameExecutor createLiveFrameExecutor(final LiveDataProcessingCallback processor)
+        {
+            return new LiveFrameExecutor()
+            {
+                @Override
+                public void start()
+                {
+                }
+
+                @Override
+                public void submitLiveFrame(LiveFrame frame)
+                {
+                    try
+                    {
+                        processor.onReceiveProcessedCameraFrame(((FrameDescriptorProcessingCallback) processor).onProcessCameraFrame(frame.getDescriptor()));
+                    }
+                    finally
+                    {
+                        frame.release();
+                    }
+                }
+
+                @Override
+                public void shutdown()
+                {
+                }
+            };
+        }
+    }
+
+    private static class RecordingCallback implements CameraDelayedOperationResult
+    {
+        CameraController completed;
+        Throwable failure;
+        int errorCode;
+
+        @Override
+        public void onOperationCompleted(CameraController controller)
+        {
+            completed = controller;
+        }
+
+        @Override
+        public void onOperationFailed(Throwable exception, int cameraErrorCode)
+        {
+            failure = exception;
+            errorCode = cameraErrorCode;
+        }
+    }
+
+    private static class RecordingProcessor implements FrameDescriptorProcessingCallback
+    {
+        final List<Object> received = new ArrayList<Object>();
+        int processedFramesCount;
+
+        @Override
+        public Object onProcessCameraFrame(FrameDescriptor frame)
+        {
+            processedFramesCount++;
+            return frame.getWidth() + "x" + frame.getHeight();
+        }
+
+        @Override
+        public Object onProcessCameraFrame(byte[] data, int width, int height)
+        {
+            throw new AssertionError("Frames must be processed through their descriptor");
+        }
+
+        @Override
+        public void onReceiveProcessedCameraFrame(Object data)
+        {
+            received.add(data);
+        }
+    }
+
+    @Before
+    public void setUp()
+    {
+        device = new FakeCamera2Device();
+        openCallback = new RecordingCallback();
+        processor = new RecordingProcessor();
+    }
+
+    @Test
+    public void openStartFrameStop() throws IOException
+    {
+        final SynchronousController controller = new SynchronousController(device, openCallback);
+        assertSame(controller, openCallback.completed);
+        assertTrue(controller.isReady());
+
+        controller.startPreview(null);
+        assertTrue(device.streaming);
+        assertEquals(controller.getLiveDataBuffersCount() + 1, device.maxImages);
+
+        controller.requestLiveData(processor);
+        assertTrue(device.deliverFrame());
+        assertEquals(1, processor.processedFramesCount);
+        assertEquals(FakeCamera2Device.FRAME_WIDTH + "x" + FakeCamera2Device.FRAME_HEIGHT, processor.received.get(0));
+        assertEquals(1, device.releasedFramesCount);
+
+        controller.stopPreview();
+        assertFalse(device.streaming);
+        assertFalse(device.deliverFrame());
+
+        final RecordingCallback closeCallback = new RecordingCallback();
+        controller.close(closeCallback);
+        assertSame(controller, closeCallback.completed);
+        assertFalse(controller.isReady());
+    }
+
+    @Test
+    public void framesAreReleasedUntilLiveDataIsRequested() throws IOException
+    {
+        final SynchronousController controller = new SynchronousController(device, openCallback);
+        controller.startPreview(null);
+
+        assertTrue(device.deliverFrame());
+        assertEquals(0, processor.processedFramesCount);
+        assertEquals(1, device.releasedFramesCount);
+    }
+
+    @Test
+    public void liveDataResumesWhenPreviewStartsAgain() throws IOException
+    {
+        final SynchronousController controller = new SynchronousController(device, openCallback);
+        controller.startPreview(null);
+        controller.requestLiveData(processor);
+        controller.stopPreview();
+
+        controller.startPreview(null);
+        assertTrue(device.deliverFrame());
+        assertEquals(1, processor.processedFramesCount);
+    }
+
+    @Test
+    public void openFailureIsReported() throws IOException
+    {
+        final IOException error = new IOException("Camera in use");
+        device.openError = error;
+
+        final SynchronousController controller = new SynchronousController(device, openCallback);
+        assertNull(openCallback.completed);
+        assertSame(error, openCallback.failure);
+        assertEquals(1, openCallback.errorCode);
+        assertFalse(controller.isReady());
+
+        // Operations on a camera that failed to open are ignored
+        controller.startPreview(null);
+        assertFalse(device.streaming);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void liveDataBeforePreviewIsRejected()
+    {
+        new SynchronousController(device, openCallback).requestLiveData(processor);
+    }
+
+    @Test
+    public void streamingFailureIsThrown()
+    {
+        device.streamingError = new IOException("Surface gone");
+        final SynchronousController controller = new SynchronousController(device, openCallback);
+
+        try
+        {
+            controller.startPreview(null);
+            fail("Streaming failure must be thrown");
+        }
+        catch (IOException expected)
+        {
+            assertSame(device.streamingError, expected);
+        }
+
+        try
+        {
+            controller.requestLiveData(processor);
+            fail("Live data must be rejected while the preview is not running");
+        }
+        catch (IllegalStateException expected)
+        {
+        }
+    }
+
+    @Test
+    public void closeFailureIsReported()
+    {
+        final IOException error = new IOException("Camera service died");
+        device.closeError = error;
+        final SynchronousController controller = new SynchronousController(device, openCallback);
+
+        final RecordingCallback closeCallback = new RecordingCallback();
+        controller.close(closeCallback);
+        assertNull(closeCallback.completed);
+        assertSame(error, closeCallback.failure);
+        assertEquals(2, closeCallback.errorCode);
+    }
+
+    @Test(expected = IllegalAccessError.class)
+    public void flashlightOfClosedCameraIsRejected()
+    {
+        device.openError = new IOException("Camera in use");
+        new SynchronousController(device, openCallback).switchFlashlight(true);
+    }
+
+    @Test
+    public void focusCycleCompletesOnDeviceCallback() throws IOException
+    {
+        final SynchronousController controller = new SynchronousController(device, openCallback);
+        controller.startPreview(null);
+        assertTrue(controller.getFocusScheduler().isFocusing());
+
+        device.runPosted();
+        assertEquals(1, device.autofocusTriggersCount);
+        assertTrue(controller.getFocusScheduler().isFocusing());
+
+        device.runPosted();
+        assertFalse(controller.getFocusScheduler().isFocusing());
+    }
+
+    @Test
+    public void failedFocusCycleCompletesToo() throws IOException
+    {
+        device.autofocusFails = true;
+        final SynchronousController controller = new SynchronousController(device, openCallback);
+        controller.startPreview(null);
+
+        device.runPosted();
+        device.runPosted();
+        assertFalse(controller.getFocusScheduler().isFocusing());
+
+        controller.requestFocus();
+        device.runPosted();
+        assertEquals(2, device.autofocusTriggersCount);
+    }
+}
@@ -0,0 +1,170 @@
+package eu.livotov.labs.android.camview.camera.v2;
+
+import android.view.SurfaceView;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import eu.livotov.labs.android.camview.camera.FrameDescriptor;
+import eu.livotov.labs.android.camview.camera.LiveFrame;
+import eu.livotov.labs.android.camview.camera.PictureProcessingCallback;
+import eu.livotov.labs.android.camview.camera.PreviewSizePolicy;
+
+/**
+ * {@link Camera2Device} standing in for the camera on the JVM. Operations complete synchronously, posted tasks wait
+ * for {@link #runPosted()} and frames are only produced on {@link #deliverFrame()}.
+ */
+class FakeCamera2Device implements Camera2Device
+{
+    static final int FRAME_WIDTH = 320;
+    static final int FRAME_HEIGHT = 240;
+
+    Throwable openError;
+    Throwable closeError;
+    IOException streamingError;
+    boolean autofocusFails;
+
+    boolean open;
+    boolean streaming;
+    int maxImages;
+    int autofocusTriggersCount;
+    int releasedFramesCount;
+    private FrameListener listener;
+    private final List<Runnable> posted = new ArrayList<Runnable>();
+
+    private final LiveFrame.Recycler recycler = new LiveFrame.Recycler()
+    {
+        @Override
+        public void recycle(LiveFrame frame)
+        {
+            releasedFramesCount++;
+        }
+    };
+
+    @Override
+    public void open(String cameraId, OperationCallback callback)
+    {
+        if (openError != null)
+        {
+            callback.onFailed(openError, 1);
+            return;
+        }
+
+        open = true;
+        callback.onCompleted();
+    }
+
+    @Override
+    public void close(OperationCallback callback)
+    {
+        if (closeError != null)
+        {
+            callback.onFailed(closeError, 2);
+            return;
+        }
+
+        open = false;
+        streaming = false;
+        posted.clear();
+        callback.onCompleted();
+    }
+
+    @Override
+    public void startStreaming(SurfaceView surfaceView, int maxImages, PreviewSizePolicy sizePolicy, FrameListener listener) throws IOException
+    {
+        if (streamingError != null)
+        {
+            throw streamingError;
+        }
+
+        this.maxImages = maxImages;
+        this.listener = listener;
+        streaming = true;
+    }
+
+    @Override
+    public void stopStreaming()
+    {
+        streaming = false;
+    }
+
+    @Override
+    public void setTorch(boolean turnOn)
+    {
+    }
+
+    @Override
+    public void setContinuousAutofocus(boolean enabled)
+    {
+    }
+
+    @Override
+    public void triggerAutofocus(final OperationCallback callback)
+    {
+        autofocusTriggersCount++;
+
+        post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (autofocusFails)
+                {
+                    callback.onFailed(new IOException("Autofocus failed"), 3);
+                }
+                else
+                {
+                    callback.onCompleted();
+                }
+            }
+        }, 0);
+    }
+
+    @Override
+    public void takePicture(PictureProcessingCallback callback)
+    {
+    }
+
+    @Override
+    public void post(Runnable task, long delayMillis)
+    {
+        if (open)
+        {
+            posted.add(task);
+        }
+    }
+
+    /**
+     * Runs the tasks posted so far, tasks they post wait for the next call
+     */
+    void runPosted()
+    {
+        final List<Runnable> tasks = new ArrayList<Runnable>(posted);
+        posted.clear();
+
+        for (Runnable task : tasks)
+        {
+            task.run();
+        }
+    }
+
+    /**
+     * Hands a grey frame to the listener as the camera background thread would
+     *
+     * @return <code>false</code> if the device is not streaming
+     */
+    boolean deliverFrame()
+    {
+        if (!streaming)
+        {
+            return false;
+        }
+
+        final LiveFrame frame = new LiveFrame(FrameDescriptor.wrapNV21(ByteBuffer.allocateDirect(FRAME_WIDTH * FRAME_HEIGHT * 3 / 2), FRAME_WIDTH, FRAME_HEIGHT), recycler);
+        frame.acquire(FRAME_WIDTH, FRAME_HEIGHT);
+        listener.onFrameAvailable(frame);
+        return true;
+    }
+}
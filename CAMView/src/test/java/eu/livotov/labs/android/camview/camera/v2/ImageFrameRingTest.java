@@ -0,0 +1,164 @@
+package eu.livotov.labs.android.camview.camera.v2;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import eu.livotov.labs.android.camview.camera.FrameDescriptor;
+import eu.livotov.labs.android.camview.camera.LiveFrame;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ImageFrameRingTest
+{
+    private static final int WIDTH = 4;
+    private static final int HEIGHT = 2;
+
+    private RecordingAccess access;
+    private ImageFrameRing<TestImage> ring;
+
+    private static class TestImage
+    {
+        final ByteBuffer data = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 3 / 2);
+        boolean closed;
+    }
+
+    private static class RecordingAccess implements ImageFrameRing.ImageAccess<TestImage>
+    {
+        final List<TestImage> closed = new ArrayList<TestImage>();
+
+        @Override
+        public void describe(TestImage image, FrameDescriptor descriptor)
+        {
+            descriptor.setNV21(image.data, WIDTH, HEIGHT);
+        }
+
+        @Override
+        public void close(TestImage image)
+        {
+            image.closed = true;
+            closed.add(image);
+        }
+    }
+
+    private static class DrainedFlag implements Runnable
+    {
+        int runsCount;
+
+        @Override
+        public void run()
+        {
+            runsCount++;
+        }
+    }
+
+    @Before
+    public void setUp()
+    {
+        access = new RecordingAccess();
+        ring = new ImageFrameRing<TestImage>(2, access);
+    }
+
+    @Test
+    public void imageIsDescribedInPlaceAndClosedOnRelease()
+    {
+        final TestImage image = new TestImage();
+        final LiveFrame frame = ring.acquire(image, 42);
+
+        assertNotNull(frame);
+        assertTrue(frame.isLeased());
+        assertSame(image.data, frame.getDescriptor().getPlane(FrameDescriptor.PLANE_Y));
+        assertEquals(WIDTH, frame.getWidth());
+        assertEquals(HEIGHT, frame.getHeight());
+        assertEquals(42, frame.getCaptureTimestamp());
+        assertFalse(image.closed);
+
+        frame.release();
+
+        assertTrue(image.closed);
+        assertEquals(0, ring.getLeasedCount());
+    }
+
+    @Test
+    public void leasedFramesAreBoundedByCapacity()
+    {
+        final LiveFrame first = ring.acquire(new TestImage(), 1);
+        final LiveFrame second = ring.acquire(new TestImage(), 2);
+
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNotSame(first, second);
+        assertEquals(2, ring.getLeasedCount());
+
+        first.release();
+        final LiveFrame third = ring.acquire(new TestImage(), 3);
+
+        // A released frame is lent to the next image
+        assertSame(first, third);
+        assertEquals(2, ring.getLeasedCount());
+    }
+
+    @Test
+    public void imageIsDroppedWhileAllFramesAreLeased()
+    {
+        ring.acquire(new TestImage(), 1);
+        ring.acquire(new TestImage(), 2);
+        final TestImage dropped = new TestImage();
+
+        assertNull(ring.acquire(dropped, 3));
+        assertTrue(dropped.closed);
+        assertEquals(1, ring.getDroppedImagesCount());
+        assertEquals(2, ring.getLeasedCount());
+    }
+
+    @Test
+    public void drainedCallbackRunsOnlyOnceRingDrains()
+    {
+        final LiveFrame first = ring.acquire(new TestImage(), 1);
+        final LiveFrame second = ring.acquire(new TestImage(), 2);
+        final DrainedFlag drained = new DrainedFlag();
+
+        ring.dispose(drained);
+        assertEquals(0, drained.runsCount);
+
+        first.release();
+        assertEquals(0, drained.runsCount);
+
+        second.release();
+        assertEquals(1, drained.runsCount);
+        assertEquals(2, access.closed.size());
+
+        // Releasing again is ignored
+        second.release();
+        assertEquals(1, drained.runsCount);
+    }
+
+    @Test
+    public void drainedCallbackRunsRightAwayWhenNothingIsLeased()
+    {
+        final DrainedFlag drained = new DrainedFlag();
+
+        ring.dispose(drained);
+
+        assertEquals(1, drained.runsCount);
+    }
+
+    @Test
+    public void disposedRingClosesNewImages()
+    {
+        ring.dispose(null);
+        final TestImage image = new TestImage();
+
+        assertNull(ring.acquire(image, 1));
+        assertTrue(image.closed);
+    }
+}
@@ -0,0 +1,101 @@
+package eu.livotov.labs.android.camview.scanner;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import eu.livotov.labs.android.camview.camera.FrameDescriptor;
+import eu.livotov.labs.android.camview.scanner.decoder.BarcodeDecoder;
+import eu.livotov.labs.android.camview.scanner.decoder.DecodeResult;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ScannerFrameProcessorTest
+{
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+
+    /**
+     * Decoder implementing only the original two methods, as third party ones do
+     */
+    private static class PlainDecoder implements BarcodeDecoder
+    {
+        String text;
+        int width;
+        byte firstLuma;
+
+        public void setScanAreaPercent(double percent)
+        {
+        }
+
+        public String decode(byte[] image, int width, int height)
+        {
+            this.width = width;
+            this.firstLuma = image[0];
+            return text;
+        }
+    }
+
+    @Test
+    public void plainDecoderGetsDirectFramesAsNV21()
+    {
+        final PlainDecoder decoder = new PlainDecoder();
+        decoder.text = "plain";
+        final ScannerFrameProcessor processor = createProcessor(decoder);
+
+        final Object result = processor.process(createDirectFrame());
+
+        assertTrue(result instanceof DecodeResult);
+        assertEquals("plain", ((DecodeResult) result).getText());
+        assertEquals(WIDTH, decoder.width);
+        assertEquals(7, decoder.firstLuma);
+        ((DecodeResult) result).release();
+    }
+
+    @Test
+    public void plainDecoderFindsNothing()
+    {
+        final ScannerFrameProcessor processor = createProcessor(new PlainDecoder());
+
+        assertNull(processor.process(createDirectFrame()));
+    }
+
+    @Test
+    public void plainDecoderReadsOneCodeInMultipleCodesMode()
+    {
+        final PlainDecoder decoder = new PlainDecoder();
+        decoder.text = "plain";
+        final ScannerFrameProcessor processor = createProcessor(decoder);
+        processor.setMultipleCodesMode(true);
+
+        final Object result = processor.process(createDirectFrame());
+
+        assertTrue(result instanceof List);
+        final List<?> results = (List<?>) result;
+        assertEquals(1, results.size());
+        assertEquals("plain", ((DecodeResult) results.get(0)).getText());
+    }
+
+    private static ScannerFrameProcessor createProcessor(BarcodeDecoder decoder)
+    {
+        final ScannerFrameProcessor processor = new ScannerFrameProcessor(decoder);
+        // The synthetic frame is no camera picture, the gate must not judge it
+        processor.getFrameChangeGate().setEnabled(false);
+        return processor;
+    }
+
+    private static FrameDescriptor createDirectFrame()
+    {
+        final ByteBuffer data = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 3 / 2);
+
+        for (int i = 0; i < WIDTH * HEIGHT; i++)
+        {
+            data.put(i, (byte) (7 + (i % WIDTH) * 200 / WIDTH));
+        }
+
+        return FrameDescriptor.wrapNV21(data, WIDTH, HEIGHT);
+    }
+}
@@ -0,0 +1,208 @@
+package eu.livotov.labs.android.camview.scanner.decoder.zxing;
+
+import com.google.zxing.LuminanceSource;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import eu.livotov.labs.android.camview.camera.FrameDescriptor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Every view of a frame held in a padded direct buffer reads the same pixels as the array based source of that view
+ */
+public class ByteBufferYUVLuminanceSourceTest
+{
+    private static final int WIDTH = 38;
+    private static final int HEIGHT = 24;
+    private static final int BUFFER_START = 5;
+    private static final int ROW_PADDING = 7;
+    private static final int[] PIXEL_STRIDES = {1, 2};
+
+    // Left, top, width and height of the views, in frame coordinates
+    private static final int[][] CROPS = {{0, 0, WIDTH, HEIGHT}, {3, 5, 17, 11}, {7, 1, 30, 21}, {1, 2, 5, 19}};
+
+    private final byte[] nv21 = LuminanceAssert.randomFrame(WIDTH, HEIGHT, 7);
+
+    @Test
+    public void uprightAndMirroredViewsMatchArraySources()
+    {
+        for (int pixelStride : PIXEL_STRIDES)
+        {
+            for (boolean mirrored : new boolean[]{false, true})
+            {
+                for (int[] crop : CROPS)
+                {
+                    LuminanceAssert.assertSameLuminance(describe(pixelStride, mirrored, crop), arraySource(crop, mirrored), bufferSource(pixelStride, crop, mirrored));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rotatedViewsMatchArraySources()
+    {
+        for (int pixelStride : PIXEL_STRIDES)
+        {
+            for (boolean mirrored : new boolean[]{false, true})
+            {
+                for (int[] crop : CROPS)
+                {
+                    final LuminanceSource expected = new RotatedPlanarYUVLuminanceSource(nv21, WIDTH, HEIGHT, crop[0], crop[1], crop[2], crop[3], mirrored);
+                    final String message = describe(pixelStride, mirrored, crop) + " rotated";
+
+                    LuminanceAssert.assertSameLuminance(message, expected, bufferSource(pixelStride, crop, mirrored).rotateCounterClockwise());
+                    LuminanceAssert.assertSameLuminance(message, arraySource(crop, mirrored).rotateCounterClockwise(), bufferSource(pixelStride, crop, mirrored).rotateCounterClockwise());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void cropsMatchArraySources()
+    {
+        for (int pixelStride : PIXEL_STRIDES)
+        {
+            for (boolean mirrored : new boolean[]{false, true})
+            {
+                for (int[] crop : CROPS)
+                {
+                    final String message = describe(pixelStride, mirrored, crop);
+                    final LuminanceSource upright = bufferSource(pixelStride, crop, mirrored);
+                    final LuminanceSource arrayUpright = arraySource(crop, mirrored);
+                    final LuminanceSource rotated = upright.rotateCounterClockwise();
+                    final LuminanceSource arrayRotated = new RotatedPlanarYUVLuminanceSource(nv21, WIDTH, HEIGHT, crop[0], crop[1], crop[2], crop[3], mirrored);
+
+                    // Odd offsets, in the coordinates of the view being cropped
+                    final int[] uprightCrop = subCrop(upright);
+                    final int[] rotatedCrop = subCrop(rotated);
+
+                    LuminanceAssert.assertSameLuminance(message + " cropped", crop(arrayUpright, uprightCrop), crop(upright, uprightCrop));
+                    LuminanceAssert.assertSameLuminance(message + " rotated cropped", crop(arrayRotated, rotatedCrop), crop(rotated, rotatedCrop));
+
+                    // Crops of crops keep mapping back onto the frame
+                    final LuminanceSource croppedRotated = crop(rotated, rotatedCrop);
+                    final int[] nestedCrop = subCrop(croppedRotated);
+                    LuminanceAssert.assertSameLuminance(message + " rotated cropped twice", crop(crop(arrayRotated, rotatedCrop), nestedCrop), crop(croppedRotated, nestedCrop));
+
+                    // Rotating a crop is the same as cropping the frame there first
+                    final LuminanceSource croppedUpright = crop(upright, uprightCrop);
+                    LuminanceAssert.assertSameLuminance(message + " cropped rotated", LuminanceAssert.rotateCounterClockwise(crop(arrayUpright, uprightCrop)), croppedUpright.rotateCounterClockwise());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void bufferIsNeverMoved()
+    {
+        final ByteBuffer plane = paddedPlane(nv21, 0, WIDTH, HEIGHT, WIDTH, 1, 1);
+        final LuminanceSource source = new ByteBufferYUVLuminanceSource(plane, WIDTH + ROW_PADDING, 1, WIDTH, HEIGHT, 3, 5, 17, 11, true);
+
+        source.getMatrix();
+        source.getRow(3, null);
+        source.rotateCounterClockwise().getMatrix();
+        source.crop(1, 1, 5, 5).getMatrix();
+
+        assertEquals(BUFFER_START, plane.position());
+        assertEquals(plane.capacity(), plane.limit());
+    }
+
+    @Test
+    public void copyToNV21RestoresPaddedPlanes()
+    {
+        for (int pixelStride : PIXEL_STRIDES)
+        {
+            final FrameDescriptor descriptor = new FrameDescriptor();
+            final int lumaRowStride = WIDTH * pixelStride + ROW_PADDING;
+            final int chromaRowStride = WIDTH / 2 * 2 + ROW_PADDING;
+
+            descriptor.setFormat(FrameDescriptor.FORMAT_YUV_420_888, WIDTH, HEIGHT);
+            descriptor.setPlane(FrameDescriptor.PLANE_Y, paddedPlane(nv21, 0, WIDTH, HEIGHT, WIDTH, pixelStride, 1), lumaRowStride, pixelStride);
+            // NV21 interleaves V then U, 2 bytes per chroma pixel
+            descriptor.setPlane(FrameDescriptor.PLANE_V, paddedPlane(nv21, WIDTH * HEIGHT, WIDTH / 2, HEIGHT / 2, WIDTH, 2, 2), chromaRowStride, 2);
+            descriptor.setPlane(FrameDescriptor.PLANE_U, paddedPlane(nv21, WIDTH * HEIGHT + 1, WIDTH / 2, HEIGHT / 2, WIDTH, 2, 2), chromaRowStride, 2);
+
+            final byte[] copy = new byte[nv21.length];
+            descriptor.copyToNV21(copy);
+
+            assertArrayEquals("pixel stride " + pixelStride, nv21, copy);
+        }
+    }
+
+    @Test
+    public void copyToNV21ReadsWrappedBufferFromItsPosition()
+    {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_START + nv21.length);
+        buffer.position(BUFFER_START);
+        buffer.put(nv21);
+        buffer.position(BUFFER_START);
+
+        final byte[] copy = new byte[nv21.length];
+        FrameDescriptor.wrapNV21(buffer, WIDTH, HEIGHT).copyToNV21(copy);
+
+        assertArrayEquals(nv21, copy);
+        assertEquals(BUFFER_START, buffer.position());
+    }
+
+    private LuminanceSource arraySource(int[] crop, boolean mirrored)
+    {
+        return new PlanarRotatedYUVLuminanceSource(nv21, WIDTH, HEIGHT, crop[0], crop[1], crop[2], crop[3], mirrored);
+    }
+
+    private LuminanceSource bufferSource(int pixelStride, int[] crop, boolean mirrored)
+    {
+        final ByteBuffer plane = paddedPlane(nv21, 0, WIDTH, HEIGHT, WIDTH, pixelStride, 1);
+        return new ByteBufferYUVLuminanceSource(plane, WIDTH * pixelStride + ROW_PADDING, pixelStride, WIDTH, HEIGHT, crop[0], crop[1], crop[2], crop[3], mirrored);
+    }
+
+    /**
+     * Lays a plane of an NV21 frame out in a direct buffer starting at {@link #BUFFER_START}, with padded rows and
+     * filler bytes between pixels
+     *
+     * @param offset        index of the first pixel of the plane in the frame
+     * @param frameRowBytes distance between two rows of the plane in the frame
+     * @param framePixelStride distance between two pixels of the plane in the frame
+     */
+    private static ByteBuffer paddedPlane(byte[] frame, int offset, int width, int height, int frameRowBytes, int pixelStride, int framePixelStride)
+    {
+        final int rowStride = width * pixelStride + ROW_PADDING;
+        final ByteBuffer plane = ByteBuffer.allocateDirect(BUFFER_START + height * rowStride);
+
+        for (int i = 0; i < plane.capacity(); i++)
+        {
+            plane.put(i, (byte) 0xA5);
+        }
+
+        for (int y = 0; y < height; y++)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                plane.put(BUFFER_START + y * rowStride + x * pixelStride, frame[offset + y * frameRowBytes + x * framePixelStride]);
+            }
+        }
+
+        plane.position(BUFFER_START);
+        return plane;
+    }
+
+    private static int[] subCrop(LuminanceSource source)
+    {
+        final int left = source.getWidth() > 2 ? 1 : 0;
+        final int top = source.getHeight() > 4 ? 3 : 0;
+        return new int[]{left, top, Math.max(1, source.getWidth() - left - 2), Math.max(1, source.getHeight() - top - 1)};
+    }
+
+    private static LuminanceSource crop(LuminanceSource source, int[] crop)
+    {
+        return source.crop(crop[0], crop[1], crop[2], crop[3]);
+    }
+
+    private static String describe(int pixelStride, boolean mirrored, int[] crop)
+    {
+        return String.format("pixel stride %s%s, %s,%s %sx%s", pixelStride, mirrored ? " mirrored" : "", crop[0], crop[1], crop[2], crop[3]);
+    }
+}
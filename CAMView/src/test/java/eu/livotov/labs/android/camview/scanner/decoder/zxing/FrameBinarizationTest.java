@@ -0,0 +1,191 @@
+package eu.livotov.labs.android.camview.scanner.decoder.zxing;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Flipped, transposed and region copies of the shared black matrix hold exactly the bits of the upright matrix
+ * mirrored, rotated or cropped the straightforward way, on widths that do not fill whole 32 bit words
+ */
+public class FrameBinarizationTest
+{
+    private static final int[] WIDTHS = {33, 63, 100};
+    private static final int HEIGHT = 45;
+
+    // Region offsets tried within each matrix, around the word boundaries
+    private static final int[] REGION_LEFTS = {0, 1, 5, 31, 32};
+    private static final int[] REGION_TOPS = {0, 3};
+
+    private static final int[] ORIENTATIONS = {FrameBinarization.UPRIGHT, FrameBinarization.MIRRORED, FrameBinarization.ROTATED};
+
+    @Test
+    public void derivedMatricesMatchNaiveTransforms() throws NotFoundException
+    {
+        for (int width : WIDTHS)
+        {
+            final byte[] frame = bimodalFrame(width, HEIGHT, width);
+            final FrameBinarization binarization = new FrameBinarization(new PlanarYUVLuminanceSource(frame, width, HEIGHT, 0, 0, width, HEIGHT, false), null);
+            final BitMatrix upright = binarization.getMatrix(FrameBinarization.UPRIGHT);
+
+            assertEquals("width " + width, new HybridBinarizer(new PlanarYUVLuminanceSource(frame, width, HEIGHT, 0, 0, width, HEIGHT, false)).getBlackMatrix(), upright);
+            assertEquals("width " + width + " mirrored", mirror(upright), binarization.getMatrix(FrameBinarization.MIRRORED));
+            assertEquals("width " + width + " rotated", rotateCounterClockwise(upright), binarization.getMatrix(FrameBinarization.ROTATED));
+        }
+    }
+
+    @Test
+    public void regionsMatchNaiveCopies() throws NotFoundException
+    {
+        for (int width : WIDTHS)
+        {
+            checkRegions(bimodalFrame(width, HEIGHT, width), width, null);
+        }
+    }
+
+    @Test
+    public void pooledMatricesMatchNaiveCopies() throws NotFoundException
+    {
+        final BitMatrixPool pool = new BitMatrixPool();
+
+        // Second frame of each size gets the matrices of the first one back, with its bits still set
+        for (int width : WIDTHS)
+        {
+            for (int seed = 0; seed < 2; seed++)
+            {
+                checkRegions(bimodalFrame(width, HEIGHT, width * 2 + seed), width, pool);
+                pool.releaseAll();
+            }
+        }
+    }
+
+    private static void checkRegions(byte[] frame, int width, BitMatrixPool pool) throws NotFoundException
+    {
+        final FrameBinarization binarization = new FrameBinarization(new PlanarYUVLuminanceSource(frame, width, HEIGHT, 0, 0, width, HEIGHT, false), pool);
+        final BitMatrix upright = new HybridBinarizer(new PlanarYUVLuminanceSource(frame, width, HEIGHT, 0, 0, width, HEIGHT, false)).getBlackMatrix();
+
+        for (int orientation : ORIENTATIONS)
+        {
+            final LuminanceSource source = createSource(frame, width, orientation);
+            final BitMatrix expected = orientation == FrameBinarization.MIRRORED ? mirror(upright) : orientation == FrameBinarization.ROTATED ? rotateCounterClockwise(upright) : upright;
+            final int matrixWidth = expected.getWidth();
+            final int matrixHeight = expected.getHeight();
+
+            assertSame(binarization.getMatrix(orientation), new SharedMatrixBinarizer(source, binarization, orientation, 0, 0).getBlackMatrix());
+
+            for (int left : REGION_LEFTS)
+            {
+                for (int top : REGION_TOPS)
+                {
+                    // To the right edge, one bit short of it and a narrow strip
+                    for (int regionWidth : new int[]{matrixWidth - left, matrixWidth - left - 1, Math.min(7, matrixWidth - left)})
+                    {
+                        if (regionWidth < 1)
+                        {
+                            continue;
+                        }
+
+                        final int regionHeight = matrixHeight - top;
+                        final String message = String.format("width %s orientation %s region %s,%s %sx%s", width, orientation, left, top, regionWidth, regionHeight);
+                        final SharedMatrixBinarizer binarizer = new SharedMatrixBinarizer(source.crop(left, top, regionWidth, regionHeight), binarization, orientation, left, top);
+
+                        assertEquals(message, crop(expected, left, top, regionWidth, regionHeight), binarizer.getBlackMatrix());
+                    }
+                }
+            }
+        }
+    }
+
+    private static LuminanceSource createSource(byte[] frame, int width, int orientation)
+    {
+        switch (orientation)
+        {
+            case FrameBinarization.MIRRORED:
+                return new MirroredPlanarYUVLuminanceSource(frame, width, HEIGHT, 0, 0, width, HEIGHT);
+            case FrameBinarization.ROTATED:
+                return new RotatedPlanarYUVLuminanceSource(frame, width, HEIGHT, 0, 0, width, HEIGHT);
+            default:
+                return new PlanarYUVLuminanceSource(frame, width, HEIGHT, 0, 0, width, HEIGHT, false);
+        }
+    }
+
+    /**
+     * @return frame of dark and light pixels in random order, which both the local and the global thresholding split
+     * into plenty of black and white bits
+     */
+    private static byte[] bimodalFrame(int width, int height, long seed)
+    {
+        final Random random = new Random(seed);
+        final byte[] frame = new byte[width * height * 3 / 2];
+
+        for (int i = 0; i < frame.length; i++)
+        {
+            frame[i] = (byte) (random.nextBoolean() ? 20 + random.nextInt(40) : 190 + random.nextInt(40));
+        }
+
+        return frame;
+    }
+
+    private static BitMatrix mirror(BitMatrix matrix)
+    {
+        final BitMatrix mirrored = new BitMatrix(matrix.getWidth(), matrix.getHeight());
+
+        for (int y = 0; y < matrix.getHeight(); y++)
+        {
+            for (int x = 0; x < matrix.getWidth(); x++)
+            {
+                if (matrix.get(matrix.getWidth() - 1 - x, y))
+                {
+                    mirrored.set(x, y);
+                }
+            }
+        }
+
+        return mirrored;
+    }
+
+    private static BitMatrix rotateCounterClockwise(BitMatrix matrix)
+    {
+        final BitMatrix rotated = new BitMatrix(matrix.getHeight(), matrix.getWidth());
+
+        for (int y = 0; y < rotated.getHeight(); y++)
+        {
+            for (int x = 0; x < rotated.getWidth(); x++)
+            {
+                if (matrix.get(matrix.getWidth() - 1 - y, x))
+                {
+                    rotated.set(x, y);
+                }
+            }
+        }
+
+        return rotated;
+    }
+
+    private static BitMatrix crop(BitMatrix matrix, int left, int top, int width, int height)
+    {
+        final BitMatrix region = new BitMatrix(width, height);
+
+        for (int y = 0; y < height; y++)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                if (matrix.get(left + x, top + y))
+                {
+                    region.set(x, y);
+                }
+            }
+        }
+
+        return region;
+    }
+}
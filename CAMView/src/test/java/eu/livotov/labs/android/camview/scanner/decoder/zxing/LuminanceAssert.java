@@ -0,0 +1,74 @@
+package eu.livotov.labs.android.camview.scanner.decoder.zxing;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Pixel by pixel comparison of luminance sources
+ */
+final class LuminanceAssert
+{
+    private LuminanceAssert()
+    {
+    }
+
+    /**
+     * @return NV21 frame of random pixels, so a pixel read from the wrong place shows
+     */
+    static byte[] randomFrame(int width, int height, long seed)
+    {
+        final byte[] frame = new byte[width * height * 3 / 2];
+        new Random(seed).nextBytes(frame);
+        return frame;
+    }
+
+    /**
+     * Rotates a source 90 degrees counter clockwise the straightforward way, with the transform of ZXing's
+     * <code>BufferedImageLuminanceSource</code>: row y of the result is column <code>width - 1 - y</code> of the source,
+     * read top to bottom
+     */
+    static LuminanceSource rotateCounterClockwise(LuminanceSource source)
+    {
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+        final byte[] matrix = source.getMatrix();
+        final byte[] rotated = new byte[width * height];
+
+        for (int y = 0; y < width; y++)
+        {
+            for (int x = 0; x < height; x++)
+            {
+                rotated[y * height + x] = matrix[x * width + width - 1 - y];
+            }
+        }
+
+        return new PlanarYUVLuminanceSource(rotated, height, width, 0, 0, height, width, false);
+    }
+
+    /**
+     * Compares sizes, every row, read into a new array and into a larger reused one, and the matrix
+     */
+    static void assertSameLuminance(String message, LuminanceSource expected, LuminanceSource actual)
+    {
+        assertEquals(message + ": width", expected.getWidth(), actual.getWidth());
+        assertEquals(message + ": height", expected.getHeight(), actual.getHeight());
+
+        final int width = expected.getWidth();
+        final byte[] reused = new byte[width + 3];
+
+        for (int y = 0; y < expected.getHeight(); y++)
+        {
+            final byte[] expectedRow = expected.getRow(y, null);
+            assertArrayEquals(message + ": row " + y, Arrays.copyOf(expectedRow, width), Arrays.copyOf(actual.getRow(y, null), width));
+            assertArrayEquals(message + ": reused row " + y, Arrays.copyOf(expectedRow, width), Arrays.copyOf(actual.getRow(y, reused), width));
+        }
+
+        assertArrayEquals(message + ": matrix", Arrays.copyOf(expected.getMatrix(), width * expected.getHeight()), Arrays.copyOf(actual.getMatrix(), width * expected.getHeight()));
+    }
+}
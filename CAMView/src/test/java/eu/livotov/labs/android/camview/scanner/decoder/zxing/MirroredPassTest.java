@@ -0,0 +1,106 @@
+package eu.livotov.labs.android.camview.scanner.decoder.zxing;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.HybridBinarizer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import eu.livotov.labs.android.camview.scanner.decoder.DecodeResult;
+import eu.livotov.labs.android.camview.scanner.decoder.DecodeResultPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The mirrored and upright decoding passes read the same codes, and decoding never writes to the camera frame
+ */
+public class MirroredPassTest
+{
+    private final static int SCAN_LEFT = Nv21TestFrames.WIDTH * 15 / 100;
+    private final static int SCAN_TOP = Nv21TestFrames.HEIGHT * 15 / 100;
+    private final static int SCAN_WIDTH = Nv21TestFrames.WIDTH * 70 / 100;
+    private final static int SCAN_HEIGHT = Nv21TestFrames.HEIGHT * 70 / 100;
+
+    @Test
+    public void mirroredAndUprightPassesDecodeSameText() throws Exception
+    {
+        for (BarcodeFormat format : Nv21TestFrames.FORMATS)
+        {
+            for (boolean mirroredCode : new boolean[]{false, true})
+            {
+                final byte[] frame = Nv21TestFrames.frameWithCode(format, mirroredCode);
+                final String fixture = format + (mirroredCode ? " mirrored" : "");
+
+                final String upright = decode(new PlanarRotatedYUVLuminanceSource(frame, Nv21TestFrames.WIDTH, Nv21TestFrames.HEIGHT, SCAN_LEFT, SCAN_TOP, SCAN_WIDTH, SCAN_HEIGHT, false));
+                final String mirrored = decode(new MirroredPlanarYUVLuminanceSource(frame, Nv21TestFrames.WIDTH, Nv21TestFrames.HEIGHT, SCAN_LEFT, SCAN_TOP, SCAN_WIDTH, SCAN_HEIGHT));
+
+                assertEquals(fixture, Nv21TestFrames.textOf(format), upright);
+                assertEquals(fixture, upright, mirrored);
+            }
+        }
+    }
+
+    @Test
+    public void mirroredSourceReflectsUprightOne()
+    {
+        final byte[] frame = Nv21TestFrames.frameWithCode(BarcodeFormat.QR_CODE, false);
+        final LuminanceSource upright = new PlanarRotatedYUVLuminanceSource(frame, Nv21TestFrames.WIDTH, Nv21TestFrames.HEIGHT, SCAN_LEFT, SCAN_TOP, SCAN_WIDTH, SCAN_HEIGHT, false);
+        final LuminanceSource mirrored = new MirroredPlanarYUVLuminanceSource(frame, Nv21TestFrames.WIDTH, Nv21TestFrames.HEIGHT, SCAN_LEFT, SCAN_TOP, SCAN_WIDTH, SCAN_HEIGHT);
+
+        final byte[] uprightMatrix = upright.getMatrix();
+        final byte[] mirroredMatrix = mirrored.getMatrix();
+
+        for (int y = 0; y < SCAN_HEIGHT; y++)
+        {
+            final byte[] mirroredRow = mirrored.getRow(y, null);
+
+            for (int x = 0; x < SCAN_WIDTH; x++)
+            {
+                final byte expected = uprightMatrix[y * SCAN_WIDTH + SCAN_WIDTH - 1 - x];
+                assertEquals(expected, mirroredRow[x]);
+                assertEquals(expected, mirroredMatrix[y * SCAN_WIDTH + x]);
+            }
+        }
+    }
+
+    @Test
+    public void decodingLeavesFrameUnmodified()
+    {
+        final ZXDecoder decoder = new ZXDecoder();
+        final DecodeResultPool pool = new DecodeResultPool();
+
+        for (BarcodeFormat format : Nv21TestFrames.FORMATS)
+        {
+            for (boolean mirroredCode : new boolean[]{false, true})
+            {
+                final byte[] frame = Nv21TestFrames.frameWithCode(format, mirroredCode);
+                final byte[] original = frame.clone();
+                final String fixture = format + (mirroredCode ? " mirrored" : "");
+
+                final DecodeResult result = new DecodeResult();
+                assertTrue(fixture, decoder.decode(frame, Nv21TestFrames.WIDTH, Nv21TestFrames.HEIGHT, result));
+                assertEquals(fixture, Nv21TestFrames.textOf(format), result.getText());
+                assertArrayEquals(fixture, original, frame);
+
+                final List<DecodeResult> results = new ArrayList<DecodeResult>();
+                assertEquals(fixture, 1, decoder.decodeMultiple(frame, Nv21TestFrames.WIDTH, Nv21TestFrames.HEIGHT, pool, results));
+                assertEquals(fixture, Nv21TestFrames.textOf(format), results.get(0).getText());
+                results.get(0).release();
+                assertArrayEquals(fixture, original, frame);
+            }
+        }
+    }
+
+    private static String decode(LuminanceSource source) throws NotFoundException
+    {
+        return new MultiFormatReader().decode(new BinaryBitmap(new HybridBinarizer(source))).getText();
+    }
+}
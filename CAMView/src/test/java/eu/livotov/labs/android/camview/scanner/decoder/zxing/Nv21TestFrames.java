@@ -0,0 +1,89 @@
+package eu.livotov.labs.android.camview.scanner.decoder.zxing;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Synthetic NV21 camera frames with a code drawn in the middle of the scan area, as the benchmarks use
+ */
+final class Nv21TestFrames
+{
+    static final int WIDTH = 640;
+    static final int HEIGHT = 480;
+
+    static final BarcodeFormat[] FORMATS = {BarcodeFormat.QR_CODE, BarcodeFormat.CODE_128, BarcodeFormat.EAN_13, BarcodeFormat.CODE_39};
+
+    private Nv21TestFrames()
+    {
+    }
+
+    static String textOf(BarcodeFormat format)
+    {
+        switch (format)
+        {
+            case EAN_13:
+                return "5901234123457";
+
+            case CODE_39:
+                return "CAMVIEW-39";
+
+            case CODE_128:
+                return "CamView-128";
+
+            default:
+                return "https://github.com/LivotovLabs/CamView";
+        }
+    }
+
+    /**
+     * @param mirrored <code>true</code> to draw the code as a front camera sees it, horizontally flipped
+     */
+    static byte[] frameWithCode(BarcodeFormat format, boolean mirrored)
+    {
+        final byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+        final Random random = new Random(42);
+
+        for (int y = 0; y < HEIGHT; y++)
+        {
+            for (int x = 0; x < WIDTH; x++)
+            {
+                frame[y * WIDTH + x] = (byte) (96 + (x + y) * 64 / (WIDTH + HEIGHT) + random.nextInt(16));
+            }
+        }
+
+        Arrays.fill(frame, WIDTH * HEIGHT, frame.length, (byte) 128);
+
+        final boolean twoDimensional = format == BarcodeFormat.QR_CODE;
+        final int codeHeight = HEIGHT / 3;
+        final int codeWidth = twoDimensional ? codeHeight : Math.min(WIDTH / 2, codeHeight * 3);
+
+        final BitMatrix code;
+        try
+        {
+            code = new MultiFormatWriter().encode(textOf(format), format, codeWidth, codeHeight);
+        }
+        catch (WriterException e)
+        {
+            throw new IllegalArgumentException(e);
+        }
+
+        final int left = (WIDTH - code.getWidth()) / 2;
+        final int top = (HEIGHT - code.getHeight()) / 2;
+
+        for (int y = 0; y < code.getHeight(); y++)
+        {
+            for (int x = 0; x < code.getWidth(); x++)
+            {
+                final int codeX = mirrored ? code.getWidth() - 1 - x : x;
+                frame[(top + y) * WIDTH + left + x] = (byte) (code.get(codeX, y) ? 24 : 232);
+            }
+        }
+
+        return frame;
+    }
+}
@@ -0,0 +1,101 @@
+package eu.livotov.labs.android.camview.scanner.decoder.zxing;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The zero-copy rotated view reads the same pixels as ZXing's planar source rotated the straightforward way. ZXing's
+ * own <code>PlanarYUVLuminanceSource</code> does not support rotation, so the reference applies the transform of its
+ * <code>BufferedImageLuminanceSource</code> to the planar source matrix.
+ */
+public class RotatedPlanarYUVLuminanceSourceTest
+{
+    private static final int WIDTH = 41;
+    private static final int HEIGHT = 27;
+
+    // Left, top, width and height of the views, in frame coordinates
+    private static final int[][] CROPS = {{0, 0, WIDTH, HEIGHT}, {3, 5, 17, 11}, {1, 7, 39, 19}, {9, 1, 5, 23}};
+
+    // Crops of the rotated views, in rotated coordinates, and a crop of those crops
+    private static final int[][] ROTATED_CROPS = {{1, 1, 5, 3}, {3, 0, 3, 3}, {0, 2, 4, 3}};
+    private static final int[] NESTED_CROP = {1, 1, 1, 2};
+
+    private final byte[] nv21 = LuminanceAssert.randomFrame(WIDTH, HEIGHT, 11);
+
+    @Test
+    public void rotatesCounterClockwise()
+    {
+        final LuminanceSource rotated = new RotatedPlanarYUVLuminanceSource(nv21, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT);
+
+        // Top right corner of the frame comes to the top left, top left to the bottom left
+        assertEquals(nv21[WIDTH - 1], rotated.getMatrix()[0]);
+        assertEquals(nv21[0], rotated.getRow(WIDTH - 1, null)[0]);
+    }
+
+    @Test
+    public void viewsMatchRotatedPlanarSource()
+    {
+        for (int[] crop : CROPS)
+        {
+            LuminanceAssert.assertSameLuminance(describe(crop, false), reference(crop), new RotatedPlanarYUVLuminanceSource(nv21, WIDTH, HEIGHT, crop[0], crop[1], crop[2], crop[3]));
+            LuminanceAssert.assertSameLuminance(describe(crop, true), mirroredReference(crop), new RotatedPlanarYUVLuminanceSource(nv21, WIDTH, HEIGHT, crop[0], crop[1], crop[2], crop[3], true));
+        }
+    }
+
+    @Test
+    public void cropsInRotatedCoordinatesMatchRotatedPlanarSource()
+    {
+        for (int[] crop : CROPS)
+        {
+            for (int[] rotatedCrop : ROTATED_CROPS)
+            {
+                final String message = describe(crop, false) + " cropped at " + rotatedCrop[0] + "," + rotatedCrop[1];
+                final LuminanceSource rotated = new RotatedPlanarYUVLuminanceSource(nv21, WIDTH, HEIGHT, crop[0], crop[1], crop[2], crop[3]);
+                final LuminanceSource mirrored = new RotatedPlanarYUVLuminanceSource(nv21, WIDTH, HEIGHT, crop[0], crop[1], crop[2], crop[3], true);
+
+                LuminanceAssert.assertSameLuminance(message, crop(reference(crop), rotatedCrop), crop(rotated, rotatedCrop));
+                LuminanceAssert.assertSameLuminance(message + " mirrored", crop(mirroredReference(crop), rotatedCrop), crop(mirrored, rotatedCrop));
+
+                // Crops of crops keep mapping back onto the frame
+                LuminanceAssert.assertSameLuminance(message + " twice", crop(crop(reference(crop), rotatedCrop), NESTED_CROP), crop(crop(rotated, rotatedCrop), NESTED_CROP));
+            }
+        }
+    }
+
+    @Test
+    public void planarRotatedSourceRotatesIntoSameView()
+    {
+        for (int[] crop : CROPS)
+        {
+            for (boolean mirrored : new boolean[]{false, true})
+            {
+                final LuminanceSource upright = new PlanarRotatedYUVLuminanceSource(nv21, WIDTH, HEIGHT, crop[0], crop[1], crop[2], crop[3], mirrored);
+                LuminanceAssert.assertSameLuminance(describe(crop, mirrored), mirrored ? mirroredReference(crop) : reference(crop), upright.rotateCounterClockwise());
+            }
+        }
+    }
+
+    private LuminanceSource reference(int[] crop)
+    {
+        return LuminanceAssert.rotateCounterClockwise(new PlanarYUVLuminanceSource(nv21, WIDTH, HEIGHT, crop[0], crop[1], crop[2], crop[3], false));
+    }
+
+    private LuminanceSource mirroredReference(int[] crop)
+    {
+        return LuminanceAssert.rotateCounterClockwise(new MirroredPlanarYUVLuminanceSource(nv21, WIDTH, HEIGHT, crop[0], crop[1], crop[2], crop[3]));
+    }
+
+    private static LuminanceSource crop(LuminanceSource source, int[] crop)
+    {
+        return source.crop(crop[0], crop[1], crop[2], crop[3]);
+    }
+
+    private static String describe(int[] crop, boolean mirrored)
+    {
+        return String.format("%s,%s %sx%s%s", crop[0], crop[1], crop[2], crop[3], mirrored ? " mirrored" : "");
+    }
+}
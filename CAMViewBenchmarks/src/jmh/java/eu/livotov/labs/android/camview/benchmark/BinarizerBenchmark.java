@@ -0,0 +1,65 @@
+package eu.livotov.labs.android.camview.benchmark;
+
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import eu.livotov.labs.android.camview.scanner.decoder.zxing.PlanarRotatedYUVLuminanceSource;
+
+/**
+ * {@link HybridBinarizer} over the default scan area, as done by every decoding pass: the whole matrix for 2D readers
+ * and the 15 rows 1D readers sample at normal effort.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinarizerBenchmark
+{
+    private static final int ONE_D_SAMPLED_ROWS = 15;
+
+    @Benchmark
+    public BitMatrix blackMatrix(FrameFixture fixture) throws NotFoundException
+    {
+        return binarizer(fixture).getBlackMatrix();
+    }
+
+    @Benchmark
+    public BitArray blackRows(FrameFixture fixture)
+    {
+        final HybridBinarizer binarizer = binarizer(fixture);
+        final int step = fixture.scanHeight / (ONE_D_SAMPLED_ROWS + 1);
+        BitArray row = new BitArray(fixture.scanWidth);
+
+        for (int i = 1; i <= ONE_D_SAMPLED_ROWS; i++)
+        {
+            try
+            {
+                row = binarizer.getBlackRow(i * step, row);
+            }
+            catch (NotFoundException flatRow)
+            {
+                // Rows without enough contrast are skipped by readers as well
+            }
+        }
+
+        return row;
+    }
+
+    private static HybridBinarizer binarizer(FrameFixture fixture)
+    {
+        return new HybridBinarizer(new PlanarRotatedYUVLuminanceSource(fixture.frame, fixture.width, fixture.height, fixture.scanLeft, fixture.scanTop, fixture.scanWidth, fixture.scanHeight, false));
+    }
+}
@@ -0,0 +1,97 @@
+package eu.livotov.labs.android.camview.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import eu.livotov.labs.android.camview.camera.FrameDescriptor;
+import eu.livotov.labs.android.camview.scanner.decoder.DecodeResult;
+import eu.livotov.labs.android.camview.scanner.decoder.DecodeResultPool;
+import eu.livotov.labs.android.camview.scanner.decoder.zxing.ZXDecoder;
+
+/**
+ * Full {@link ZXDecoder#decode(byte[], int, int)} cost per frame, the figure that bounds scans per second.
+ * With region tracking on and a code present, every frame after the first is decoded in the window around the code.
+ * {@link #decodeMultiple(FrameFixture)} gives the cost of the multiple codes mode, which does not use region tracking.
+ * {@link #decodeDirectBuffer()} decodes the same frame from a direct buffer, as camera2 delivers it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecoderBenchmark
+{
+    @Param({"false", "true"})
+    public boolean regionTracking;
+
+    private ZXDecoder decoder;
+    private final DecodeResult result = new DecodeResult();
+    private final DecodeResultPool pool = new DecodeResultPool();
+    private final List<DecodeResult> results = new ArrayList<DecodeResult>();
+    private FrameDescriptor directFrame;
+
+    @Setup
+    public void setup(FrameFixture fixture)
+    {
+        decoder = new ZXDecoder();
+        decoder.setScanAreaPercent(FrameFixture.SCAN_AREA_PERCENT);
+        decoder.getRegionTracker().setEnabled(regionTracking);
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect(fixture.frame.length);
+        direct.put(fixture.frame);
+        direct.flip();
+        directFrame = FrameDescriptor.wrapNV21(direct, fixture.width, fixture.height);
+
+        if (fixture.codePresent && decoder.decode(fixture.frame, fixture.width, fixture.height) == null)
+        {
+            throw new IllegalStateException("Fixture code cannot be decoded at " + fixture.frameSize);
+        }
+    }
+
+    @Benchmark
+    public String decode(FrameFixture fixture)
+    {
+        return decoder.decode(fixture.frame, fixture.width, fixture.height);
+    }
+
+    @Benchmark
+    public boolean decodeIntoResult(FrameFixture fixture)
+    {
+        return decoder.decode(fixture.frame, fixture.width, fixture.height, result);
+    }
+
+    @Benchmark
+    public boolean decodeDirectBuffer()
+    {
+        return decoder.decode(directFrame, result);
+    }
+
+    @Benchmark
+    public int decodeMultiple(FrameFixture fixture)
+    {
+        final int count = decoder.decodeMultiple(fixture.frame, fixture.width, fixture.height, pool, results);
+
+        for (DecodeResult decoded : results)
+        {
+            decoded.release();
+        }
+        results.clear();
+
+        return count;
+    }
+}
@@ -0,0 +1,43 @@
+package eu.livotov.labs.android.camview.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import eu.livotov.labs.android.camview.scanner.FrameChangeGate;
+
+/**
+ * Per frame cost of the pre-decode gate, to be compared with {@link DecoderBenchmark} on the same fixture.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameChangeGateBenchmark
+{
+    private FrameChangeGate gate;
+
+    @Setup
+    public void setup(FrameFixture fixture)
+    {
+        gate = new FrameChangeGate();
+        gate.setAreaPercent(FrameFixture.SCAN_AREA_PERCENT);
+    }
+
+    @Benchmark
+    public int evaluate(FrameFixture fixture)
+    {
+        return gate.evaluate(fixture.frame, fixture.width, fixture.height);
+    }
+}
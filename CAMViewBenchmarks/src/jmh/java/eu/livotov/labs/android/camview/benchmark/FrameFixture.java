@@ -0,0 +1,46 @@
+package eu.livotov.labs.android.camview.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * NV21 frame shared by the decode path benchmarks, either empty or with a QR code in the middle of the scan area.
+ */
+@State(Scope.Thread)
+public class FrameFixture
+{
+    public final static double SCAN_AREA_PERCENT = 0.7;
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String frameSize;
+
+    @Param({"false", "true"})
+    public boolean codePresent;
+
+    public byte[] frame;
+    public int width;
+    public int height;
+    public int scanLeft;
+    public int scanTop;
+    public int scanWidth;
+    public int scanHeight;
+
+    @Setup
+    public void setup()
+    {
+        final int[] size = Nv21Fixtures.parseFrameSize(frameSize);
+        width = size[0];
+        height = size[1];
+        frame = codePresent ? Nv21Fixtures.frameWithCode(width, height, BarcodeFormat.QR_CODE, Nv21Fixtures.QR_CODE_TEXT) : Nv21Fixtures.emptyFrame(width, height);
+
+        // Same centered scan area ZXDecoder crops by default
+        scanWidth = (int) (width * SCAN_AREA_PERCENT);
+        scanHeight = (int) (height * SCAN_AREA_PERCENT);
+        scanLeft = width / 2 - scanWidth / 2;
+        scanTop = height / 2 - scanHeight / 2;
+    }
+}
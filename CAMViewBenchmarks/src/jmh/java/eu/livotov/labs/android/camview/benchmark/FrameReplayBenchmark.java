@@ -0,0 +1,180 @@
+package eu.livotov.labs.android.camview.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import eu.livotov.labs.android.camview.camera.FrameDescriptor;
+import eu.livotov.labs.android.camview.camera.FrameDescriptorProcessingCallback;
+import eu.livotov.labs.android.camview.camera.LiveFrameExecutor;
+import eu.livotov.labs.android.camview.camera.LiveFrameProcessingPool;
+import eu.livotov.labs.android.camview.camera.replay.FrameRecording;
+import eu.livotov.labs.android.camview.camera.replay.FrameReplaySource;
+import eu.livotov.labs.android.camview.scanner.ScannerFrameProcessor;
+import eu.livotov.labs.android.camview.scanner.decoder.DecodeResult;
+import eu.livotov.labs.android.camview.scanner.decoder.zxing.ZXDecoder;
+
+/**
+ * Time to run a whole recording through the scanner decode path, end to end: a {@link FrameReplaySource} at the
+ * maximum rate feeds a {@link LiveFrameProcessingPool} running a {@link ScannerFrameProcessor}, frame change gate
+ * included. Decode scheduling is pinned to a zero interval and there are as many buffers as queue slots, so every
+ * frame the gate lets through is decoded: frames per second are the recording length over the reported time.
+ * <p/>
+ * Replays recorded footage given with <code>-p recording=/path/to/recording</code>. By default a synthetic recording is
+ * generated, alternating frames with and without a code.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FrameReplayBenchmark
+{
+    private final static int SYNTHETIC_FRAMES_COUNT = 30;
+
+    @Param({""})
+    public String recording;
+
+    @Param({"mapped", "streamed"})
+    public String replay;
+
+    @Param({"1", "2"})
+    public int workers;
+
+    private File recordingFile;
+    private boolean syntheticRecording;
+    private ScannerFrameProcessor processor;
+    private LiveFrameProcessingPool pool;
+    private final AtomicLong scannedCodes = new AtomicLong();
+
+    @Setup
+    public void setup() throws IOException
+    {
+        syntheticRecording = recording.length() == 0;
+        recordingFile = syntheticRecording ? writeSyntheticRecording(1280, 720) : new File(recording);
+
+        processor = new ScannerFrameProcessor(new ZXDecoder());
+        processor.getDecodeScheduler().setFixedInterval(0);
+        processor.reset(workers);
+
+        pool = new LiveFrameProcessingPool(workers, workers, new FrameDescriptorProcessingCallback()
+        {
+            @Override
+            public Object onProcessCameraFrame(FrameDescriptor frame)
+            {
+                return processor.process(frame);
+            }
+
+            @Override
+            public Object onProcessCameraFrame(byte[] data, int width, int height)
+            {
+                return processor.process(FrameDescriptor.wrapNV21(ByteBuffer.wrap(data), width, height));
+            }
+
+            @Override
+            public void onReceiveProcessedCameraFrame(Object data)
+            {
+            }
+        }, new LiveFrameExecutor.ResultListener()
+        {
+            @Override
+            public void onLiveFrameProcessed(Object result)
+            {
+                if (result instanceof DecodeResult)
+                {
+                    scannedCodes.incrementAndGet();
+                    ((DecodeResult) result).release();
+                }
+                else if (result instanceof List)
+                {
+                    for (Object decoded : (List<?>) result)
+                    {
+                        scannedCodes.incrementAndGet();
+                        ((DecodeResult) decoded).release();
+                    }
+                }
+            }
+        });
+        pool.start();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        pool.shutdown();
+
+        if (syntheticRecording)
+        {
+            recordingFile.delete();
+
+            if (scannedCodes.get() == 0)
+            {
+                throw new IllegalStateException("Synthetic recording code was never scanned");
+            }
+        }
+    }
+
+    @Benchmark
+    public long replayRecording() throws IOException, InterruptedException
+    {
+        final FrameReplaySource source = new FrameReplaySource(recordingFile, "streamed".equals(replay) ? FrameReplaySource.MODE_STREAMED : FrameReplaySource.MODE_MEMORY_MAPPED);
+        source.setBuffersCount(workers);
+        source.start(pool);
+
+        if (!source.awaitCompletion(1, TimeUnit.MINUTES) || source.getError() != null)
+        {
+            throw new IllegalStateException("Replay did not complete", source.getError());
+        }
+
+        return source.getDeliveredFramesCount();
+    }
+
+    private static File writeSyntheticRecording(int width, int height) throws IOException
+    {
+        final byte[][] frames = {Nv21Fixtures.frameWithCode(width, height, BarcodeFormat.QR_CODE, Nv21Fixtures.QR_CODE_TEXT), Nv21Fixtures.emptyFrame(width, height)};
+        final File file = File.createTempFile("camview", ".camvrec");
+        final FileOutputStream output = new FileOutputStream(file);
+        final ByteBuffer header = ByteBuffer.allocate(FrameRecording.FRAME_HEADER_SIZE);
+
+        try
+        {
+            FrameRecording.writeFileHeader(header);
+            output.write(header.array(), 0, header.position());
+
+            for (int i = 0; i < SYNTHETIC_FRAMES_COUNT; i++)
+            {
+                final byte[] frame = frames[i % frames.length];
+                header.clear();
+                FrameRecording.writeFrameHeader(header, FrameDescriptor.FORMAT_NV21, width, height, i * 33333333L, frame.length);
+                output.write(header.array(), 0, header.position());
+                output.write(frame);
+            }
+        }
+        finally
+        {
+            output.close();
+        }
+
+        return file;
+    }
+}
@@ -0,0 +1,205 @@
+package eu.livotov.labs.android.camview.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import eu.livotov.labs.android.camview.camera.FrameDescriptor;
+import eu.livotov.labs.android.camview.camera.FrameDescriptorProcessingCallback;
+import eu.livotov.labs.android.camview.camera.LiveFrame;
+import eu.livotov.labs.android.camview.camera.LiveFrameExecutor;
+import eu.livotov.labs.android.camview.camera.LiveFrameProcessingPool;
+import eu.livotov.labs.android.camview.camera.v2.ImageFrameRing;
+import eu.livotov.labs.android.camview.scanner.decoder.DecodeResult;
+import eu.livotov.labs.android.camview.scanner.decoder.zxing.ZXDecoder;
+
+/**
+ * Decodes per second achieved on the camera2 path: <code>YUV_420_888</code> images in direct buffers with padded rows
+ * go through an {@link ImageFrameRing} into a {@link LiveFrameProcessingPool} without ever being copied.
+ * <p/>
+ * The benchmark thread plays the <code>ImageReader</code>: it hands the ring the next image closed by the pipeline.
+ * There are as many images as ring frames, so no image is ever dropped and the rate settles at the decoding rate,
+ * directly comparable to {@link LiveFrameProcessingPoolBenchmark} decoding heap NV21 frames.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageFrameRingBenchmark
+{
+    /**
+     * Row padding typical of camera hardware buffers
+     */
+    private final static int ROW_PADDING = 64;
+
+    @Param({"1", "2", "4"})
+    public int workers;
+
+    @Param({"1280x720"})
+    public String frameSize;
+
+    @Param({"true", "false"})
+    public boolean codePresent;
+
+    private BlockingQueue<FakeImage> closedImages;
+    private ImageFrameRing<FakeImage> ring;
+    private LiveFrameProcessingPool pool;
+    private final AtomicLong decodedCodes = new AtomicLong();
+
+    @Setup
+    public void setup()
+    {
+        final int[] size = Nv21Fixtures.parseFrameSize(frameSize);
+        final int width = size[0];
+        final int height = size[1];
+
+        final byte[] nv21 = codePresent ? Nv21Fixtures.frameWithCode(width, height, BarcodeFormat.QR_CODE, Nv21Fixtures.QR_CODE_TEXT) : Nv21Fixtures.emptyFrame(width, height);
+        final int imagesCount = workers;
+        closedImages = new ArrayBlockingQueue<FakeImage>(imagesCount);
+
+        for (int i = 0; i < imagesCount; i++)
+        {
+            closedImages.add(new FakeImage(nv21, width, height, width + ROW_PADDING));
+        }
+
+        ring = new ImageFrameRing<FakeImage>(imagesCount, new ImageFrameRing.ImageAccess<FakeImage>()
+        {
+            @Override
+            public void describe(FakeImage image, FrameDescriptor descriptor)
+            {
+                image.describe(descriptor);
+            }
+
+            @Override
+            public void close(FakeImage image)
+            {
+                closedImages.add(image);
+            }
+        });
+
+        final ZXDecoder decoder = new ZXDecoder();
+        pool = new LiveFrameProcessingPool(workers, workers, new FrameDescriptorProcessingCallback()
+        {
+            @Override
+            public Object onProcessCameraFrame(FrameDescriptor frame)
+            {
+                return decoder.decode(frame, new DecodeResult()) ? Boolean.TRUE : null;
+            }
+
+            @Override
+            public Object onProcessCameraFrame(byte[] data, int width, int height)
+            {
+                throw new IllegalStateException("Camera2 frames must not be copied into arrays");
+            }
+
+            @Override
+            public void onReceiveProcessedCameraFrame(Object data)
+            {
+            }
+        }, new LiveFrameExecutor.ResultListener()
+        {
+            @Override
+            public void onLiveFrameProcessed(Object result)
+            {
+                if (result != null)
+                {
+                    decodedCodes.incrementAndGet();
+                }
+            }
+        });
+        pool.start();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        pool.shutdown();
+
+        if (pool.getDroppedFramesCount() > 0 || ring.getDroppedImagesCount() > 0)
+        {
+            throw new IllegalStateException("Frames were dropped, figures would not reflect decoding throughput");
+        }
+
+        if (codePresent && decodedCodes.get() == 0)
+        {
+            throw new IllegalStateException("Fixture code was never decoded");
+        }
+    }
+
+    @Benchmark
+    public void decodeImage() throws InterruptedException
+    {
+        final LiveFrame frame = ring.acquire(closedImages.take(), System.nanoTime());
+
+        if (frame != null)
+        {
+            pool.submitLiveFrame(frame);
+        }
+    }
+
+    /**
+     * Semi planar image laid out the way most camera2 implementations deliver <code>YUV_420_888</code>
+     */
+    private static class FakeImage
+    {
+        private final ByteBuffer luma;
+        private final ByteBuffer chroma;
+        private final int width;
+        private final int height;
+        private final int rowStride;
+
+        FakeImage(byte[] nv21, int width, int height, int rowStride)
+        {
+            this.width = width;
+            this.height = height;
+            this.rowStride = rowStride;
+            this.luma = ByteBuffer.allocateDirect(rowStride * height);
+            this.chroma = ByteBuffer.allocateDirect(rowStride * height / 2);
+
+            for (int y = 0; y < height; y++)
+            {
+                luma.position(y * rowStride);
+                luma.put(nv21, y * width, width);
+            }
+
+            for (int y = 0; y < height / 2; y++)
+            {
+                chroma.position(y * rowStride);
+                chroma.put(nv21, width * height + y * width, width);
+            }
+
+            luma.clear();
+            chroma.clear();
+        }
+
+        void describe(FrameDescriptor descriptor)
+        {
+            final ByteBuffer u = chroma.duplicate();
+            u.position(1);
+
+            descriptor.setFormat(FrameDescriptor.FORMAT_YUV_420_888, width, height);
+            descriptor.setPlane(FrameDescriptor.PLANE_Y, luma, rowStride, 1);
+            descriptor.setPlane(FrameDescriptor.PLANE_U, u.slice(), rowStride, 2);
+            descriptor.setPlane(FrameDescriptor.PLANE_V, chroma, rowStride, 2);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package eu.livotov.labs.android.camview.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import eu.livotov.labs.android.camview.camera.LiveDataProcessingCallback;
+import eu.livotov.labs.android.camview.camera.LiveFrame;
+import eu.livotov.labs.android.camview.camera.LiveFrameExecutor;
+import eu.livotov.labs.android.camview.camera.LiveFrameProcessingPool;
+import eu.livotov.labs.android.camview.scanner.decoder.zxing.ZXDecoder;
+
+/**
+ * Decodes per second achieved by {@link LiveFrameProcessingPool} as the number of workers grows.
+ * <p/>
+ * The benchmark thread plays the camera: it submits the next free buffer holding a synthetic frame. There are as many
+ * buffers as queue slots, so no frame is ever dropped and the submission rate settles at the rate frames are decoded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LiveFrameProcessingPoolBenchmark
+{
+    @Param({"1", "2", "4", "8"})
+    public int workers;
+
+    @Param({"1280x720"})
+    public String frameSize;
+
+    @Param({"true", "false"})
+    public boolean codePresent;
+
+    private int width;
+    private int height;
+    private BlockingQueue<LiveFrame> freeFrames;
+    private LiveFrameProcessingPool pool;
+    private final AtomicLong decodedCodes = new AtomicLong();
+
+    @Setup
+    public void setup()
+    {
+        final int[] size = Nv21Fixtures.parseFrameSize(frameSize);
+        width = size[0];
+        height = size[1];
+
+        final byte[] fixture = codePresent ? Nv21Fixtures.frameWithCode(width, height, BarcodeFormat.QR_CODE, Nv21Fixtures.QR_CODE_TEXT) : Nv21Fixtures.emptyFrame(width, height);
+        final int buffersCount = workers;
+        freeFrames = new ArrayBlockingQueue<LiveFrame>(buffersCount);
+
+        final LiveFrame.Recycler recycler = new LiveFrame.Recycler()
+        {
+            @Override
+            public void recycle(LiveFrame frame)
+            {
+                freeFrames.add(frame);
+            }
+        };
+
+        for (int i = 0; i < buffersCount; i++)
+        {
+            freeFrames.add(new LiveFrame(fixture.clone(), recycler));
+        }
+
+        final ZXDecoder decoder = new ZXDecoder();
+        pool = new LiveFrameProcessingPool(workers, workers, new LiveDataProcessingCallback()
+        {
+            @Override
+            public Object onProcessCameraFrame(byte[] data, int width, int height)
+            {
+                return decoder.decode(data, width, height);
+            }
+
+            @Override
+            public void onReceiveProcessedCameraFrame(Object data)
+            {
+            }
+        }, new LiveFrameExecutor.ResultListener()
+        {
+            @Override
+            public void onLiveFrameProcessed(Object result)
+            {
+                if (result != null)
+                {
+                    decodedCodes.incrementAndGet();
+                }
+            }
+        });
+        pool.start();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        pool.shutdown();
+
+        if (pool.getDroppedFramesCount() > 0)
+        {
+            throw new IllegalStateException("Frames were dropped, figures would not reflect decoding throughput");
+        }
+
+        if (codePresent && decodedCodes.get() == 0)
+        {
+            throw new IllegalStateException("Fixture code was never decoded");
+        }
+    }
+
+    @Benchmark
+    public void decodeFrame() throws InterruptedException
+    {
+        final LiveFrame frame = freeFrames.take();
+        frame.acquire(width, height);
+        pool.submitLiveFrame(frame);
+    }
+}
@@ -0,0 +1,118 @@
+package eu.livotov.labs.android.camview.benchmark;
+
+import com.google.zxing.LuminanceSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import eu.livotov.labs.android.camview.scanner.decoder.zxing.PlanarRotatedYUVLuminanceSource;
+import eu.livotov.labs.android.camview.scanner.decoder.zxing.ZXRGBLuminanceSource;
+
+/**
+ * Pixel access of the luminance sources the decoder reads camera frames through. Content of the frame does not
+ * matter here, so only the empty frame is used.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LuminanceSourceBenchmark
+{
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String frameSize;
+
+    private byte[] frame;
+    private int width;
+    private int height;
+    private int scanLeft;
+    private int scanTop;
+    private int scanWidth;
+    private int scanHeight;
+    private int[] argbPixels;
+    private byte[] row;
+
+    @Setup
+    public void setup()
+    {
+        final int[] size = Nv21Fixtures.parseFrameSize(frameSize);
+        width = size[0];
+        height = size[1];
+        frame = Nv21Fixtures.emptyFrame(width, height);
+        scanWidth = (int) (width * FrameFixture.SCAN_AREA_PERCENT);
+        scanHeight = (int) (height * FrameFixture.SCAN_AREA_PERCENT);
+        scanLeft = width / 2 - scanWidth / 2;
+        scanTop = height / 2 - scanHeight / 2;
+        row = new byte[Math.max(width, height)];
+
+        argbPixels = new int[width * height];
+        for (int i = 0; i < argbPixels.length; i++)
+        {
+            final int grey = frame[i] & 0xff;
+            argbPixels[i] = 0xff000000 | (grey << 16) | ((grey + 8 & 0xff) << 8) | grey;
+        }
+    }
+
+    @Benchmark
+    public void uprightGetRow(Blackhole blackhole)
+    {
+        readRows(upright(), blackhole);
+    }
+
+    @Benchmark
+    public byte[] uprightGetMatrix()
+    {
+        return upright().getMatrix();
+    }
+
+    @Benchmark
+    public void rotatedGetRow(Blackhole blackhole)
+    {
+        readRows(upright().rotateCounterClockwise(), blackhole);
+    }
+
+    @Benchmark
+    public byte[] rotatedGetMatrix()
+    {
+        return upright().rotateCounterClockwise().getMatrix();
+    }
+
+    @Benchmark
+    public void mirroredGetRow(Blackhole blackhole)
+    {
+        readRows(new PlanarRotatedYUVLuminanceSource(frame, width, height, scanLeft, scanTop, scanWidth, scanHeight, true), blackhole);
+    }
+
+    @Benchmark
+    public LuminanceSource rgbSourceConstruction()
+    {
+        return new ZXRGBLuminanceSource(width, height, argbPixels);
+    }
+
+    private LuminanceSource upright()
+    {
+        return new PlanarRotatedYUVLuminanceSource(frame, width, height, scanLeft, scanTop, scanWidth, scanHeight, false);
+    }
+
+    private void readRows(LuminanceSource source, Blackhole blackhole)
+    {
+        final int rows = source.getHeight();
+        for (int y = 0; y < rows; y++)
+        {
+            blackhole.consume(source.getRow(y, row));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package eu.livotov.labs.android.camview.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import eu.livotov.labs.android.camview.camera.FrameDescriptor;
+import eu.livotov.labs.android.camview.scanner.decoder.DecodeResult;
+import eu.livotov.labs.android.camview.scanner.decoder.zxing.ZXDecoder;
+
+/**
+ * Per frame cost of {@link ZXDecoder} with multi resolution decoding at each downsample factor, 1 being the plain
+ * full resolution decode. Region tracking is off, so every frame goes through the scan area passes: with a code
+ * present it shows how much faster the coarse passes read it, without one how much of the full resolution work the
+ * coarse passes save, the full resolution interval included.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MultiResolutionDecoderBenchmark
+{
+    @Param({"1", "2", "4"})
+    public int downsampleFactor;
+
+    private ZXDecoder decoder;
+    private final DecodeResult result = new DecodeResult();
+    private FrameDescriptor directFrame;
+
+    @Setup
+    public void setup(FrameFixture fixture)
+    {
+        decoder = new ZXDecoder();
+        decoder.setScanAreaPercent(FrameFixture.SCAN_AREA_PERCENT);
+        decoder.getRegionTracker().setEnabled(false);
+        decoder.setDownsampleFactor(downsampleFactor);
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect(fixture.frame.length);
+        direct.put(fixture.frame);
+        direct.flip();
+        directFrame = FrameDescriptor.wrapNV21(direct, fixture.width, fixture.height);
+
+        if (fixture.codePresent && !decoder.decode(fixture.frame, fixture.width, fixture.height, result))
+        {
+            throw new IllegalStateException("Fixture code cannot be decoded at " + fixture.frameSize);
+        }
+    }
+
+    @Benchmark
+    public boolean decode(FrameFixture fixture)
+    {
+        return decoder.decode(fixture.frame, fixture.width, fixture.height, result);
+    }
+
+    @Benchmark
+    public boolean decodeDirectBuffer()
+    {
+        return decoder.decode(directFrame, result);
+    }
+}
@@ -0,0 +1,81 @@
+package eu.livotov.labs.android.camview.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Synthetic NV21 camera frames used as benchmark fixtures.
+ */
+final class Nv21Fixtures
+{
+    static final String QR_CODE_TEXT = "https://github.com/LivotovLabs/CamView";
+
+    private Nv21Fixtures()
+    {
+    }
+
+    static int[] parseFrameSize(String frameSize)
+    {
+        final String[] dimensions = frameSize.split("x");
+        return new int[]{Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1])};
+    }
+
+    /**
+     * Frame with no code in it: smooth gradient with some sensor-like noise, chroma planes neutral
+     */
+    static byte[] emptyFrame(int width, int height)
+    {
+        final byte[] frame = new byte[width * height * 3 / 2];
+        final Random random = new Random(42);
+
+        for (int y = 0; y < height; y++)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                frame[y * width + x] = (byte) (96 + (x + y) * 64 / (width + height) + random.nextInt(16));
+            }
+        }
+
+        Arrays.fill(frame, width * height, frame.length, (byte) 128);
+        return frame;
+    }
+
+    /**
+     * Frame with the given code drawn in its center, taking roughly a third of the frame height
+     */
+    static byte[] frameWithCode(int width, int height, BarcodeFormat format, String text)
+    {
+        final byte[] frame = emptyFrame(width, height);
+        final boolean twoDimensional = format == BarcodeFormat.QR_CODE || format == BarcodeFormat.DATA_MATRIX || format == BarcodeFormat.AZTEC;
+        final int codeHeight = height / 3;
+        final int codeWidth = twoDimensional ? codeHeight : Math.min(width / 2, codeHeight * 3);
+
+        final BitMatrix code;
+        try
+        {
+            code = new MultiFormatWriter().encode(text, format, codeWidth, codeHeight);
+        }
+        catch (WriterException e)
+        {
+            throw new IllegalArgumentException(e);
+        }
+
+        final int left = (width - code.getWidth()) / 2;
+        final int top = (height - code.getHeight()) / 2;
+
+        for (int y = 0; y < code.getHeight(); y++)
+        {
+            for (int x = 0; x < code.getWidth(); x++)
+            {
+                frame[(top + y) * width + left + x] = (byte) (code.get(x, y) ? 24 : 232);
+            }
+        }
+
+        return frame;
+    }
+}
@@ -0,0 +1,132 @@
+package eu.livotov.labs.android.camview.benchmark;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import eu.livotov.labs.android.camview.scanner.decoder.zxing.PlanarRotatedYUVLuminanceSource;
+
+/**
+ * Compares the zero-copy rotated view served by {@link PlanarRotatedYUVLuminanceSource#rotateCounterClockwise()}
+ * with the former implementation, which materialized a rotated copy of the whole NV21 frame for every rotation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RotatedLuminanceSourceBenchmark
+{
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String frameSize;
+
+    private byte[] frame;
+    private int width;
+    private int height;
+    private int cropLeft;
+    private int cropTop;
+    private int cropWidth;
+    private int cropHeight;
+    private byte[] row;
+
+    @Setup
+    public void setup()
+    {
+        final String[] dimensions = frameSize.split("x");
+        width = Integer.parseInt(dimensions[0]);
+        height = Integer.parseInt(dimensions[1]);
+        frame = new byte[width * height * 3 / 2];
+        new Random(42).nextBytes(frame);
+
+        cropWidth = (int) (width * 0.7);
+        cropHeight = (int) (height * 0.7);
+        cropLeft = width / 2 - cropWidth / 2;
+        cropTop = height / 2 - cropHeight / 2;
+        row = new byte[Math.max(width, height)];
+    }
+
+    @Benchmark
+    public void legacyRotateAndReadRows(Blackhole blackhole)
+    {
+        final byte[] rotated = rotateYUV420Degree90(frame, width, height);
+        readRows(new PlanarYUVLuminanceSource(rotated, height, width, cropTop, cropLeft, cropHeight, cropWidth, false), blackhole);
+    }
+
+    @Benchmark
+    public void zeroCopyRotateAndReadRows(Blackhole blackhole)
+    {
+        readRows(upright().rotateCounterClockwise(), blackhole);
+    }
+
+    @Benchmark
+    public byte[] legacyRotateAndGetMatrix()
+    {
+        final byte[] rotated = rotateYUV420Degree90(frame, width, height);
+        return new PlanarYUVLuminanceSource(rotated, height, width, cropTop, cropLeft, cropHeight, cropWidth, false).getMatrix();
+    }
+
+    @Benchmark
+    public byte[] zeroCopyRotateAndGetMatrix()
+    {
+        return upright().rotateCounterClockwise().getMatrix();
+    }
+
+    private LuminanceSource upright()
+    {
+        return new PlanarRotatedYUVLuminanceSource(frame, width, height, cropLeft, cropTop, cropWidth, cropHeight, false);
+    }
+
+    private void readRows(LuminanceSource source, Blackhole blackhole)
+    {
+        final int rows = source.getHeight();
+        for (int y = 0; y < rows; y++)
+        {
+            blackhole.consume(source.getRow(y, row));
+        }
+    }
+
+    /**
+     * Copy of the rotation previously performed by PlanarRotatedYUVLuminanceSource, kept here as the baseline.
+     */
+    private static byte[] rotateYUV420Degree90(byte[] data, int imageWidth, int imageHeight)
+    {
+        byte[] yuv = new byte[imageWidth * imageHeight * 3 / 2];
+        int i = 0;
+        for (int x = 0; x < imageWidth; x++)
+        {
+            for (int y = imageHeight - 1; y >= 0; y--)
+            {
+                yuv[i] = data[y * imageWidth + x];
+                i++;
+            }
+        }
+        i = imageWidth * imageHeight * 3 / 2 - 1;
+        for (int x = imageWidth - 1; x > 0; x = x - 2)
+        {
+            for (int y = 0; y < imageHeight / 2; y++)
+            {
+                yuv[i] = data[(imageWidth * imageHeight) + (y * imageWidth) + x];
+                i--;
+                yuv[i] = data[(imageWidth * imageHeight) + (y * imageWidth) + (x - 1)];
+                i--;
+            }
+        }
+        return yuv;
+    }
+}
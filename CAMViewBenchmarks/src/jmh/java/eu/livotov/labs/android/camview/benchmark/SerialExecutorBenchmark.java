@@ -0,0 +1,114 @@
+package eu.livotov.labs.android.camview.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import eu.livotov.labs.android.camview.camera.SerialExecutor;
+
+/**
+ * Post to run latency of {@link SerialExecutor}, the executor behind <code>CAMViewAsyncTask.execSerial()</code>,
+ * against a single thread {@link java.util.concurrent.ThreadPoolExecutor}, whose lock guarded queue stands for the
+ * monitor guarded run loop it replaced.
+ * <p/>
+ * <code>postToRun</code> posts a task and spins until it ran, with the executor thread asleep beforehand: the
+ * latency a camera open or close request sees. <code>postBurst</code> posts a burst of tasks and waits for the last
+ * one, with the executor thread busy draining the queue while more tasks come in.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerialExecutorBenchmark
+{
+    private static final int BURST_SIZE = 100;
+
+    @Param({"serial", "threadPool"})
+    public String executor;
+
+    private Executor target;
+    private volatile long ranCount;
+    private long postedCount;
+
+    private final Runnable task = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            ranCount++;
+        }
+    };
+
+    @Setup
+    public void setup()
+    {
+        if ("serial".equals(executor))
+        {
+            target = new SerialExecutor("Benchmark Serial");
+        }
+        else if ("threadPool".equals(executor))
+        {
+            target = Executors.newSingleThreadExecutor();
+        }
+        else
+        {
+            throw new IllegalArgumentException("Unknown executor: " + executor);
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        if (target instanceof ExecutorService)
+        {
+            ((ExecutorService) target).shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public long postToRun()
+    {
+        target.execute(task);
+        return awaitRan(++postedCount);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST_SIZE)
+    public long postBurst()
+    {
+        for (int i = 0; i < BURST_SIZE; i++)
+        {
+            target.execute(task);
+        }
+
+        postedCount += BURST_SIZE;
+        return awaitRan(postedCount);
+    }
+
+    private long awaitRan(long count)
+    {
+        long ran;
+        while ((ran = ranCount) < count)
+        {
+            // Spins, sleeping would add the waking up of the benchmark thread to the figures
+        }
+        return ran;
+    }
+}
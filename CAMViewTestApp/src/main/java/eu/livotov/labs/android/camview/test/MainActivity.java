@@ -8,6 +8,7 @@ import android.view.View;
 import android.widget.Toast;
 
 import java.io.IOException;
+import java.util.List;
 
 import eu.livotov.labs.android.camview.CameraLiveView;
 import eu.livotov.labs.android.camview.ScannerLiveView;
@@ -15,6 +16,7 @@ import eu.livotov.labs.android.camview.camera.CameraManager;
 import eu.livotov.labs.android.camview.camera.CameraController;
 import eu.livotov.labs.android.camview.camera.CameraDelayedOperationResult;
 import eu.livotov.labs.android.camview.camera.CameraInfo;
+import eu.livotov.labs.android.camview.scanner.decoder.DecodeResult;
 import eu.livotov.labs.android.camview.scanner.decoder.zxing.ZXDecoder;
 
 
@@ -32,7 +34,7 @@ public class MainActivity extends Activity
         setContentView(R.layout.activity_main);
         camera = (ScannerLiveView) findViewById(R.id.camview);
 
-        camera.setScannerViewEventListener(new ScannerLiveView.ScannerViewEventListener()
+        camera.setScannerViewEventListener(new ScannerLiveView.MultiScannerViewEventListener()
         {
             @Override
             public void onScannerStarted(ScannerLiveView scanner)
@@ -57,6 +59,12 @@ public class MainActivity extends Activity
             {
                 Toast.makeText(MainActivity.this, data, Toast.LENGTH_SHORT).show();
             }
+
+            @Override
+            public void onCodesScanned(List<DecodeResult> codes)
+            {
+                Toast.makeText(MainActivity.this, codes.size() + " codes: " + codes, Toast.LENGTH_SHORT).show();
+            }
         });
 
         findViewById(R.id.btnFlash).setOnClickListener(new View.OnClickListener()